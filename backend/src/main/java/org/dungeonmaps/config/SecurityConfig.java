@@ -3,6 +3,7 @@ package org.dungeonmaps.config;
 import jakarta.servlet.http.HttpServletResponse;
 import org.dungeonmaps.security.JwtAuthenticationFilter;
 import org.dungeonmaps.security.OAuth2AuthenticationSuccessHandler;
+import org.dungeonmaps.websocket.WebSocketHandshakeInterceptor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -63,6 +64,7 @@ public class SecurityConfig {
         configuration.setAllowedOrigins(List.of(frontendUrl));
         configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "PATCH", "DELETE", "OPTIONS"));
         configuration.setAllowedHeaders(List.of("*"));
+        configuration.setExposedHeaders(List.of(WebSocketHandshakeInterceptor.OWNER_HEADER));
         configuration.setAllowCredentials(true);
 
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
@@ -1,12 +1,20 @@
 package org.dungeonmaps.config;
 
+import org.dungeonmaps.websocket.MapOwnerInterceptor;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
 
+    private final MapOwnerInterceptor mapOwnerInterceptor;
+
+    public WebConfig(MapOwnerInterceptor mapOwnerInterceptor) {
+        this.mapOwnerInterceptor = mapOwnerInterceptor;
+    }
+
     @Override
     public void addCorsMappings(CorsRegistry registry) {
         registry.addMapping("/**")
@@ -15,4 +23,11 @@ public class WebConfig implements WebMvcConfigurer {
                 .allowedHeaders("*")
                 .allowCredentials(true);
     }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(mapOwnerInterceptor)
+                .addPathPatterns("/api/grid-cells/**", "/api/maps/*", "/api/maps/*/cells/**",
+                        "/api/maps/*/variable-values/**", "/api/maps/*/variables/**", "/api/maps/*/notes/**");
+    }
 }
@@ -1,11 +1,18 @@
 package org.dungeonmaps.config;
 
+import org.dungeonmaps.websocket.MapHandoff;
+import org.dungeonmaps.websocket.MapSubscriptionInterceptor;
+import org.dungeonmaps.websocket.SlowConsumerPolicy;
 import org.dungeonmaps.websocket.WebSocketHandshakeInterceptor;
+import org.dungeonmaps.websocket.WireEncoding;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 import org.springframework.beans.factory.annotation.Value;
 
 @Configuration
@@ -13,12 +20,33 @@ import org.springframework.beans.factory.annotation.Value;
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     private final WebSocketHandshakeInterceptor handshakeInterceptor;
+    private final MapSubscriptionInterceptor subscriptionInterceptor;
+    private final SlowConsumerPolicy slowConsumerPolicy;
+    private final MapHandoff mapHandoff;
+    private final WireEncoding wireEncoding;
 
     @Value("${app.frontend-url}")
     private String frontendUrl;
 
-    public WebSocketConfig(WebSocketHandshakeInterceptor handshakeInterceptor) {
+    @Value("${app.websocket.virtual-threads:true}")
+    private boolean virtualThreads;
+
+    @Value("${app.websocket.send-buffer-size-bytes:524288}")
+    private int sendBufferSizeLimit;
+
+    @Value("${app.websocket.send-time-limit-ms:10000}")
+    private int sendTimeLimit;
+
+    public WebSocketConfig(WebSocketHandshakeInterceptor handshakeInterceptor,
+                           MapSubscriptionInterceptor subscriptionInterceptor,
+                           SlowConsumerPolicy slowConsumerPolicy,
+                           MapHandoff mapHandoff,
+                           WireEncoding wireEncoding) {
         this.handshakeInterceptor = handshakeInterceptor;
+        this.subscriptionInterceptor = subscriptionInterceptor;
+        this.slowConsumerPolicy = slowConsumerPolicy;
+        this.mapHandoff = mapHandoff;
+        this.wireEncoding = wireEncoding;
     }
 
     @Override
@@ -26,6 +54,27 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         registry.enableSimpleBroker("/topic", "/user");
         registry.setApplicationDestinationPrefixes("/app");
         registry.setUserDestinationPrefix("/user");
+        registry.setPreservePublishOrder(true);
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(subscriptionInterceptor, wireEncoding);
+        if (virtualThreads) registration.executor(virtualThreadExecutor("ws-inbound-"));
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.interceptors(slowConsumerPolicy, wireEncoding);
+        if (virtualThreads) registration.executor(virtualThreadExecutor("ws-outbound-"));
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendBufferSizeLimit(sendBufferSizeLimit)
+                .setSendTimeLimit(sendTimeLimit)
+                .addDecoratorFactory(slowConsumerPolicy)
+                .addDecoratorFactory(mapHandoff);
     }
 
     @Override
@@ -33,5 +82,12 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         registry.addEndpoint("/ws")
                 .setAllowedOrigins(frontendUrl)
                 .addInterceptors(handshakeInterceptor);
+        registry.setPreserveReceiveOrder(true);
+    }
+
+    private static SimpleAsyncTaskExecutor virtualThreadExecutor(String threadNamePrefix) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(threadNamePrefix);
+        executor.setVirtualThreads(true);
+        return executor;
     }
 }
@@ -0,0 +1,56 @@
+package org.dungeonmaps.controller;
+
+import org.dungeonmaps.model.MapMembership.MapRole;
+import org.dungeonmaps.model.MapVariable;
+import org.dungeonmaps.service.DungeonMapService;
+import org.dungeonmaps.websocket.CellRegion;
+import org.dungeonmaps.websocket.MapEdits;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/maps/{mapId}/variable-values/{variableId}")
+public class CellVariableBulkController {
+
+    /**
+     * A {@code null} value clears the variable across the region.
+     */
+    public record PaintRequest(String value, CellRegion region) {
+    }
+
+    private final DungeonMapService mapService;
+    private final MapEdits mapEdits;
+
+    public CellVariableBulkController(DungeonMapService mapService, MapEdits mapEdits) {
+        this.mapService = mapService;
+        this.mapEdits = mapEdits;
+    }
+
+    @PostMapping("/paint")
+    public ResponseEntity<Map<String, Integer>> paint(@PathVariable Long mapId,
+                                                      @PathVariable String variableId,
+                                                      @RequestBody PaintRequest request,
+                                                      Authentication authentication) {
+        Long userId = (Long) authentication.getPrincipal();
+        MapRole role = mapService.getMembership(mapId, userId)
+                .map(m -> m.getRole())
+                .orElse(null);
+        if (role == null) return ResponseEntity.status(403).build();
+
+        MapVariable variable = mapEdits.findVariable(mapId, variableId).orElse(null);
+        if (variable == null) return ResponseEntity.notFound().build();
+        if (!MapEdits.canEditValue(role, variable)) return ResponseEntity.status(403).build();
+        if (request.region() == null) return ResponseEntity.badRequest().build();
+
+        try {
+            Integer changed = mapEdits.paintCellVariableValue(mapId, variable, request.region(), request.value(), userId);
+            if (changed == null) return ResponseEntity.status(503).header("Retry-After", "1").build();
+            return ResponseEntity.ok(Map.of("changed", changed));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+}
@@ -7,8 +7,8 @@ import org.dungeonmaps.model.MapMembership.MapRole;
 import org.dungeonmaps.service.CellVariableValueService;
 import org.dungeonmaps.service.DungeonMapService;
 import org.dungeonmaps.service.GridCellDataService;
-import org.dungeonmaps.service.MapVariableService;
-import org.dungeonmaps.websocket.MapCacheService;
+import org.dungeonmaps.service.VersionedWrite;
+import org.dungeonmaps.websocket.MapEdits;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
@@ -21,21 +21,18 @@ import java.util.Map;
 public class CellVariableValueController {
 
     private final CellVariableValueService cellVariableValueService;
-    private final MapVariableService mapVariableService;
     private final GridCellDataService gridCellDataService;
     private final DungeonMapService mapService;
-    private final MapCacheService mapCacheService;
+    private final MapEdits mapEdits;
 
     public CellVariableValueController(CellVariableValueService cellVariableValueService,
-                                       MapVariableService mapVariableService,
                                        GridCellDataService gridCellDataService,
                                        DungeonMapService mapService,
-                                       MapCacheService mapCacheService) {
+                                       MapEdits mapEdits) {
         this.cellVariableValueService = cellVariableValueService;
-        this.mapVariableService = mapVariableService;
         this.gridCellDataService = gridCellDataService;
         this.mapService = mapService;
-        this.mapCacheService = mapCacheService;
+        this.mapEdits = mapEdits;
     }
 
     @GetMapping
@@ -65,26 +62,23 @@ public class CellVariableValueController {
                 .orElse(null);
         if (role == null) return ResponseEntity.status(403).build();
 
-        MapVariable variable = mapVariableService.getById(variableId).orElse(null);
+        MapVariable variable = mapEdits.findVariable(mapId, variableId).orElse(null);
         if (variable == null) return ResponseEntity.notFound().build();
-
-        String visibility = variable.getVisibility();
-        if ("DM_ONLY".equals(visibility) && role == MapRole.PLAYER) {
-            return ResponseEntity.status(403).build();
-        }
-        if ("PLAYER_READ".equals(visibility) && role == MapRole.PLAYER) {
-            return ResponseEntity.status(403).build();
-        }
-
-        GridCellData cell = gridCellDataService.getCell(mapId, row, col);
-        if (cell == null) return ResponseEntity.badRequest().build();
+        if (!MapEdits.canEditValue(role, variable)) return ResponseEntity.status(403).build();
 
         String value = body.get("value");
         if (value == null) return ResponseEntity.badRequest().build();
+        Long expectedVersion;
+        try {
+            expectedVersion = body.get("version") != null ? Long.valueOf(body.get("version")) : null;
+        } catch (NumberFormatException e) {
+            return ResponseEntity.badRequest().build();
+        }
 
-        CellVariableValue saved = cellVariableValueService.upsert(cell.getId(), variableId, value);
-        mapCacheService.broadcastCellVariableUpdate(mapId, row, col, variableId, value, variable, userId);
-        return ResponseEntity.ok(saved);
+        VersionedWrite<CellVariableValue> write =
+                mapEdits.setCellVariableValue(mapId, row, col, variable, value, expectedVersion, userId);
+        if (write == null) return ResponseEntity.badRequest().build();
+        return write.applied() ? ResponseEntity.ok(write.current()) : ResponseEntity.status(409).body(write.current());
     }
 
     @DeleteMapping("/{variableId}")
@@ -92,6 +86,7 @@ public class CellVariableValueController {
                                             @PathVariable Integer row,
                                             @PathVariable Integer col,
                                             @PathVariable String variableId,
+                                            @RequestParam(required = false) Long version,
                                             Authentication authentication) {
         Long userId = (Long) authentication.getPrincipal();
         MapRole role = mapService.getMembership(mapId, userId)
@@ -99,24 +94,12 @@ public class CellVariableValueController {
                 .orElse(null);
         if (role == null) return ResponseEntity.status(403).build();
 
-        MapVariable variable = mapVariableService.getById(variableId).orElse(null);
+        MapVariable variable = mapEdits.findVariable(mapId, variableId).orElse(null);
         if (variable == null) return ResponseEntity.notFound().build();
+        if (!MapEdits.canEditValue(role, variable)) return ResponseEntity.status(403).build();
 
-        String visibility = variable.getVisibility();
-        if ("DM_ONLY".equals(visibility) && role == MapRole.PLAYER) {
-            return ResponseEntity.status(403).build();
-        }
-        if ("PLAYER_READ".equals(visibility) && role == MapRole.PLAYER) {
-            return ResponseEntity.status(403).build();
-        }
-
-        GridCellData cell = gridCellDataService.getCell(mapId, row, col);
-        if (cell == null) return ResponseEntity.notFound().build();
-
-        boolean deleted = cellVariableValueService.delete(cell.getId(), variableId);
-        if (!deleted) return ResponseEntity.notFound().build();
-
-        mapCacheService.broadcastCellVariableUpdate(mapId, row, col, variableId, null, variable, userId);
-        return ResponseEntity.ok().build();
+        VersionedWrite<CellVariableValue> write = mapEdits.clearCellVariableValue(mapId, row, col, variable, version, userId);
+        if (write == null) return ResponseEntity.notFound().build();
+        return write.applied() ? ResponseEntity.ok().build() : ResponseEntity.status(409).build();
     }
 }
@@ -4,7 +4,8 @@ import org.dungeonmaps.model.DungeonMap;
 import org.dungeonmaps.model.MapMembership;
 import org.dungeonmaps.model.MapMembership.MapRole;
 import org.dungeonmaps.service.DungeonMapService;
-import org.dungeonmaps.websocket.MapCacheService;
+import org.dungeonmaps.websocket.ClusterMembership;
+import org.dungeonmaps.websocket.MapEdits;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
@@ -17,11 +18,13 @@ import java.util.Map;
 public class DungeonMapController {
 
     private final DungeonMapService service;
-    private final MapCacheService mapCacheService;
+    private final MapEdits mapEdits;
+    private final ClusterMembership cluster;
 
-    public DungeonMapController(DungeonMapService service, MapCacheService mapCacheService) {
+    public DungeonMapController(DungeonMapService service, MapEdits mapEdits, ClusterMembership cluster) {
         this.service = service;
-        this.mapCacheService = mapCacheService;
+        this.mapEdits = mapEdits;
+        this.cluster = cluster;
     }
 
     @GetMapping
@@ -86,12 +89,8 @@ public class DungeonMapController {
         if (field == null || value == null) return ResponseEntity.badRequest().build();
 
         try {
-            return service.patchField(id, field, value)
-                    .map(saved -> {
-                        mapCacheService.updateMapField(id, field, value);
-                        mapCacheService.broadcastMapUpdate(id, field, value, userId);
-                        return ResponseEntity.ok(saved);
-                    })
+            return mapEdits.patchMapField(id, field, value, userId)
+                    .map(ResponseEntity::ok)
                     .orElse(ResponseEntity.notFound().build());
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().build();
@@ -131,6 +130,15 @@ public class DungeonMapController {
         return ResponseEntity.ok(service.getMembers(id));
     }
 
+    @GetMapping("/{id}/node")
+    public ResponseEntity<Map<String, String>> getNode(@PathVariable Long id, Authentication authentication) {
+        Long userId = (Long) authentication.getPrincipal();
+        if (!service.hasRole(id, userId, MapRole.OWNER, MapRole.DM, MapRole.PLAYER)) {
+            return ResponseEntity.status(403).build();
+        }
+        return ResponseEntity.ok(cluster.isEnabled() ? Map.of("url", cluster.ownerOf(id)) : Map.of());
+    }
+
     @PostMapping("/{id}/members/{targetUserId}/promote")
     public ResponseEntity<Void> promote(@PathVariable Long id, @PathVariable Long targetUserId, Authentication authentication) {
         Long userId = (Long) authentication.getPrincipal();
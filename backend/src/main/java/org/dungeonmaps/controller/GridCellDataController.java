@@ -2,7 +2,9 @@ package org.dungeonmaps.controller;
 
 import org.dungeonmaps.model.GridCellData;
 import org.dungeonmaps.service.GridCellDataService;
+import org.dungeonmaps.service.VersionedWrite;
 import org.dungeonmaps.websocket.MapCacheService;
+import org.dungeonmaps.websocket.MapEdits;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
@@ -13,10 +15,13 @@ public class GridCellDataController {
 
     private final GridCellDataService service;
     private final MapCacheService mapCacheService;
+    private final MapEdits mapEdits;
 
-    public GridCellDataController(GridCellDataService service, MapCacheService mapCacheService) {
+    public GridCellDataController(GridCellDataService service, MapCacheService mapCacheService,
+                                  MapEdits mapEdits) {
         this.service = service;
         this.mapCacheService = mapCacheService;
+        this.mapEdits = mapEdits;
     }
 
     @GetMapping("/{mapId}/{row}/{col}")
@@ -38,10 +43,9 @@ public class GridCellDataController {
             Authentication authentication
     ) {
         Long userId = (Long) authentication.getPrincipal();
-        GridCellData saved = service.saveOrUpdate(mapId, row, col, cellData.getName());
-        mapCacheService.updateCell(saved);
-        mapCacheService.broadcastCellUpdate(saved, userId);
-        return ResponseEntity.ok(saved);
+        VersionedWrite<GridCellData> write =
+                mapEdits.saveCellName(mapId, row, col, cellData.getName(), cellData.getVersion(), userId);
+        return write.applied() ? ResponseEntity.ok(write.current()) : ResponseEntity.status(409).body(write.current());
     }
 
     @PostMapping("/{mapId}/{row}/{col}/ensure")
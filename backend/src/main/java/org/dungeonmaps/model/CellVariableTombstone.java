@@ -0,0 +1,32 @@
+package org.dungeonmaps.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Version and timestamp of a deleted cell variable value, kept until the value is set again so
+ * that the new row continues the deleted row's versions instead of starting over at zero.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "cell_variable_tombstones",
+        indexes = @Index(name = "idx_cell_variable_tombstones_hlc", columnList = "hlc"))
+@IdClass(CellVariableValueId.class)
+public class CellVariableTombstone {
+
+    @Id
+    @Column(name = "cell_id", nullable = false)
+    private Long cellId;
+
+    @Id
+    @Column(name = "variable_id", nullable = false)
+    private String variableId;
+
+    @Column(nullable = false)
+    private long version;
+
+    @Column(nullable = false)
+    private long hlc;
+}
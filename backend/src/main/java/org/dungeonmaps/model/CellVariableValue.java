@@ -4,10 +4,13 @@ import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.time.LocalDateTime;
+
 @Getter
 @Setter
 @Entity
-@Table(name = "cell_variable_values")
+@Table(name = "cell_variable_values",
+        indexes = @Index(name = "idx_cell_variable_values_updated_at", columnList = "updated_at"))
 @IdClass(CellVariableValueId.class)
 public class CellVariableValue {
 
@@ -21,4 +24,20 @@ public class CellVariableValue {
 
     @Column(nullable = false)
     private String value;
+
+    @Version
+    @Column(columnDefinition = "bigint not null default 0")
+    private Long version;
+
+    @Column(columnDefinition = "bigint not null default 0")
+    private long hlc;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
 }
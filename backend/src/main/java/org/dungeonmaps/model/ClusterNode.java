@@ -0,0 +1,25 @@
+package org.dungeonmaps.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * A live backend node and its last heartbeat. Written and read only by the cluster membership;
+ * mapped here so that the schema is managed with the rest of the tables.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "cluster_node")
+public class ClusterNode {
+
+    @Id
+    @Column(name = "node_url", columnDefinition = "text")
+    private String nodeUrl;
+
+    @Column(name = "heartbeat_at", nullable = false)
+    private LocalDateTime heartbeatAt;
+}
@@ -3,8 +3,13 @@ package org.dungeonmaps.model;
 import jakarta.persistence.*;
 import lombok.Data;
 
+import java.time.LocalDateTime;
+
 @Entity
-@Table(name = "grid_cells")
+@Table(name = "grid_cells",
+        uniqueConstraints = @UniqueConstraint(name = "uk_grid_cells_position",
+                columnNames = {"map_id", "row_index", "col_index"}),
+        indexes = @Index(name = "idx_grid_cells_map_updated_at", columnList = "map_id, updated_at"))
 @Data
 public class GridCellData {
     @Id
@@ -21,4 +26,19 @@ public class GridCellData {
     private Integer colIndex;
 
     private String name;
+
+    @Version
+    @Column(columnDefinition = "bigint not null default 0")
+    private Long version;
+
+    @Column(columnDefinition = "bigint not null default 0")
+    private long hlc;
+
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
 }
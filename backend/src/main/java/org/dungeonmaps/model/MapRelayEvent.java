@@ -0,0 +1,28 @@
+package org.dungeonmaps.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * A relayed map event too large for a NOTIFY payload. Written and read only by the Postgres
+ * map event relay; mapped here so that the schema is managed with the rest of the tables.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "map_relay_event")
+public class MapRelayEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, columnDefinition = "text")
+    private String payload;
+
+    @Column(name = "created_at", nullable = false, columnDefinition = "timestamp not null default now()")
+    private LocalDateTime createdAt;
+}
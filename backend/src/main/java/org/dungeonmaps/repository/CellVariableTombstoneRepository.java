@@ -0,0 +1,20 @@
+package org.dungeonmaps.repository;
+
+import org.dungeonmaps.model.CellVariableTombstone;
+import org.dungeonmaps.model.CellVariableValueId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface CellVariableTombstoneRepository extends JpaRepository<CellVariableTombstone, CellVariableValueId> {
+
+    @Query("SELECT t FROM CellVariableTombstone t WHERE t.hlc > :hlc AND t.cellId IN (SELECT c.id FROM GridCellData c WHERE c.mapId = :mapId)")
+    List<CellVariableTombstone> findByMapIdDeletedAfter(@Param("mapId") Long mapId, @Param("hlc") long hlc);
+
+    @Modifying
+    @Query("DELETE FROM CellVariableTombstone t WHERE t.variableId = :variableId")
+    void deleteByVariableId(@Param("variableId") String variableId);
+}
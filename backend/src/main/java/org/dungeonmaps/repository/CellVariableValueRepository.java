@@ -1,12 +1,16 @@
 package org.dungeonmaps.repository;
 
+import jakarta.persistence.QueryHint;
 import org.dungeonmaps.model.CellVariableValue;
 import org.dungeonmaps.model.CellVariableValueId;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface CellVariableValueRepository extends JpaRepository<CellVariableValue, CellVariableValueId> {
@@ -14,11 +18,27 @@ public interface CellVariableValueRepository extends JpaRepository<CellVariableV
 
     List<CellVariableValue> findByVariableId(String variableId);
 
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT v FROM CellVariableValue v WHERE v.cellId IN (SELECT c.id FROM GridCellData c WHERE c.mapId = :mapId)")
+    List<CellVariableValue> findByMapId(@Param("mapId") Long mapId);
+
+    @Query("SELECT v FROM CellVariableValue v WHERE v.updatedAt > :since AND v.cellId IN (SELECT c.id FROM GridCellData c WHERE c.mapId = :mapId)")
+    List<CellVariableValue> findByMapIdUpdatedAfter(@Param("mapId") Long mapId, @Param("since") LocalDateTime since);
+
     @Modifying
     @Query("DELETE FROM CellVariableValue c WHERE c.variableId = :variableId")
     void deleteByVariableId(@Param("variableId") String variableId);
 
+    /**
+     * Leaves tombstones for the deleted values, as single-value deletes do.
+     */
     @Modifying
-    @Query("DELETE FROM CellVariableValue c WHERE c.variableId = :variableId AND c.value = :picklistValueId")
-    void deleteByVariableIdAndValue(@Param("variableId") String variableId, @Param("picklistValueId") String picklistValueId);
+    @Query(nativeQuery = true, value = "WITH deleted AS (DELETE FROM cell_variable_values "
+            + "WHERE variable_id = :variableId AND value = :picklistValueId RETURNING cell_id, variable_id, version) "
+            + "INSERT INTO cell_variable_tombstones (cell_id, variable_id, version, hlc) "
+            + "SELECT cell_id, variable_id, version + 1, :hlc FROM deleted "
+            + "ON CONFLICT (cell_id, variable_id) DO UPDATE SET version = EXCLUDED.version, hlc = EXCLUDED.hlc")
+    void deleteByVariableIdAndValue(@Param("variableId") String variableId,
+                                    @Param("picklistValueId") String picklistValueId,
+                                    @Param("hlc") long hlc);
 }
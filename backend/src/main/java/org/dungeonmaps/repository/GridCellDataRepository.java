@@ -1,9 +1,13 @@
 package org.dungeonmaps.repository;
 
+import jakarta.persistence.QueryHint;
 import org.dungeonmaps.model.GridCellData;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -11,5 +15,8 @@ import java.util.Optional;
 public interface GridCellDataRepository extends JpaRepository<GridCellData, Long> {
     Optional<GridCellData> findByMapIdAndRowIndexAndColIndex(Long mapId, Integer rowIndex, Integer colIndex);
 
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
     List<GridCellData> findByMapId(Long mapId);
+
+    List<GridCellData> findByMapIdAndUpdatedAtAfter(Long mapId, LocalDateTime since);
 }
@@ -3,6 +3,7 @@ package org.dungeonmaps.repository;
 import org.dungeonmaps.model.MapVariable;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface MapVariableRepository extends JpaRepository<MapVariable, String> {
@@ -10,5 +11,7 @@ public interface MapVariableRepository extends JpaRepository<MapVariable, String
 
     int countByMapId(Long mapId);
 
+    List<MapVariable> findByMapIdAndUpdatedAtAfter(Long mapId, LocalDateTime since);
+
     void deleteByMapId(Long mapId);
 }
@@ -2,11 +2,23 @@ package org.dungeonmaps.repository;
 
 import org.dungeonmaps.model.PicklistValue;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 public interface PicklistValueRepository extends JpaRepository<PicklistValue, String> {
     List<PicklistValue> findByVariableIdOrderBySortOrder(String variableId);
 
+    List<PicklistValue> findByVariableIdInOrderBySortOrder(Collection<String> variableIds);
+
     void deleteByVariableId(String variableId);
+
+    @Query("SELECT p FROM PicklistValue p WHERE p.updatedAt > :since AND p.variableId IN (SELECT v.id FROM MapVariable v WHERE v.mapId = :mapId)")
+    List<PicklistValue> findByMapIdUpdatedAfter(@Param("mapId") Long mapId, @Param("since") LocalDateTime since);
+
+    @Query("SELECT COUNT(p) FROM PicklistValue p WHERE p.variableId IN (SELECT v.id FROM MapVariable v WHERE v.mapId = :mapId)")
+    long countByMapId(@Param("mapId") Long mapId);
 }
@@ -1,43 +1,166 @@
 package org.dungeonmaps.service;
 
+import org.dungeonmaps.model.CellVariableTombstone;
 import org.dungeonmaps.model.CellVariableValue;
 import org.dungeonmaps.model.CellVariableValueId;
+import org.dungeonmaps.repository.CellVariableTombstoneRepository;
 import org.dungeonmaps.repository.CellVariableValueRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
 @Service
 public class CellVariableValueService {
 
+    private static final String TOMBSTONE_DELETED_SQL = "INSERT INTO cell_variable_tombstones (cell_id, variable_id, version, hlc) "
+            + "SELECT cell_id, variable_id, version + 1, ? FROM deleted "
+            + "ON CONFLICT (cell_id, variable_id) DO UPDATE SET version = EXCLUDED.version, hlc = EXCLUDED.hlc "
+            + "RETURNING cell_id, version";
+    private static final String CREATE_SQL = "WITH t AS (DELETE FROM cell_variable_tombstones WHERE cell_id = ? AND variable_id = ? RETURNING version, hlc) "
+            + "INSERT INTO cell_variable_values (cell_id, variable_id, value, version, hlc, updated_at) "
+            + "SELECT ?, ?, ?, COALESCE((SELECT version + 1 FROM t), 0), GREATEST(?, (SELECT hlc + 1 FROM t)), ? "
+            + "ON CONFLICT (cell_id, variable_id) DO NOTHING RETURNING version, hlc";
+    private static final String DELETE_SQL = "WITH deleted AS (DELETE FROM cell_variable_values "
+            + "WHERE cell_id = ? AND variable_id = ? AND version = ? RETURNING cell_id, variable_id, version) "
+            + TOMBSTONE_DELETED_SQL;
+    private static final String UPSERT_ALL_SQL = "WITH t AS (DELETE FROM cell_variable_tombstones "
+            + "WHERE variable_id = ? AND cell_id = ANY(?::bigint[]) AND hlc < ? RETURNING cell_id, version) "
+            + "INSERT INTO cell_variable_values (cell_id, variable_id, value, version, hlc, updated_at) "
+            + "SELECT p.id, ?, ?, COALESCE(t.version + 1, 0), ?, ? FROM unnest(?::bigint[]) AS p(id) LEFT JOIN t ON t.cell_id = p.id "
+            + "WHERE NOT EXISTS (SELECT 1 FROM cell_variable_tombstones x WHERE x.cell_id = p.id AND x.variable_id = ? AND x.hlc >= ?) "
+            + "ON CONFLICT (cell_id, variable_id) DO UPDATE SET value = EXCLUDED.value, "
+            + "version = cell_variable_values.version + 1, hlc = EXCLUDED.hlc, updated_at = EXCLUDED.updated_at "
+            + "WHERE cell_variable_values.value IS DISTINCT FROM EXCLUDED.value AND cell_variable_values.hlc < EXCLUDED.hlc "
+            + "RETURNING cell_id, version";
+    private static final String DELETE_ALL_SQL = "WITH deleted AS (DELETE FROM cell_variable_values "
+            + "WHERE variable_id = ? AND cell_id = ANY(?::bigint[]) AND hlc < ? RETURNING cell_id, variable_id, version) "
+            + TOMBSTONE_DELETED_SQL;
+
     private final CellVariableValueRepository repository;
+    private final CellVariableTombstoneRepository tombstoneRepository;
+    private final JdbcTemplate jdbcTemplate;
 
-    public CellVariableValueService(CellVariableValueRepository repository) {
+    public CellVariableValueService(CellVariableValueRepository repository,
+                                    CellVariableTombstoneRepository tombstoneRepository,
+                                    JdbcTemplate jdbcTemplate) {
         this.repository = repository;
+        this.tombstoneRepository = tombstoneRepository;
+        this.jdbcTemplate = jdbcTemplate;
     }
 
     public List<CellVariableValue> getValuesForCell(Long cellId) {
         return repository.findByCellId(cellId);
     }
 
-    @Transactional
-    public CellVariableValue upsert(Long cellId, String variableId, String value) {
+    /**
+     * Upserts the value with the same rules as {@link GridCellDataService#compareAndSetName}. A
+     * deleted value is recreated one version past its tombstone, and the tombstone is checked
+     * like the row it replaced: a versioned write must expect the tombstone's version, and a
+     * blind write issued before the deletion loses to it.
+     */
+    public VersionedWrite<CellVariableValue> compareAndSet(Long cellId, String variableId, String value,
+                                                           Long expectedVersion, long issuedAt) {
         CellVariableValueId pk = new CellVariableValueId(cellId, variableId);
-        CellVariableValue cvv = repository.findById(pk).orElse(new CellVariableValue());
-        cvv.setCellId(cellId);
-        cvv.setVariableId(variableId);
-        cvv.setValue(value);
-        return repository.save(cvv);
+        for (int attempt = 1; ; attempt++) {
+            CellVariableValue cvv = repository.findById(pk).orElse(null);
+            if (cvv == null) {
+                VersionedWrite<CellVariableValue> created = create(pk, cellId, variableId, value, expectedVersion, issuedAt);
+                if (created != null) return created;
+                if (attempt == VersionedWrite.MAX_ATTEMPTS) {
+                    throw new ObjectOptimisticLockingFailureException(CellVariableValue.class, pk);
+                }
+                continue;
+            }
+            if (!VersionedWrite.accepts(cvv.getVersion(), cvv.getHlc(), expectedVersion, issuedAt)) {
+                return VersionedWrite.conflict(cvv);
+            }
+
+            cvv.setValue(value);
+            cvv.setHlc(VersionedWrite.stamp(cvv.getHlc(), issuedAt));
+            try {
+                return VersionedWrite.applied(repository.save(cvv));
+            } catch (ObjectOptimisticLockingFailureException e) {
+                if (attempt == VersionedWrite.MAX_ATTEMPTS) throw e;
+            }
+        }
+    }
+
+    /**
+     * Returns {@code null} if another write created the row first.
+     */
+    private VersionedWrite<CellVariableValue> create(CellVariableValueId pk, Long cellId, String variableId,
+                                                     String value, Long expectedVersion, long issuedAt) {
+        CellVariableTombstone tombstone = tombstoneRepository.findById(pk).orElse(null);
+        if (tombstone != null
+                && !VersionedWrite.accepts(tombstone.getVersion(), tombstone.getHlc(), expectedVersion, issuedAt)) {
+            return VersionedWrite.conflict(stored(cellId, variableId, null, tombstone.getVersion(), tombstone.getHlc()));
+        }
+        List<CellVariableValue> created = jdbcTemplate.query(CREATE_SQL,
+                (rs, rowNum) -> stored(cellId, variableId, value, rs.getLong("version"), rs.getLong("hlc")),
+                cellId, variableId, cellId, variableId, value, issuedAt, Timestamp.valueOf(LocalDateTime.now()));
+        return created.isEmpty() ? null : VersionedWrite.applied(created.get(0));
     }
 
-    @Transactional
-    public boolean delete(Long cellId, String variableId) {
+    /**
+     * Deletes the value under the same rules as {@link #compareAndSet} and leaves a tombstone one
+     * version past the deleted row, which an applied delete returns as a value of {@code null}.
+     * Returns {@code null} if there was no value.
+     */
+    public VersionedWrite<CellVariableValue> compareAndDelete(Long cellId, String variableId, Long expectedVersion,
+                                                              long issuedAt) {
         CellVariableValueId pk = new CellVariableValueId(cellId, variableId);
-        if (!repository.existsById(pk)) return false;
-        repository.deleteById(pk);
-        return true;
+        for (int attempt = 1; ; attempt++) {
+            CellVariableValue cvv = repository.findById(pk).orElse(null);
+            if (cvv == null) return null;
+            if (!VersionedWrite.accepts(cvv.getVersion(), cvv.getHlc(), expectedVersion, issuedAt)) {
+                return VersionedWrite.conflict(cvv);
+            }
+            long hlc = VersionedWrite.stamp(cvv.getHlc(), issuedAt);
+            List<CellVariableValue> tombstones = jdbcTemplate.query(DELETE_SQL,
+                    (rs, rowNum) -> stored(cellId, variableId, null, rs.getLong("version"), hlc),
+                    cellId, variableId, VersionedWrite.versionOf(cvv.getVersion()), hlc);
+            if (!tombstones.isEmpty()) return VersionedWrite.applied(tombstones.get(0));
+            if (attempt == VersionedWrite.MAX_ATTEMPTS) {
+                throw new ObjectOptimisticLockingFailureException(CellVariableValue.class, pk);
+            }
+        }
+    }
+
+    /**
+     * Upserts one value of a variable into many cells in one statement, as a blind write that
+     * only replaces values and deletions stored before {@code hlc}. Returns the rows that
+     * changed; cells that already held the value or a newer write are left out.
+     */
+    public List<CellVariableValue> setAll(String variableId, long[] cellIds, String value, long hlc) {
+        return jdbcTemplate.query(UPSERT_ALL_SQL, (rs, rowNum) -> stored(rs.getLong("cell_id"), variableId, value,
+                        rs.getLong("version"), hlc),
+                variableId, cellIds, hlc, variableId, value, hlc, Timestamp.valueOf(LocalDateTime.now()), cellIds,
+                variableId, hlc);
+    }
+
+    /**
+     * Deletes one variable's values from many cells in one statement, sparing newer writes.
+     * Returns tombstones as {@link #compareAndDelete} does.
+     */
+    public List<CellVariableValue> deleteAll(String variableId, long[] cellIds, long hlc) {
+        return jdbcTemplate.query(DELETE_ALL_SQL, (rs, rowNum) -> stored(rs.getLong("cell_id"), variableId, null,
+                        rs.getLong("version"), hlc),
+                variableId, cellIds, hlc, hlc);
+    }
+
+    private static CellVariableValue stored(long cellId, String variableId, String value, long version, long hlc) {
+        CellVariableValue cvv = new CellVariableValue();
+        cvv.setCellId(cellId);
+        cvv.setVariableId(variableId);
+        cvv.setValue(value);
+        cvv.setVersion(version);
+        cvv.setHlc(hlc);
+        return cvv;
     }
 
     public Optional<CellVariableValue> getOne(Long cellId, String variableId) {
@@ -2,24 +2,76 @@ package org.dungeonmaps.service;
 
 import org.dungeonmaps.model.GridCellData;
 import org.dungeonmaps.repository.GridCellDataRepository;
+import org.dungeonmaps.websocket.MapCache;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 @Service
 public class GridCellDataService {
+    private static final String FIND_CELLS_SQL = "SELECT g.id, g.map_id, g.row_index, g.col_index, g.name, g.version, g.hlc "
+            + "FROM grid_cells g JOIN unnest(?::int[], ?::int[]) AS p(r, c) ON g.row_index = p.r AND g.col_index = p.c "
+            + "WHERE g.map_id = ?";
+    private static final String INSERT_CELLS_SQL = "INSERT INTO grid_cells (map_id, row_index, col_index, version, hlc, updated_at) "
+            + "SELECT ?, p.r, p.c, 0, 0, ? FROM unnest(?::int[], ?::int[]) AS p(r, c) "
+            + "ON CONFLICT (map_id, row_index, col_index) DO NOTHING "
+            + "RETURNING id, map_id, row_index, col_index, name, version, hlc";
+    private static final RowMapper<GridCellData> CELL_MAPPER = (rs, rowNum) -> {
+        GridCellData cell = new GridCellData();
+        cell.setId(rs.getLong("id"));
+        cell.setMapId(rs.getLong("map_id"));
+        cell.setRowIndex(rs.getInt("row_index"));
+        cell.setColIndex(rs.getInt("col_index"));
+        cell.setName(rs.getString("name"));
+        cell.setVersion(rs.getLong("version"));
+        cell.setHlc(rs.getLong("hlc"));
+        return cell;
+    };
+
     @Autowired
     private GridCellDataRepository repository;
 
-    public GridCellData saveOrUpdate(Long mapId, Integer row, Integer col, String name) {
-        GridCellData cellData = repository.findByMapIdAndRowIndexAndColIndex(mapId, row, col)
-                .orElse(new GridCellData());
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
 
-        cellData.setMapId(mapId);
-        cellData.setRowIndex(row);
-        cellData.setColIndex(col);
-        cellData.setName(name);
+    /**
+     * Sets the cell name if {@code expectedVersion} matches, or for a {@code null} expected
+     * version if the edit was issued after the stored name. A write that loses a race, including
+     * one to create the cell, is retried against the new row.
+     */
+    public VersionedWrite<GridCellData> compareAndSetName(Long mapId, Integer row, Integer col, String name,
+                                                          Long expectedVersion, long issuedAt) {
+        for (int attempt = 1; ; attempt++) {
+            GridCellData cellData = repository.findByMapIdAndRowIndexAndColIndex(mapId, row, col)
+                    .orElse(new GridCellData());
+            if (cellData.getId() != null
+                    && !VersionedWrite.accepts(cellData.getVersion(), cellData.getHlc(), expectedVersion, issuedAt)) {
+                return VersionedWrite.conflict(cellData);
+            }
+            long hlc = VersionedWrite.stamp(cellData.getHlc(), issuedAt);
 
-        return repository.save(cellData);
+            cellData.setMapId(mapId);
+            cellData.setRowIndex(row);
+            cellData.setColIndex(col);
+            cellData.setName(name);
+            cellData.setHlc(hlc);
+            try {
+                return VersionedWrite.applied(repository.save(cellData));
+            } catch (ObjectOptimisticLockingFailureException | DataIntegrityViolationException e) {
+                if (attempt == VersionedWrite.MAX_ATTEMPTS) throw e;
+            }
+        }
     }
 
     public GridCellData ensureExists(Long mapId, Integer row, Integer col) {
@@ -29,10 +81,47 @@ public class GridCellDataService {
                     cellData.setMapId(mapId);
                     cellData.setRowIndex(row);
                     cellData.setColIndex(col);
-                    return repository.save(cellData);
+                    try {
+                        return repository.save(cellData);
+                    } catch (DataIntegrityViolationException e) {
+                        return repository.findByMapIdAndRowIndexAndColIndex(mapId, row, col).orElseThrow(() -> e);
+                    }
                 });
     }
 
+    /**
+     * Looks up the cells at the given positions in one query; positions without a cell are skipped.
+     */
+    public List<GridCellData> findCells(Long mapId, int[] rows, int[] cols) {
+        return jdbcTemplate.query(FIND_CELLS_SQL, CELL_MAPPER, rows, cols, mapId);
+    }
+
+    /**
+     * Returns the cells at the given positions, inserting the missing ones in one statement.
+     * Cells another writer inserts at the same time are skipped by the insert and read back.
+     */
+    public List<GridCellData> ensureCells(Long mapId, int[] rows, int[] cols) {
+        List<GridCellData> cells = new ArrayList<>(findCells(mapId, rows, cols));
+        Set<Long> existing = new HashSet<>();
+        for (GridCellData cell : cells) existing.add(MapCache.cellKey(cell.getRowIndex(), cell.getColIndex()));
+
+        int missing = 0;
+        int[] missingRows = new int[rows.length];
+        int[] missingCols = new int[cols.length];
+        for (int i = 0; i < rows.length; i++) {
+            if (existing.contains(MapCache.cellKey(rows[i], cols[i]))) continue;
+            missingRows[missing] = rows[i];
+            missingCols[missing++] = cols[i];
+        }
+        if (missing == 0) return cells;
+        int[] insertRows = Arrays.copyOf(missingRows, missing);
+        int[] insertCols = Arrays.copyOf(missingCols, missing);
+        List<GridCellData> inserted = jdbcTemplate.query(INSERT_CELLS_SQL, CELL_MAPPER, mapId,
+                Timestamp.valueOf(LocalDateTime.now()), insertRows, insertCols);
+        cells.addAll(inserted.size() < missing ? findCells(mapId, insertRows, insertCols) : inserted);
+        return cells;
+    }
+
     public GridCellData getCell(Long mapId, Integer row, Integer col) {
         return repository.findByMapIdAndRowIndexAndColIndex(mapId, row, col)
                 .orElse(null);
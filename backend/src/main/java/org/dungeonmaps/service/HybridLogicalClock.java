@@ -0,0 +1,52 @@
+package org.dungeonmaps.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Hybrid logical clock. A timestamp packs wall-clock milliseconds into the upper 48 bits and a
+ * logical counter into the lower 16, so timestamps compare as plain longs. Every timestamp this
+ * node issues is greater than any it issued or observed before, even if wall clocks drift.
+ */
+@Component
+public class HybridLogicalClock {
+
+    static final int LOGICAL_BITS = 16;
+
+    private final LongSupplier wallClock;
+    private final AtomicLong last = new AtomicLong();
+
+    public HybridLogicalClock() {
+        this(System::currentTimeMillis);
+    }
+
+    HybridLogicalClock(LongSupplier wallClock) {
+        this.wallClock = wallClock;
+    }
+
+    public long now() {
+        return observe(0L);
+    }
+
+    public long observe(long remote) {
+        long physical = wallClock.getAsLong() << LOGICAL_BITS;
+        while (true) {
+            long previous = last.get();
+            long next = Math.max(physical, Math.max(previous, remote) + 1);
+            if (last.compareAndSet(previous, next)) return next;
+        }
+    }
+
+    public static long physicalMillis(long timestamp) {
+        return timestamp >>> LOGICAL_BITS;
+    }
+
+    /**
+     * The smallest timestamp at wall-clock time {@code millis}.
+     */
+    public static long atMillis(long millis) {
+        return millis << LOGICAL_BITS;
+    }
+}
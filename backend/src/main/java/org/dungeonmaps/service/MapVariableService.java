@@ -2,6 +2,7 @@ package org.dungeonmaps.service;
 
 import org.dungeonmaps.model.MapVariable;
 import org.dungeonmaps.model.PicklistValue;
+import org.dungeonmaps.repository.CellVariableTombstoneRepository;
 import org.dungeonmaps.repository.CellVariableValueRepository;
 import org.dungeonmaps.repository.MapVariableRepository;
 import org.dungeonmaps.repository.PicklistValueRepository;
@@ -23,13 +24,19 @@ public class MapVariableService {
     private final MapVariableRepository variableRepository;
     private final PicklistValueRepository picklistValueRepository;
     private final CellVariableValueRepository cellVariableValueRepository;
+    private final CellVariableTombstoneRepository tombstoneRepository;
+    private final HybridLogicalClock clock;
 
     public MapVariableService(MapVariableRepository variableRepository,
                               PicklistValueRepository picklistValueRepository,
-                              CellVariableValueRepository cellVariableValueRepository) {
+                              CellVariableValueRepository cellVariableValueRepository,
+                              CellVariableTombstoneRepository tombstoneRepository,
+                              HybridLogicalClock clock) {
         this.variableRepository = variableRepository;
         this.picklistValueRepository = picklistValueRepository;
         this.cellVariableValueRepository = cellVariableValueRepository;
+        this.tombstoneRepository = tombstoneRepository;
+        this.clock = clock;
     }
 
     public List<MapVariable> getVariablesForMap(Long mapId) {
@@ -68,6 +75,7 @@ public class MapVariableService {
     public boolean deleteVariable(String id) {
         if (!variableRepository.existsById(id)) return false;
         cellVariableValueRepository.deleteByVariableId(id);
+        tombstoneRepository.deleteByVariableId(id);
         picklistValueRepository.deleteByVariableId(id);
         variableRepository.deleteById(id);
         return true;
@@ -104,7 +112,7 @@ public class MapVariableService {
     @Transactional
     public boolean deletePicklistValue(String picklistValueId) {
         return picklistValueRepository.findById(picklistValueId).map(pv -> {
-            cellVariableValueRepository.deleteByVariableIdAndValue(pv.getVariableId(), picklistValueId);
+            cellVariableValueRepository.deleteByVariableIdAndValue(pv.getVariableId(), picklistValueId, clock.now());
             picklistValueRepository.deleteById(picklistValueId);
             return true;
         }).orElse(false);
@@ -0,0 +1,41 @@
+package org.dungeonmaps.service;
+
+/**
+ * Outcome of a compare-and-set write. {@code current} is the stored row after the attempt: the
+ * written row if it was applied, otherwise the row that won.
+ */
+public record VersionedWrite<T>(T current, boolean applied) {
+
+    public static final int MAX_ATTEMPTS = 3;
+
+    public static <T> VersionedWrite<T> applied(T current) {
+        return new VersionedWrite<>(current, true);
+    }
+
+    public static <T> VersionedWrite<T> conflict(T current) {
+        return new VersionedWrite<>(current, false);
+    }
+
+    /**
+     * A write with an expected version applies only against that version. A blind write applies
+     * if it was issued after the stored row was, so concurrent blind writes resolve to the one
+     * issued last on every node. {@code issuedAt} must be taken when the edit arrived, before the
+     * stored row was read.
+     */
+    public static boolean accepts(Long currentVersion, long currentHlc, Long expectedVersion, long issuedAt) {
+        if (expectedVersion != null) return expectedVersion == versionOf(currentVersion);
+        return issuedAt > currentHlc;
+    }
+
+    /**
+     * Timestamp to store an applied write under: its issue time, or just past the stored row's
+     * for a versioned write issued before that row, so stored timestamps only move forward.
+     */
+    public static long stamp(long currentHlc, long issuedAt) {
+        return Math.max(issuedAt, currentHlc + 1);
+    }
+
+    public static long versionOf(Long version) {
+        return version != null ? version : 0L;
+    }
+}
@@ -0,0 +1,11 @@
+package org.dungeonmaps.websocket;
+
+import org.dungeonmaps.model.MapMembership.MapRole;
+
+public enum Audience {
+    DM, PLAYER;
+
+    public static Audience of(MapRole role) {
+        return role == MapRole.OWNER || role == MapRole.DM ? DM : PLAYER;
+    }
+}
@@ -0,0 +1,137 @@
+package org.dungeonmaps.websocket;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Coalesces bursts of encoded messages per destination into BATCH frames. The first message to
+ * a quiet destination is sent straight away and opens a window; anything published while the
+ * window is open is sent in order as one frame when it closes. A batch's CBOR form is built from
+ * the CBOR forms of its messages, so it is only encoded if a CBOR session receives it.
+ */
+final class BroadcastBatcher {
+
+    private static final byte[] BATCH_PREFIX = "{\"type\":\"BATCH\",\"messages\":[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] BATCH_SUFFIX = {']', '}'};
+
+    private static final class Window {
+        final List<WirePayload> payloads = new ArrayList<>();
+        long firstQueuedAt;
+        boolean opened;
+        boolean closed;
+    }
+
+    private final BiConsumer<String, WirePayload> sender;
+    private final long windowNanos;
+    private final ScheduledExecutorService scheduler;
+    private final ConcurrentHashMap<String, Window> windows = new ConcurrentHashMap<>();
+    private final DistributionSummary batchSize;
+    private final Timer addedLatency;
+
+    BroadcastBatcher(BiConsumer<String, WirePayload> sender, long windowMillis, MeterRegistry meterRegistry) {
+        this.sender = sender;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.scheduler = windowNanos > 0
+                ? Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("broadcast-batcher").daemon().factory())
+                : null;
+        this.batchSize = DistributionSummary.builder("map.broadcast.batch.size")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.addedLatency = Timer.builder("map.broadcast.batch.latency")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    void send(String destination, WirePayload payload) {
+        if (scheduler == null) {
+            sender.accept(destination, payload);
+            return;
+        }
+        while (true) {
+            Window window = windows.computeIfAbsent(destination, d -> new Window());
+            synchronized (window) {
+                if (window.closed) continue;
+                if (!window.opened) {
+                    window.opened = true;
+                    schedule(destination, window);
+                    sender.accept(destination, payload);
+                    batchSize.record(1);
+                    addedLatency.record(0, TimeUnit.NANOSECONDS);
+                    return;
+                }
+                if (window.payloads.isEmpty()) window.firstQueuedAt = System.nanoTime();
+                window.payloads.add(payload);
+                return;
+            }
+        }
+    }
+
+    private void schedule(String destination, Window window) {
+        scheduler.schedule(() -> tick(destination, window), windowNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void tick(String destination, Window window) {
+        synchronized (window) {
+            if (window.payloads.isEmpty()) {
+                window.closed = true;
+                windows.remove(destination, window);
+                return;
+            }
+            flush(destination, window);
+            schedule(destination, window);
+        }
+    }
+
+    private void flush(String destination, Window window) {
+        List<WirePayload> payloads = window.payloads;
+        addedLatency.record(System.nanoTime() - window.firstQueuedAt, TimeUnit.NANOSECONDS);
+        batchSize.record(payloads.size());
+        sender.accept(destination, payloads.size() == 1 ? payloads.get(0) : frame(payloads));
+        payloads.clear();
+        window.firstQueuedAt = 0;
+    }
+
+    static WirePayload frame(List<WirePayload> payloads) {
+        List<WirePayload> messages = List.copyOf(payloads);
+        int length = BATCH_PREFIX.length + BATCH_SUFFIX.length + messages.size() - 1;
+        for (WirePayload payload : messages) length += payload.json().length;
+        byte[] frame = new byte[length];
+        System.arraycopy(BATCH_PREFIX, 0, frame, 0, BATCH_PREFIX.length);
+        int offset = BATCH_PREFIX.length;
+        for (int i = 0; i < messages.size(); i++) {
+            if (i > 0) frame[offset++] = ',';
+            byte[] payload = messages.get(i).json();
+            System.arraycopy(payload, 0, frame, offset, payload.length);
+            offset += payload.length;
+        }
+        System.arraycopy(BATCH_SUFFIX, 0, frame, offset, BATCH_SUFFIX.length);
+        return new WirePayload(frame, () -> {
+            List<byte[]> encoded = new ArrayList<>(messages.size());
+            for (WirePayload message : messages) encoded.add(message.cbor());
+            return CborTranscoder.batch(encoded);
+        });
+    }
+
+    void shutdown() {
+        if (scheduler == null) return;
+        scheduler.shutdownNow();
+        for (var entry : windows.entrySet()) {
+            Window window = entry.getValue();
+            synchronized (window) {
+                if (!window.payloads.isEmpty()) flush(entry.getKey(), window);
+                window.closed = true;
+            }
+        }
+        windows.clear();
+    }
+}
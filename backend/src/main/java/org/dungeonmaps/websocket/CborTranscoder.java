@@ -0,0 +1,149 @@
+package org.dungeonmaps.websocket;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Streams an encoded JSON document into the equivalent CBOR (RFC 8949) without building a tree.
+ * Objects and arrays are written with indefinite lengths, integers in their shortest form and
+ * floating point values as single precision whenever that is lossless. Broadcasts are encoded
+ * straight to CBOR instead; this covers the per-client sync frames that are only built as JSON.
+ */
+final class CborTranscoder {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private static final int MAJOR_UNSIGNED = 0;
+    private static final int MAJOR_NEGATIVE = 1;
+    private static final int MAJOR_TEXT = 3;
+    private static final int INDEFINITE_ARRAY = 0x9f;
+    private static final int INDEFINITE_MAP = 0xbf;
+    private static final int BREAK = 0xff;
+    private static final int FALSE = 0xf4;
+    private static final int TRUE = 0xf5;
+    private static final int NULL = 0xf6;
+    private static final int FLOAT32 = 0xfa;
+    private static final int FLOAT64 = 0xfb;
+
+    private CborTranscoder() {
+    }
+
+    static byte[] fromJson(byte[] json) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length * 3 / 4);
+        try (JsonParser parser = JSON.createParser(json)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                switch (token) {
+                    case START_OBJECT -> out.write(INDEFINITE_MAP);
+                    case START_ARRAY -> out.write(INDEFINITE_ARRAY);
+                    case END_OBJECT, END_ARRAY -> out.write(BREAK);
+                    case FIELD_NAME -> writeText(out, parser.currentName());
+                    case VALUE_STRING -> writeText(out, parser.getText());
+                    case VALUE_NUMBER_INT -> {
+                        if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+                            writeDouble(out, parser.getDoubleValue());
+                        } else {
+                            writeLong(out, parser.getLongValue());
+                        }
+                    }
+                    case VALUE_NUMBER_FLOAT -> writeDouble(out, parser.getDoubleValue());
+                    case VALUE_TRUE -> out.write(TRUE);
+                    case VALUE_FALSE -> out.write(FALSE);
+                    case VALUE_NULL -> out.write(NULL);
+                    default -> throw new IOException("Unsupported JSON token " + token);
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * The CBOR counterpart of a BATCH frame of already encoded messages.
+     */
+    static byte[] batch(List<byte[]> messages) {
+        int length = 32;
+        for (byte[] message : messages) length += message.length;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length);
+        out.write(INDEFINITE_MAP);
+        writeText(out, "type");
+        writeText(out, "BATCH");
+        writeText(out, "messages");
+        out.write(INDEFINITE_ARRAY);
+        messages.forEach(out::writeBytes);
+        out.write(BREAK);
+        out.write(BREAK);
+        return out.toByteArray();
+    }
+
+    /**
+     * Splices a leading {@code seq} entry into an encoded indefinite-length map, as
+     * {@link OperationLog} does for JSON.
+     */
+    static byte[] withSeq(byte[] map, long seq) throws IOException {
+        if (map.length == 0 || (map[0] & 0xff) != INDEFINITE_MAP) {
+            throw new IOException("Not an indefinite-length CBOR map");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(map.length + 16);
+        out.write(INDEFINITE_MAP);
+        writeText(out, "seq");
+        writeLong(out, seq);
+        out.write(map, 1, map.length - 1);
+        return out.toByteArray();
+    }
+
+    private static void writeLong(ByteArrayOutputStream out, long value) {
+        if (value >= 0) {
+            writeHead(out, MAJOR_UNSIGNED, value);
+        } else {
+            writeHead(out, MAJOR_NEGATIVE, -1 - value);
+        }
+    }
+
+    private static void writeDouble(ByteArrayOutputStream out, double value) {
+        float single = (float) value;
+        if (single == value || Double.isNaN(value)) {
+            out.write(FLOAT32);
+            writeBytes(out, Float.floatToIntBits(single), 4);
+        } else {
+            out.write(FLOAT64);
+            writeBytes(out, Double.doubleToLongBits(value), 8);
+        }
+    }
+
+    private static void writeText(ByteArrayOutputStream out, String text) {
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        writeHead(out, MAJOR_TEXT, utf8.length);
+        out.writeBytes(utf8);
+    }
+
+    private static void writeHead(ByteArrayOutputStream out, int major, long argument) {
+        int type = major << 5;
+        if (argument < 24) {
+            out.write(type | (int) argument);
+        } else if (argument < 0x100) {
+            out.write(type | 24);
+            writeBytes(out, argument, 1);
+        } else if (argument < 0x10000) {
+            out.write(type | 25);
+            writeBytes(out, argument, 2);
+        } else if (argument < 0x100000000L) {
+            out.write(type | 26);
+            writeBytes(out, argument, 4);
+        } else {
+            out.write(type | 27);
+            writeBytes(out, argument, 8);
+        }
+    }
+
+    private static void writeBytes(ByteArrayOutputStream out, long value, int count) {
+        for (int shift = (count - 1) * 8; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift));
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package org.dungeonmaps.websocket;
+
+import org.dungeonmaps.model.CellVariableValue;
+import org.dungeonmaps.model.DungeonMap;
+import org.dungeonmaps.model.GridCellData;
+
+import java.util.*;
+
+/**
+ * The cells a bulk edit applies to: a rectangle, an explicit list, or a flood fill from a seed
+ * cell. A fill spreads to neighbouring cells holding the same value of the edited variable as
+ * the seed, within {@code bounds} or, without bounds, the bounding box of the map's cells.
+ */
+public record CellRegion(Rect rect, List<Cell> cells, Cell fill, Rect bounds) {
+
+    public record Cell(int row, int col) {
+    }
+
+    public record Rect(int fromRow, int fromCol, int toRow, int toCol) {
+
+        long area() {
+            return ((long) Math.max(fromRow, toRow) - Math.min(fromRow, toRow) + 1)
+                    * ((long) Math.max(fromCol, toCol) - Math.min(fromCol, toCol) + 1);
+        }
+
+        boolean contains(int row, int col) {
+            return row >= Math.min(fromRow, toRow) && row <= Math.max(fromRow, toRow)
+                    && col >= Math.min(fromCol, toCol) && col <= Math.max(fromCol, toCol);
+        }
+    }
+
+    private static final int[][] SQUARE_NEIGHBOURS = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}};
+    private static final int[][] FLAT_EVEN_COL = {{-1, 0}, {1, 0}, {-1, -1}, {0, -1}, {-1, 1}, {0, 1}};
+    private static final int[][] FLAT_ODD_COL = {{-1, 0}, {1, 0}, {0, -1}, {1, -1}, {0, 1}, {1, 1}};
+    private static final int[][] POINTY_EVEN_ROW = {{0, -1}, {0, 1}, {-1, -1}, {-1, 0}, {1, -1}, {1, 0}};
+    private static final int[][] POINTY_ODD_ROW = {{0, -1}, {0, 1}, {-1, 0}, {-1, 1}, {1, 0}, {1, 1}};
+
+    /**
+     * Returns the distinct cells of the region. Throws {@link IllegalArgumentException} unless
+     * exactly one shape is given, or if the region covers more than {@code maxCells} cells.
+     */
+    public List<Cell> resolve(MapCache cache, String variableId, int maxCells) {
+        int shapes = (rect != null ? 1 : 0) + (cells != null ? 1 : 0) + (fill != null ? 1 : 0);
+        if (shapes != 1) throw new IllegalArgumentException("Region needs exactly one of rect, cells or fill");
+
+        if (rect != null) {
+            if (rect.area() > maxCells) throw tooLarge(maxCells);
+            List<Cell> result = new ArrayList<>((int) rect.area());
+            for (long row = Math.min(rect.fromRow, rect.toRow); row <= Math.max(rect.fromRow, rect.toRow); row++) {
+                for (long col = Math.min(rect.fromCol, rect.toCol); col <= Math.max(rect.fromCol, rect.toCol); col++) {
+                    result.add(new Cell((int) row, (int) col));
+                }
+            }
+            return result;
+        }
+        if (cells != null) {
+            List<Cell> result = new ArrayList<>(new LinkedHashSet<>(cells));
+            if (result.size() > maxCells) throw tooLarge(maxCells);
+            return result;
+        }
+        return floodFill(cache, variableId, maxCells);
+    }
+
+    private List<Cell> floodFill(MapCache cache, String variableId, int maxCells) {
+        Rect limit = bounds != null ? bounds : cellBounds(cache);
+        if (!limit.contains(fill.row, fill.col)) throw new IllegalArgumentException("Fill seed is outside the bounds");
+        String target = valueAt(cache, fill.row, fill.col, variableId);
+        DungeonMap map = cache.getMapData();
+        boolean hex = "hex".equals(map.getGridType());
+        boolean pointy = "pointy".equals(map.getHexOrientation());
+
+        Set<Cell> visited = new HashSet<>();
+        List<Cell> result = new ArrayList<>();
+        ArrayDeque<Cell> queue = new ArrayDeque<>();
+        visited.add(fill);
+        queue.add(fill);
+        while (!queue.isEmpty()) {
+            Cell cell = queue.poll();
+            result.add(cell);
+            if (result.size() > maxCells) throw tooLarge(maxCells);
+            for (int[] offset : neighbours(cell, hex, pointy)) {
+                long row = (long) cell.row + offset[0];
+                long col = (long) cell.col + offset[1];
+                if (row != (int) row || col != (int) col) continue;
+                Cell next = new Cell((int) row, (int) col);
+                if (!limit.contains(next.row, next.col) || !visited.add(next)) continue;
+                if (Objects.equals(target, valueAt(cache, next.row, next.col, variableId))) queue.add(next);
+            }
+        }
+        return result;
+    }
+
+    private static int[][] neighbours(Cell cell, boolean hex, boolean pointy) {
+        if (!hex) return SQUARE_NEIGHBOURS;
+        if (pointy) return (cell.row & 1) == 0 ? POINTY_EVEN_ROW : POINTY_ODD_ROW;
+        return (cell.col & 1) == 0 ? FLAT_EVEN_COL : FLAT_ODD_COL;
+    }
+
+    private Rect cellBounds(MapCache cache) {
+        int minRow = fill.row, maxRow = fill.row, minCol = fill.col, maxCol = fill.col;
+        for (GridCellData cell : cache.getCells()) {
+            minRow = Math.min(minRow, cell.getRowIndex());
+            maxRow = Math.max(maxRow, cell.getRowIndex());
+            minCol = Math.min(minCol, cell.getColIndex());
+            maxCol = Math.max(maxCol, cell.getColIndex());
+        }
+        return new Rect(minRow, minCol, maxRow, maxCol);
+    }
+
+    private static String valueAt(MapCache cache, int row, int col, String variableId) {
+        GridCellData cell = cache.getCell(row, col);
+        if (cell == null) return null;
+        for (CellVariableValue value : cache.getCellVariableValuesForCell(cell.getId())) {
+            if (value.getVariableId().equals(variableId)) return value.getValue();
+        }
+        return null;
+    }
+
+    private static IllegalArgumentException tooLarge(int maxCells) {
+        return new IllegalArgumentException("Region covers more than " + maxCells + " cells");
+    }
+}
@@ -0,0 +1,49 @@
+package org.dungeonmaps.websocket;
+
+import org.dungeonmaps.model.CellVariableValue;
+import org.dungeonmaps.model.GridCellData;
+
+import java.util.List;
+
+/**
+ * Cells and cell variable values are ordered by version, then by hybrid logical timestamp. Puts
+ * and removals that are older than what is stored are ignored, so they can arrive in any order.
+ * A removal leaves a tombstone that later puts and removals are ordered against until it is pruned.
+ */
+interface CellStore {
+
+    static boolean supersedes(long version, long hlc, long currentVersion, long currentHlc) {
+        return version != currentVersion ? version > currentVersion : hlc >= currentHlc;
+    }
+
+    boolean putCell(GridCellData cell);
+
+    boolean replaceCell(GridCellData cell, long expectedVersion);
+
+    GridCellData getCell(long positionKey);
+
+    GridCellData getCellById(long cellId);
+
+    List<GridCellData> getCells();
+
+    int size();
+
+    void setValues(long cellId, List<CellVariableValue> values);
+
+    List<CellVariableValue> getValues(long cellId);
+
+    boolean putValue(long cellId, CellVariableValue value);
+
+    boolean removeValue(long cellId, String variableId, long version, long hlc);
+
+    void removeValuesForVariable(String variableId);
+
+    /**
+     * Drops tombstones older than {@code hlc} and returns how many were dropped.
+     */
+    int pruneTombstones(long hlc);
+
+    int valueCount();
+
+    long footprintBytes();
+}
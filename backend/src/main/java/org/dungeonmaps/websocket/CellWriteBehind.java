@@ -0,0 +1,255 @@
+package org.dungeonmaps.websocket;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.dungeonmaps.model.GridCellData;
+import org.dungeonmaps.service.VersionedWrite;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Optional write-behind for cell name edits. Edits are appended to a local journal and fsynced
+ * before they are acknowledged, coalesced per grid position, and flushed to Postgres in JDBC
+ * batches. A journal left behind by a crash is replayed on startup. Every journal line ends with
+ * a CRC32 of its fields and a newline, and replay stops at the first line that is unterminated
+ * or fails its checksum, which is where a crash tore the last write. An edit carries the version
+ * it was given in the cache and is only written over an older row; an edit without a version
+ * is written unconditionally.
+ */
+@Component
+public class CellWriteBehind {
+
+    private static final Logger log = LoggerFactory.getLogger(CellWriteBehind.class);
+    private static final String UPDATE_SQL = "UPDATE grid_cells "
+            + "SET name = ?, version = GREATEST(version + 1, ?), hlc = GREATEST(hlc, ?), updated_at = ? "
+            + "WHERE id = ? AND version < ?";
+
+    record CellPosition(Long mapId, int row, int col) {
+    }
+
+    record PendingEdit(long cellId, CellPosition position, String name, long version, long hlc) {
+
+        PendingEdit newer(PendingEdit other) {
+            return other.version >= version ? other : this;
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final Path journalPath;
+    private final int batchSize;
+    private final ConcurrentHashMap<CellPosition, PendingEdit> pending = new ConcurrentHashMap<>();
+    private final Object journalLock = new Object();
+    private final Object flushLock = new Object();
+    private FileChannel journal;
+
+    public CellWriteBehind(JdbcTemplate jdbcTemplate,
+                           @Value("${app.cell-write-behind.enabled:false}") boolean enabled,
+                           @Value("${app.cell-write-behind.journal-path:data/cell-write-behind.journal}") String journalPath,
+                           @Value("${app.cell-write-behind.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.journalPath = Path.of(journalPath);
+        this.batchSize = batchSize;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (Files.exists(journalPath)) replayJournal();
+        if (!enabled) return;
+        Path parent = journalPath.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        journal = FileChannel.open(journalPath,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isPending(Long mapId, int row, int col) {
+        return pending.containsKey(new CellPosition(mapId, row, col));
+    }
+
+    public void submit(GridCellData cell) {
+        CellPosition position = new CellPosition(cell.getMapId(), cell.getRowIndex(), cell.getColIndex());
+        PendingEdit edit = new PendingEdit(cell.getId(), position, cell.getName(),
+                VersionedWrite.versionOf(cell.getVersion()), cell.getHlc());
+        synchronized (journalLock) {
+            write(List.of(edit));
+            pending.merge(position, edit, PendingEdit::newer);
+        }
+    }
+
+    /**
+     * Writes the pending edit at a position now, so that a write bypassing the cache finds it in
+     * the database. If the write fails the edit stays pending and the exception is rethrown.
+     */
+    public void flush(Long mapId, int row, int col) {
+        CellPosition position = new CellPosition(mapId, row, col);
+        synchronized (flushLock) {
+            PendingEdit edit = pending.remove(position);
+            if (edit == null) return;
+            try {
+                update(List.of(edit));
+            } catch (RuntimeException e) {
+                pending.merge(position, edit, PendingEdit::newer);
+                throw e;
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.cell-write-behind.flush-interval-ms:250}")
+    public void flush() {
+        if (!enabled || pending.isEmpty()) return;
+
+        synchronized (flushLock) {
+            List<PendingEdit> drained = new ArrayList<>();
+            for (PendingEdit edit : pending.values()) {
+                if (pending.remove(edit.position(), edit)) drained.add(edit);
+            }
+            try {
+                update(drained);
+            } catch (RuntimeException e) {
+                log.error("Failed to flush {} cell edits, will retry", drained.size(), e);
+                drained.forEach(edit -> pending.merge(edit.position(), edit, PendingEdit::newer));
+                return;
+            }
+        }
+        compactJournal();
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        if (!enabled) return;
+        flush();
+        synchronized (journalLock) {
+            journal.close();
+        }
+    }
+
+    private void update(List<PendingEdit> edits) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (int from = 0; from < edits.size(); from += batchSize) {
+            List<PendingEdit> batch = edits.subList(from, Math.min(from + batchSize, edits.size()));
+            jdbcTemplate.batchUpdate(UPDATE_SQL, batch, batch.size(), (ps, edit) -> {
+                ps.setString(1, edit.name());
+                ps.setLong(2, edit.version());
+                ps.setLong(3, edit.hlc());
+                ps.setTimestamp(4, now);
+                ps.setLong(5, edit.cellId());
+                ps.setLong(6, edit.version() != 0L ? edit.version() : Long.MAX_VALUE);
+            });
+        }
+    }
+
+    private void compactJournal() {
+        synchronized (journalLock) {
+            try {
+                journal.truncate(0);
+                write(pending.values());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void write(Collection<PendingEdit> edits) {
+        if (edits.isEmpty()) return;
+        StringBuilder lines = new StringBuilder();
+        for (PendingEdit edit : edits) {
+            String fields = edit.cellId() + " "
+                    + edit.position().mapId() + " "
+                    + edit.position().row() + " "
+                    + edit.position().col() + " "
+                    + encode(edit.name()) + " "
+                    + edit.version() + " "
+                    + edit.hlc();
+            lines.append(fields).append(' ').append(checksum(fields)).append('\n');
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) journal.write(buffer);
+            journal.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to journal cell edit", e);
+        }
+    }
+
+    private void replayJournal() throws IOException {
+        Map<CellPosition, PendingEdit> latest = new LinkedHashMap<>();
+        byte[] bytes = Files.readAllBytes(journalPath);
+        int start = 0;
+        while (start < bytes.length) {
+            int end = start;
+            while (end < bytes.length && bytes[end] != '\n') end++;
+            if (end == bytes.length) {
+                log.warn("Dropping unterminated cell journal tail of {} bytes", end - start);
+                break;
+            }
+            String line = new String(bytes, start, end - start, StandardCharsets.UTF_8);
+            PendingEdit edit = parse(line);
+            if (edit == null) {
+                log.warn("Dropping cell journal from invalid entry at byte {}: {}", start, line);
+                break;
+            }
+            latest.merge(edit.position(), edit, PendingEdit::newer);
+            start = end + 1;
+        }
+        if (!latest.isEmpty()) {
+            log.info("Replaying {} cell edits from {}", latest.size(), journalPath);
+            update(new ArrayList<>(latest.values()));
+        }
+        Files.delete(journalPath);
+    }
+
+    /**
+     * Returns {@code null} for a line that is malformed or fails its checksum.
+     */
+    private static PendingEdit parse(String line) {
+        String[] parts = line.split(" ");
+        if (parts.length != 8 || !checksum(line.substring(0, line.lastIndexOf(' '))).equals(parts[7])) return null;
+        try {
+            CellPosition position = new CellPosition(Long.valueOf(parts[1]),
+                    Integer.parseInt(parts[2]), Integer.parseInt(parts[3]));
+            return new PendingEdit(Long.parseLong(parts[0]), position, decode(parts[4]),
+                    Long.parseLong(parts[5]), Long.parseLong(parts[6]));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private static String checksum(String fields) {
+        CRC32 crc = new CRC32();
+        crc.update(fields.getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+
+    private static String encode(String name) {
+        if (name == null) return "-";
+        return "=" + Base64.getEncoder().encodeToString(name.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decode(String encoded) {
+        if (encoded.equals("-")) return null;
+        return new String(Base64.getDecoder().decode(encoded.substring(1)), StandardCharsets.UTF_8);
+    }
+}
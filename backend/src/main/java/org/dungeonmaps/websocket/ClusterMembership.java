@@ -0,0 +1,129 @@
+package org.dungeonmaps.websocket;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Tracks the live backend nodes through heartbeats in the shared {@code cluster_node} table and
+ * assigns each map to an owner and a standby on a consistent hash ring. A node is identified by
+ * the WebSocket URL clients should connect to. With clustering disabled this node owns every map.
+ * Listeners are run on the heartbeat thread after the ring changes. The table is created by
+ * Hibernate with the other entities, so the first heartbeat waits for the entity manager factory.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+public class ClusterMembership {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterMembership.class);
+
+    private final JdbcTemplate jdbc;
+    private final boolean enabled;
+    private final String nodeUrl;
+    private final long nodeTtlMillis;
+    private final int virtualNodes;
+    private volatile Set<String> nodes;
+    private volatile HashRing ring;
+    private final List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
+
+    public ClusterMembership(JdbcTemplate jdbc,
+                             @Value("${app.cluster.enabled:false}") boolean enabled,
+                             @Value("${app.cluster.node-url:}") String nodeUrl,
+                             @Value("${app.cluster.node-ttl-ms:15000}") long nodeTtlMillis,
+                             @Value("${app.cluster.virtual-nodes:64}") int virtualNodes) {
+        if (enabled && !StringUtils.hasText(nodeUrl)) {
+            throw new IllegalStateException("app.cluster.node-url is required when clustering is enabled");
+        }
+        this.jdbc = jdbc;
+        this.enabled = enabled;
+        this.nodeUrl = nodeUrl;
+        this.nodeTtlMillis = nodeTtlMillis;
+        this.virtualNodes = virtualNodes;
+        this.nodes = Set.of(nodeUrl);
+        this.ring = new HashRing(nodes, virtualNodes);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) return;
+        heartbeat();
+    }
+
+    @Scheduled(fixedDelayString = "${app.cluster.heartbeat-interval-ms:5000}")
+    public void heartbeat() {
+        if (!enabled) return;
+        try {
+            jdbc.update("INSERT INTO cluster_node (node_url, heartbeat_at) VALUES (?, now()) "
+                    + "ON CONFLICT (node_url) DO UPDATE SET heartbeat_at = now()", nodeUrl);
+            List<String> live = jdbc.queryForList("SELECT node_url FROM cluster_node "
+                    + "WHERE heartbeat_at > now() - ? * interval '1 millisecond'", String.class, nodeTtlMillis);
+            updateNodes(live);
+        } catch (DataAccessException e) {
+            log.warn("Cluster heartbeat failed, keeping membership of {} nodes", nodes.size(), e);
+        }
+    }
+
+    void updateNodes(List<String> live) {
+        Set<String> current = new TreeSet<>(live);
+        current.add(nodeUrl);
+        if (current.equals(nodes)) return;
+        log.info("Cluster membership changed to {}", current);
+        ring = new HashRing(current, virtualNodes);
+        nodes = current;
+        for (Runnable listener : changeListeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                log.error("Cluster membership listener failed", e);
+            }
+        }
+    }
+
+    public void onChange(Runnable listener) {
+        changeListeners.add(listener);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String ownerOf(Long mapId) {
+        return ring.nodesFor(mapId, 1).get(0);
+    }
+
+    public boolean isOwner(Long mapId) {
+        return nodeUrl.equals(ownerOf(mapId));
+    }
+
+    public boolean isStandby(Long mapId) {
+        List<String> assigned = ring.nodesFor(mapId, 2);
+        return assigned.size() == 2 && nodeUrl.equals(assigned.get(1));
+    }
+
+    public boolean isAssigned(Long mapId) {
+        return ring.nodesFor(mapId, 2).contains(nodeUrl);
+    }
+
+    @PreDestroy
+    public void leave() {
+        if (!enabled) return;
+        try {
+            jdbc.update("DELETE FROM cluster_node WHERE node_url = ?", nodeUrl);
+        } catch (DataAccessException e) {
+            log.warn("Failed to leave cluster", e);
+        }
+    }
+}
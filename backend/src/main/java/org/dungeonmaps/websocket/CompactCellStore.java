@@ -0,0 +1,456 @@
+package org.dungeonmaps.websocket;
+
+import org.dungeonmaps.model.CellVariableValue;
+import org.dungeonmaps.model.GridCellData;
+import org.dungeonmaps.service.VersionedWrite;
+
+import java.util.*;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Struct-of-arrays cell storage: cells live in fixed-size chunks of primitive columns, and
+ * cell variable values are dictionary-encoded into one int column per variable. Dictionary
+ * entries are reference counted, and an entry no cell uses any more is freed and its code reused.
+ * Entities are materialized on read. Versions are stored plus one so that zero stands for an
+ * unset version.
+ */
+final class CompactCellStore implements CellStore {
+
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int[] NO_VALUES = new int[0];
+    private static final long[] NO_STAMPS = new long[0];
+
+    private final Long mapId;
+    private final StampedLock lock = new StampedLock();
+    private final LongIntHashMap slotsByPosition;
+    private final LongIntHashMap slotsById;
+
+    private long[][] ids = new long[0][];
+    private int[][] rows = new int[0][];
+    private int[][] cols = new int[0][];
+    private String[][] names = new String[0][];
+    private long[][] versions = new long[0][];
+    private long[][] hlcs = new long[0][];
+    private int[][][] values = new int[0][][];
+    private long[][][] valueVersions = new long[0][][];
+    private long[][][] valueHlcs = new long[0][][];
+    private int size;
+
+    private final Map<String, Integer> variableSlots = new HashMap<>();
+    private final List<String> slotVariableIds = new ArrayList<>();
+    private final Map<String, Integer> valueCodes = new HashMap<>();
+    private final List<String> valueDictionary = new ArrayList<>(Collections.singletonList(null));
+    private int[] codeReferences = new int[16];
+    private int[] freeCodes = new int[0];
+    private int freeCodeCount;
+    private final ValueTombstones tombstones = new ValueTombstones();
+
+    CompactCellStore(Long mapId, int expectedCells) {
+        this.mapId = mapId;
+        this.slotsByPosition = new LongIntHashMap(expectedCells);
+        this.slotsById = new LongIntHashMap(expectedCells);
+    }
+
+    @Override
+    public boolean putCell(GridCellData cell) {
+        long key = MapCache.cellKey(cell.getRowIndex(), cell.getColIndex());
+        long stamp = lock.writeLock();
+        try {
+            int slot = slotsByPosition.get(key);
+            if (slot < 0) {
+                slot = allocateSlot();
+                slotsByPosition.put(key, slot);
+                rows[slot >>> CHUNK_BITS][slot & CHUNK_MASK] = cell.getRowIndex();
+                cols[slot >>> CHUNK_BITS][slot & CHUNK_MASK] = cell.getColIndex();
+            } else if (!CellStore.supersedes(VersionedWrite.versionOf(cell.getVersion()), cell.getHlc(),
+                    storedVersion(versions, slot), hlcs[slot >>> CHUNK_BITS][slot & CHUNK_MASK])) {
+                return false;
+            }
+            store(slot, cell);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean replaceCell(GridCellData cell, long expectedVersion) {
+        long key = MapCache.cellKey(cell.getRowIndex(), cell.getColIndex());
+        long stamp = lock.writeLock();
+        try {
+            int slot = slotsByPosition.get(key);
+            if (slot < 0 || storedVersion(versions, slot) != expectedVersion) return false;
+            store(slot, cell);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void store(int slot, GridCellData cell) {
+        int chunk = slot >>> CHUNK_BITS;
+        int offset = slot & CHUNK_MASK;
+        long id = cell.getId() != null ? cell.getId() : 0L;
+        ids[chunk][offset] = id;
+        names[chunk][offset] = cell.getName();
+        versions[chunk][offset] = cell.getVersion() != null ? cell.getVersion() + 1 : 0L;
+        hlcs[chunk][offset] = cell.getHlc();
+        if (id != 0L) slotsById.put(id, slot);
+    }
+
+    @Override
+    public GridCellData getCell(long positionKey) {
+        long stamp = lock.readLock();
+        try {
+            int slot = slotsByPosition.get(positionKey);
+            return slot < 0 ? null : materializeCell(slot);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public GridCellData getCellById(long cellId) {
+        long stamp = lock.readLock();
+        try {
+            int slot = slotsById.get(cellId);
+            return slot < 0 ? null : materializeCell(slot);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public List<GridCellData> getCells() {
+        long stamp = lock.readLock();
+        try {
+            List<GridCellData> cells = new ArrayList<>(size);
+            for (int slot = 0; slot < size; slot++) {
+                cells.add(materializeCell(slot));
+            }
+            return cells;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void setValues(long cellId, List<CellVariableValue> cellValues) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = slotsById.get(cellId);
+            if (slot < 0) return;
+            int[][] chunk = values[slot >>> CHUNK_BITS];
+            for (int variable = 0; variable < chunk.length; variable++) {
+                if (chunk[variable] != NO_VALUES) setValue(slot, variable, 0, null, 0L);
+            }
+            for (CellVariableValue cvv : cellValues) {
+                setValue(slot, variableSlot(cvv.getVariableId()), encode(cvv.getValue()), cvv.getVersion(), cvv.getHlc());
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public List<CellVariableValue> getValues(long cellId) {
+        long stamp = lock.readLock();
+        try {
+            int slot = slotsById.get(cellId);
+            if (slot < 0) return List.of();
+            List<CellVariableValue> result = null;
+            int chunkIndex = slot >>> CHUNK_BITS;
+            int offset = slot & CHUNK_MASK;
+            int[][] chunk = values[chunkIndex];
+            for (int variable = 0; variable < chunk.length; variable++) {
+                int[] column = chunk[variable];
+                if (column == NO_VALUES) continue;
+                int code = column[offset];
+                if (code == 0) continue;
+                if (result == null) result = new ArrayList<>();
+                CellVariableValue cvv = new CellVariableValue();
+                cvv.setCellId(cellId);
+                cvv.setVariableId(slotVariableIds.get(variable));
+                cvv.setValue(valueDictionary.get(code));
+                long version = valueVersions[chunkIndex][variable][offset];
+                cvv.setVersion(version != 0L ? version - 1 : null);
+                cvv.setHlc(valueHlcs[chunkIndex][variable][offset]);
+                result.add(cvv);
+            }
+            return result != null ? result : List.of();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public boolean putValue(long cellId, CellVariableValue cvv) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = slotsById.get(cellId);
+            if (slot < 0) return false;
+            int variable = variableSlot(cvv.getVariableId());
+            if (!supersedesValue(cellId, slot, variable, VersionedWrite.versionOf(cvv.getVersion()), cvv.getHlc())) {
+                return false;
+            }
+            setValue(slot, variable, encode(cvv.getValue()), cvv.getVersion(), cvv.getHlc());
+            tombstones.remove(cellId, cvv.getVariableId());
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean removeValue(long cellId, String variableId, long version, long hlc) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = slotsById.get(cellId);
+            Integer variable = variableSlots.get(variableId);
+            boolean live = slot >= 0 && variable != null && code(slot, variable) != 0;
+            boolean newer = live
+                    ? supersedesValue(cellId, slot, variable, version, hlc)
+                    : tombstones.supersededBy(cellId, variableId, version, hlc);
+            if (!newer) return false;
+            if (live) setValue(slot, variable, 0, null, 0L);
+            tombstones.put(cellId, variableId, version, hlc);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void removeValuesForVariable(String variableId) {
+        long stamp = lock.writeLock();
+        try {
+            tombstones.removeVariable(variableId);
+            Integer variable = variableSlots.get(variableId);
+            if (variable == null) return;
+            for (int chunk = 0; chunk < values.length; chunk++) {
+                if (variable < values[chunk].length && values[chunk][variable] != NO_VALUES) {
+                    for (int code : values[chunk][variable]) {
+                        if (code != 0) release(code);
+                    }
+                    Arrays.fill(values[chunk][variable], 0);
+                    Arrays.fill(valueVersions[chunk][variable], 0L);
+                    Arrays.fill(valueHlcs[chunk][variable], 0L);
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int pruneTombstones(long hlc) {
+        return tombstones.prune(hlc);
+    }
+
+    @Override
+    public int valueCount() {
+        long stamp = lock.readLock();
+        try {
+            int count = 0;
+            for (int[][] chunk : values) {
+                for (int[] column : chunk) {
+                    for (int code : column) {
+                        if (code != 0) count++;
+                    }
+                }
+            }
+            return count;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public long footprintBytes() {
+        HeapFootprint footprint = new HeapFootprint();
+        long stamp = lock.readLock();
+        try {
+            footprint.object(this, 21 * HeapFootprint.REFERENCE + 8);
+            for (LongIntHashMap index : List.of(slotsByPosition, slotsById)) {
+                footprint.object(index, 2 * HeapFootprint.REFERENCE + 4)
+                        .add(HeapFootprint.array(8, index.capacity()))
+                        .add(HeapFootprint.array(4, index.capacity()));
+            }
+            int chunks = ids.length;
+            footprint.add(9 * HeapFootprint.array(HeapFootprint.REFERENCE, chunks))
+                    .add(3L * chunks * HeapFootprint.array(8, CHUNK_SIZE))
+                    .add(2L * chunks * HeapFootprint.array(4, CHUNK_SIZE))
+                    .add(chunks * HeapFootprint.array(HeapFootprint.REFERENCE, CHUNK_SIZE));
+            for (int slot = 0; slot < size; slot++) {
+                footprint.string(names[slot >>> CHUNK_BITS][slot & CHUNK_MASK]);
+            }
+            for (int[][] chunk : values) {
+                footprint.add(3 * HeapFootprint.array(HeapFootprint.REFERENCE, chunk.length));
+                for (int[] column : chunk) {
+                    if (column != NO_VALUES) {
+                        footprint.add(HeapFootprint.array(4, CHUNK_SIZE))
+                                .add(2 * HeapFootprint.array(8, CHUNK_SIZE));
+                    }
+                }
+            }
+            long hashMapEntry = HeapFootprint.align(HeapFootprint.HEADER + 3 * HeapFootprint.REFERENCE + 4);
+            footprint.add(HeapFootprint.array(HeapFootprint.REFERENCE, valueDictionary.size()) * 2)
+                    .add(valueCodes.size() * (hashMapEntry + 16))
+                    .add(variableSlots.size() * (hashMapEntry + 16))
+                    .add(HeapFootprint.array(4, codeReferences.length))
+                    .add(HeapFootprint.array(4, freeCodes.length));
+            valueDictionary.forEach(footprint::string);
+            slotVariableIds.forEach(footprint::string);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return footprint.bytes() + tombstones.footprintBytes();
+    }
+
+    private GridCellData materializeCell(int slot) {
+        int chunk = slot >>> CHUNK_BITS;
+        int offset = slot & CHUNK_MASK;
+        GridCellData cell = new GridCellData();
+        long id = ids[chunk][offset];
+        cell.setId(id != 0L ? id : null);
+        cell.setMapId(mapId);
+        cell.setRowIndex(rows[chunk][offset]);
+        cell.setColIndex(cols[chunk][offset]);
+        cell.setName(names[chunk][offset]);
+        long version = versions[chunk][offset];
+        cell.setVersion(version != 0L ? version - 1 : null);
+        cell.setHlc(hlcs[chunk][offset]);
+        return cell;
+    }
+
+    private int allocateSlot() {
+        int slot = size++;
+        int chunk = slot >>> CHUNK_BITS;
+        if (chunk == ids.length) {
+            ids = Arrays.copyOf(ids, chunk + 1);
+            rows = Arrays.copyOf(rows, chunk + 1);
+            cols = Arrays.copyOf(cols, chunk + 1);
+            names = Arrays.copyOf(names, chunk + 1);
+            versions = Arrays.copyOf(versions, chunk + 1);
+            hlcs = Arrays.copyOf(hlcs, chunk + 1);
+            values = Arrays.copyOf(values, chunk + 1);
+            valueVersions = Arrays.copyOf(valueVersions, chunk + 1);
+            valueHlcs = Arrays.copyOf(valueHlcs, chunk + 1);
+            ids[chunk] = new long[CHUNK_SIZE];
+            rows[chunk] = new int[CHUNK_SIZE];
+            cols[chunk] = new int[CHUNK_SIZE];
+            names[chunk] = new String[CHUNK_SIZE];
+            versions[chunk] = new long[CHUNK_SIZE];
+            hlcs[chunk] = new long[CHUNK_SIZE];
+            values[chunk] = new int[0][];
+            valueVersions[chunk] = new long[0][];
+            valueHlcs[chunk] = new long[0][];
+        }
+        return slot;
+    }
+
+    private int variableSlot(String variableId) {
+        Integer existing = variableSlots.get(variableId);
+        if (existing != null) return existing;
+        int slot = slotVariableIds.size();
+        slotVariableIds.add(variableId);
+        variableSlots.put(variableId, slot);
+        return slot;
+    }
+
+    /**
+     * The returned code is only referenced once {@link #setValue} stores it.
+     */
+    private int encode(String value) {
+        if (value == null) return 0;
+        Integer code = valueCodes.get(value);
+        if (code != null) return code;
+        int next;
+        if (freeCodeCount > 0) {
+            next = freeCodes[--freeCodeCount];
+            valueDictionary.set(next, value);
+        } else {
+            next = valueDictionary.size();
+            valueDictionary.add(value);
+            if (next == codeReferences.length) codeReferences = Arrays.copyOf(codeReferences, next * 2);
+        }
+        valueCodes.put(value, next);
+        return next;
+    }
+
+    private void release(int code) {
+        if (--codeReferences[code] > 0) return;
+        valueCodes.remove(valueDictionary.get(code));
+        valueDictionary.set(code, null);
+        if (freeCodeCount == freeCodes.length) freeCodes = Arrays.copyOf(freeCodes, Math.max(16, freeCodeCount * 2));
+        freeCodes[freeCodeCount++] = code;
+    }
+
+    int dictionarySize() {
+        long stamp = lock.readLock();
+        try {
+            return valueCodes.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private static long storedVersion(long[][] column, int slot) {
+        long stored = column[slot >>> CHUNK_BITS][slot & CHUNK_MASK];
+        return stored != 0L ? stored - 1 : 0L;
+    }
+
+    private int code(int slot, int variable) {
+        int[][] chunk = values[slot >>> CHUNK_BITS];
+        return variable < chunk.length && chunk[variable] != NO_VALUES ? chunk[variable][slot & CHUNK_MASK] : 0;
+    }
+
+    private boolean supersedesValue(long cellId, int slot, int variable, long version, long hlc) {
+        if (code(slot, variable) == 0) return tombstones.supersededBy(cellId, slotVariableIds.get(variable), version, hlc);
+        int chunk = slot >>> CHUNK_BITS;
+        int offset = slot & CHUNK_MASK;
+        long stored = valueVersions[chunk][variable][offset];
+        return CellStore.supersedes(version, hlc, stored != 0L ? stored - 1 : 0L, valueHlcs[chunk][variable][offset]);
+    }
+
+    private void setValue(int slot, int variable, int code, Long version, long hlc) {
+        int chunkIndex = slot >>> CHUNK_BITS;
+        int[][] chunk = values[chunkIndex];
+        if (variable >= chunk.length) {
+            if (code == 0) return;
+            int previousLength = chunk.length;
+            chunk = Arrays.copyOf(chunk, variable + 1);
+            Arrays.fill(chunk, previousLength, chunk.length, NO_VALUES);
+            values[chunkIndex] = chunk;
+            valueVersions[chunkIndex] = Arrays.copyOf(valueVersions[chunkIndex], variable + 1);
+            valueHlcs[chunkIndex] = Arrays.copyOf(valueHlcs[chunkIndex], variable + 1);
+            Arrays.fill(valueVersions[chunkIndex], previousLength, chunk.length, NO_STAMPS);
+            Arrays.fill(valueHlcs[chunkIndex], previousLength, chunk.length, NO_STAMPS);
+        }
+        if (chunk[variable] == NO_VALUES) {
+            if (code == 0) return;
+            chunk[variable] = new int[CHUNK_SIZE];
+            valueVersions[chunkIndex][variable] = new long[CHUNK_SIZE];
+            valueHlcs[chunkIndex][variable] = new long[CHUNK_SIZE];
+        }
+        int offset = slot & CHUNK_MASK;
+        int previous = chunk[variable][offset];
+        if (code != 0) codeReferences[code]++;
+        if (previous != 0) release(previous);
+        chunk[variable][offset] = code;
+        valueVersions[chunkIndex][variable][offset] = version != null ? version + 1 : 0L;
+        valueHlcs[chunkIndex][variable][offset] = hlc;
+    }
+}
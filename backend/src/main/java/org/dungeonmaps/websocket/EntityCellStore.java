@@ -0,0 +1,250 @@
+package org.dungeonmaps.websocket;
+
+import org.dungeonmaps.model.CellVariableValue;
+import org.dungeonmaps.model.GridCellData;
+import org.dungeonmaps.service.VersionedWrite;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+final class EntityCellStore implements CellStore {
+
+    private final StampedLock lock = new StampedLock();
+    private final LongObjectHashMap<GridCellData> cellsByPosition;
+    private final LongObjectHashMap<GridCellData> cellsById;
+    private final LongObjectHashMap<List<CellVariableValue>> cellVariableValues;
+    private final ValueTombstones tombstones = new ValueTombstones();
+
+    EntityCellStore(int expectedCells) {
+        cellsByPosition = new LongObjectHashMap<>(expectedCells);
+        cellsById = new LongObjectHashMap<>(expectedCells);
+        cellVariableValues = new LongObjectHashMap<>(expectedCells);
+    }
+
+    @Override
+    public boolean putCell(GridCellData cell) {
+        long key = MapCache.cellKey(cell.getRowIndex(), cell.getColIndex());
+        long stamp = lock.writeLock();
+        try {
+            GridCellData previous = cellsByPosition.get(key);
+            if (previous != null && !CellStore.supersedes(VersionedWrite.versionOf(cell.getVersion()), cell.getHlc(),
+                    VersionedWrite.versionOf(previous.getVersion()), previous.getHlc())) {
+                return false;
+            }
+            store(key, cell, previous);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean replaceCell(GridCellData cell, long expectedVersion) {
+        long key = MapCache.cellKey(cell.getRowIndex(), cell.getColIndex());
+        long stamp = lock.writeLock();
+        try {
+            GridCellData previous = cellsByPosition.get(key);
+            if (previous == null || VersionedWrite.versionOf(previous.getVersion()) != expectedVersion) return false;
+            store(key, cell, previous);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void store(long key, GridCellData cell, GridCellData previous) {
+        cellsByPosition.put(key, cell);
+        if (previous != null && previous.getId() != null && !previous.getId().equals(cell.getId())) {
+            cellsById.remove(previous.getId());
+        }
+        if (cell.getId() != null) {
+            cellsById.put(cell.getId(), cell);
+        }
+    }
+
+    @Override
+    public GridCellData getCell(long positionKey) {
+        return read(cellsByPosition, positionKey);
+    }
+
+    @Override
+    public GridCellData getCellById(long cellId) {
+        return read(cellsById, cellId);
+    }
+
+    @Override
+    public List<GridCellData> getCells() {
+        long stamp = lock.readLock();
+        try {
+            return cellsByPosition.values();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return cellsByPosition.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void setValues(long cellId, List<CellVariableValue> values) {
+        CopyOnWriteArrayList<CellVariableValue> list = new CopyOnWriteArrayList<>(values);
+        long stamp = lock.writeLock();
+        try {
+            cellVariableValues.put(cellId, list);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public List<CellVariableValue> getValues(long cellId) {
+        List<CellVariableValue> values = read(cellVariableValues, cellId);
+        return values != null ? values : List.of();
+    }
+
+    @Override
+    public boolean putValue(long cellId, CellVariableValue cvv) {
+        CopyOnWriteArrayList<CellVariableValue> list = valueList(cellId);
+        synchronized (list) {
+            CellVariableValue previous = find(list, cvv.getVariableId());
+            boolean newer = previous != null
+                    ? supersedes(cvv.getVersion(), cvv.getHlc(), previous)
+                    : tombstones.supersededBy(cellId, cvv.getVariableId(), VersionedWrite.versionOf(cvv.getVersion()), cvv.getHlc());
+            if (!newer) return false;
+            list.remove(previous);
+            list.add(cvv);
+            tombstones.remove(cellId, cvv.getVariableId());
+            return true;
+        }
+    }
+
+    @Override
+    public boolean removeValue(long cellId, String variableId, long version, long hlc) {
+        CopyOnWriteArrayList<CellVariableValue> list = valueList(cellId);
+        synchronized (list) {
+            CellVariableValue previous = find(list, variableId);
+            boolean newer = previous != null
+                    ? supersedes(version, hlc, previous)
+                    : tombstones.supersededBy(cellId, variableId, version, hlc);
+            if (!newer) return false;
+            list.remove(previous);
+            tombstones.put(cellId, variableId, version, hlc);
+            return true;
+        }
+    }
+
+    private static CellVariableValue find(List<CellVariableValue> list, String variableId) {
+        for (CellVariableValue v : list) {
+            if (v.getVariableId().equals(variableId)) return v;
+        }
+        return null;
+    }
+
+    private static boolean supersedes(Long version, long hlc, CellVariableValue current) {
+        return CellStore.supersedes(VersionedWrite.versionOf(version), hlc,
+                VersionedWrite.versionOf(current.getVersion()), current.getHlc());
+    }
+
+    @Override
+    public void removeValuesForVariable(String variableId) {
+        forEachValueList(list -> list.removeIf(v -> v.getVariableId().equals(variableId)));
+        tombstones.removeVariable(variableId);
+    }
+
+    @Override
+    public int pruneTombstones(long hlc) {
+        return tombstones.prune(hlc);
+    }
+
+    @Override
+    public int valueCount() {
+        int[] count = new int[1];
+        forEachValueList(list -> count[0] += list.size());
+        return count[0];
+    }
+
+    @Override
+    public long footprintBytes() {
+        HeapFootprint footprint = new HeapFootprint();
+        long stamp = lock.readLock();
+        try {
+            for (LongObjectHashMap<?> index : List.of(cellsByPosition, cellsById, cellVariableValues)) {
+                footprint.object(index, 3 * HeapFootprint.REFERENCE + 4)
+                        .add(HeapFootprint.array(8, index.capacity()))
+                        .add(HeapFootprint.array(HeapFootprint.REFERENCE, index.capacity()));
+            }
+            cellsByPosition.forEachValue(cell -> footprint
+                    .object(cell, 6 * HeapFootprint.REFERENCE + 8)
+                    .boxed(cell.getId())
+                    .boxed(cell.getVersion())
+                    .boxed(cell.getMapId())
+                    .boxed(cell.getRowIndex())
+                    .boxed(cell.getColIndex())
+                    .string(cell.getName()));
+            cellVariableValues.forEachValue(list -> {
+                footprint.object(list, 2 * HeapFootprint.REFERENCE)
+                        .add(HeapFootprint.align(HeapFootprint.HEADER))
+                        .add(HeapFootprint.array(HeapFootprint.REFERENCE, list.size()));
+                for (CellVariableValue cvv : list) {
+                    footprint.object(cvv, 4 * HeapFootprint.REFERENCE + 8)
+                            .boxed(cvv.getCellId())
+                            .boxed(cvv.getVersion())
+                            .string(cvv.getVariableId())
+                            .string(cvv.getValue());
+                }
+            });
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return footprint.bytes() + tombstones.footprintBytes();
+    }
+
+    private <V> V read(LongObjectHashMap<V> index, long key) {
+        long stamp = lock.tryOptimisticRead();
+        V value = index.get(key);
+        if (lock.validate(stamp)) return value;
+        stamp = lock.readLock();
+        try {
+            return index.get(key);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private CopyOnWriteArrayList<CellVariableValue> valueList(long cellId) {
+        List<CellVariableValue> existing = read(cellVariableValues, cellId);
+        if (existing != null) return (CopyOnWriteArrayList<CellVariableValue>) existing;
+
+        long stamp = lock.writeLock();
+        try {
+            List<CellVariableValue> list = cellVariableValues.get(cellId);
+            if (list == null) {
+                list = new CopyOnWriteArrayList<>();
+                cellVariableValues.put(cellId, list);
+            }
+            return (CopyOnWriteArrayList<CellVariableValue>) list;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void forEachValueList(Consumer<List<CellVariableValue>> action) {
+        List<List<CellVariableValue>> lists;
+        long stamp = lock.readLock();
+        try {
+            lists = cellVariableValues.values();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        lists.forEach(action);
+    }
+}
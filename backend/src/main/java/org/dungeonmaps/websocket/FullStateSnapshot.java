@@ -0,0 +1,10 @@
+package org.dungeonmaps.websocket;
+
+import java.util.List;
+
+/**
+ * A FULL_STATE message as of cache version {@code version}, with its deflated chunks, or null
+ * chunks if it is small enough to send as is.
+ */
+public record FullStateSnapshot(long version, byte[] payload, List<byte[]> chunks) {
+}
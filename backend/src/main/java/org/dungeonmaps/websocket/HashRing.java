@@ -0,0 +1,66 @@
+package org.dungeonmaps.websocket;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent hash ring over cluster nodes. Every node is placed at a number of virtual points,
+ * which spreads maps evenly and moves only the maps of a node that joins or leaves.
+ */
+final class HashRing {
+
+    private final TreeMap<Long, String> points = new TreeMap<>();
+    private final int nodeCount;
+
+    HashRing(Collection<String> nodes, int virtualNodes) {
+        for (String node : nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                points.put(hash(node + "#" + i), node);
+            }
+        }
+        this.nodeCount = (int) points.values().stream().distinct().count();
+    }
+
+    /**
+     * Returns up to {@code count} distinct nodes for {@code mapId}, owner first.
+     */
+    List<String> nodesFor(long mapId, int count) {
+        List<String> nodes = new ArrayList<>(count);
+        if (points.isEmpty()) return nodes;
+        int wanted = Math.min(count, nodeCount);
+        long key = mix(mapId);
+        for (Map<Long, String> range : List.of(points.tailMap(key), points.headMap(key))) {
+            for (String node : range.values()) {
+                if (!nodes.contains(node)) nodes.add(node);
+                if (nodes.size() == wanted) return nodes;
+            }
+        }
+        return nodes;
+    }
+
+    int size() {
+        return nodeCount;
+    }
+
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,52 @@
+package org.dungeonmaps.websocket;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Estimates retained heap for cache structures assuming a 64-bit JVM with compressed oops
+ * (12-byte headers, 4-byte references, 8-byte alignment). Shared instances are counted once.
+ */
+final class HeapFootprint {
+
+    static final int HEADER = 12;
+    static final int REFERENCE = 4;
+    static final int ARRAY_HEADER = 16;
+
+    private final Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+    private long bytes;
+
+    long bytes() {
+        return bytes;
+    }
+
+    HeapFootprint add(long size) {
+        bytes += size;
+        return this;
+    }
+
+    HeapFootprint object(Object instance, int fieldBytes) {
+        if (instance != null && seen.add(instance)) bytes += align(HEADER + fieldBytes);
+        return this;
+    }
+
+    HeapFootprint boxed(Object value) {
+        if (value instanceof Long || value instanceof Double) return object(value, 8);
+        if (value instanceof Integer) return object(value, 4);
+        return this;
+    }
+
+    HeapFootprint string(String value) {
+        if (value != null && seen.add(value)) bytes += align(24) + array(1, value.length());
+        return this;
+    }
+
+    static long array(int elementBytes, int length) {
+        return align(ARRAY_HEADER + (long) elementBytes * length);
+    }
+
+    static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+}
@@ -0,0 +1,30 @@
+package org.dungeonmaps.websocket;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Relay for a single instance: events are handed to the listeners of this JVM on the
+ * publishing thread.
+ */
+@Component
+@ConditionalOnProperty(name = "app.relay.type", havingValue = "memory", matchIfMissing = true)
+public class InMemoryMapEventRelay implements MapEventRelay {
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(MapEvent event) {
+        for (Listener listener : listeners) {
+            listener.onEvent(event);
+        }
+    }
+
+    @Override
+    public void subscribe(Listener listener) {
+        listeners.add(listener);
+    }
+}
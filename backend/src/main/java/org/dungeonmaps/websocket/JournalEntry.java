@@ -0,0 +1,192 @@
+package org.dungeonmaps.websocket;
+
+import org.dungeonmaps.model.CellVariableValue;
+import org.dungeonmaps.model.GridCellData;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A cell or cell variable value mutation of a {@link MapCache}, in the binary form kept by
+ * {@link MapJournal}. Cell and value puts are version-gated on apply, so replaying an entry the
+ * cache already reflects is harmless.
+ */
+sealed interface JournalEntry {
+
+    byte END = 0;
+
+    void applyTo(MapCache cache);
+
+    void write(DataOutput out) throws IOException;
+
+    record CellPut(GridCellData cell) implements JournalEntry {
+        static final byte TYPE = 1;
+
+        @Override
+        public void applyTo(MapCache cache) {
+            cache.putCell(cell);
+        }
+
+        @Override
+        public void write(DataOutput out) throws IOException {
+            out.writeByte(TYPE);
+            out.writeLong(cell.getId());
+            out.writeInt(cell.getRowIndex());
+            out.writeInt(cell.getColIndex());
+            writeString(out, cell.getName());
+            writeVersion(out, cell.getVersion());
+            out.writeLong(cell.getHlc());
+        }
+    }
+
+    record ValuePut(long cellId, CellVariableValue value) implements JournalEntry {
+        static final byte TYPE = 2;
+
+        @Override
+        public void applyTo(MapCache cache) {
+            cache.putCellVariableValue(cellId, value);
+        }
+
+        @Override
+        public void write(DataOutput out) throws IOException {
+            out.writeByte(TYPE);
+            out.writeLong(cellId);
+            writeValue(out, value);
+        }
+    }
+
+    record ValueRemoved(long cellId, String variableId, long version, long hlc) implements JournalEntry {
+        static final byte TYPE = 3;
+
+        @Override
+        public void applyTo(MapCache cache) {
+            cache.removeCellVariableValue(cellId, variableId, version, hlc);
+        }
+
+        @Override
+        public void write(DataOutput out) throws IOException {
+            out.writeByte(TYPE);
+            out.writeLong(cellId);
+            writeString(out, variableId);
+            out.writeLong(version);
+            out.writeLong(hlc);
+        }
+    }
+
+    record ValuesReplaced(long cellId, List<CellVariableValue> values) implements JournalEntry {
+        static final byte TYPE = 4;
+
+        @Override
+        public void applyTo(MapCache cache) {
+            cache.setCellVariableValues(cellId, values);
+        }
+
+        @Override
+        public void write(DataOutput out) throws IOException {
+            out.writeByte(TYPE);
+            out.writeLong(cellId);
+            out.writeInt(values.size());
+            for (CellVariableValue value : values) writeValue(out, value);
+        }
+    }
+
+    record VariableValuesRemoved(String variableId) implements JournalEntry {
+        static final byte TYPE = 5;
+
+        @Override
+        public void applyTo(MapCache cache) {
+            cache.removeCellVariableValuesByVariableId(variableId);
+        }
+
+        @Override
+        public void write(DataOutput out) throws IOException {
+            out.writeByte(TYPE);
+            writeString(out, variableId);
+        }
+    }
+
+    static void writeEnd(DataOutput out) throws IOException {
+        out.writeByte(END);
+    }
+
+    /**
+     * Reads the next entry, or returns null at an end marker.
+     */
+    static JournalEntry read(DataInput in, Long mapId) throws IOException {
+        byte type = in.readByte();
+        return switch (type) {
+            case END -> null;
+            case CellPut.TYPE -> {
+                GridCellData cell = new GridCellData();
+                cell.setId(in.readLong());
+                cell.setMapId(mapId);
+                cell.setRowIndex(in.readInt());
+                cell.setColIndex(in.readInt());
+                cell.setName(readString(in));
+                cell.setVersion(readVersion(in));
+                cell.setHlc(in.readLong());
+                yield new CellPut(cell);
+            }
+            case ValuePut.TYPE -> new ValuePut(in.readLong(), readValue(in));
+            case ValueRemoved.TYPE -> new ValueRemoved(in.readLong(), readString(in), in.readLong(), in.readLong());
+            case ValuesReplaced.TYPE -> {
+                long cellId = in.readLong();
+                int count = in.readInt();
+                List<CellVariableValue> values = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) values.add(readValue(in));
+                yield new ValuesReplaced(cellId, values);
+            }
+            case VariableValuesRemoved.TYPE -> new VariableValuesRemoved(readString(in));
+            default -> throw new IOException("Unknown journal entry type " + type);
+        };
+    }
+
+    private static void writeValue(DataOutput out, CellVariableValue value) throws IOException {
+        out.writeLong(value.getCellId());
+        writeString(out, value.getVariableId());
+        writeString(out, value.getValue());
+        writeVersion(out, value.getVersion());
+        out.writeLong(value.getHlc());
+    }
+
+    private static CellVariableValue readValue(DataInput in) throws IOException {
+        CellVariableValue value = new CellVariableValue();
+        value.setCellId(in.readLong());
+        value.setVariableId(readString(in));
+        value.setValue(readString(in));
+        value.setVersion(readVersion(in));
+        value.setHlc(in.readLong());
+        return value;
+    }
+
+    private static void writeVersion(DataOutput out, Long version) throws IOException {
+        out.writeLong(version != null ? version : -1L);
+    }
+
+    private static Long readVersion(DataInput in) throws IOException {
+        long version = in.readLong();
+        return version >= 0 ? version : null;
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
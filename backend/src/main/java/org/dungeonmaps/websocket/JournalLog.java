@@ -0,0 +1,176 @@
+package org.dungeonmaps.websocket;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of one map, split into memory-mapped segment files named after the first
+ * sequence number they hold. Each record is framed as length, CRC32, sequence number and entry;
+ * a zero length marks the unwritten end of a segment, and replay skips the rest of a segment
+ * at the first record that fails its checksum.
+ */
+final class JournalLog {
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int HEADER_BYTES = 8;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private long lastSeq;
+    private long snapshotSeq;
+    private MappedByteBuffer segment;
+    private boolean closed;
+
+    JournalLog(Path directory, int segmentBytes, long snapshotSeq, long lastSeq) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.snapshotSeq = snapshotSeq;
+        this.lastSeq = lastSeq;
+    }
+
+    synchronized long lastSeq() {
+        return lastSeq;
+    }
+
+    /**
+     * A log that has never been snapshotted is always due.
+     */
+    synchronized boolean snapshotDue(long minEntries) {
+        return snapshotSeq < 0 || lastSeq - snapshotSeq >= minEntries;
+    }
+
+    synchronized void append(JournalEntry entry) {
+        if (closed) return;
+        long seq = lastSeq + 1;
+        byte[] body = encode(seq, entry);
+        int frame = HEADER_BYTES + body.length;
+        if (segment == null || segment.remaining() < frame + Integer.BYTES) roll(seq, frame);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        int position = segment.position();
+        segment.position(position + Integer.BYTES);
+        segment.putInt((int) crc.getValue());
+        segment.put(body);
+        segment.putInt(position, body.length);
+        lastSeq = seq;
+    }
+
+    synchronized void force() {
+        if (segment != null && !closed) segment.force();
+    }
+
+    /**
+     * Deletes segments whose entries all precede {@code seq}, once a snapshot covers them.
+     */
+    synchronized void compact(long seq) {
+        snapshotSeq = Math.max(snapshotSeq, seq);
+        List<Long> firstSeqs = segmentFirstSeqs(directory);
+        for (int i = 0; i + 1 < firstSeqs.size(); i++) {
+            if (firstSeqs.get(i + 1) > seq + 1) break;
+            try {
+                Files.deleteIfExists(segmentPath(directory, firstSeqs.get(i)));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    synchronized void close() {
+        closed = true;
+        segment = null;
+    }
+
+    /**
+     * Feeds every intact entry after {@code afterSeq} to {@code action} in sequence order and
+     * returns the highest sequence number seen.
+     */
+    static long replay(Path directory, Long mapId, long afterSeq, Consumer<JournalEntry> action) throws IOException {
+        long lastSeq = afterSeq;
+        for (long firstSeq : segmentFirstSeqs(directory)) {
+            try (FileChannel channel = FileChannel.open(segmentPath(directory, firstSeq), StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                while (buffer.remaining() >= HEADER_BYTES) {
+                    int length = buffer.getInt();
+                    int checksum = buffer.getInt();
+                    if (length <= 0 || length > buffer.remaining()) break;
+                    byte[] body = new byte[length];
+                    buffer.get(body);
+                    CRC32 crc = new CRC32();
+                    crc.update(body);
+                    if ((int) crc.getValue() != checksum) break;
+
+                    DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+                    long seq = in.readLong();
+                    if (seq <= afterSeq) continue;
+                    action.accept(JournalEntry.read(in, mapId));
+                    lastSeq = Math.max(lastSeq, seq);
+                }
+            }
+        }
+        return lastSeq;
+    }
+
+    static void deleteSegments(Path directory) throws IOException {
+        for (long firstSeq : segmentFirstSeqs(directory)) {
+            Files.deleteIfExists(segmentPath(directory, firstSeq));
+        }
+    }
+
+    private void roll(long firstSeq, int frame) {
+        Path path = segmentPath(directory, firstSeq);
+        try {
+            Files.createDirectories(directory);
+            if (segment != null) segment.force();
+            try (FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                segment = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                        Math.max(segmentBytes, frame + Integer.BYTES));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open journal segment " + path, e);
+        }
+    }
+
+    private static byte[] encode(long seq, JournalEntry entry) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(seq);
+            entry.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Path segmentPath(Path directory, long firstSeq) {
+        return directory.resolve(String.format("%020d%s", firstSeq, SEGMENT_SUFFIX));
+    }
+
+    private static List<Long> segmentFirstSeqs(Path directory) {
+        if (!Files.isDirectory(directory)) return List.of();
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Long> firstSeqs = new ArrayList<>();
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .forEach(name -> firstSeqs.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()))));
+            firstSeqs.sort(null);
+            return firstSeqs;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
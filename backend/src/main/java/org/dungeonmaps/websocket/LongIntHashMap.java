@@ -0,0 +1,69 @@
+package org.dungeonmaps.websocket;
+
+/**
+ * Insert-only open-addressing map from {@code long} keys to non-negative {@code int} values.
+ * Not thread-safe; {@link #get} returns -1 for missing keys.
+ */
+final class LongIntHashMap {
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2) - 1) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return keys.length;
+    }
+
+    int get(long key) {
+        int mask = keys.length - 1;
+        int index = LongObjectHashMap.hash(key) & mask;
+        while (values[index] != 0) {
+            if (keys[index] == key) return values[index] - 1;
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    void put(long key, int value) {
+        if (value < 0) throw new IllegalArgumentException("negative values are not supported");
+        int mask = keys.length - 1;
+        int index = LongObjectHashMap.hash(key) & mask;
+        while (values[index] != 0) {
+            if (keys[index] == key) {
+                values[index] = value + 1;
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        values[index] = value + 1;
+        if (++size * 2 > keys.length) resize(keys.length * 2);
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[capacity];
+        values = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] == 0) continue;
+            int index = LongObjectHashMap.hash(oldKeys[i]) & mask;
+            while (values[index] != 0) {
+                index = (index + 1) & mask;
+            }
+            keys[index] = oldKeys[i];
+            values[index] = oldValues[i];
+        }
+    }
+}
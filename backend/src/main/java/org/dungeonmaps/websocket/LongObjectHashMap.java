@@ -0,0 +1,162 @@
+package org.dungeonmaps.websocket;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Open-addressing long-keyed map (linear probing, backward-shift deletion). Not thread-safe, but
+ * {@link #get} tolerates a racing writer so it can run inside a StampedLock optimistic read.
+ */
+final class LongObjectHashMap<V> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+
+    LongObjectHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    LongObjectHashMap(int expectedSize) {
+        int capacity = tableSizeFor(Math.max(DEFAULT_CAPACITY, expectedSize * 2));
+        keys = new long[capacity];
+        values = new Object[capacity];
+    }
+
+    static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return keys.length;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        long[] k = keys;
+        Object[] v = values;
+        int length = Math.min(k.length, v.length);
+        int mask = length - 1;
+        int index = hash(key) & mask;
+        for (int probes = 0; probes < length; probes++) {
+            Object value = v[index];
+            if (value == null) return null;
+            if (k[index] == key) return (V) value;
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    V put(long key, V value) {
+        if (value == null) throw new IllegalArgumentException("null values are not supported");
+        int mask = keys.length - 1;
+        int index = hash(key) & mask;
+        while (values[index] != null) {
+            if (keys[index] == key) {
+                V previous = (V) values[index];
+                values[index] = value;
+                return previous;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        values[index] = value;
+        if (++size * 2 > keys.length) resize(keys.length * 2);
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    V remove(long key) {
+        int mask = keys.length - 1;
+        int index = hash(key) & mask;
+        while (values[index] != null) {
+            if (keys[index] == key) {
+                V previous = (V) values[index];
+                shiftBack(index);
+                size--;
+                return previous;
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEachValue(Consumer<? super V> action) {
+        for (Object value : values) {
+            if (value != null) action.accept((V) value);
+        }
+    }
+
+    List<V> values() {
+        List<V> result = new ArrayList<>(size);
+        forEachValue(result::add);
+        return result;
+    }
+
+    private void shiftBack(int gap) {
+        int mask = keys.length - 1;
+        int index = gap;
+        while (true) {
+            index = (index + 1) & mask;
+            Object value = values[index];
+            if (value == null) break;
+            int home = hash(keys[index]) & mask;
+            boolean movable = gap <= index ? (home <= gap || home > index) : (home <= gap && home > index);
+            if (movable) {
+                keys[gap] = keys[index];
+                values[gap] = value;
+                gap = index;
+            }
+        }
+        values[gap] = null;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        long[] newKeys = new long[capacity];
+        Object[] newValues = new Object[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            Object value = oldValues[i];
+            if (value == null) continue;
+            int index = hash(oldKeys[i]) & mask;
+            while (newValues[index] != null) {
+                index = (index + 1) & mask;
+            }
+            newKeys[index] = oldKeys[i];
+            newValues[index] = value;
+        }
+        keys = newKeys;
+        values = newValues;
+    }
+
+    private static int tableSizeFor(int n) {
+        int highest = Integer.highestOneBit(n);
+        return highest == n ? n : highest << 1;
+    }
+}
@@ -6,20 +6,50 @@ import org.dungeonmaps.model.MapVariable;
 import org.dungeonmaps.model.PicklistValue;
 import org.dungeonmaps.model.CellVariableValue;
 
-import java.util.List;
+import java.time.LocalDateTime;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
 
 public class MapCache {
 
     private volatile DungeonMap mapData;
-    private final ConcurrentHashMap<String, GridCellData> cells = new ConcurrentHashMap<>();
-    private final CopyOnWriteArrayList<MapVariable> variables = new CopyOnWriteArrayList<>();
+    private volatile MapLoadStats loadStats;
+    private volatile LocalDateTime reconciledThrough;
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicReferenceArray<FullStateSnapshot> snapshots =
+            new AtomicReferenceArray<>(Audience.values().length);
+    private final OperationLog operations;
+    private final CellLayout layout;
+    private final CellStore cells;
+    private final TileIndex tiles = new TileIndex();
+    private final Object variableLock = new Object();
+    private volatile VariableIndex variableIndex = VariableIndex.of(List.of());
     private final ConcurrentHashMap<String, List<PicklistValue>> picklistValues = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, List<CellVariableValue>> cellVariableValues = new ConcurrentHashMap<>();
+    private volatile Consumer<JournalEntry> journal;
+
+    public enum CellLayout { ENTITY, COMPACT }
+
+    static final int DEFAULT_OPERATION_LOG_CAPACITY = 1024;
 
     public MapCache(DungeonMap mapData) {
+        this(mapData, CellLayout.ENTITY, 0);
+    }
+
+    public MapCache(DungeonMap mapData, CellLayout layout, int expectedCells) {
+        this(mapData, layout, expectedCells, DEFAULT_OPERATION_LOG_CAPACITY);
+    }
+
+    public MapCache(DungeonMap mapData, CellLayout layout, int expectedCells, int operationLogCapacity) {
         this.mapData = mapData;
+        this.operations = new OperationLog(operationLogCapacity);
+        this.layout = layout;
+        this.cells = layout == CellLayout.COMPACT
+                ? new CompactCellStore(mapData.getId(), expectedCells)
+                : new EntityCellStore(expectedCells);
     }
 
     public DungeonMap getMapData() {
@@ -28,42 +58,183 @@ public class MapCache {
 
     public void setMapData(DungeonMap mapData) {
         this.mapData = mapData;
+        version.incrementAndGet();
+    }
+
+    public void updateMapData(Consumer<DungeonMap> change) {
+        synchronized (mapData) {
+            change.accept(mapData);
+        }
+        version.incrementAndGet();
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    public FullStateSnapshot getSnapshot(Audience audience) {
+        FullStateSnapshot snapshot = snapshots.get(audience.ordinal());
+        return snapshot != null && snapshot.version() == version.get() ? snapshot : null;
+    }
+
+    public void storeSnapshot(Audience audience, FullStateSnapshot snapshot) {
+        snapshots.set(audience.ordinal(), snapshot);
+    }
+
+    OperationLog getOperationLog() {
+        return operations;
+    }
+
+    public MapLoadStats getLoadStats() {
+        return loadStats;
+    }
+
+    public void setLoadStats(MapLoadStats loadStats) {
+        this.loadStats = loadStats;
+    }
+
+    void journalTo(Consumer<JournalEntry> journal) {
+        this.journal = journal;
+    }
+
+    private void journal(JournalEntry entry) {
+        Consumer<JournalEntry> journal = this.journal;
+        if (journal != null) journal.accept(entry);
+    }
+
+    public LocalDateTime getReconciledThrough() {
+        return reconciledThrough;
+    }
+
+    public void setReconciledThrough(LocalDateTime reconciledThrough) {
+        this.reconciledThrough = reconciledThrough;
+    }
+
+    public CellLayout getLayout() {
+        return layout;
+    }
+
+    public long getCellFootprintBytes() {
+        return cells.footprintBytes();
+    }
+
+    public static long cellKey(int row, int col) {
+        return ((long) row << 32) | (col & 0xFFFFFFFFL);
     }
 
-    public ConcurrentHashMap<String, GridCellData> getCells() {
-        return cells;
+    public static int tileOf(int index) {
+        return TileIndex.tileOf(index);
     }
 
-    public static String cellKey(Integer row, Integer col) {
-        return row + ":" + col;
+    public static int getTileSize() {
+        return TileIndex.TILE_SIZE;
     }
 
-    public void putCell(GridCellData cell) {
-        cells.put(cellKey(cell.getRowIndex(), cell.getColIndex()), cell);
+    public boolean putCell(GridCellData cell) {
+        if (!cells.putCell(cell)) return false;
+        tiles.add(cell.getRowIndex(), cell.getColIndex());
+        version.incrementAndGet();
+        journal(new JournalEntry.CellPut(cell));
+        return true;
     }
 
-    public GridCellData getCell(Integer row, Integer col) {
-        return cells.get(cellKey(row, col));
+    public boolean replaceCell(GridCellData cell, long expectedVersion) {
+        if (!cells.replaceCell(cell, expectedVersion)) return false;
+        version.incrementAndGet();
+        journal(new JournalEntry.CellPut(cell));
+        return true;
     }
 
-    public CopyOnWriteArrayList<MapVariable> getVariables() {
-        return variables;
+    public GridCellData getCell(int row, int col) {
+        return cells.getCell(cellKey(row, col));
+    }
+
+    public GridCellData getCellById(long cellId) {
+        return cells.getCellById(cellId);
+    }
+
+    public List<GridCellData> getCells() {
+        return cells.getCells();
+    }
+
+    public List<GridCellData> getTileCells(int tileRow, int tileCol) {
+        long[] positions = tiles.positions(tileRow, tileCol);
+        List<GridCellData> result = new ArrayList<>(positions.length);
+        for (long key : positions) {
+            GridCellData cell = cells.getCell(key);
+            if (cell != null) result.add(cell);
+        }
+        return result;
+    }
+
+    public int getTileCount() {
+        return tiles.size();
+    }
+
+    public int getCellCount() {
+        return cells.size();
+    }
+
+    public int getCellVariableValueCount() {
+        return cells.valueCount();
+    }
+
+    public long getWeight() {
+        return (long) cells.size() + cells.valueCount() + variableIndex.ordered().size();
+    }
+
+    private record VariableIndex(List<MapVariable> ordered, Map<String, MapVariable> byId, Set<String> dmOnlyIds) {
+
+        static VariableIndex of(Collection<MapVariable> variables) {
+            List<MapVariable> ordered = variables.stream()
+                    .sorted(Comparator.comparingInt(MapVariable::getSortOrder))
+                    .toList();
+            Map<String, MapVariable> byId = new HashMap<>();
+            Set<String> dmOnlyIds = new HashSet<>();
+            for (MapVariable v : ordered) {
+                byId.put(v.getId(), v);
+                if ("DM_ONLY".equals(v.getVisibility())) dmOnlyIds.add(v.getId());
+            }
+            return new VariableIndex(ordered, Map.copyOf(byId), Set.copyOf(dmOnlyIds));
+        }
+    }
+
+    public List<MapVariable> getVariables() {
+        return variableIndex.ordered();
+    }
+
+    public MapVariable getVariable(String variableId) {
+        return variableIndex.byId().get(variableId);
+    }
+
+    public boolean isDmOnly(String variableId) {
+        return variableIndex.dmOnlyIds().contains(variableId);
     }
 
     public void setVariables(List<MapVariable> vars) {
-        variables.clear();
-        variables.addAll(vars);
+        synchronized (variableLock) {
+            variableIndex = VariableIndex.of(vars);
+        }
+        version.incrementAndGet();
     }
 
     public void putVariable(MapVariable variable) {
-        variables.removeIf(v -> v.getId().equals(variable.getId()));
-        variables.add(variable);
-        variables.sort((a, b) -> Integer.compare(a.getSortOrder(), b.getSortOrder()));
+        synchronized (variableLock) {
+            Map<String, MapVariable> updated = new LinkedHashMap<>(variableIndex.byId());
+            updated.put(variable.getId(), variable);
+            variableIndex = VariableIndex.of(updated.values());
+        }
+        version.incrementAndGet();
     }
 
     public void removeVariable(String variableId) {
-        variables.removeIf(v -> v.getId().equals(variableId));
-        picklistValues.remove(variableId);
+        synchronized (variableLock) {
+            Map<String, MapVariable> updated = new LinkedHashMap<>(variableIndex.byId());
+            updated.remove(variableId);
+            variableIndex = VariableIndex.of(updated.values());
+            picklistValues.remove(variableId);
+        }
+        version.incrementAndGet();
     }
 
     public ConcurrentHashMap<String, List<PicklistValue>> getPicklistValues() {
@@ -72,6 +243,13 @@ public class MapCache {
 
     public void setPicklistValues(String variableId, List<PicklistValue> values) {
         picklistValues.put(variableId, new CopyOnWriteArrayList<>(values));
+        version.incrementAndGet();
+    }
+
+    public int getPicklistValueCount() {
+        int count = 0;
+        for (List<PicklistValue> values : picklistValues.values()) count += values.size();
+        return count;
     }
 
     public List<PicklistValue> getPicklistValuesForVariable(String variableId) {
@@ -84,6 +262,7 @@ public class MapCache {
         ((CopyOnWriteArrayList<PicklistValue>) list).removeIf(p -> p.getId().equals(pv.getId()));
         ((CopyOnWriteArrayList<PicklistValue>) list).add(pv);
         ((CopyOnWriteArrayList<PicklistValue>) list).sort((a, b) -> Integer.compare(a.getSortOrder(), b.getSortOrder()));
+        version.incrementAndGet();
     }
 
     public void removePicklistValue(String variableId, String picklistValueId) {
@@ -91,40 +270,43 @@ public class MapCache {
         if (list instanceof CopyOnWriteArrayList<PicklistValue> cow) {
             cow.removeIf(p -> p.getId().equals(picklistValueId));
         }
+        version.incrementAndGet();
     }
 
-    public ConcurrentHashMap<String, List<CellVariableValue>> getCellVariableValues() {
-        return cellVariableValues;
+    public void setCellVariableValues(long cellId, List<CellVariableValue> values) {
+        cells.setValues(cellId, values);
+        version.incrementAndGet();
+        journal(new JournalEntry.ValuesReplaced(cellId, values));
     }
 
-    public void setCellVariableValues(Long cellId, List<CellVariableValue> values) {
-        cellVariableValues.put(cellId.toString(), new CopyOnWriteArrayList<>(values));
+    public List<CellVariableValue> getCellVariableValuesForCell(long cellId) {
+        return cells.getValues(cellId);
     }
 
-    public List<CellVariableValue> getCellVariableValuesForCell(Long cellId) {
-        return cellVariableValues.getOrDefault(cellId.toString(), List.of());
+    public boolean putCellVariableValue(long cellId, CellVariableValue cvv) {
+        if (!cells.putValue(cellId, cvv)) return false;
+        version.incrementAndGet();
+        journal(new JournalEntry.ValuePut(cellId, cvv));
+        return true;
     }
 
-    public void putCellVariableValue(Long cellId, CellVariableValue cvv) {
-        cellVariableValues.computeIfAbsent(cellId.toString(), k -> new CopyOnWriteArrayList<>());
-        List<CellVariableValue> list = cellVariableValues.get(cellId.toString());
-        ((CopyOnWriteArrayList<CellVariableValue>) list).removeIf(
-                v -> v.getVariableId().equals(cvv.getVariableId()));
-        ((CopyOnWriteArrayList<CellVariableValue>) list).add(cvv);
+    public boolean removeCellVariableValue(long cellId, String variableId, long valueVersion, long hlc) {
+        if (!cells.removeValue(cellId, variableId, valueVersion, hlc)) return false;
+        version.incrementAndGet();
+        journal(new JournalEntry.ValueRemoved(cellId, variableId, valueVersion, hlc));
+        return true;
     }
 
-    public void removeCellVariableValue(Long cellId, String variableId) {
-        List<CellVariableValue> list = cellVariableValues.get(cellId.toString());
-        if (list instanceof CopyOnWriteArrayList<CellVariableValue> cow) {
-            cow.removeIf(v -> v.getVariableId().equals(variableId));
-        }
+    /**
+     * Drops value tombstones older than {@code hlc}, once no put older than them can still arrive.
+     */
+    public int pruneTombstones(long hlc) {
+        return cells.pruneTombstones(hlc);
     }
 
     public void removeCellVariableValuesByVariableId(String variableId) {
-        for (List<CellVariableValue> list : cellVariableValues.values()) {
-            if (list instanceof CopyOnWriteArrayList<CellVariableValue> cow) {
-                cow.removeIf(v -> v.getVariableId().equals(variableId));
-            }
-        }
+        cells.removeValuesForVariable(variableId);
+        version.incrementAndGet();
+        journal(new JournalEntry.VariableValuesRemoved(variableId));
     }
 }
@@ -0,0 +1,192 @@
+package org.dungeonmaps.websocket;
+
+import jakarta.annotation.PreDestroy;
+import org.dungeonmaps.model.*;
+import org.dungeonmaps.repository.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Component
+public class MapCacheLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(MapCacheLoader.class);
+
+    private final DungeonMapRepository mapRepository;
+    private final GridCellDataRepository cellRepository;
+    private final MapVariableRepository variableRepository;
+    private final PicklistValueRepository picklistValueRepository;
+    private final CellVariableValueRepository cellVariableValueRepository;
+    private final MapJournal journal;
+    private final MapCacheReconciler reconciler;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ThreadPoolExecutor executor;
+    private final int compactLayoutMinCells;
+    private final int operationLogCapacity;
+
+    public MapCacheLoader(DungeonMapRepository mapRepository,
+                          GridCellDataRepository cellRepository,
+                          MapVariableRepository variableRepository,
+                          PicklistValueRepository picklistValueRepository,
+                          CellVariableValueRepository cellVariableValueRepository,
+                          MapJournal journal,
+                          MapCacheReconciler reconciler,
+                          PlatformTransactionManager transactionManager,
+                          @Value("${app.map-cache.loader-threads:2}") int loaderThreads,
+                          @Value("${app.map-cache.loader-queue-capacity:64}") int queueCapacity,
+                          @Value("${app.map-cache.compact-layout-min-cells:20000}") int compactLayoutMinCells,
+                          @Value("${app.map-cache.operation-log-capacity:1024}") int operationLogCapacity) {
+        this.mapRepository = mapRepository;
+        this.cellRepository = cellRepository;
+        this.variableRepository = variableRepository;
+        this.picklistValueRepository = picklistValueRepository;
+        this.cellVariableValueRepository = cellVariableValueRepository;
+        this.journal = journal;
+        this.reconciler = reconciler;
+        this.compactLayoutMinCells = compactLayoutMinCells;
+        this.operationLogCapacity = operationLogCapacity;
+
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(loaderThreads, loaderThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "map-cache-loader-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    public CompletableFuture<MapCache> loadAsync(Long mapId) {
+        try {
+            return CompletableFuture.supplyAsync(() -> load(mapId), executor);
+        } catch (RejectedExecutionException e) {
+            log.warn("Map cache loader queue full, rejecting load of map {}", mapId);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    public MapCache load(Long mapId) {
+        return readOnlyTransaction.execute(status -> doLoad(mapId));
+    }
+
+    public void release(MapCache cache) {
+        journal.detach(cache);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private MapCache doLoad(Long mapId) {
+        long start = System.nanoTime();
+        LocalDateTime loadedThrough = LocalDateTime.now();
+        int queries = 0;
+
+        DungeonMap map = mapRepository.findById(mapId).orElseThrow();
+        queries++;
+
+        MapCache cache = journal.restore(mapId, expectedCells -> newCache(map, expectedCells));
+        boolean restored = cache != null;
+        if (!restored) {
+            List<GridCellData> cells = cellRepository.findByMapId(mapId);
+            queries++;
+            cache = newCache(map, cells.size());
+            cells.forEach(cache::putCell);
+        }
+
+        List<MapVariable> variables = variableRepository.findByMapIdOrderBySortOrder(mapId);
+        queries++;
+        if (restored) dropValuesOfDeletedVariables(cache, variables);
+        cache.setVariables(variables);
+
+        List<String> picklistVariableIds = variables.stream()
+                .filter(v -> "PICKLIST".equals(v.getDataType()))
+                .map(MapVariable::getId)
+                .toList();
+        int picklistCount = 0;
+        if (!picklistVariableIds.isEmpty()) {
+            List<PicklistValue> picklistValues =
+                    picklistValueRepository.findByVariableIdInOrderBySortOrder(picklistVariableIds);
+            queries++;
+            picklistCount = picklistValues.size();
+
+            Map<String, List<PicklistValue>> byVariable = new HashMap<>();
+            for (PicklistValue pv : picklistValues) {
+                byVariable.computeIfAbsent(pv.getVariableId(), k -> new ArrayList<>()).add(pv);
+            }
+            for (String variableId : picklistVariableIds) {
+                cache.setPicklistValues(variableId, byVariable.getOrDefault(variableId, List.of()));
+            }
+        }
+
+        if (!restored && cache.getCellCount() > 0) {
+            List<CellVariableValue> values = cellVariableValueRepository.findByMapId(mapId);
+            queries++;
+
+            Map<Long, List<CellVariableValue>> byCell = new HashMap<>();
+            for (CellVariableValue cvv : values) {
+                byCell.computeIfAbsent(cvv.getCellId(), k -> new ArrayList<>()).add(cvv);
+            }
+            byCell.forEach(cache::setCellVariableValues);
+        }
+
+        if (restored) {
+            // Catches up on anything written to Postgres since the snapshot's watermark, including
+            // values deleted while the map was evicted or whose removal was lost with a torn tail.
+            MapCacheReconciler.Result result = reconciler.reconcile(cache);
+            log.debug("Reconciled restored map {}: {} rows scanned, {} corrections",
+                    mapId, result.rowsScanned(), result.corrections());
+        } else {
+            cache.setReconciledThrough(loadedThrough);
+            journal.attach(cache);
+        }
+
+        long durationMillis = (System.nanoTime() - start) / 1_000_000;
+        MapLoadStats stats = new MapLoadStats(mapId, cache.getCellCount(), variables.size(), picklistCount,
+                cache.getCellVariableValueCount(), queries, durationMillis, Instant.now());
+        cache.setLoadStats(stats);
+
+        log.info("{} map {} into {} cache in {} ms: {} cells, {} variables, {} picklist values, {} cell values ({} queries)",
+                restored ? "Restored" : "Loaded", mapId, cache.getLayout(), durationMillis, stats.cells(),
+                stats.variables(), stats.picklistValues(), stats.cellVariableValues(), queries);
+        return cache;
+    }
+
+    /**
+     * Deleting a variable deletes its values without tombstones, so values a snapshot holds for a
+     * variable deleted since cannot be reconciled away and are dropped here instead.
+     */
+    private static void dropValuesOfDeletedVariables(MapCache cache, List<MapVariable> variables) {
+        Set<String> live = new HashSet<>();
+        variables.forEach(v -> live.add(v.getId()));
+        Set<String> deleted = new HashSet<>();
+        for (GridCellData cell : cache.getCells()) {
+            for (CellVariableValue cvv : cache.getCellVariableValuesForCell(cell.getId())) {
+                if (!live.contains(cvv.getVariableId())) deleted.add(cvv.getVariableId());
+            }
+        }
+        deleted.forEach(cache::removeCellVariableValuesByVariableId);
+    }
+
+    private MapCache newCache(DungeonMap map, int expectedCells) {
+        MapCache.CellLayout layout = expectedCells >= compactLayoutMinCells
+                ? MapCache.CellLayout.COMPACT
+                : MapCache.CellLayout.ENTITY;
+        return new MapCache(map, layout, expectedCells, operationLogCapacity);
+    }
+}
@@ -0,0 +1,229 @@
+package org.dungeonmaps.websocket;
+
+import org.dungeonmaps.model.*;
+import org.dungeonmaps.repository.*;
+import org.dungeonmaps.service.HybridLogicalClock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+
+@Component
+public class MapCacheReconciler {
+
+    private static final Logger log = LoggerFactory.getLogger(MapCacheReconciler.class);
+
+    public record Result(int rowsScanned, int corrections) {
+    }
+
+    private final DungeonMapRepository mapRepository;
+    private final GridCellDataRepository cellRepository;
+    private final MapVariableRepository variableRepository;
+    private final PicklistValueRepository picklistValueRepository;
+    private final CellVariableValueRepository cellVariableValueRepository;
+    private final CellVariableTombstoneRepository tombstoneRepository;
+    private final CellWriteBehind cellWriteBehind;
+    private final Duration overlap;
+
+    public MapCacheReconciler(DungeonMapRepository mapRepository,
+                              GridCellDataRepository cellRepository,
+                              MapVariableRepository variableRepository,
+                              PicklistValueRepository picklistValueRepository,
+                              CellVariableValueRepository cellVariableValueRepository,
+                              CellVariableTombstoneRepository tombstoneRepository,
+                              CellWriteBehind cellWriteBehind,
+                              @Value("${app.map-cache.reconcile-overlap-ms:5000}") long overlapMillis) {
+        this.mapRepository = mapRepository;
+        this.cellRepository = cellRepository;
+        this.variableRepository = variableRepository;
+        this.picklistValueRepository = picklistValueRepository;
+        this.cellVariableValueRepository = cellVariableValueRepository;
+        this.tombstoneRepository = tombstoneRepository;
+        this.cellWriteBehind = cellWriteBehind;
+        this.overlap = Duration.ofMillis(overlapMillis);
+    }
+
+    public Result reconcile(MapCache cache) {
+        LocalDateTime passStart = LocalDateTime.now();
+        LocalDateTime watermark = cache.getReconciledThrough();
+        LocalDateTime since = watermark != null ? watermark.minus(overlap) : LocalDateTime.MIN;
+        Long mapId = cache.getMapData().getId();
+        int[] rows = new int[1];
+        int corrections = 0;
+
+        Optional<DungeonMap> dbMap = mapRepository.findById(mapId);
+        rows[0]++;
+        if (dbMap.isPresent() && !mapsEqual(cache.getMapData(), dbMap.get())) {
+            log.warn("Cache/DB mismatch for map {}, correcting", mapId);
+            cache.setMapData(dbMap.get());
+            corrections++;
+        }
+
+        corrections += reconcileCells(cache, mapId, since, rows);
+        corrections += reconcileVariables(cache, mapId, since, rows);
+        corrections += reconcilePicklistValues(cache, mapId, since, rows);
+        corrections += reconcileCellVariableValues(cache, mapId, since, rows);
+        corrections += reconcileDeletedCellVariableValues(cache, mapId, watermark != null ? since : null, rows);
+
+        cache.setReconciledThrough(passStart);
+        return new Result(rows[0], corrections);
+    }
+
+    private int reconcileCells(MapCache cache, Long mapId, LocalDateTime since, int[] rows) {
+        List<GridCellData> changed = cellRepository.findByMapIdAndUpdatedAtAfter(mapId, since);
+        rows[0] += changed.size();
+        int corrections = 0;
+        for (GridCellData dbCell : changed) {
+            if (cellWriteBehind.isPending(mapId, dbCell.getRowIndex(), dbCell.getColIndex())) continue;
+            GridCellData cachedCell = cache.getCell(dbCell.getRowIndex(), dbCell.getColIndex());
+            if (cachedCell == null || !Objects.equals(cachedCell.getName(), dbCell.getName())) {
+                // The cache keeps a newer version, so a row read before a concurrent edit is not applied.
+                if (!cache.putCell(dbCell)) continue;
+                log.warn("Cache/DB cell mismatch for map {} [{},{}], correcting",
+                        mapId, dbCell.getRowIndex(), dbCell.getColIndex());
+                corrections++;
+            }
+        }
+        return corrections;
+    }
+
+    private int reconcileVariables(MapCache cache, Long mapId, LocalDateTime since, int[] rows) {
+        rows[0]++;
+        if (variableRepository.countByMapId(mapId) != cache.getVariables().size()) {
+            List<MapVariable> variables = variableRepository.findByMapIdOrderBySortOrder(mapId);
+            rows[0] += variables.size();
+            Set<String> remaining = new HashSet<>();
+            variables.forEach(v -> remaining.add(v.getId()));
+            for (MapVariable cached : cache.getVariables()) {
+                if (!remaining.contains(cached.getId())) {
+                    cache.removeCellVariableValuesByVariableId(cached.getId());
+                    cache.removeVariable(cached.getId());
+                }
+            }
+            log.warn("Cache/DB variable count mismatch for map {}, reloading {} variables", mapId, variables.size());
+            cache.setVariables(variables);
+            return 1;
+        }
+
+        List<MapVariable> changed = variableRepository.findByMapIdAndUpdatedAtAfter(mapId, since);
+        rows[0] += changed.size();
+        int corrections = 0;
+        for (MapVariable dbVariable : changed) {
+            if (!variablesEqual(cache.getVariable(dbVariable.getId()), dbVariable)) {
+                log.warn("Cache/DB variable mismatch for map {} variable {}, correcting", mapId, dbVariable.getId());
+                cache.putVariable(dbVariable);
+                corrections++;
+            }
+        }
+        return corrections;
+    }
+
+    private int reconcilePicklistValues(MapCache cache, Long mapId, LocalDateTime since, int[] rows) {
+        rows[0]++;
+        if (picklistValueRepository.countByMapId(mapId) != cache.getPicklistValueCount()) {
+            List<String> picklistVariableIds = cache.getVariables().stream()
+                    .filter(v -> "PICKLIST".equals(v.getDataType()))
+                    .map(MapVariable::getId)
+                    .toList();
+            Map<String, List<PicklistValue>> byVariable = new HashMap<>();
+            if (!picklistVariableIds.isEmpty()) {
+                for (PicklistValue pv : picklistValueRepository.findByVariableIdInOrderBySortOrder(picklistVariableIds)) {
+                    byVariable.computeIfAbsent(pv.getVariableId(), k -> new ArrayList<>()).add(pv);
+                    rows[0]++;
+                }
+            }
+            for (String variableId : picklistVariableIds) {
+                cache.setPicklistValues(variableId, byVariable.getOrDefault(variableId, List.of()));
+            }
+            log.warn("Cache/DB picklist count mismatch for map {}, reloading picklists", mapId);
+            return 1;
+        }
+
+        List<PicklistValue> changed = picklistValueRepository.findByMapIdUpdatedAfter(mapId, since);
+        rows[0] += changed.size();
+        int corrections = 0;
+        for (PicklistValue dbValue : changed) {
+            PicklistValue cached = cache.getPicklistValuesForVariable(dbValue.getVariableId()).stream()
+                    .filter(p -> p.getId().equals(dbValue.getId()))
+                    .findFirst()
+                    .orElse(null);
+            if (!picklistValuesEqual(cached, dbValue)) {
+                cache.putPicklistValue(dbValue.getVariableId(), dbValue);
+                corrections++;
+            }
+        }
+        return corrections;
+    }
+
+    private int reconcileCellVariableValues(MapCache cache, Long mapId, LocalDateTime since, int[] rows) {
+        List<CellVariableValue> changed = cellVariableValueRepository.findByMapIdUpdatedAfter(mapId, since);
+        rows[0] += changed.size();
+        int corrections = 0;
+        for (CellVariableValue dbValue : changed) {
+            boolean matches = cache.getCellVariableValuesForCell(dbValue.getCellId()).stream()
+                    .anyMatch(v -> v.getVariableId().equals(dbValue.getVariableId())
+                            && Objects.equals(v.getValue(), dbValue.getValue()));
+            if (!matches && cache.putCellVariableValue(dbValue.getCellId(), dbValue)) {
+                corrections++;
+            }
+        }
+        return corrections;
+    }
+
+    /**
+     * Applies the tombstones written since {@code since} (all of them on the first pass), so a
+     * delete is caught even when an insert elsewhere in the map keeps the row count unchanged.
+     * The cache ignores any tombstone older than the value it holds.
+     */
+    private int reconcileDeletedCellVariableValues(MapCache cache, Long mapId, LocalDateTime since, int[] rows) {
+        long hlc = since != null
+                ? HybridLogicalClock.atMillis(since.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli())
+                : 0L;
+        List<CellVariableTombstone> deleted = tombstoneRepository.findByMapIdDeletedAfter(mapId, hlc);
+        rows[0] += deleted.size();
+        int corrections = 0;
+        for (CellVariableTombstone tombstone : deleted) {
+            if (cache.removeCellVariableValue(tombstone.getCellId(), tombstone.getVariableId(),
+                    tombstone.getVersion(), tombstone.getHlc())) {
+                corrections++;
+            }
+        }
+        return corrections;
+    }
+
+    private boolean mapsEqual(DungeonMap a, DungeonMap b) {
+        return Objects.equals(a.getName(), b.getName())
+                && Objects.equals(a.getGridType(), b.getGridType())
+                && Objects.equals(a.getGridSize(), b.getGridSize())
+                && Objects.equals(a.getGridOffsetX(), b.getGridOffsetX())
+                && Objects.equals(a.getGridOffsetY(), b.getGridOffsetY())
+                && Objects.equals(a.getGridScale(), b.getGridScale())
+                && Objects.equals(a.getGridRotation(), b.getGridRotation())
+                && Objects.equals(a.getHexOrientation(), b.getHexOrientation())
+                && Objects.equals(a.getMapOffsetX(), b.getMapOffsetX())
+                && Objects.equals(a.getMapOffsetY(), b.getMapOffsetY())
+                && Objects.equals(a.getMapScale(), b.getMapScale());
+    }
+
+    private boolean variablesEqual(MapVariable a, MapVariable b) {
+        return a != null
+                && Objects.equals(a.getName(), b.getName())
+                && Objects.equals(a.getDataType(), b.getDataType())
+                && Objects.equals(a.getDisplayFormat(), b.getDisplayFormat())
+                && Objects.equals(a.getVisibility(), b.getVisibility())
+                && a.isShowColorOnCells() == b.isShowColorOnCells()
+                && a.getSortOrder() == b.getSortOrder();
+    }
+
+    private boolean picklistValuesEqual(PicklistValue a, PicklistValue b) {
+        return a != null
+                && Objects.equals(a.getLabel(), b.getLabel())
+                && Objects.equals(a.getColor(), b.getColor())
+                && a.getSortOrder() == b.getSortOrder();
+    }
+}
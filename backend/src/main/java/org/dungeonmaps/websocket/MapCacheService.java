@@ -1,93 +1,324 @@
 package org.dungeonmaps.websocket;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.dungeonmaps.model.*;
-import org.dungeonmaps.model.MapMembership.MapRole;
-import org.dungeonmaps.repository.*;
+import org.dungeonmaps.service.HybridLogicalClock;
+import org.dungeonmaps.service.VersionedWrite;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 @Service
 public class MapCacheService {
 
     private static final Logger log = LoggerFactory.getLogger(MapCacheService.class);
+    private static final byte[] OPS_FIELD = ",\"ops\":[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] COMMA = {','};
+    private static final byte[] CLOSE_ARRAY_AND_OBJECT = {']', '}'};
 
-    private final ConcurrentHashMap<Long, MapCache> caches = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, CompletableFuture<MapCache>> caches = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Long> idleSince = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, AtomicInteger> accessFrequency = new ConcurrentHashMap<>();
+    private final AtomicLong cachedWeight = new AtomicLong();
 
-    private final DungeonMapRepository mapRepository;
-    private final GridCellDataRepository cellRepository;
-    private final MapVariableRepository variableRepository;
-    private final PicklistValueRepository picklistValueRepository;
-    private final CellVariableValueRepository cellVariableValueRepository;
+    private final MapCacheLoader mapCacheLoader;
+    private final MapCacheReconciler reconciler;
     private final SimpMessagingTemplate messagingTemplate;
     private final SessionRegistry sessionRegistry;
-
-    public MapCacheService(DungeonMapRepository mapRepository,
-                           GridCellDataRepository cellRepository,
-                           MapVariableRepository variableRepository,
-                           PicklistValueRepository picklistValueRepository,
-                           CellVariableValueRepository cellVariableValueRepository,
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter messageWriter;
+    private final ObjectWriter cborWriter;
+    private final BroadcastBatcher batcher;
+    private final PresenceThrottle presenceThrottle;
+    private final SyncCompressor syncCompressor;
+    private final MapEventRelay relay;
+    private final ClusterMembership cluster;
+    private final HybridLogicalClock clock;
+    private final String instanceId = UUID.randomUUID().toString();
+    private final long idleTtlMillis;
+    private final long maxWeight;
+    private final long tombstoneRetentionMillis;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter idleEvictions;
+    private final Counter budgetEvictions;
+    private final Counter rebalanceEvictions;
+    private final Timer successfulLoads;
+    private final Timer failedLoads;
+    private final Timer reconcileDuration;
+    private final DistributionSummary reconcileRows;
+    private final Counter reconcileCorrections;
+
+    public MapCacheService(MapCacheLoader mapCacheLoader,
+                           MapCacheReconciler reconciler,
                            SimpMessagingTemplate messagingTemplate,
-                           SessionRegistry sessionRegistry) {
-        this.mapRepository = mapRepository;
-        this.cellRepository = cellRepository;
-        this.variableRepository = variableRepository;
-        this.picklistValueRepository = picklistValueRepository;
-        this.cellVariableValueRepository = cellVariableValueRepository;
+                           SessionRegistry sessionRegistry,
+                           ObjectMapper objectMapper,
+                           SyncCompressor syncCompressor,
+                           MapEventRelay relay,
+                           ClusterMembership cluster,
+                           HybridLogicalClock clock,
+                           MeterRegistry meterRegistry,
+                           @Value("${app.map-cache.idle-ttl-seconds:300}") long idleTtlSeconds,
+                           @Value("${app.map-cache.max-weight:5000000}") long maxWeight,
+                           @Value("${app.map-cache.tombstone-retention-ms:300000}") long tombstoneRetentionMillis,
+                           @Value("${app.broadcast.batch-window-ms:16}") long batchWindowMillis,
+                           @Value("${app.broadcast.presence-tick-ms:50}") long presenceTickMillis) {
+        this.mapCacheLoader = mapCacheLoader;
+        this.reconciler = reconciler;
         this.messagingTemplate = messagingTemplate;
         this.sessionRegistry = sessionRegistry;
+        this.objectMapper = objectMapper;
+        this.syncCompressor = syncCompressor;
+        this.relay = relay;
+        this.cluster = cluster;
+        this.clock = clock;
+        this.messageWriter = objectMapper.writerFor(MapMessage.class);
+        this.cborWriter = objectMapper.copyWith(new CBORFactory()).writerFor(MapMessage.class);
+        this.batcher = new BroadcastBatcher(this::sendWire, batchWindowMillis, meterRegistry);
+        this.presenceThrottle = new PresenceThrottle((mapId, messages) -> {
+            sendPresence(mapId, messages, true);
+            messages.forEach(message -> relay.publish(new MapEvent(instanceId, mapId, null, null, message)));
+        }, presenceTickMillis);
+        this.idleTtlMillis = TimeUnit.SECONDS.toMillis(idleTtlSeconds);
+        this.maxWeight = maxWeight;
+        this.tombstoneRetentionMillis = tombstoneRetentionMillis;
+
+        this.hits = Counter.builder("map.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("map.cache.requests").tag("result", "miss").register(meterRegistry);
+        this.idleEvictions = Counter.builder("map.cache.evictions").tag("cause", "idle").register(meterRegistry);
+        this.budgetEvictions = Counter.builder("map.cache.evictions").tag("cause", "budget").register(meterRegistry);
+        this.rebalanceEvictions = Counter.builder("map.cache.evictions").tag("cause", "rebalance").register(meterRegistry);
+        this.successfulLoads = Timer.builder("map.cache.loads").tag("result", "success").register(meterRegistry);
+        this.failedLoads = Timer.builder("map.cache.loads").tag("result", "failure").register(meterRegistry);
+        this.reconcileDuration = Timer.builder("map.cache.reconcile.duration").register(meterRegistry);
+        this.reconcileRows = DistributionSummary.builder("map.cache.reconcile.rows").register(meterRegistry);
+        this.reconcileCorrections = Counter.builder("map.cache.reconcile.corrections").register(meterRegistry);
+        Gauge.builder("map.cache.size", caches, Map::size).register(meterRegistry);
+        Gauge.builder("map.cache.weight", cachedWeight, AtomicLong::get).register(meterRegistry);
     }
 
-    public MapCache getOrLoad(Long mapId) {
-        return caches.computeIfAbsent(mapId, id -> {
-            DungeonMap map = mapRepository.findById(id).orElseThrow();
-            MapCache cache = new MapCache(map);
-
-            List<GridCellData> cells = cellRepository.findByMapId(id);
-            cells.forEach(cache::putCell);
-
-            List<MapVariable> variables = variableRepository.findByMapIdOrderBySortOrder(id);
-            cache.setVariables(variables);
-            for (MapVariable v : variables) {
-                if ("PICKLIST".equals(v.getDataType())) {
-                    cache.setPicklistValues(v.getId(), picklistValueRepository.findByVariableIdOrderBySortOrder(v.getId()));
-                }
+    @PostConstruct
+    public void subscribe() {
+        relay.subscribe(new MapEventRelay.Listener() {
+            @Override
+            public void onEvent(MapEvent event) {
+                if (!instanceId.equals(event.origin())) receive(event);
             }
 
-            for (GridCellData cell : cells) {
-                List<CellVariableValue> values = cellVariableValueRepository.findByCellId(cell.getId());
-                if (!values.isEmpty()) {
-                    cache.setCellVariableValues(cell.getId(), values);
-                }
+            @Override
+            public void onGap() {
+                reconcile();
             }
+        });
+    }
 
-            return cache;
+    public CompletableFuture<MapCache> getOrLoadAsync(Long mapId) {
+        accessFrequency.computeIfAbsent(mapId, id -> new AtomicInteger()).incrementAndGet();
+        CompletableFuture<MapCache> existing = caches.get(mapId);
+        if (existing != null) {
+            hits.increment();
+            return existing;
+        }
+
+        CompletableFuture<MapCache> pending = new CompletableFuture<>();
+        existing = caches.putIfAbsent(mapId, pending);
+        if (existing != null) {
+            hits.increment();
+            return existing;
+        }
+        misses.increment();
+
+        long start = System.nanoTime();
+        mapCacheLoader.loadAsync(mapId).whenComplete((cache, error) -> {
+            long elapsed = System.nanoTime() - start;
+            if (error != null) {
+                failedLoads.record(elapsed, TimeUnit.NANOSECONDS);
+                pending.completeExceptionally(error);
+                caches.computeIfPresent(mapId, (id, current) -> current.isCompletedExceptionally() ? null : current);
+            } else {
+                successfulLoads.record(elapsed, TimeUnit.NANOSECONDS);
+                pending.complete(cache);
+            }
+        });
+        return pending;
+    }
+
+    public MapCache getOrLoad(Long mapId) {
+        return getOrLoadAsync(mapId).join();
+    }
+
+    /**
+     * Returns the cached map without waiting for a load. While the map is not loaded this
+     * returns {@code null} and starts the load.
+     */
+    public MapCache getLoadedOrPreload(Long mapId) {
+        MapCache cache = getIfLoaded(mapId);
+        if (cache == null) preload(mapId);
+        return cache;
+    }
+
+    public void preload(Long mapId) {
+        getOrLoadAsync(mapId).exceptionally(error -> {
+            log.warn("Failed to preload map {} into cache", mapId, error);
+            return null;
         });
     }
 
     public void evictIfEmpty(Long mapId) {
-        if (!sessionRegistry.hasActiveSessionsForMap(mapId)) {
-            caches.remove(mapId);
+        if (sessionRegistry.hasActiveSessionsForMap(mapId)) return;
+        if (idleTtlMillis <= 0) {
+            evict(mapId, idleEvictions);
+        } else {
+            idleSince.put(mapId, System.currentTimeMillis());
         }
     }
 
-    public void updateCell(GridCellData saved) {
-        MapCache cache = caches.get(saved.getMapId());
-        if (cache != null) {
-            cache.putCell(saved);
+    @Scheduled(fixedDelayString = "${app.map-cache.eviction-interval-ms:30000}")
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        long tombstoneCutoff = HybridLogicalClock.atMillis(now - tombstoneRetentionMillis);
+        long totalWeight = 0;
+        List<Long> idle = new ArrayList<>();
+
+        for (Long mapId : caches.keySet()) {
+            MapCache cache = getIfLoaded(mapId);
+            if (cache == null) continue;
+            cache.pruneTombstones(tombstoneCutoff);
+            if (sessionRegistry.hasActiveSessionsForMap(mapId)) {
+                idleSince.remove(mapId);
+            } else if (!cluster.isAssigned(mapId)) {
+                evict(mapId, rebalanceEvictions);
+                continue;
+            } else {
+                long since = idleSince.computeIfAbsent(mapId, id -> now);
+                if (now - since >= idleTtlMillis) {
+                    evict(mapId, idleEvictions);
+                    continue;
+                }
+                idle.add(mapId);
+            }
+            totalWeight += cache.getWeight();
         }
+
+        if (totalWeight > maxWeight) {
+            idle.sort(Comparator.<Long>comparingInt(this::frequency)
+                    .thenComparingLong(mapId -> idleSince.getOrDefault(mapId, now)));
+            for (Long mapId : idle) {
+                if (totalWeight <= maxWeight) break;
+                MapCache cache = getIfLoaded(mapId);
+                if (cache == null) continue;
+                totalWeight -= cache.getWeight();
+                evict(mapId, budgetEvictions);
+            }
+            if (totalWeight > maxWeight) {
+                log.warn("Map caches weigh {} with only active maps left, over budget of {}", totalWeight, maxWeight);
+            }
+        }
+        cachedWeight.set(totalWeight);
+
+        accessFrequency.entrySet().removeIf(e ->
+                e.getValue().updateAndGet(f -> f >> 1) == 0 && !caches.containsKey(e.getKey()));
+    }
+
+    private int frequency(Long mapId) {
+        AtomicInteger frequency = accessFrequency.get(mapId);
+        return frequency != null ? frequency.get() : 0;
+    }
+
+    private void evict(Long mapId, Counter cause) {
+        idleSince.remove(mapId);
+        CompletableFuture<MapCache> removed = caches.remove(mapId);
+        if (removed != null) {
+            cause.increment();
+            removed.thenAccept(mapCacheLoader::release);
+            log.debug("Evicted map {} from cache", mapId);
+        }
+    }
+
+    private MapCache getIfLoaded(Long mapId) {
+        CompletableFuture<MapCache> future = caches.get(mapId);
+        if (future == null || !future.isDone() || future.isCompletedExceptionally()) return null;
+        return future.join();
+    }
+
+    /**
+     * Applies {@code action} to the cached map, or, while it is still loading, chains it onto the
+     * map's entry so that updates arriving during a load are applied in arrival order once it
+     * completes. Callers of {@link #getOrLoadAsync} then see the cache only after those updates.
+     */
+    private void withCache(Long mapId, Consumer<MapCache> action) {
+        CompletableFuture<MapCache> future = caches.get(mapId);
+        if (future == null) return;
+        if (future.isDone()) {
+            if (!future.isCompletedExceptionally()) action.accept(future.join());
+            return;
+        }
+        caches.computeIfPresent(mapId, (id, current) -> current.thenApply(cache -> {
+            try {
+                action.accept(cache);
+            } catch (RuntimeException e) {
+                log.error("Failed to apply an update queued during the load of map {}", mapId, e);
+            }
+            return cache;
+        }));
+    }
+
+    public GridCellData getCachedCell(Long mapId, int row, int col) {
+        MapCache cache = getIfLoaded(mapId);
+        return cache != null ? cache.getCell(row, col) : null;
+    }
+
+    public MapVariable getCachedVariable(Long mapId, String variableId) {
+        MapCache cache = getIfLoaded(mapId);
+        return cache != null ? cache.getVariable(variableId) : null;
+    }
+
+    public void updateCell(GridCellData saved) {
+        withCache(saved.getMapId(), cache -> cache.putCell(saved));
+    }
+
+    /**
+     * Replaces the cached cell only if it is still at {@code expectedVersion}. Returns
+     * {@code false} if the map is not loaded or the cell has changed.
+     */
+    public boolean replaceCachedCell(GridCellData cell, long expectedVersion) {
+        MapCache cache = getIfLoaded(cell.getMapId());
+        return cache != null && cache.replaceCell(cell, expectedVersion);
     }
 
     public void updateMapField(Long mapId, String field, Object value) {
-        MapCache cache = caches.get(mapId);
-        if (cache == null) return;
+        withCache(mapId, cache -> cache.updateMapData(map -> applyMapField(map, field, value)));
+    }
 
-        DungeonMap map = cache.getMapData();
+    private void applyMapField(DungeonMap map, String field, Object value) {
         switch (field) {
             case "name" -> map.setName((String) value);
             case "gridType" -> map.setGridType((String) value);
@@ -106,256 +337,638 @@ public class MapCacheService {
 
     public void broadcastCellUpdate(GridCellData saved, Long senderId) {
         Long mapId = saved.getMapId();
-        Map<String, Object> fieldFlags = new HashMap<>();
-        fieldFlags.put("isDmOnly", false);
-        fieldFlags.put("isReadOnly", false);
-
-        Map<String, Object> message = new HashMap<>();
-        message.put("type", "CELL_UPDATE");
-        message.put("mapId", mapId);
-        message.put("row", saved.getRowIndex());
-        message.put("col", saved.getColIndex());
-        message.put("field", "name");
-        message.put("fieldFlags", fieldFlags);
-        message.put("value", saved.getName() != null ? saved.getName() : "");
-        message.put("userId", senderId);
+        MapMessage message = new MapMessage.CellUpdate(mapId, saved.getId(), saved.getRowIndex(), saved.getColIndex(), "name",
+                MapMessage.FieldFlags.EDITABLE, saved.getName() != null ? saved.getName() : "",
+                VersionedWrite.versionOf(saved.getVersion()), saved.getHlc(), senderId);
+        publishToTile(mapId, saved.getRowIndex(), saved.getColIndex(), message);
+    }
 
-        messagingTemplate.convertAndSend("/topic/map/" + mapId, message);
+    public void broadcastCellConflict(GridCellData current, Long userId) {
+        Long mapId = current.getMapId();
+        MapMessage message = new MapMessage.CellConflict(mapId, current.getId(), current.getRowIndex(),
+                current.getColIndex(), "name", null, current.getName() != null ? current.getName() : "", false,
+                VersionedWrite.versionOf(current.getVersion()), current.getHlc(), userId);
+        publishToTile(mapId, current.getRowIndex(), current.getColIndex(), message);
     }
 
     public void broadcastMapUpdate(Long mapId, String field, Object value, Long senderId) {
-        Map<String, Object> fieldFlags = new HashMap<>();
-        fieldFlags.put("isDmOnly", false);
-        fieldFlags.put("isReadOnly", false);
-
-        Map<String, Object> message = new HashMap<>();
-        message.put("type", "MAP_UPDATE");
-        message.put("mapId", mapId);
-        message.put("field", field);
-        message.put("fieldFlags", fieldFlags);
-        message.put("value", value != null ? value : "");
-        message.put("userId", senderId);
-
-        messagingTemplate.convertAndSend("/topic/map/" + mapId, message);
+        publish(mapId, new MapMessage.MapUpdate(mapId, field, MapMessage.FieldFlags.EDITABLE,
+                value != null ? value : "", senderId), Audience.PLAYER);
     }
 
     public void broadcastVariableCreated(Long mapId, MapVariable variable, Long senderId) {
-        MapCache cache = caches.get(mapId);
-        if (cache != null) cache.putVariable(variable);
-
-        Map<String, Object> message = new HashMap<>();
-        message.put("type", "VARIABLE_CREATED");
-        message.put("mapId", mapId);
-        message.put("variable", variableToMapWithPicklistValues(mapId, variable));
-        message.put("userId", senderId);
-
-        broadcastFilteredByRole(mapId, message, variable.getVisibility());
+        withCache(mapId, cache -> cache.putVariable(variable));
+        publish(mapId, new MapMessage.VariableCreated(mapId, variableView(mapId, variable), senderId),
+                audienceFor(variable.getVisibility()));
     }
 
     public void broadcastVariableUpdated(Long mapId, MapVariable variable, Long senderId) {
-        MapCache cache = caches.get(mapId);
-        if (cache != null) cache.putVariable(variable);
-
-        Map<String, Object> message = new HashMap<>();
-        message.put("type", "VARIABLE_UPDATED");
-        message.put("mapId", mapId);
-        message.put("variable", variableToMapWithPicklistValues(mapId, variable));
-        message.put("userId", senderId);
-
-        broadcastFilteredByRole(mapId, message, variable.getVisibility());
+        withCache(mapId, cache -> cache.putVariable(variable));
+        publish(mapId, new MapMessage.VariableUpdated(mapId, variableView(mapId, variable), senderId),
+                audienceFor(variable.getVisibility()));
     }
 
     public void broadcastVariableDeleted(Long mapId, String variableId, Long senderId) {
-        MapCache cache = caches.get(mapId);
-        if (cache != null) {
+        withCache(mapId, cache -> {
             cache.removeCellVariableValuesByVariableId(variableId);
             cache.removeVariable(variableId);
-        }
+        });
+        publish(mapId, new MapMessage.VariableDeleted(mapId, variableId, senderId), Audience.PLAYER);
+    }
 
-        Map<String, Object> message = new HashMap<>();
-        message.put("type", "VARIABLE_DELETED");
-        message.put("mapId", mapId);
-        message.put("variableId", variableId);
-        message.put("userId", senderId);
+    public void broadcastPicklistValueAdded(Long mapId, String variableId, PicklistValue pv, Long senderId) {
+        withCache(mapId, cache -> cache.putPicklistValue(variableId, pv));
+        publish(mapId, new MapMessage.PicklistValueAdded(mapId, variableId,
+                MapMessage.PicklistValueView.of(pv), senderId), Audience.PLAYER);
+    }
 
-        messagingTemplate.convertAndSend("/topic/map/" + mapId, message);
+    public void broadcastPicklistValueUpdated(Long mapId, String variableId, PicklistValue pv, Long senderId) {
+        withCache(mapId, cache -> cache.putPicklistValue(variableId, pv));
+        publish(mapId, new MapMessage.PicklistValueUpdated(mapId, variableId,
+                MapMessage.PicklistValueView.of(pv), senderId), Audience.PLAYER);
     }
 
-    public void broadcastPicklistValueAdded(Long mapId, String variableId, PicklistValue pv, Long senderId) {
-        MapCache cache = caches.get(mapId);
-        if (cache != null) cache.putPicklistValue(variableId, pv);
+    public void broadcastPicklistValueDeleted(Long mapId, String variableId, String picklistValueId, Long senderId) {
+        withCache(mapId, cache -> cache.removePicklistValue(variableId, picklistValueId));
+        publish(mapId, new MapMessage.PicklistValueDeleted(mapId, variableId, picklistValueId, senderId),
+                Audience.PLAYER);
+    }
 
-        Map<String, Object> message = new HashMap<>();
-        message.put("type", "PICKLIST_VALUE_ADDED");
-        message.put("mapId", mapId);
-        message.put("variableId", variableId);
-        message.put("picklistValue", picklistValueToMap(pv));
-        message.put("userId", senderId);
+    /**
+     * Applies and broadcasts a stored value. A {@code null} value clears it.
+     */
+    public void broadcastCellVariableUpdate(Long mapId, Integer row, Integer col, MapVariable variable,
+                                            CellVariableValue saved, Long senderId) {
+        String variableId = variable.getId();
+        String value = saved.getValue();
+        long version = VersionedWrite.versionOf(saved.getVersion());
+        withCache(mapId, cache -> applyCellVariableValue(cache, row, col, variableId, value, version, saved.getHlc()));
+
+        MapMessage message = new MapMessage.CellVariableUpdate(mapId, row, col, variableId, fieldFlags(variable),
+                value != null ? value : "", value == null, version, saved.getHlc(), senderId);
+        publishCellVariable(mapId, row, col, variable, message);
+    }
 
-        messagingTemplate.convertAndSend("/topic/map/" + mapId, message);
+    public void broadcastCellVariableConflict(Long mapId, Integer row, Integer col, MapVariable variable,
+                                              CellVariableValue current, Long userId) {
+        String value = current.getValue();
+        long version = VersionedWrite.versionOf(current.getVersion());
+        withCache(mapId, cache -> applyCellVariableValue(cache, row, col, variable.getId(), value, version,
+                current.getHlc()));
+        MapMessage message = new MapMessage.CellConflict(mapId, current.getCellId(), row, col, "variable",
+                variable.getId(), value != null ? value : "", value == null, version, current.getHlc(), userId);
+        publishCellVariable(mapId, row, col, variable, message);
     }
 
-    public void broadcastPicklistValueUpdated(Long mapId, String variableId, PicklistValue pv, Long senderId) {
-        MapCache cache = caches.get(mapId);
-        if (cache != null) cache.putPicklistValue(variableId, pv);
+    /**
+     * Applies and broadcasts a bulk edit of one variable. {@code changed} holds the stored value
+     * or tombstone of every cell that changed, and {@code cells} at least those cells. Tile
+     * subscribers get one message per tile.
+     */
+    public void broadcastCellVariableBulkUpdate(Long mapId, MapVariable variable, String value,
+                                                List<GridCellData> cells, List<CellVariableValue> changed,
+                                                Long senderId) {
+        if (changed.isEmpty()) return;
+        Map<Long, GridCellData> cellsById = new HashMap<>();
+        for (GridCellData cell : cells) cellsById.put(cell.getId(), cell);
+        long hlc = changed.get(0).getHlc();
+
+        Map<Long, List<GridCellData>> byTile = new LinkedHashMap<>();
+        Map<Long, Long> versions = new HashMap<>();
+        boolean dmOnly = "DM_ONLY".equals(variable.getVisibility());
+        for (CellVariableValue cvv : changed) {
+            GridCellData cell = cellsById.get(cvv.getCellId());
+            long tile = dmOnly ? 0L : MapCache.cellKey(MapCache.tileOf(cell.getRowIndex()), MapCache.tileOf(cell.getColIndex()));
+            byTile.computeIfAbsent(tile, k -> new ArrayList<>()).add(cell);
+            versions.put(cell.getId(), VersionedWrite.versionOf(cvv.getVersion()));
+        }
 
-        Map<String, Object> message = new HashMap<>();
-        message.put("type", "PICKLIST_VALUE_UPDATED");
-        message.put("mapId", mapId);
-        message.put("variableId", variableId);
-        message.put("picklistValue", picklistValueToMap(pv));
-        message.put("userId", senderId);
+        withCache(mapId, cache -> {
+            for (CellVariableValue cvv : changed) {
+                GridCellData cell = cellsById.get(cvv.getCellId());
+                applyBulkValue(cache, cell.getId(), cell.getRowIndex(), cell.getColIndex(), variable.getId(), value,
+                        versions.get(cell.getId()), hlc);
+            }
+        });
 
-        messagingTemplate.convertAndSend("/topic/map/" + mapId, message);
+        for (List<GridCellData> tileCells : byTile.values()) {
+            int n = tileCells.size();
+            long[] cellIds = new long[n];
+            int[] rows = new int[n];
+            int[] cols = new int[n];
+            long[] cellVersions = new long[n];
+            for (int i = 0; i < n; i++) {
+                GridCellData cell = tileCells.get(i);
+                cellIds[i] = cell.getId();
+                rows[i] = cell.getRowIndex();
+                cols[i] = cell.getColIndex();
+                cellVersions[i] = versions.get(cell.getId());
+            }
+            MapMessage message = new MapMessage.CellVariableBulkUpdate(mapId, variable.getId(), fieldFlags(variable),
+                    value != null ? value : "", value == null, hlc, cellIds, rows, cols, cellVersions, senderId);
+            publishCellVariable(mapId, rows[0], cols[0], variable, message);
+        }
     }
 
-    public void broadcastPicklistValueDeleted(Long mapId, String variableId, String picklistValueId, Long senderId) {
-        MapCache cache = caches.get(mapId);
-        if (cache != null) cache.removePicklistValue(variableId, picklistValueId);
-
-        Map<String, Object> message = new HashMap<>();
-        message.put("type", "PICKLIST_VALUE_DELETED");
-        message.put("mapId", mapId);
-        message.put("variableId", variableId);
-        message.put("picklistValueId", picklistValueId);
-        message.put("userId", senderId);
-
-        messagingTemplate.convertAndSend("/topic/map/" + mapId, message);
-    }
-
-    public void broadcastCellVariableUpdate(Long mapId, Integer row, Integer col,
-                                            String variableId, String value,
-                                            MapVariable variable, Long senderId) {
-        MapCache cache = caches.get(mapId);
-        if (cache != null) {
-            GridCellData cell = cache.getCell(row, col);
-            if (cell != null) {
-                if (value == null) {
-                    cache.removeCellVariableValue(cell.getId(), variableId);
-                } else {
-                    CellVariableValue cvv = new CellVariableValue();
-                    cvv.setCellId(cell.getId());
-                    cvv.setVariableId(variableId);
-                    cvv.setValue(value);
-                    cache.putCellVariableValue(cell.getId(), cvv);
-                }
-            }
+    /**
+     * Bulk edits can create cells, so a cell missing from the cache is added before the value.
+     */
+    private static void applyBulkValue(MapCache cache, long cellId, int row, int col, String variableId,
+                                       String value, long version, long hlc) {
+        if (cache.getCell(row, col) == null) {
+            cache.putCell(relayedCell(cache.getMapData().getId(), cellId, row, col, null, 0L, 0L));
         }
+        applyCellVariableValue(cache, row, col, variableId, value, version, hlc);
+    }
+
+    private static MapMessage.FieldFlags fieldFlags(MapVariable variable) {
+        return new MapMessage.FieldFlags("DM_ONLY".equals(variable.getVisibility()),
+                "PLAYER_READ".equals(variable.getVisibility()));
+    }
+
+    private void publishCellVariable(Long mapId, int row, int col, MapVariable variable, MapMessage message) {
+        if ("DM_ONLY".equals(variable.getVisibility())) {
+            publish(mapId, message, Audience.DM);
+        } else {
+            publishToTile(mapId, row, col, message);
+        }
+    }
 
-        boolean isDmOnly = "DM_ONLY".equals(variable.getVisibility());
-        Map<String, Object> fieldFlags = new HashMap<>();
-        fieldFlags.put("isDmOnly", isDmOnly);
-        fieldFlags.put("isReadOnly", "PLAYER_READ".equals(variable.getVisibility()));
+    private static void applyCellVariableValue(MapCache cache, int row, int col, String variableId, String value,
+                                               long version, long hlc) {
+        GridCellData cell = cache.getCell(row, col);
+        if (cell == null) return;
+        if (value == null) {
+            cache.removeCellVariableValue(cell.getId(), variableId, version, hlc);
+        } else {
+            CellVariableValue cvv = new CellVariableValue();
+            cvv.setCellId(cell.getId());
+            cvv.setVariableId(variableId);
+            cvv.setValue(value);
+            cvv.setVersion(version);
+            cvv.setHlc(hlc);
+            cache.putCellVariableValue(cell.getId(), cvv);
+        }
+    }
+
+    private static Audience audienceFor(String visibility) {
+        return "DM_ONLY".equals(visibility) ? Audience.DM : Audience.PLAYER;
+    }
+
+    private void publish(Long mapId, MapMessage message, Audience audience) {
+        publish(mapId, message, audience, "/topic/map/" + mapId + "/shared");
+    }
 
-        Map<String, Object> message = new HashMap<>();
-        message.put("type", "CELL_VARIABLE_UPDATE");
-        message.put("mapId", mapId);
-        message.put("row", row);
-        message.put("col", col);
-        message.put("variableId", variableId);
-        message.put("fieldFlags", fieldFlags);
-        message.put("value", value != null ? value : "");
-        message.put("cleared", value == null);
-        message.put("userId", senderId);
+    private void publishToTile(Long mapId, int row, int col, MapMessage message) {
+        publish(mapId, message, Audience.PLAYER, tileDestination(mapId, MapCache.tileOf(row), MapCache.tileOf(col)));
+    }
 
-        broadcastFilteredByRole(mapId, message, variable.getVisibility());
+    private void publish(Long mapId, MapMessage message, Audience audience, String scopedDestination) {
+        publishLocally(mapId, message, audience, scopedDestination);
+        relay.publish(new MapEvent(instanceId, mapId, audience, scopedDestination, message));
     }
 
-    private void broadcastFilteredByRole(Long mapId, Map<String, Object> message, String visibility) {
-        if (!"DM_ONLY".equals(visibility)) {
-            messagingTemplate.convertAndSend("/topic/map/" + mapId, message);
+    private void publishLocally(Long mapId, MapMessage message, Audience audience, String scopedDestination) {
+        byte[] payload = encode(message);
+        if (payload == null) return;
+        MapCache cache = getIfLoaded(mapId);
+        if (cache == null) {
+            deliver(mapId, new WirePayload(payload, () -> cborWriter.writeValueAsBytes(message)),
+                    audience, scopedDestination);
             return;
         }
-        for (UserSession s : sessionRegistry.getSessionsForMap(mapId)) {
-            if (s.getRole() == MapRole.OWNER || s.getRole() == MapRole.DM) {
-                messagingTemplate.convertAndSendToUser(
-                        s.getSessionId(), "/queue/map/" + mapId, message);
-            }
+        OperationLog operations = cache.getOperationLog();
+        synchronized (operations) {
+            byte[] sequenced = operations.append(audience, payload);
+            long seq = operations.lastSeq();
+            deliver(mapId, new WirePayload(sequenced,
+                            () -> CborTranscoder.withSeq(cborWriter.writeValueAsBytes(message), seq)),
+                    audience, scopedDestination);
+        }
+    }
+
+    private byte[] encode(MapMessage message) {
+        try {
+            return messageWriter.writeValueAsBytes(message);
+        } catch (JsonProcessingException e) {
+            log.error("Failed to serialize {}", message.getClass().getSimpleName(), e);
+            return null;
+        }
+    }
+
+    private WirePayload wire(MapMessage message) {
+        byte[] payload = encode(message);
+        return payload != null ? new WirePayload(payload, () -> cborWriter.writeValueAsBytes(message)) : null;
+    }
+
+    private static String tileDestination(Long mapId, int tileRow, int tileCol) {
+        return "/topic/map/" + mapId + "/tile/" + tileRow + "/" + tileCol;
+    }
+
+    /**
+     * Player messages always go to the map topic; the shared or tile copy only goes out while a
+     * session is subscribed to it.
+     */
+    private void deliver(Long mapId, WirePayload payload, Audience audience, String scopedDestination) {
+        if (audience == Audience.PLAYER) {
+            batcher.send("/topic/map/" + mapId, payload);
+            if (sessionRegistry.hasSubscribers(scopedDestination)) batcher.send(scopedDestination, payload);
+        } else {
+            batcher.send("/topic/map/" + mapId + "/dm", payload);
         }
     }
 
     public void broadcastCellNoteUpdate(Long mapId, Integer row, Integer col,
                                         String noteType, String content, Long senderId) {
-        Map<String, Object> message = new HashMap<>();
-        message.put("type", "CELL_NOTE_UPDATE");
-        message.put("mapId", mapId);
-        message.put("row", row);
-        message.put("col", col);
-        message.put("noteType", noteType);
-        message.put("content", content != null ? content : "");
-        message.put("userId", senderId);
-        messagingTemplate.convertAndSend("/topic/map/" + mapId, message);
+        publishToTile(mapId, row, col, new MapMessage.CellNoteUpdate(mapId, row, col, noteType,
+                content != null ? content : "", senderId));
     }
 
     public void broadcastMapNoteUpdate(Long mapId, String noteType, String content, Long senderId) {
-        Map<String, Object> message = new HashMap<>();
-        message.put("type", "MAP_NOTE_UPDATE");
-        message.put("mapId", mapId);
-        message.put("noteType", noteType);
-        message.put("content", content != null ? content : "");
-        message.put("userId", senderId);
-        messagingTemplate.convertAndSend("/topic/map/" + mapId, message);
+        publish(mapId, new MapMessage.MapNoteUpdate(mapId, noteType, content != null ? content : "", senderId),
+                Audience.PLAYER);
     }
 
     public void broadcastPresenceJoined(UserSession session) {
-        Map<String, Object> message = new HashMap<>();
-        message.put("type", "USER_JOINED");
-        message.put("userId", session.getUserId());
-        message.put("userName", session.getUserName());
-        message.put("color", session.getColor());
-        message.put("role", session.getRole().name());
-
-        messagingTemplate.convertAndSend("/topic/map/" + session.getMapId(), message);
+        broadcastPresence(session.getMapId(), new MapMessage.UserJoined(session.getUserId(), session.getUserName(),
+                session.getColor(), session.getRole().name()));
     }
 
     public void broadcastPresenceLeft(UserSession session) {
-        Map<String, Object> message = new HashMap<>();
-        message.put("type", "USER_LEFT");
-        message.put("userId", session.getUserId());
+        presenceThrottle.discard(session.getMapId(), session.getUserId());
+        broadcastPresence(session.getMapId(), new MapMessage.UserLeft(session.getUserId()));
+    }
+
+    public void updatePresence(UserSession session, MapMessage message) {
+        presenceThrottle.offer(session.getMapId(), session.getUserId(), message);
+    }
+
+    private void broadcastPresence(Long mapId, MapMessage message) {
+        sendPresence(mapId, List.of(message), false);
+        relay.publish(new MapEvent(instanceId, mapId, null, null, message));
+    }
+
+    private void receive(MapEvent event) {
+        MapMessage message = event.message();
+        if (cluster.isStandby(event.mapId())) {
+            idleSince.remove(event.mapId());
+            if (!caches.containsKey(event.mapId())) preload(event.mapId());
+        }
+        if (event.audience() == null) {
+            boolean droppable = !(message instanceof MapMessage.UserJoined || message instanceof MapMessage.UserLeft);
+            sendPresence(event.mapId(), List.of(message), droppable);
+            return;
+        }
+        withCache(event.mapId(), cache -> {
+            try {
+                applyRelayed(cache, message);
+            } catch (RuntimeException e) {
+                log.warn("Failed to apply relayed {} to cache of map {}",
+                        message.getClass().getSimpleName(), event.mapId(), e);
+            }
+        });
+        publishLocally(event.mapId(), message, event.audience(), event.scopedDestination());
+    }
 
-        messagingTemplate.convertAndSend("/topic/map/" + session.getMapId(), message);
+    private void applyRelayed(MapCache cache, MapMessage message) {
+        switch (message) {
+            case MapMessage.CellUpdate u -> {
+                clock.observe(u.hlc());
+                cache.putCell(relayedCell(u.mapId(), u.cellId(), u.row(), u.col(), u.value(), u.version(), u.hlc()));
+            }
+            case MapMessage.MapUpdate u -> cache.updateMapData(map -> applyMapField(map, u.field(), u.value()));
+            case MapMessage.CellVariableUpdate u -> {
+                clock.observe(u.hlc());
+                applyCellVariableValue(cache, u.row(), u.col(), u.variableId(), u.cleared() ? null : u.value(),
+                        u.version(), u.hlc());
+            }
+            case MapMessage.CellConflict u -> {
+                clock.observe(u.hlc());
+                if (u.variableId() == null) {
+                    cache.putCell(relayedCell(u.mapId(), u.cellId(), u.row(), u.col(), u.value(), u.version(), u.hlc()));
+                } else {
+                    applyCellVariableValue(cache, u.row(), u.col(), u.variableId(), u.cleared() ? null : u.value(),
+                            u.version(), u.hlc());
+                }
+            }
+            case MapMessage.CellVariableBulkUpdate u -> {
+                clock.observe(u.hlc());
+                for (int i = 0; i < u.cellIds().length; i++) {
+                    applyBulkValue(cache, u.cellIds()[i], u.rows()[i], u.cols()[i], u.variableId(),
+                            u.cleared() ? null : u.value(), u.versions()[i], u.hlc());
+                }
+            }
+            case MapMessage.VariableCreated u -> putVariable(cache, u.variable());
+            case MapMessage.VariableUpdated u -> putVariable(cache, u.variable());
+            case MapMessage.VariableDeleted u -> {
+                cache.removeCellVariableValuesByVariableId(u.variableId());
+                cache.removeVariable(u.variableId());
+            }
+            case MapMessage.PicklistValueAdded u -> cache.putPicklistValue(u.variableId(), u.picklistValue().toPicklistValue());
+            case MapMessage.PicklistValueUpdated u -> cache.putPicklistValue(u.variableId(), u.picklistValue().toPicklistValue());
+            case MapMessage.PicklistValueDeleted u -> cache.removePicklistValue(u.variableId(), u.picklistValueId());
+            default -> {
+            }
+        }
+    }
+
+    private static GridCellData relayedCell(Long mapId, Long cellId, int row, int col, String name,
+                                            long version, long hlc) {
+        GridCellData cell = new GridCellData();
+        cell.setId(cellId);
+        cell.setMapId(mapId);
+        cell.setRowIndex(row);
+        cell.setColIndex(col);
+        cell.setName(name);
+        cell.setVersion(version);
+        cell.setHlc(hlc);
+        return cell;
+    }
+
+    private static void putVariable(MapCache cache, MapMessage.VariableView view) {
+        cache.putVariable(view.toVariable());
+        if (view.picklistValues() != null) {
+            view.picklistValues().forEach(pv -> cache.putPicklistValue(view.id(), pv.toPicklistValue()));
+        }
+    }
+
+    private void sendPresence(Long mapId, List<MapMessage> messages, boolean droppable) {
+        List<WirePayload> payloads = new ArrayList<>(messages.size());
+        for (MapMessage message : messages) {
+            WirePayload payload = wire(message);
+            if (payload != null) payloads.add(payload);
+        }
+        if (payloads.isEmpty()) return;
+        WirePayload frame = payloads.size() == 1 ? payloads.get(0) : BroadcastBatcher.frame(payloads);
+        send("/topic/map/" + mapId, frame.json(), frame, droppable);
+        String shared = "/topic/map/" + mapId + "/shared";
+        if (sessionRegistry.hasSubscribers(shared)) send(shared, frame.json(), frame, droppable);
     }
 
     public void sendFullState(UserSession session, String clientId) {
-        MapCache cache = getOrLoad(session.getMapId());
-        boolean isDmOrOwner = session.getRole() == MapRole.OWNER || session.getRole() == MapRole.DM;
+        sync(session, clientId, null, null, false);
+    }
 
-        List<Map<String, Object>> cellData = new ArrayList<>();
-        for (GridCellData c : cache.getCells().values()) {
-            Map<String, Object> cell = new HashMap<>();
-            cell.put("row", c.getRowIndex());
-            cell.put("col", c.getColIndex());
-            cell.put("name", c.getName() != null ? c.getName() : "");
-
-            List<Map<String, Object>> cvvList = new ArrayList<>();
-            for (CellVariableValue cvv : cache.getCellVariableValuesForCell(c.getId())) {
-                MapVariable variable = cache.getVariables().stream()
-                        .filter(v -> v.getId().equals(cvv.getVariableId()))
-                        .findFirst().orElse(null);
-                if (variable == null) continue;
-                if ("DM_ONLY".equals(variable.getVisibility()) && !isDmOrOwner) continue;
-                Map<String, Object> cvvMap = new HashMap<>();
-                cvvMap.put("variableId", cvv.getVariableId());
-                cvvMap.put("value", cvv.getValue());
-                cvvList.add(cvvMap);
+    public void sync(UserSession session, String clientId, Long lastSeq, String epoch, boolean tiled) {
+        getOrLoadAsync(session.getMapId())
+                .thenAccept(cache -> {
+                    if (lastSeq != null && sendDelta(cache, session, clientId, lastSeq, epoch)) return;
+                    if (tiled) {
+                        sendMapState(cache, session, clientId);
+                    } else {
+                        sendFullState(cache, session, clientId);
+                    }
+                })
+                .exceptionally(error -> {
+                    log.error("Failed to load map {} for sync of session {}",
+                            session.getMapId(), session.getSessionId(), error);
+                    return null;
+                });
+    }
+
+    private boolean sendDelta(MapCache cache, UserSession session, String clientId, long lastSeq, String epoch) {
+        OperationLog operations = cache.getOperationLog();
+        if (!operations.getEpoch().equals(epoch)) return false;
+
+        List<byte[]> ops;
+        long seq;
+        synchronized (operations) {
+            ops = operations.since(lastSeq, Audience.of(session.getRole()));
+            seq = operations.lastSeq();
+        }
+        if (ops == null) return false;
+
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("type", "DELTA");
+        message.put("epoch", epoch);
+        message.put("fromSeq", lastSeq);
+        message.put("seq", seq);
+        message.put("users", usersExcept(session));
+        try {
+            byte[] header = objectMapper.writeValueAsBytes(message);
+            List<byte[]> parts = new ArrayList<>(ops.size() * 2 + 3);
+            parts.add(Arrays.copyOf(header, header.length - 1));
+            parts.add(OPS_FIELD);
+            for (int i = 0; i < ops.size(); i++) {
+                if (i > 0) parts.add(COMMA);
+                parts.add(ops.get(i));
             }
-            cell.put("variableValues", cvvList);
-            cellData.add(cell);
+            parts.add(CLOSE_ARRAY_AND_OBJECT);
+            sendSync(clientId, concat(parts));
+        } catch (JsonProcessingException e) {
+            log.error("Failed to serialize DELTA for map {}", session.getMapId(), e);
+            return false;
         }
+        log.debug("Sent {} ops to session {} resyncing map {} from seq {}",
+                ops.size(), session.getSessionId(), session.getMapId(), lastSeq);
+        return true;
+    }
 
-        List<Map<String, Object>> variableList = new ArrayList<>();
-        for (MapVariable v : cache.getVariables()) {
-            if ("DM_ONLY".equals(v.getVisibility()) && !isDmOrOwner) continue;
-            Map<String, Object> vm = variableToMap(v);
-            if ("PICKLIST".equals(v.getDataType())) {
-                List<Map<String, Object>> pvList = cache.getPicklistValuesForVariable(v.getId()).stream()
-                        .map(this::picklistValueToMap)
-                        .toList();
-                vm.put("picklistValues", pvList);
+    /**
+     * The state is shared by every session of the audience and sent from its cached chunks; the
+     * session's own view of who else is connected goes ahead of it in a small USERS message.
+     */
+    private void sendFullState(MapCache cache, UserSession session, String clientId) {
+        try {
+            FullStateSnapshot snapshot = fullStateSnapshot(cache, Audience.of(session.getRole()));
+            sendUsers(session, clientId);
+            sendSync(clientId, snapshot.payload(), snapshot.chunks());
+        } catch (JsonProcessingException e) {
+            log.error("Failed to serialize FULL_STATE for map {}", session.getMapId(), e);
+        }
+    }
+
+    private static byte[] concat(List<byte[]> parts) {
+        int length = 0;
+        for (byte[] part : parts) length += part.length;
+        byte[] result = new byte[length];
+        int offset = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, result, offset, part.length);
+            offset += part.length;
+        }
+        return result;
+    }
+
+    private void sendMapState(MapCache cache, UserSession session, String clientId) {
+        Audience audience = Audience.of(session.getRole());
+        long seq = cache.getOperationLog().lastSeq();
+
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("type", "FULL_STATE");
+        message.put("mapData", cache.getMapData());
+        message.put("cellData", List.of());
+        message.put("variables", variablesFor(cache, audience));
+        message.put("tileSize", MapCache.getTileSize());
+        message.put("epoch", cache.getOperationLog().getEpoch());
+        message.put("seq", seq);
+        sendUsers(session, clientId);
+        sendSync(clientId, message);
+    }
+
+    private void sendUsers(UserSession session, String clientId) {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("type", "USERS");
+        message.put("users", usersExcept(session));
+        try {
+            sendJson("/topic/sync/" + clientId, objectMapper.writeValueAsBytes(message));
+        } catch (JsonProcessingException e) {
+            log.error("Failed to serialize USERS for client {}", clientId, e);
+        }
+    }
+
+    public void sendTiles(UserSession session, String clientId, List<int[]> tiles) {
+        getOrLoadAsync(session.getMapId())
+                .thenAccept(cache -> sendTiles(cache, session, clientId, tiles))
+                .exceptionally(error -> {
+                    log.error("Failed to load map {} for tile sync of session {}",
+                            session.getMapId(), session.getSessionId(), error);
+                    return null;
+                });
+    }
+
+    private void sendTiles(MapCache cache, UserSession session, String clientId, List<int[]> tiles) {
+        boolean isDmOrOwner = Audience.of(session.getRole()) == Audience.DM;
+        long seq = cache.getOperationLog().lastSeq();
+
+        List<Map<String, Object>> tileData = new ArrayList<>(tiles.size());
+        for (int[] tile : tiles) {
+            List<Map<String, Object>> cellData = new ArrayList<>();
+            for (GridCellData c : cache.getTileCells(tile[0], tile[1])) {
+                cellData.add(cellToMap(cache, c, isDmOrOwner));
             }
-            variableList.add(vm);
+            Map<String, Object> t = new HashMap<>();
+            t.put("tileRow", tile[0]);
+            t.put("tileCol", tile[1]);
+            t.put("destination", tileDestination(session.getMapId(), tile[0], tile[1]));
+            t.put("cellData", cellData);
+            tileData.add(t);
+        }
+
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("type", "TILE_STATE");
+        message.put("mapId", session.getMapId());
+        message.put("tileSize", MapCache.getTileSize());
+        message.put("epoch", cache.getOperationLog().getEpoch());
+        message.put("seq", seq);
+        message.put("tiles", tileData);
+        sendSync(clientId, message);
+    }
+
+    public void sendAck(String clientId, long clientSeq, String status) {
+        sendAck(clientId, clientSeq, status, null);
+    }
+
+    /**
+     * {@code version} is the stored version of the edited field, if the edit was versioned.
+     */
+    public void sendAck(String clientId, long clientSeq, String status, Long version) {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("type", "ACK");
+        message.put("clientSeq", clientSeq);
+        message.put("status", status);
+        if (version != null) message.put("version", version);
+        try {
+            sendJson("/topic/sync/" + clientId, objectMapper.writeValueAsBytes(message));
+        } catch (JsonProcessingException e) {
+            log.error("Failed to serialize ACK for client {}", clientId, e);
+        }
+    }
+
+    private void sendSync(String clientId, Map<String, Object> message) {
+        try {
+            sendSync(clientId, objectMapper.writeValueAsBytes(message));
+        } catch (JsonProcessingException e) {
+            log.error("Failed to serialize {} for client {}", message.get("type"), clientId, e);
         }
+    }
+
+    private void sendSync(String clientId, byte[] payload) {
+        sendSync(clientId, payload, syncCompressor.chunk(payload));
+    }
 
+    private void sendSync(String clientId, byte[] payload, List<byte[]> chunks) {
+        String destination = "/topic/sync/" + clientId;
+        syncCompressor.recordSent(payload, chunks);
+        if (chunks == null) {
+            sendJson(destination, payload);
+            return;
+        }
+        String chunkId = UUID.randomUUID().toString();
+        for (int i = 0; i < chunks.size(); i++) {
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+            accessor.setNativeHeader("content-encoding", "deflate");
+            accessor.setNativeHeader("chunk-id", chunkId);
+            accessor.setNativeHeader("chunk-index", Integer.toString(i));
+            accessor.setNativeHeader("chunk-count", Integer.toString(chunks.size()));
+            accessor.setLeaveMutable(true);
+            messagingTemplate.send(destination, MessageBuilder.createMessage(chunks.get(i), accessor.getMessageHeaders()));
+        }
+    }
+
+    private FullStateSnapshot fullStateSnapshot(MapCache cache, Audience audience) throws JsonProcessingException {
+        FullStateSnapshot cached = cache.getSnapshot(audience);
+        if (cached != null) return cached;
+
+        long seq = cache.getOperationLog().lastSeq();
+        long version = cache.getVersion();
+        Map<String, Object> state = buildFullState(cache, audience);
+        state.put("epoch", cache.getOperationLog().getEpoch());
+        state.put("seq", seq);
+        byte[] json = objectMapper.writeValueAsBytes(state);
+        FullStateSnapshot snapshot = new FullStateSnapshot(version, json, syncCompressor.chunk(json));
+        cache.storeSnapshot(audience, snapshot);
+        return snapshot;
+    }
+
+    private Map<String, Object> buildFullState(MapCache cache, Audience audience) {
+        boolean isDmOrOwner = audience == Audience.DM;
+
+        List<Map<String, Object>> cellData = new ArrayList<>();
+        for (GridCellData c : cache.getCells()) {
+            cellData.add(cellToMap(cache, c, isDmOrOwner));
+        }
+
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("type", "FULL_STATE");
+        message.put("mapData", cache.getMapData());
+        message.put("cellData", cellData);
+        message.put("variables", variablesFor(cache, audience));
+        return message;
+    }
+
+    private Map<String, Object> cellToMap(MapCache cache, GridCellData c, boolean isDmOrOwner) {
+        Map<String, Object> cell = new HashMap<>();
+        cell.put("row", c.getRowIndex());
+        cell.put("col", c.getColIndex());
+        cell.put("name", c.getName() != null ? c.getName() : "");
+        cell.put("version", VersionedWrite.versionOf(c.getVersion()));
+
+        List<Map<String, Object>> cvvList = new ArrayList<>();
+        for (CellVariableValue cvv : cache.getCellVariableValuesForCell(c.getId())) {
+            if (cache.getVariable(cvv.getVariableId()) == null) continue;
+            if (!isDmOrOwner && cache.isDmOnly(cvv.getVariableId())) continue;
+            Map<String, Object> cvvMap = new HashMap<>();
+            cvvMap.put("variableId", cvv.getVariableId());
+            cvvMap.put("value", cvv.getValue());
+            cvvMap.put("version", VersionedWrite.versionOf(cvv.getVersion()));
+            cvvList.add(cvvMap);
+        }
+        cell.put("variableValues", cvvList);
+        return cell;
+    }
+
+    private List<MapMessage.VariableView> variablesFor(MapCache cache, Audience audience) {
+        List<MapMessage.VariableView> variableList = new ArrayList<>();
+        for (MapVariable v : cache.getVariables()) {
+            if ("DM_ONLY".equals(v.getVisibility()) && audience != Audience.DM) continue;
+            variableList.add(MapMessage.VariableView.of(v, cache.getPicklistValuesForVariable(v.getId())));
+        }
+        return variableList;
+    }
+
+    private List<Map<String, Object>> usersExcept(UserSession session) {
         List<Map<String, Object>> users = new ArrayList<>();
         for (UserSession s : sessionRegistry.getSessionsForMap(session.getMapId())) {
             if (s.getSessionId().equals(session.getSessionId())) continue;
@@ -366,97 +979,57 @@ public class MapCacheService {
             user.put("role", s.getRole().name());
             users.add(user);
         }
+        return users;
+    }
 
-        Map<String, Object> message = new HashMap<>();
-        message.put("type", "FULL_STATE");
-        message.put("mapData", cache.getMapData());
-        message.put("cellData", cellData);
-        message.put("variables", variableList);
-        message.put("users", users);
+    private void sendJson(String destination, byte[] payload) {
+        send(destination, payload, null, false);
+    }
+
+    private void sendWire(String destination, WirePayload payload) {
+        send(destination, payload.json(), payload, false);
+    }
 
-        messagingTemplate.convertAndSend("/topic/sync/" + clientId, message);
+    /**
+     * Sends a JSON frame, with its CBOR form for CBOR sessions if there is one.
+     */
+    private void send(String destination, byte[] payload, WirePayload wire, boolean droppable) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        if (droppable) accessor.setHeader(SlowConsumerPolicy.PRESENCE_HEADER, true);
+        if (wire != null) accessor.setHeader(WirePayload.HEADER, wire);
+        accessor.setLeaveMutable(true);
+        messagingTemplate.send(destination, MessageBuilder.createMessage(payload, accessor.getMessageHeaders()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        presenceThrottle.shutdown();
+        batcher.shutdown();
     }
 
     @Scheduled(fixedDelay = 60000)
     public void reconcile() {
+        long start = System.nanoTime();
+        int rows = 0;
         for (Long mapId : caches.keySet()) {
-            MapCache cache = caches.get(mapId);
+            MapCache cache = getIfLoaded(mapId);
             if (cache == null) continue;
-
-            mapRepository.findById(mapId).ifPresent(dbMap -> {
-                DungeonMap cached = cache.getMapData();
-                if (!mapsEqual(cached, dbMap)) {
-                    log.warn("Cache/DB mismatch for map {}, correcting", mapId);
-                    cache.setMapData(dbMap);
-                }
-            });
-
-            List<GridCellData> dbCells = cellRepository.findByMapId(mapId);
-            for (GridCellData dbCell : dbCells) {
-                GridCellData cachedCell = cache.getCell(dbCell.getRowIndex(), dbCell.getColIndex());
-                if (cachedCell == null || !cellsEqual(cachedCell, dbCell)) {
-                    log.warn("Cache/DB cell mismatch for map {} [{},{}], correcting",
-                            mapId, dbCell.getRowIndex(), dbCell.getColIndex());
-                    cache.putCell(dbCell);
-                }
-            }
-        }
-    }
-
-    private boolean mapsEqual(DungeonMap a, DungeonMap b) {
-        return Objects.equals(a.getName(), b.getName())
-                && Objects.equals(a.getGridType(), b.getGridType())
-                && Objects.equals(a.getGridSize(), b.getGridSize())
-                && Objects.equals(a.getGridOffsetX(), b.getGridOffsetX())
-                && Objects.equals(a.getGridOffsetY(), b.getGridOffsetY())
-                && Objects.equals(a.getGridScale(), b.getGridScale())
-                && Objects.equals(a.getGridRotation(), b.getGridRotation())
-                && Objects.equals(a.getHexOrientation(), b.getHexOrientation())
-                && Objects.equals(a.getMapOffsetX(), b.getMapOffsetX())
-                && Objects.equals(a.getMapOffsetY(), b.getMapOffsetY())
-                && Objects.equals(a.getMapScale(), b.getMapScale());
-    }
-
-    private boolean cellsEqual(GridCellData a, GridCellData b) {
-        return Objects.equals(a.getName(), b.getName());
-    }
-
-    private Map<String, Object> variableToMap(MapVariable v) {
-        Map<String, Object> map = new HashMap<>();
-        map.put("id", v.getId());
-        map.put("mapId", v.getMapId());
-        map.put("name", v.getName());
-        map.put("dataType", v.getDataType());
-        map.put("displayFormat", v.getDisplayFormat());
-        map.put("visibility", v.getVisibility());
-        map.put("showColorOnCells", v.isShowColorOnCells());
-        map.put("sortOrder", v.getSortOrder());
-        return map;
-    }
-
-    private Map<String, Object> variableToMapWithPicklistValues(Long mapId, MapVariable v) {
-        Map<String, Object> map = variableToMap(v);
-        if ("PICKLIST".equals(v.getDataType())) {
-            MapCache cache = caches.get(mapId);
-            List<PicklistValue> pvs = cache != null
-                    ? cache.getPicklistValuesForVariable(v.getId())
-                    : List.of();
-            List<Map<String, Object>> pvList = new ArrayList<>();
-            for (PicklistValue pv : pvs) {
-                pvList.add(picklistValueToMap(pv));
+            try {
+                MapCacheReconciler.Result result = reconciler.reconcile(cache);
+                rows += result.rowsScanned();
+                reconcileCorrections.increment(result.corrections());
+            } catch (RuntimeException e) {
+                log.error("Failed to reconcile cache for map {}", mapId, e);
             }
-            map.put("picklistValues", pvList);
         }
-        return map;
+        reconcileRows.record(rows);
+        reconcileDuration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
     }
 
-    private Map<String, Object> picklistValueToMap(PicklistValue pv) {
-        Map<String, Object> map = new HashMap<>();
-        map.put("id", pv.getId());
-        map.put("variableId", pv.getVariableId());
-        map.put("label", pv.getLabel());
-        map.put("color", pv.getColor());
-        map.put("sortOrder", pv.getSortOrder());
-        return map;
+    private MapMessage.VariableView variableView(Long mapId, MapVariable v) {
+        MapCache cache = getIfLoaded(mapId);
+        List<PicklistValue> pvs = cache != null ? cache.getPicklistValuesForVariable(v.getId()) : List.of();
+        return MapMessage.VariableView.of(v, pvs);
     }
 }
@@ -0,0 +1,210 @@
+package org.dungeonmaps.websocket;
+
+import org.dungeonmaps.model.CellVariableValue;
+import org.dungeonmaps.model.DungeonMap;
+import org.dungeonmaps.model.GridCellData;
+import org.dungeonmaps.model.MapMembership.MapRole;
+import org.dungeonmaps.model.MapVariable;
+import org.dungeonmaps.service.CellVariableValueService;
+import org.dungeonmaps.service.DungeonMapService;
+import org.dungeonmaps.service.GridCellDataService;
+import org.dungeonmaps.service.HybridLogicalClock;
+import org.dungeonmaps.service.MapVariableService;
+import org.dungeonmaps.service.VersionedWrite;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Edits shared by the REST endpoints and the STOMP edit commands. Each one persists the change,
+ * applies it to the map cache and broadcasts it. Lookups go to the cache before the database.
+ * Cell and cell value edits are compare-and-set: with an expected version they apply only
+ * against that version, without one only if they were issued after the stored state, and an
+ * edit that loses is answered with a conflict broadcast carrying the stored state. An edit is
+ * issued when it reaches this node, so it takes its timestamp before anything is read.
+ */
+@Service
+public class MapEdits {
+
+    private final GridCellDataService cellService;
+    private final CellVariableValueService valueService;
+    private final MapVariableService variableService;
+    private final DungeonMapService mapService;
+    private final MapCacheService mapCacheService;
+    private final CellWriteBehind cellWriteBehind;
+    private final HybridLogicalClock clock;
+    private final int maxBulkCells;
+
+    public MapEdits(GridCellDataService cellService,
+                    CellVariableValueService valueService,
+                    MapVariableService variableService,
+                    DungeonMapService mapService,
+                    MapCacheService mapCacheService,
+                    CellWriteBehind cellWriteBehind,
+                    HybridLogicalClock clock,
+                    @Value("${app.cell-bulk.max-cells:10000}") int maxBulkCells) {
+        this.cellService = cellService;
+        this.valueService = valueService;
+        this.variableService = variableService;
+        this.mapService = mapService;
+        this.mapCacheService = mapCacheService;
+        this.cellWriteBehind = cellWriteBehind;
+        this.clock = clock;
+        this.maxBulkCells = maxBulkCells;
+    }
+
+    public static boolean canEditValue(MapRole role, MapVariable variable) {
+        if (role != MapRole.PLAYER) return true;
+        String visibility = variable.getVisibility();
+        return !"DM_ONLY".equals(visibility) && !"PLAYER_READ".equals(visibility);
+    }
+
+    public VersionedWrite<GridCellData> saveCellName(Long mapId, int row, int col, String name,
+                                                     Long expectedVersion, Long userId) {
+        long issuedAt = clock.now();
+        VersionedWrite<GridCellData> write = cellWriteBehind.isEnabled()
+                ? writeBehindCellName(mapId, row, col, name, expectedVersion, issuedAt)
+                : null;
+        if (write == null) {
+            write = cellService.compareAndSetName(mapId, row, col, name, expectedVersion, issuedAt);
+            mapCacheService.updateCell(write.current());
+        }
+
+        if (write.applied()) {
+            mapCacheService.broadcastCellUpdate(write.current(), userId);
+        } else {
+            mapCacheService.broadcastCellConflict(write.current(), userId);
+        }
+        return write;
+    }
+
+    /**
+     * With write-behind the cache is the latest copy of a cell, so the version check runs
+     * against it. Returns {@code null} if the cell is not cached or keeps changing underneath the
+     * edit, after writing the cell's pending edit so that the database path compares against it.
+     */
+    private VersionedWrite<GridCellData> writeBehindCellName(Long mapId, int row, int col, String name,
+                                                             Long expectedVersion, long issuedAt) {
+        for (int attempt = 1; attempt <= VersionedWrite.MAX_ATTEMPTS; attempt++) {
+            GridCellData cached = mapCacheService.getCachedCell(mapId, row, col);
+            if (cached == null || cached.getId() == null) break;
+            if (!VersionedWrite.accepts(cached.getVersion(), cached.getHlc(), expectedVersion, issuedAt)) {
+                return VersionedWrite.conflict(cached);
+            }
+            long hlc = VersionedWrite.stamp(cached.getHlc(), issuedAt);
+
+            long version = VersionedWrite.versionOf(cached.getVersion());
+            GridCellData edited = new GridCellData();
+            edited.setId(cached.getId());
+            edited.setMapId(mapId);
+            edited.setRowIndex(row);
+            edited.setColIndex(col);
+            edited.setName(name);
+            edited.setVersion(version + 1);
+            edited.setHlc(hlc);
+            if (mapCacheService.replaceCachedCell(edited, version)) {
+                cellWriteBehind.submit(edited);
+                return VersionedWrite.applied(edited);
+            }
+        }
+        cellWriteBehind.flush(mapId, row, col);
+        return null;
+    }
+
+    /**
+     * Throws {@link IllegalArgumentException} for an unknown field.
+     */
+    public Optional<DungeonMap> patchMapField(Long mapId, String field, Object value, Long userId) {
+        return mapService.patchField(mapId, field, value).map(saved -> {
+            mapCacheService.updateMapField(mapId, field, value);
+            mapCacheService.broadcastMapUpdate(mapId, field, value, userId);
+            return saved;
+        });
+    }
+
+    public Optional<MapVariable> findVariable(Long mapId, String variableId) {
+        MapVariable cached = mapCacheService.getCachedVariable(mapId, variableId);
+        if (cached != null) return Optional.of(cached);
+        return variableService.getById(variableId).filter(v -> mapId.equals(v.getMapId()));
+    }
+
+    /**
+     * Returns {@code null} if the cell does not exist.
+     */
+    public VersionedWrite<CellVariableValue> setCellVariableValue(Long mapId, int row, int col, MapVariable variable,
+                                                                  String value, Long expectedVersion, Long userId) {
+        long issuedAt = clock.now();
+        GridCellData cell = findCell(mapId, row, col);
+        if (cell == null) return null;
+        return broadcast(mapId, row, col, variable,
+                valueService.compareAndSet(cell.getId(), variable.getId(), value, expectedVersion, issuedAt), userId);
+    }
+
+    /**
+     * Returns {@code null} if the cell or its value does not exist. An applied clear returns a
+     * value of {@code null}.
+     */
+    public VersionedWrite<CellVariableValue> clearCellVariableValue(Long mapId, int row, int col, MapVariable variable,
+                                                                    Long expectedVersion, Long userId) {
+        long issuedAt = clock.now();
+        GridCellData cell = findCell(mapId, row, col);
+        if (cell == null) return null;
+        VersionedWrite<CellVariableValue> write =
+                valueService.compareAndDelete(cell.getId(), variable.getId(), expectedVersion, issuedAt);
+        return write != null ? broadcast(mapId, row, col, variable, write, userId) : null;
+    }
+
+    /**
+     * Sets, or for a {@code null} value clears, one variable across a region with one batched
+     * write and one broadcast per tile. Setting creates missing cells. Returns the number of
+     * cells that changed, or {@code null} for a fill while the map is not cached; the fill reads
+     * the cache, so the map is loaded in the background instead of holding the request thread.
+     * Throws {@link IllegalArgumentException} for an invalid or oversized region.
+     */
+    public Integer paintCellVariableValue(Long mapId, MapVariable variable, CellRegion region, String value, Long userId) {
+        long issuedAt = clock.now();
+        MapCache cache = null;
+        if (region.fill() != null) {
+            cache = mapCacheService.getLoadedOrPreload(mapId);
+            if (cache == null) return null;
+        }
+        List<CellRegion.Cell> cells = region.resolve(cache, variable.getId(), maxBulkCells);
+        if (cells.isEmpty()) return 0;
+
+        int[] rows = new int[cells.size()];
+        int[] cols = new int[cells.size()];
+        for (int i = 0; i < cells.size(); i++) {
+            rows[i] = cells.get(i).row();
+            cols[i] = cells.get(i).col();
+        }
+        List<GridCellData> stored = value != null
+                ? cellService.ensureCells(mapId, rows, cols)
+                : cellService.findCells(mapId, rows, cols);
+        if (stored.isEmpty()) return 0;
+
+        long[] cellIds = stored.stream().mapToLong(GridCellData::getId).toArray();
+        List<CellVariableValue> changed = value != null
+                ? valueService.setAll(variable.getId(), cellIds, value, issuedAt)
+                : valueService.deleteAll(variable.getId(), cellIds, issuedAt);
+        mapCacheService.broadcastCellVariableBulkUpdate(mapId, variable, value, stored, changed, userId);
+        return changed.size();
+    }
+
+    private VersionedWrite<CellVariableValue> broadcast(Long mapId, int row, int col, MapVariable variable,
+                                                        VersionedWrite<CellVariableValue> write, Long userId) {
+        if (write.applied()) {
+            mapCacheService.broadcastCellVariableUpdate(mapId, row, col, variable, write.current(), userId);
+        } else {
+            mapCacheService.broadcastCellVariableConflict(mapId, row, col, variable, write.current(), userId);
+        }
+        return write;
+    }
+
+    private GridCellData findCell(Long mapId, int row, int col) {
+        GridCellData cached = mapCacheService.getCachedCell(mapId, row, col);
+        if (cached != null && cached.getId() != null) return cached;
+        return cellService.getCell(mapId, row, col);
+    }
+}
@@ -0,0 +1,8 @@
+package org.dungeonmaps.websocket;
+
+/**
+ * A map event as relayed between instances. {@code audience} is null for presence, which is
+ * delivered to subscribers but never recorded in the operation log.
+ */
+public record MapEvent(String origin, Long mapId, Audience audience, String scopedDestination, MapMessage message) {
+}
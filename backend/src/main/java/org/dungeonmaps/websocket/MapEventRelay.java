@@ -0,0 +1,23 @@
+package org.dungeonmaps.websocket;
+
+/**
+ * Fans map events out to every instance serving the same maps. Each published event reaches
+ * every subscribed listener, the publisher's own included, in the order it was published.
+ */
+public interface MapEventRelay {
+
+    void publish(MapEvent event);
+
+    void subscribe(Listener listener);
+
+    interface Listener {
+
+        void onEvent(MapEvent event);
+
+        /**
+         * Called when events may have been missed, for example after the relay reconnected.
+         */
+        default void onGap() {
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.dungeonmaps.websocket;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Closes the sessions of maps this node no longer owns after the cluster membership changes.
+ * The handshake only checks ownership once, so without this a session would keep editing a map
+ * through a node that no longer caches it. Sessions are closed with {@link #MAP_MOVED}, on which
+ * the client fetches the map's node again and reconnects there. Edits that arrive between the
+ * ring change and the close are still applied here; they are persisted and relayed like edits
+ * from any other node, and the new owner loads the map from the database.
+ */
+@Component
+public class MapHandoff implements WebSocketHandlerDecoratorFactory {
+
+    public static final CloseStatus MAP_MOVED = new CloseStatus(4421, "Map moved to another node");
+
+    private static final Logger log = LoggerFactory.getLogger(MapHandoff.class);
+
+    private final ClusterMembership cluster;
+    private final ConcurrentHashMap<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+
+    public MapHandoff(ClusterMembership cluster) {
+        this.cluster = cluster;
+    }
+
+    @PostConstruct
+    public void start() {
+        cluster.onChange(this::closeMovedSessions);
+    }
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                sessions.put(session.getId(), session);
+                super.afterConnectionEstablished(session);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                sessions.remove(session.getId());
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    void closeMovedSessions() {
+        int closed = 0;
+        for (WebSocketSession session : sessions.values()) {
+            if (!(session.getAttributes().get("mapId") instanceof Long mapId) || cluster.isOwner(mapId)) continue;
+            try {
+                session.close(MAP_MOVED);
+                closed++;
+            } catch (IOException e) {
+                log.warn("Failed to close session {} of moved map {}", session.getId(), mapId, e);
+            }
+        }
+        if (closed > 0) log.info("Closed {} sessions of maps moved to other nodes", closed);
+    }
+}
@@ -0,0 +1,221 @@
+package org.dungeonmaps.websocket;
+
+import jakarta.annotation.PreDestroy;
+import org.dungeonmaps.model.CellVariableValue;
+import org.dungeonmaps.model.GridCellData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+
+/**
+ * Optional append-only journal of every cell and cell value mutation of a cached map, with
+ * periodic compacted snapshots. A map with a snapshot is rehydrated from the snapshot plus the
+ * journal tail instead of from the cell tables, then reconciled against Postgres from the
+ * watermark the snapshot was taken at, value tombstones included, so a value deleted after the
+ * snapshot does not come back. Because of that reconcile, losing the tail of a journal only
+ * costs a wider reconcile, so segments are forced to disk on the maintenance pass rather than on
+ * every write.
+ */
+@Component
+public class MapJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(MapJournal.class);
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final int SNAPSHOT_MAGIC = 0x4D4A5331;
+
+    private record Attached(MapCache cache, JournalLog journal) {
+    }
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentBytes;
+    private final long snapshotMinEntries;
+    private final ConcurrentHashMap<Long, Attached> attached = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Object> locks = new ConcurrentHashMap<>();
+
+    public MapJournal(@Value("${app.map-journal.enabled:false}") boolean enabled,
+                      @Value("${app.map-journal.directory:data/map-journal}") String directory,
+                      @Value("${app.map-journal.segment-bytes:8388608}") int segmentBytes,
+                      @Value("${app.map-journal.snapshot-min-entries:10000}") long snapshotMinEntries) {
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.segmentBytes = segmentBytes;
+        this.snapshotMinEntries = snapshotMinEntries;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Rebuilds a map's cells and cell values from its snapshot and journal tail into the cache
+     * {@code newCache} creates for the snapshot's cell count, and keeps journaling that cache.
+     * Returns null if the map has no usable snapshot.
+     */
+    public MapCache restore(Long mapId, IntFunction<MapCache> newCache) {
+        if (!enabled) return null;
+        Path mapDirectory = mapDirectory(mapId);
+        Path snapshot = mapDirectory.resolve(SNAPSHOT_FILE);
+        synchronized (lock(mapId)) {
+            closeAttached(mapId);
+            if (!Files.exists(snapshot)) return null;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+                if (in.readInt() != SNAPSHOT_MAGIC) throw new IOException("Not a map snapshot: " + snapshot);
+                long snapshotSeq = in.readLong();
+                String watermark = in.readUTF();
+                MapCache cache = newCache.apply(in.readInt());
+                for (JournalEntry entry = JournalEntry.read(in, mapId); entry != null; entry = JournalEntry.read(in, mapId)) {
+                    entry.applyTo(cache);
+                }
+                long lastSeq = JournalLog.replay(mapDirectory, mapId, snapshotSeq, entry -> entry.applyTo(cache));
+                cache.setReconciledThrough(watermark.isEmpty() ? null : LocalDateTime.parse(watermark));
+                attach(mapId, cache, new JournalLog(mapDirectory, segmentBytes, snapshotSeq, lastSeq));
+                log.debug("Restored map {} from snapshot at seq {} and {} journal entries",
+                        mapId, snapshotSeq, lastSeq - snapshotSeq);
+                return cache;
+            } catch (IOException | RuntimeException e) {
+                log.warn("Failed to restore map {} from its journal, loading from the database", mapId, e);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Starts a new journal for a map that was loaded from the database, discarding any old one.
+     */
+    public void attach(MapCache cache) {
+        if (!enabled) return;
+        Long mapId = cache.getMapData().getId();
+        Path mapDirectory = mapDirectory(mapId);
+        synchronized (lock(mapId)) {
+            closeAttached(mapId);
+            try {
+                Files.deleteIfExists(mapDirectory.resolve(SNAPSHOT_FILE));
+                JournalLog.deleteSegments(mapDirectory);
+            } catch (IOException e) {
+                log.warn("Failed to clear old journal of map {}, not journaling it", mapId, e);
+                return;
+            }
+            attach(mapId, cache, new JournalLog(mapDirectory, segmentBytes, -1L, 0L));
+        }
+    }
+
+    /**
+     * Stops journaling an evicted cache, snapshotting it first if it changed.
+     */
+    public void detach(MapCache cache) {
+        if (!enabled) return;
+        Long mapId = cache.getMapData().getId();
+        synchronized (lock(mapId)) {
+            Attached current = attached.get(mapId);
+            if (current == null || current.cache() != cache) return;
+            attached.remove(mapId);
+            cache.journalTo(null);
+            try {
+                if (current.journal().snapshotDue(1)) snapshot(mapId, current);
+                current.journal().force();
+            } catch (RuntimeException e) {
+                log.error("Failed to snapshot map {} on eviction", mapId, e);
+            }
+            current.journal().close();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.map-journal.snapshot-interval-ms:60000}")
+    public void maintain() {
+        if (!enabled) return;
+        for (Long mapId : attached.keySet()) {
+            synchronized (lock(mapId)) {
+                Attached current = attached.get(mapId);
+                if (current == null) continue;
+                try {
+                    current.journal().force();
+                    if (current.journal().snapshotDue(snapshotMinEntries)) snapshot(mapId, current);
+                } catch (RuntimeException e) {
+                    log.error("Failed to snapshot map {}", mapId, e);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Attached current : attached.values()) detach(current.cache());
+    }
+
+    private void attach(Long mapId, MapCache cache, JournalLog journal) {
+        attached.put(mapId, new Attached(cache, journal));
+        cache.journalTo(entry -> {
+            try {
+                journal.append(entry);
+            } catch (RuntimeException e) {
+                log.error("Failed to journal a change to map {}, no longer journaling it", mapId, e);
+                journal.close();
+            }
+        });
+    }
+
+    private void closeAttached(Long mapId) {
+        Attached previous = attached.remove(mapId);
+        if (previous == null) return;
+        previous.cache().journalTo(null);
+        previous.journal().close();
+    }
+
+    /**
+     * Writes the cache's cells and values as of the journal's current sequence number. Entries
+     * appended while the snapshot is written are replayed over it, which the version-gated
+     * apply makes safe.
+     */
+    private void snapshot(Long mapId, Attached current) {
+        Path mapDirectory = mapDirectory(mapId);
+        Path temporary = mapDirectory.resolve(SNAPSHOT_FILE + ".tmp");
+        MapCache cache = current.cache();
+        long seq = current.journal().lastSeq();
+        LocalDateTime watermark = cache.getReconciledThrough();
+        List<GridCellData> cells = cache.getCells();
+        try {
+            Files.createDirectories(mapDirectory);
+            try (FileOutputStream file = new FileOutputStream(temporary.toFile());
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeLong(seq);
+                out.writeUTF(watermark != null ? watermark.toString() : "");
+                out.writeInt(cells.size());
+                for (GridCellData cell : cells) {
+                    new JournalEntry.CellPut(cell).write(out);
+                    List<CellVariableValue> values = cache.getCellVariableValuesForCell(cell.getId());
+                    if (!values.isEmpty()) new JournalEntry.ValuesReplaced(cell.getId(), values).write(out);
+                }
+                JournalEntry.writeEnd(out);
+                out.flush();
+                file.getFD().sync();
+            }
+            Files.move(temporary, mapDirectory.resolve(SNAPSHOT_FILE),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write snapshot of map " + mapId, e);
+        }
+        current.journal().compact(seq);
+        log.debug("Snapshotted map {} at seq {}: {} cells", mapId, seq, cells.size());
+    }
+
+    private Path mapDirectory(Long mapId) {
+        return directory.resolve(String.valueOf(mapId));
+    }
+
+    private Object lock(Long mapId) {
+        return locks.computeIfAbsent(mapId, id -> new Object());
+    }
+}
@@ -0,0 +1,18 @@
+package org.dungeonmaps.websocket;
+
+import java.time.Instant;
+
+public record MapLoadStats(
+        Long mapId,
+        int cells,
+        int variables,
+        int picklistValues,
+        int cellVariableValues,
+        int queries,
+        long durationMillis,
+        Instant loadedAt
+) {
+    public int totalRows() {
+        return 1 + cells + variables + picklistValues + cellVariableValues;
+    }
+}
@@ -0,0 +1,178 @@
+package org.dungeonmaps.websocket;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import org.dungeonmaps.model.MapVariable;
+import org.dungeonmaps.model.PicklistValue;
+
+import java.util.List;
+
+/**
+ * Messages published on the map topics. The {@code type} property is written from the
+ * {@link JsonTypeName} of each record.
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, include = JsonTypeInfo.As.PROPERTY, property = "type")
+@JsonSubTypes({
+        @JsonSubTypes.Type(MapMessage.CellUpdate.class),
+        @JsonSubTypes.Type(MapMessage.MapUpdate.class),
+        @JsonSubTypes.Type(MapMessage.CellVariableUpdate.class),
+        @JsonSubTypes.Type(MapMessage.CellConflict.class),
+        @JsonSubTypes.Type(MapMessage.CellVariableBulkUpdate.class),
+        @JsonSubTypes.Type(MapMessage.VariableCreated.class),
+        @JsonSubTypes.Type(MapMessage.VariableUpdated.class),
+        @JsonSubTypes.Type(MapMessage.VariableDeleted.class),
+        @JsonSubTypes.Type(MapMessage.PicklistValueAdded.class),
+        @JsonSubTypes.Type(MapMessage.PicklistValueUpdated.class),
+        @JsonSubTypes.Type(MapMessage.PicklistValueDeleted.class),
+        @JsonSubTypes.Type(MapMessage.CellNoteUpdate.class),
+        @JsonSubTypes.Type(MapMessage.MapNoteUpdate.class),
+        @JsonSubTypes.Type(MapMessage.UserJoined.class),
+        @JsonSubTypes.Type(MapMessage.UserLeft.class),
+        @JsonSubTypes.Type(MapMessage.Selection.class),
+        @JsonSubTypes.Type(MapMessage.FieldFocus.class),
+        @JsonSubTypes.Type(MapMessage.FieldBlur.class)
+})
+public sealed interface MapMessage {
+
+    record FieldFlags(@JsonProperty("isDmOnly") boolean isDmOnly,
+                      @JsonProperty("isReadOnly") boolean isReadOnly) {
+
+        static final FieldFlags EDITABLE = new FieldFlags(false, false);
+    }
+
+    record PicklistValueView(String id, String variableId, String label, String color, int sortOrder) {
+
+        static PicklistValueView of(PicklistValue pv) {
+            return new PicklistValueView(pv.getId(), pv.getVariableId(), pv.getLabel(), pv.getColor(), pv.getSortOrder());
+        }
+
+        PicklistValue toPicklistValue() {
+            PicklistValue pv = new PicklistValue();
+            pv.setId(id);
+            pv.setVariableId(variableId);
+            pv.setLabel(label);
+            pv.setColor(color);
+            pv.setSortOrder(sortOrder);
+            return pv;
+        }
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record VariableView(String id, Long mapId, String name, String dataType, String displayFormat,
+                        String visibility, boolean showColorOnCells, int sortOrder,
+                        List<PicklistValueView> picklistValues) {
+
+        static VariableView of(MapVariable v, List<PicklistValue> picklistValues) {
+            List<PicklistValueView> values = "PICKLIST".equals(v.getDataType())
+                    ? picklistValues.stream().map(PicklistValueView::of).toList()
+                    : null;
+            return new VariableView(v.getId(), v.getMapId(), v.getName(), v.getDataType(), v.getDisplayFormat(),
+                    v.getVisibility(), v.isShowColorOnCells(), v.getSortOrder(), values);
+        }
+
+        MapVariable toVariable() {
+            MapVariable v = new MapVariable();
+            v.setId(id);
+            v.setMapId(mapId);
+            v.setName(name);
+            v.setDataType(dataType);
+            v.setDisplayFormat(displayFormat);
+            v.setVisibility(visibility);
+            v.setShowColorOnCells(showColorOnCells);
+            v.setSortOrder(sortOrder);
+            return v;
+        }
+    }
+
+    @JsonTypeName("CELL_UPDATE")
+    record CellUpdate(Long mapId, Long cellId, int row, int col, String field, FieldFlags fieldFlags,
+                      String value, long version, long hlc, Long userId) implements MapMessage {
+    }
+
+    @JsonTypeName("MAP_UPDATE")
+    record MapUpdate(Long mapId, String field, FieldFlags fieldFlags, Object value, Long userId) implements MapMessage {
+    }
+
+    @JsonTypeName("CELL_VARIABLE_UPDATE")
+    record CellVariableUpdate(Long mapId, int row, int col, String variableId, FieldFlags fieldFlags,
+                              String value, boolean cleared, long version, long hlc, Long userId) implements MapMessage {
+    }
+
+    /**
+     * The stored state of a cell field after an edit by {@code userId} lost to a newer one. The
+     * field is {@code name} or {@code variable}.
+     */
+    @JsonTypeName("CELL_CONFLICT")
+    record CellConflict(Long mapId, Long cellId, int row, int col, String field, String variableId,
+                        String value, boolean cleared, long version, long hlc, Long userId) implements MapMessage {
+    }
+
+    /**
+     * One value set on, or cleared from, many cells. The cells are parallel arrays: cell
+     * {@code i} is at {@code rows[i]}, {@code cols[i]} and now has {@code versions[i]}.
+     */
+    @JsonTypeName("CELL_VARIABLE_BULK_UPDATE")
+    record CellVariableBulkUpdate(Long mapId, String variableId, FieldFlags fieldFlags, String value,
+                                  boolean cleared, long hlc, long[] cellIds, int[] rows, int[] cols,
+                                  long[] versions, Long userId) implements MapMessage {
+    }
+
+    @JsonTypeName("VARIABLE_CREATED")
+    record VariableCreated(Long mapId, VariableView variable, Long userId) implements MapMessage {
+    }
+
+    @JsonTypeName("VARIABLE_UPDATED")
+    record VariableUpdated(Long mapId, VariableView variable, Long userId) implements MapMessage {
+    }
+
+    @JsonTypeName("VARIABLE_DELETED")
+    record VariableDeleted(Long mapId, String variableId, Long userId) implements MapMessage {
+    }
+
+    @JsonTypeName("PICKLIST_VALUE_ADDED")
+    record PicklistValueAdded(Long mapId, String variableId, PicklistValueView picklistValue,
+                              Long userId) implements MapMessage {
+    }
+
+    @JsonTypeName("PICKLIST_VALUE_UPDATED")
+    record PicklistValueUpdated(Long mapId, String variableId, PicklistValueView picklistValue,
+                                Long userId) implements MapMessage {
+    }
+
+    @JsonTypeName("PICKLIST_VALUE_DELETED")
+    record PicklistValueDeleted(Long mapId, String variableId, String picklistValueId,
+                                Long userId) implements MapMessage {
+    }
+
+    @JsonTypeName("CELL_NOTE_UPDATE")
+    record CellNoteUpdate(Long mapId, int row, int col, String noteType, String content,
+                          Long userId) implements MapMessage {
+    }
+
+    @JsonTypeName("MAP_NOTE_UPDATE")
+    record MapNoteUpdate(Long mapId, String noteType, String content, Long userId) implements MapMessage {
+    }
+
+    @JsonTypeName("USER_JOINED")
+    record UserJoined(Long userId, String userName, String color, String role) implements MapMessage {
+    }
+
+    @JsonTypeName("USER_LEFT")
+    record UserLeft(Long userId) implements MapMessage {
+    }
+
+    @JsonTypeName("SELECTION")
+    record Selection(Long userId, String color, Integer row, Integer col) implements MapMessage {
+    }
+
+    @JsonTypeName("FIELD_FOCUS")
+    record FieldFocus(Long userId, String color, Integer row, Integer col, String field) implements MapMessage {
+    }
+
+    @JsonTypeName("FIELD_BLUR")
+    record FieldBlur(Long userId) implements MapMessage {
+    }
+}
@@ -0,0 +1,51 @@
+package org.dungeonmaps.websocket;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.Map;
+
+/**
+ * Rejects REST writes to a map that another node owns with 421 and the owner in
+ * {@code X-Map-Owner}, like the WebSocket handshake. The owner caches the map and may hold cell
+ * edits that are not yet written back, so a write applied to the database by another node could
+ * be overwritten. The client retries the request against the owner.
+ */
+@Component
+public class MapOwnerInterceptor implements HandlerInterceptor {
+
+    private final ClusterMembership cluster;
+
+    public MapOwnerInterceptor(ClusterMembership cluster) {
+        this.cluster = cluster;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!cluster.isEnabled()) return true;
+        HttpMethod method = HttpMethod.valueOf(request.getMethod());
+        if (method == HttpMethod.GET || method == HttpMethod.HEAD || method == HttpMethod.OPTIONS) return true;
+
+        Long mapId = mapId(request);
+        if (mapId == null || cluster.isOwner(mapId)) return true;
+        response.setStatus(421);
+        response.setHeader(WebSocketHandshakeInterceptor.OWNER_HEADER, cluster.ownerOf(mapId));
+        return false;
+    }
+
+    private static Long mapId(HttpServletRequest request) {
+        Object attribute = request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        if (!(attribute instanceof Map<?, ?> variables)) return null;
+        Object value = variables.get("mapId");
+        if (value == null) value = variables.get("id");
+        try {
+            return value != null ? Long.valueOf(value.toString()) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.dungeonmaps.websocket;
+
+import org.dungeonmaps.model.MapMembership.MapRole;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+
+import java.util.Map;
+
+/**
+ * Authorizes SUBSCRIBE frames against the map and role bound to the session at handshake.
+ * Sessions may only subscribe to their own map's topics, only DMs and owners to the DM topic,
+ * and never with a broker wildcard pattern. Accepted subscriptions are counted in the
+ * {@link SessionRegistry}.
+ */
+@Component
+public class MapSubscriptionInterceptor implements ChannelInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(MapSubscriptionInterceptor.class);
+    private static final String MAP_TOPIC_PREFIX = "/topic/map/";
+    private static final AntPathMatcher PATH_MATCHER = new AntPathMatcher();
+
+    private final SessionRegistry sessionRegistry;
+
+    public MapSubscriptionInterceptor(SessionRegistry sessionRegistry) {
+        this.sessionRegistry = sessionRegistry;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null) return message;
+        if (accessor.getCommand() == StompCommand.UNSUBSCRIBE) {
+            sessionRegistry.unsubscribe(accessor.getSessionId(), accessor.getSubscriptionId());
+            return message;
+        }
+        if (accessor.getCommand() != StompCommand.SUBSCRIBE) return message;
+
+        Map<String, Object> attrs = accessor.getSessionAttributes();
+        Long mapId = attrs != null ? (Long) attrs.get("mapId") : null;
+        MapRole role = attrs != null ? (MapRole) attrs.get("role") : null;
+        if (!isAllowed(accessor.getDestination(), mapId, role)) {
+            log.warn("Rejected subscription of session {} to {}", accessor.getSessionId(), accessor.getDestination());
+            return null;
+        }
+        sessionRegistry.subscribe(accessor.getSessionId(), accessor.getSubscriptionId(), accessor.getDestination());
+        return message;
+    }
+
+    static boolean isAllowed(String destination, Long mapId, MapRole role) {
+        if (destination == null || PATH_MATCHER.isPattern(destination)) return false;
+        if (!destination.startsWith(MAP_TOPIC_PREFIX)) return true;
+        if (mapId == null || role == null) return false;
+
+        String rest = destination.substring(MAP_TOPIC_PREFIX.length());
+        int slash = rest.indexOf('/');
+        String topicMapId = slash < 0 ? rest : rest.substring(0, slash);
+        if (!topicMapId.equals(mapId.toString())) return false;
+        return slash < 0 || !rest.substring(slash).equals("/dm") || Audience.of(role) == Audience.DM;
+    }
+}
@@ -1,38 +1,58 @@
 package org.dungeonmaps.websocket;
 
+import org.dungeonmaps.model.CellVariableValue;
+import org.dungeonmaps.model.GridCellData;
 import org.dungeonmaps.model.MapMembership.MapRole;
+import org.dungeonmaps.model.MapVariable;
 import org.dungeonmaps.model.User;
 import org.dungeonmaps.repository.UserRepository;
+import org.dungeonmaps.service.VersionedWrite;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.event.EventListener;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.socket.messaging.SessionConnectEvent;
 import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 @Controller
 public class MapWebSocketController {
 
     private static final Logger log = LoggerFactory.getLogger(MapWebSocketController.class);
+    private static final int MAX_TILES_PER_REQUEST = 256;
+
+    enum EditStatus { APPLIED, CONFLICT, FORBIDDEN, NOT_FOUND, INVALID, FAILED }
+
+    record EditOutcome(EditStatus status, Long version) {
+
+        static EditOutcome of(EditStatus status) {
+            return new EditOutcome(status, null);
+        }
+
+        static EditOutcome of(VersionedWrite<?> write, Long version) {
+            return new EditOutcome(write.applied() ? EditStatus.APPLIED : EditStatus.CONFLICT, version);
+        }
+    }
 
     private final SessionRegistry sessionRegistry;
     private final MapCacheService mapCacheService;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final MapEdits mapEdits;
     private final UserRepository userRepository;
 
     public MapWebSocketController(SessionRegistry sessionRegistry,
                                   MapCacheService mapCacheService,
-                                  SimpMessagingTemplate messagingTemplate,
+                                  MapEdits mapEdits,
                                   UserRepository userRepository) {
         this.sessionRegistry = sessionRegistry;
         this.mapCacheService = mapCacheService;
-        this.messagingTemplate = messagingTemplate;
+        this.mapEdits = mapEdits;
         this.userRepository = userRepository;
     }
 
@@ -53,9 +73,8 @@ public class MapWebSocketController {
                 .map(User::getName)
                 .orElse("Unknown");
 
-        String color = sessionRegistry.assignColor(mapId);
-        UserSession session = new UserSession(sessionId, userId, mapId, color, role, userName);
-        sessionRegistry.register(session);
+        UserSession session = sessionRegistry.connect(sessionId, userId, mapId, role, userName);
+        mapCacheService.preload(mapId);
 
         mapCacheService.broadcastPresenceJoined(session);
     }
@@ -78,8 +97,30 @@ public class MapWebSocketController {
         UserSession session = getSession(accessor);
         if (session == null) return;
         String clientId = (String) payload.get("clientId");
-        log.debug("Sync requested by session {}, clientId {}", session.getSessionId(), clientId);
-        mapCacheService.sendFullState(session, clientId);
+        Long lastSeq = payload.get("lastSeq") instanceof Number n ? n.longValue() : null;
+        String epoch = (String) payload.get("epoch");
+        boolean tiled = Boolean.TRUE.equals(payload.get("tiled"));
+        log.debug("Sync requested by session {}, clientId {}, lastSeq {}", session.getSessionId(), clientId, lastSeq);
+        mapCacheService.sync(session, clientId, lastSeq, epoch, tiled);
+    }
+
+    @MessageMapping("/map/tiles")
+    public void handleTiles(@Payload Map<String, Object> payload, StompHeaderAccessor accessor) {
+        UserSession session = getSession(accessor);
+        if (session == null) return;
+        String clientId = (String) payload.get("clientId");
+        if (!(payload.get("tiles") instanceof List<?> requested)) return;
+
+        List<int[]> tiles = new ArrayList<>();
+        for (Object entry : requested) {
+            if (tiles.size() == MAX_TILES_PER_REQUEST) break;
+            if (entry instanceof Map<?, ?> tile
+                    && tile.get("row") instanceof Number row
+                    && tile.get("col") instanceof Number col) {
+                tiles.add(new int[]{row.intValue(), col.intValue()});
+            }
+        }
+        mapCacheService.sendTiles(session, clientId, tiles);
     }
 
     @MessageMapping("/map/selection")
@@ -87,14 +128,8 @@ public class MapWebSocketController {
         UserSession session = getSession(accessor);
         if (session == null) return;
 
-        Map<String, Object> message = Map.of(
-                "type", "SELECTION",
-                "userId", session.getUserId(),
-                "color", session.getColor(),
-                "row", payload.get("row"),
-                "col", payload.get("col")
-        );
-        messagingTemplate.convertAndSend("/topic/map/" + session.getMapId(), message);
+        mapCacheService.updatePresence(session, new MapMessage.Selection(
+                session.getUserId(), session.getColor(), intOrNull(payload.get("row")), intOrNull(payload.get("col"))));
     }
 
     @MessageMapping("/map/field-focus")
@@ -102,15 +137,9 @@ public class MapWebSocketController {
         UserSession session = getSession(accessor);
         if (session == null) return;
 
-        Map<String, Object> message = Map.of(
-                "type", "FIELD_FOCUS",
-                "userId", session.getUserId(),
-                "color", session.getColor(),
-                "row", payload.get("row"),
-                "col", payload.get("col"),
-                "field", payload.get("field")
-        );
-        messagingTemplate.convertAndSend("/topic/map/" + session.getMapId(), message);
+        mapCacheService.updatePresence(session, new MapMessage.FieldFocus(
+                session.getUserId(), session.getColor(), intOrNull(payload.get("row")), intOrNull(payload.get("col")),
+                payload.get("field") instanceof String field ? field : null));
     }
 
     @MessageMapping("/map/field-blur")
@@ -118,11 +147,88 @@ public class MapWebSocketController {
         UserSession session = getSession(accessor);
         if (session == null) return;
 
-        Map<String, Object> message = Map.of(
-                "type", "FIELD_BLUR",
-                "userId", session.getUserId()
-        );
-        messagingTemplate.convertAndSend("/topic/map/" + session.getMapId(), message);
+        mapCacheService.updatePresence(session, new MapMessage.FieldBlur(session.getUserId()));
+    }
+
+    @MessageMapping("/map/edit/cell")
+    public void handleCellEdit(@Payload Map<String, Object> payload, StompHeaderAccessor accessor) {
+        UserSession session = getSession(accessor);
+        if (session == null) return;
+        Integer row = intOrNull(payload.get("row"));
+        Integer col = intOrNull(payload.get("col"));
+        String name = payload.get("name") instanceof String s ? s : null;
+        Long expectedVersion = longOrNull(payload.get("expectedVersion"));
+
+        edit(session, payload, () -> {
+            if (row == null || col == null) return EditOutcome.of(EditStatus.INVALID);
+            VersionedWrite<GridCellData> write =
+                    mapEdits.saveCellName(session.getMapId(), row, col, name, expectedVersion, session.getUserId());
+            return EditOutcome.of(write, VersionedWrite.versionOf(write.current().getVersion()));
+        });
+    }
+
+    @MessageMapping("/map/edit/cell-variable")
+    public void handleCellVariableEdit(@Payload Map<String, Object> payload, StompHeaderAccessor accessor) {
+        UserSession session = getSession(accessor);
+        if (session == null) return;
+        Integer row = intOrNull(payload.get("row"));
+        Integer col = intOrNull(payload.get("col"));
+        String variableId = payload.get("variableId") instanceof String s ? s : null;
+        String value = payload.get("value") instanceof String s ? s : null;
+        Long expectedVersion = longOrNull(payload.get("expectedVersion"));
+
+        edit(session, payload, () -> {
+            if (row == null || col == null || variableId == null) return EditOutcome.of(EditStatus.INVALID);
+            MapVariable variable = mapEdits.findVariable(session.getMapId(), variableId).orElse(null);
+            if (variable == null) return EditOutcome.of(EditStatus.NOT_FOUND);
+            if (!MapEdits.canEditValue(session.getRole(), variable)) return EditOutcome.of(EditStatus.FORBIDDEN);
+            VersionedWrite<CellVariableValue> write = value != null
+                    ? mapEdits.setCellVariableValue(session.getMapId(), row, col, variable, value, expectedVersion,
+                            session.getUserId())
+                    : mapEdits.clearCellVariableValue(session.getMapId(), row, col, variable, expectedVersion,
+                            session.getUserId());
+            if (write == null) return EditOutcome.of(EditStatus.NOT_FOUND);
+            return EditOutcome.of(write, VersionedWrite.versionOf(write.current().getVersion()));
+        });
+    }
+
+    @MessageMapping("/map/edit/map-field")
+    public void handleMapFieldEdit(@Payload Map<String, Object> payload, StompHeaderAccessor accessor) {
+        UserSession session = getSession(accessor);
+        if (session == null) return;
+        String field = payload.get("field") instanceof String s ? s : null;
+        Object value = payload.get("value");
+
+        edit(session, payload, () -> {
+            if (Audience.of(session.getRole()) != Audience.DM) return EditOutcome.of(EditStatus.FORBIDDEN);
+            if (field == null || value == null) return EditOutcome.of(EditStatus.INVALID);
+            return EditOutcome.of(mapEdits.patchMapField(session.getMapId(), field, value, session.getUserId()).isPresent()
+                    ? EditStatus.APPLIED
+                    : EditStatus.NOT_FOUND);
+        });
+    }
+
+    private void edit(UserSession session, Map<String, Object> payload, Supplier<EditOutcome> command) {
+        EditOutcome outcome;
+        try {
+            outcome = command.get();
+        } catch (IllegalArgumentException | ClassCastException e) {
+            outcome = EditOutcome.of(EditStatus.INVALID);
+        } catch (RuntimeException e) {
+            log.error("Edit command of session {} failed", session.getSessionId(), e);
+            outcome = EditOutcome.of(EditStatus.FAILED);
+        }
+        if (payload.get("clientId") instanceof String clientId && payload.get("clientSeq") instanceof Number clientSeq) {
+            mapCacheService.sendAck(clientId, clientSeq.longValue(), outcome.status().name(), outcome.version());
+        }
+    }
+
+    private static Integer intOrNull(Object value) {
+        return value instanceof Number n ? n.intValue() : null;
+    }
+
+    private static Long longOrNull(Object value) {
+        return value instanceof Number n ? n.longValue() : null;
     }
 
     private UserSession getSession(StompHeaderAccessor accessor) {
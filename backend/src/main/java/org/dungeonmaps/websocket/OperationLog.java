@@ -0,0 +1,59 @@
+package org.dungeonmaps.websocket;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Bounded ring of the most recent broadcasts for one map, numbered by a per-map sequence and
+ * kept as encoded JSON objects with the {@code seq} property spliced in.
+ * The epoch changes whenever the cache is rebuilt, so sequence numbers are only comparable
+ * within one epoch.
+ */
+final class OperationLog {
+
+    record Operation(long seq, Audience audience, byte[] payload) {
+    }
+
+    private final String epoch = UUID.randomUUID().toString();
+    private final Operation[] ring;
+    private long lastSeq;
+
+    OperationLog(int capacity) {
+        this.ring = new Operation[Math.max(1, capacity)];
+    }
+
+    String getEpoch() {
+        return epoch;
+    }
+
+    int capacity() {
+        return ring.length;
+    }
+
+    synchronized long lastSeq() {
+        return lastSeq;
+    }
+
+    synchronized byte[] append(Audience audience, byte[] payload) {
+        long seq = ++lastSeq;
+        byte[] prefix = ("{\"seq\":" + seq + (payload.length > 2 ? "," : "")).getBytes(StandardCharsets.US_ASCII);
+        byte[] sequenced = new byte[prefix.length + payload.length - 1];
+        System.arraycopy(prefix, 0, sequenced, 0, prefix.length);
+        System.arraycopy(payload, 1, sequenced, prefix.length, payload.length - 1);
+        ring[(int) (seq % ring.length)] = new Operation(seq, audience, sequenced);
+        return sequenced;
+    }
+
+    synchronized List<byte[]> since(long seq, Audience viewer) {
+        if (seq > lastSeq || seq < lastSeq - ring.length) return null;
+        List<byte[]> missed = new ArrayList<>((int) (lastSeq - seq));
+        for (long next = seq + 1; next <= lastSeq; next++) {
+            Operation op = ring[(int) (next % ring.length)];
+            if (op.audience() == Audience.DM && viewer != Audience.DM) continue;
+            missed.add(op.payload());
+        }
+        return missed;
+    }
+}
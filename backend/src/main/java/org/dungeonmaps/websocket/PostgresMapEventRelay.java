@@ -0,0 +1,200 @@
+package org.dungeonmaps.websocket;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.JdbcConnectionDetails;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Relays map events between instances over Postgres LISTEN/NOTIFY. Notifications are sent from
+ * a single thread so they keep publish order. The relay opens its own two connections, one for
+ * publishing and one held for listening, outside the application's connection pool so that it
+ * never takes connections from request threads. NOTIFY payloads are limited to 8000 bytes, so
+ * larger events are stored in {@code map_relay_event} and only their id is sent. After the
+ * listening connection is lost, listeners are told that events may have been missed.
+ */
+@Component
+@ConditionalOnProperty(name = "app.relay.type", havingValue = "postgres")
+public class PostgresMapEventRelay implements MapEventRelay {
+
+    private static final Logger log = LoggerFactory.getLogger(PostgresMapEventRelay.class);
+    static final int MAX_NOTIFY_BYTES = 7900;
+    private static final String REFERENCE_PREFIX = "@";
+
+    private final JdbcConnectionDetails connectionDetails;
+    private final SingleConnectionDataSource publishing;
+    private final JdbcTemplate jdbc;
+    private final ObjectMapper objectMapper;
+    private final String channel;
+    private final int pollTimeoutMillis;
+    private final long retentionSeconds;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService publisher = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("map-relay-publisher").daemon().factory());
+    private volatile boolean running;
+    private Thread listenerThread;
+
+    public PostgresMapEventRelay(JdbcConnectionDetails connectionDetails,
+                                 ObjectMapper objectMapper,
+                                 @Value("${app.relay.channel:map_events}") String channel,
+                                 @Value("${app.relay.poll-timeout-ms:1000}") int pollTimeoutMillis,
+                                 @Value("${app.relay.payload-retention-seconds:300}") long retentionSeconds) {
+        if (!channel.matches("[a-z_][a-z0-9_]*")) {
+            throw new IllegalArgumentException("Invalid relay channel name: " + channel);
+        }
+        this.connectionDetails = connectionDetails;
+        this.publishing = new SingleConnectionDataSource(connectionDetails.getJdbcUrl(),
+                connectionDetails.getUsername(), connectionDetails.getPassword(), true);
+        this.jdbc = new JdbcTemplate(publishing);
+        this.objectMapper = objectMapper;
+        this.channel = channel;
+        this.pollTimeoutMillis = pollTimeoutMillis;
+        this.retentionSeconds = retentionSeconds;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        listenerThread = Thread.ofPlatform().name("map-relay-listener").daemon().start(this::listen);
+    }
+
+    @Override
+    public void publish(MapEvent event) {
+        publisher.execute(() -> send(event));
+    }
+
+    @Override
+    public void subscribe(Listener listener) {
+        listeners.add(listener);
+    }
+
+    private void send(MapEvent event) {
+        try {
+            String payload = objectMapper.writeValueAsString(event);
+            if (payload.getBytes(StandardCharsets.UTF_8).length > MAX_NOTIFY_BYTES) {
+                Long id = jdbc.queryForObject(
+                        "INSERT INTO map_relay_event (payload) VALUES (?) RETURNING id", Long.class, payload);
+                payload = REFERENCE_PREFIX + id;
+            }
+            jdbc.query("SELECT pg_notify(?, ?)", (RowCallbackHandler) rs -> { }, channel, payload);
+        } catch (JsonProcessingException e) {
+            log.error("Failed to relay {} for map {}",
+                    event.message().getClass().getSimpleName(), event.mapId(), e);
+        } catch (DataAccessException e) {
+            log.error("Failed to relay {} for map {}, reconnecting",
+                    event.message().getClass().getSimpleName(), event.mapId(), e);
+            publishing.resetConnection();
+        }
+    }
+
+    private void listen() {
+        boolean connectedBefore = false;
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(connectionDetails.getJdbcUrl(),
+                    connectionDetails.getUsername(), connectionDetails.getPassword())) {
+                connection.setAutoCommit(true);
+                JdbcTemplate reader = new JdbcTemplate(new SingleConnectionDataSource(connection, true));
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + channel);
+                }
+                if (connectedBefore) {
+                    log.info("Map event relay reconnected, events may have been missed");
+                    listeners.forEach(Listener::onGap);
+                }
+                connectedBefore = true;
+
+                PGConnection pg = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pg.getNotifications(pollTimeoutMillis);
+                    if (notifications == null) continue;
+                    for (PGNotification notification : notifications) {
+                        receive(reader, notification.getParameter());
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) return;
+                log.warn("Map event relay lost its listening connection, reconnecting", e);
+                try {
+                    Thread.sleep(pollTimeoutMillis);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void receive(JdbcTemplate reader, String parameter) {
+        try {
+            String json = parameter.startsWith(REFERENCE_PREFIX)
+                    ? load(reader, Long.parseLong(parameter.substring(REFERENCE_PREFIX.length())))
+                    : parameter;
+            if (json == null) {
+                log.warn("Relayed map event {} expired before it was read", parameter);
+                return;
+            }
+            MapEvent event = objectMapper.readValue(json, MapEvent.class);
+            for (Listener listener : listeners) {
+                listener.onEvent(event);
+            }
+        } catch (JsonProcessingException | RuntimeException e) {
+            log.error("Failed to handle relayed map event", e);
+        }
+    }
+
+    private static String load(JdbcTemplate reader, long id) {
+        List<String> payloads = reader.query("SELECT payload FROM map_relay_event WHERE id = ?",
+                (rs, rowNum) -> rs.getString(1), id);
+        return payloads.isEmpty() ? null : payloads.get(0);
+    }
+
+    /**
+     * Runs on the publishing thread, which owns the publishing connection.
+     */
+    @Scheduled(fixedDelayString = "${app.relay.cleanup-interval-ms:60000}")
+    public void purgeExpired() {
+        if (!running) return;
+        publisher.execute(() -> {
+            try {
+                int purged = jdbc.update("DELETE FROM map_relay_event WHERE created_at < now() - ? * interval '1 second'",
+                        retentionSeconds);
+                if (purged > 0) log.debug("Purged {} relayed map events", purged);
+            } catch (DataAccessException e) {
+                log.warn("Failed to purge relayed map events", e);
+                publishing.resetConnection();
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        publisher.shutdown();
+        publisher.awaitTermination(5, TimeUnit.SECONDS);
+        publishing.destroy();
+        if (listenerThread != null) listenerThread.join(pollTimeoutMillis * 2L);
+    }
+}
@@ -0,0 +1,67 @@
+package org.dungeonmaps.websocket;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Keeps only the latest selection and field focus of each user and sends them once per tick,
+ * grouped per map, on its own thread so cursor sweeps never delay edit broadcasts.
+ */
+final class PresenceThrottle {
+
+    private enum Channel {SELECTION, FIELD}
+
+    private record Key(Long mapId, Long userId, Channel channel) {
+    }
+
+    private final BiConsumer<Long, List<MapMessage>> sender;
+    private final ScheduledExecutorService scheduler;
+    private final ConcurrentHashMap<Key, MapMessage> latest = new ConcurrentHashMap<>();
+
+    PresenceThrottle(BiConsumer<Long, List<MapMessage>> sender, long tickMillis) {
+        this.sender = sender;
+        if (tickMillis > 0) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().name("presence-throttle").daemon().factory());
+            scheduler.scheduleAtFixedRate(this::flush, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.scheduler = null;
+        }
+    }
+
+    void offer(Long mapId, Long userId, MapMessage message) {
+        if (scheduler == null) {
+            sender.accept(mapId, List.of(message));
+            return;
+        }
+        Channel channel = message instanceof MapMessage.Selection ? Channel.SELECTION : Channel.FIELD;
+        latest.put(new Key(mapId, userId, channel), message);
+    }
+
+    void discard(Long mapId, Long userId) {
+        for (Channel channel : Channel.values()) {
+            latest.remove(new Key(mapId, userId, channel));
+        }
+    }
+
+    void flush() {
+        if (latest.isEmpty()) return;
+        Map<Long, List<MapMessage>> byMap = new LinkedHashMap<>();
+        for (Key key : latest.keySet()) {
+            MapMessage message = latest.remove(key);
+            if (message != null) byMap.computeIfAbsent(key.mapId(), id -> new ArrayList<>()).add(message);
+        }
+        byMap.forEach(sender);
+    }
+
+    void shutdown() {
+        if (scheduler != null) scheduler.shutdownNow();
+    }
+}
@@ -1,10 +1,19 @@
 package org.dungeonmaps.websocket;
 
+import org.dungeonmaps.model.MapMembership.MapRole;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Connected sessions by id, with a per-map index of immutable session lists. The index is only
+ * changed inside {@code compute} on the map's entry, which also serializes color allocation.
+ * Also counts the subscribers of each destination, so copies of a broadcast for optional topics
+ * are only published while someone listens on them.
+ */
 @Component
 public class SessionRegistry {
 
@@ -13,9 +22,25 @@ public class SessionRegistry {
     };
 
     private final ConcurrentHashMap<String, UserSession> sessions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, List<UserSession>> sessionsByMap = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Map<String, String>> subscriptions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Integer> subscriberCounts = new ConcurrentHashMap<>();
+
+    public UserSession connect(String sessionId, Long userId, Long mapId, MapRole role, String userName) {
+        UserSession[] created = new UserSession[1];
+        sessionsByMap.compute(mapId, (id, current) -> {
+            List<UserSession> existing = current != null ? current : List.of();
+            created[0] = new UserSession(sessionId, userId, mapId, pickColor(existing), role, userName);
+            return add(existing, created[0]);
+        });
+        return created[0];
+    }
 
     public void register(UserSession session) {
-        sessions.put(session.getSessionId(), session);
+        UserSession previous = sessions.get(session.getSessionId());
+        if (previous != null && !previous.getMapId().equals(session.getMapId())) remove(previous.getSessionId());
+        sessionsByMap.compute(session.getMapId(), (id, current) ->
+                add(current != null ? current : List.of(), session));
     }
 
     public UserSession get(String sessionId) {
@@ -23,27 +48,79 @@ public class SessionRegistry {
     }
 
     public UserSession remove(String sessionId) {
-        return sessions.remove(sessionId);
+        Map<String, String> subscribed = subscriptions.remove(sessionId);
+        if (subscribed != null) subscribed.values().forEach(this::release);
+        UserSession session = sessions.get(sessionId);
+        if (session == null) return null;
+        boolean[] removed = new boolean[1];
+        sessionsByMap.computeIfPresent(session.getMapId(), (id, current) -> {
+            removed[0] = sessions.remove(sessionId, session);
+            if (!removed[0]) return current;
+            List<UserSession> remaining = new ArrayList<>(current.size());
+            for (UserSession s : current) {
+                if (s != session) remaining.add(s);
+            }
+            return remaining.isEmpty() ? null : List.copyOf(remaining);
+        });
+        return removed[0] ? session : null;
     }
 
     public List<UserSession> getSessionsForMap(Long mapId) {
-        return sessions.values().stream()
-                .filter(s -> s.getMapId().equals(mapId))
-                .toList();
+        return sessionsByMap.getOrDefault(mapId, List.of());
     }
 
     public boolean hasActiveSessionsForMap(Long mapId) {
-        return sessions.values().stream().anyMatch(s -> s.getMapId().equals(mapId));
+        return sessionsByMap.containsKey(mapId);
+    }
+
+    public void subscribe(String sessionId, String subscriptionId, String destination) {
+        if (sessionId == null || subscriptionId == null) return;
+        String previous = subscriptions.computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>())
+                .put(subscriptionId, destination);
+        subscriberCounts.merge(destination, 1, Integer::sum);
+        if (previous != null) release(previous);
+    }
+
+    public void unsubscribe(String sessionId, String subscriptionId) {
+        if (sessionId == null || subscriptionId == null) return;
+        Map<String, String> subscribed = subscriptions.get(sessionId);
+        String destination = subscribed != null ? subscribed.remove(subscriptionId) : null;
+        if (destination != null) release(destination);
+    }
+
+    public boolean hasSubscribers(String destination) {
+        return subscriberCounts.containsKey(destination);
+    }
+
+    private void release(String destination) {
+        subscriberCounts.computeIfPresent(destination, (d, count) -> count > 1 ? count - 1 : null);
     }
 
     public String assignColor(Long mapId) {
-        List<String> usedColors = getSessionsForMap(mapId).stream()
-                .map(UserSession::getColor)
-                .toList();
+        return pickColor(getSessionsForMap(mapId));
+    }
+
+    private List<UserSession> add(List<UserSession> existing, UserSession session) {
+        List<UserSession> updated = new ArrayList<>(existing.size() + 1);
+        for (UserSession s : existing) {
+            if (!s.getSessionId().equals(session.getSessionId())) updated.add(s);
+        }
+        updated.add(session);
+        sessions.put(session.getSessionId(), session);
+        return List.copyOf(updated);
+    }
 
-        for (String color : COLORS) {
-            if (!usedColors.contains(color)) return color;
+    private static String pickColor(List<UserSession> existing) {
+        int[] uses = new int[COLORS.length];
+        for (UserSession s : existing) {
+            for (int i = 0; i < COLORS.length; i++) {
+                if (COLORS[i].equals(s.getColor())) uses[i]++;
+            }
+        }
+        int least = 0;
+        for (int i = 1; i < COLORS.length; i++) {
+            if (uses[i] < uses[least]) least = i;
         }
-        return COLORS[usedColors.size() % COLORS.length];
+        return COLORS[least];
     }
 }
@@ -0,0 +1,101 @@
+package org.dungeonmaps.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outbound policy for slow clients. While a socket write to a session has been blocked longer
+ * than the presence threshold, presence frames for that session are dropped instead of buffered.
+ * Edits keep buffering up to the transport's send buffer and time limits, after which Spring
+ * closes the session and the client reconnects and resyncs from the operation log.
+ */
+@Component
+public class SlowConsumerPolicy implements ChannelInterceptor, WebSocketHandlerDecoratorFactory {
+
+    public static final String PRESENCE_HEADER = "dungeonmaps.presence";
+
+    private final ConcurrentHashMap<String, AtomicLong> sendStartedAt = new ConcurrentHashMap<>();
+    private final long presenceDropAfterNanos;
+    private final Counter droppedPresence;
+
+    public SlowConsumerPolicy(MeterRegistry meterRegistry,
+                              @Value("${app.websocket.presence-drop-after-ms:250}") long presenceDropAfterMillis) {
+        this.presenceDropAfterNanos = TimeUnit.MILLISECONDS.toNanos(presenceDropAfterMillis);
+        this.droppedPresence = Counter.builder("websocket.outbound.presence.dropped").register(meterRegistry);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) return message;
+        if (!Boolean.TRUE.equals(message.getHeaders().get(PRESENCE_HEADER))) return message;
+        if (isCongested(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()))) {
+            droppedPresence.increment();
+            return null;
+        }
+        return message;
+    }
+
+    boolean isCongested(String sessionId) {
+        AtomicLong started = sessionId != null ? sendStartedAt.get(sessionId) : null;
+        if (started == null) return false;
+        long since = started.get();
+        return since != 0 && System.nanoTime() - since >= presenceDropAfterNanos;
+    }
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                AtomicLong started = new AtomicLong();
+                sendStartedAt.put(session.getId(), started);
+                super.afterConnectionEstablished(new TimedSession(session, started));
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                sendStartedAt.remove(session.getId());
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    private static final class TimedSession extends WebSocketSessionDecorator {
+
+        private final AtomicLong started;
+
+        TimedSession(WebSocketSession session, AtomicLong started) {
+            super(session);
+            this.started = started;
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            started.set(System.nanoTime());
+            try {
+                super.sendMessage(message);
+            } finally {
+                started.set(0);
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.dungeonmaps.websocket;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Deflates sync payloads above a size threshold and splits the result into chunks small enough
+ * to stay within the per-session send buffer. Smaller payloads are left as they are.
+ */
+@Component
+public class SyncCompressor {
+
+    private final int thresholdBytes;
+    private final int chunkSizeBytes;
+    private final int level;
+    private final DistributionSummary rawBytes;
+    private final DistributionSummary wireBytes;
+
+    public SyncCompressor(MeterRegistry meterRegistry,
+                          @Value("${app.sync.compression-threshold-bytes:65536}") int thresholdBytes,
+                          @Value("${app.sync.chunk-size-bytes:65536}") int chunkSizeBytes,
+                          @Value("${app.sync.compression-level:6}") int level) {
+        this.thresholdBytes = thresholdBytes;
+        this.chunkSizeBytes = Math.max(1024, chunkSizeBytes);
+        this.level = level;
+        this.rawBytes = DistributionSummary.builder("map.sync.bytes").tag("kind", "raw")
+                .baseUnit("bytes").register(meterRegistry);
+        this.wireBytes = DistributionSummary.builder("map.sync.bytes").tag("kind", "wire")
+                .baseUnit("bytes").register(meterRegistry);
+    }
+
+    /**
+     * Returns the deflated chunks of {@code payload}, or {@code null} if it should be sent as is,
+     * and records it as sent.
+     */
+    public List<byte[]> compress(byte[] payload) {
+        List<byte[]> chunks = chunk(payload);
+        recordSent(payload, chunks);
+        return chunks;
+    }
+
+    /**
+     * Like {@link #compress} without recording anything, for payloads that are built once and
+     * sent many times.
+     */
+    public List<byte[]> chunk(byte[] payload) {
+        if (payload.length < thresholdBytes) return null;
+
+        byte[] deflated = deflate(payload);
+        List<byte[]> chunks = new ArrayList<>(deflated.length / chunkSizeBytes + 1);
+        for (int from = 0; from < deflated.length; from += chunkSizeBytes) {
+            chunks.add(Arrays.copyOfRange(deflated, from, Math.min(from + chunkSizeBytes, deflated.length)));
+        }
+        return chunks;
+    }
+
+    /**
+     * Records one send of {@code payload} as the {@code chunks} {@link #chunk} returned for it.
+     */
+    public void recordSent(byte[] payload, List<byte[]> chunks) {
+        rawBytes.record(payload.length);
+        if (chunks == null) {
+            wireBytes.record(payload.length);
+            return;
+        }
+        long deflated = 0;
+        for (byte[] chunk : chunks) deflated += chunk.length;
+        wireBytes.record(deflated);
+    }
+
+    private byte[] deflate(byte[] payload) {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(payload);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length / 4);
+            byte[] buffer = new byte[16 * 1024];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+}
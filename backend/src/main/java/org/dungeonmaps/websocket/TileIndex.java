@@ -0,0 +1,53 @@
+package org.dungeonmaps.websocket;
+
+/**
+ * Records which grid positions are populated in each fixed-size tile, as one occupancy bitmap
+ * per tile.
+ */
+final class TileIndex {
+
+    static final int TILE_BITS = 5;
+    static final int TILE_SIZE = 1 << TILE_BITS;
+    private static final int TILE_MASK = TILE_SIZE - 1;
+
+    private final LongObjectHashMap<long[]> tiles = new LongObjectHashMap<>();
+
+    static int tileOf(int index) {
+        return index >> TILE_BITS;
+    }
+
+    synchronized void add(int row, int col) {
+        long key = MapCache.cellKey(tileOf(row), tileOf(col));
+        long[] bits = tiles.get(key);
+        if (bits == null) {
+            bits = new long[TILE_SIZE * TILE_SIZE / 64];
+            tiles.put(key, bits);
+        }
+        int bit = ((row & TILE_MASK) << TILE_BITS) | (col & TILE_MASK);
+        bits[bit >>> 6] |= 1L << bit;
+    }
+
+    synchronized long[] positions(int tileRow, int tileCol) {
+        long[] bits = tiles.get(MapCache.cellKey(tileRow, tileCol));
+        if (bits == null) return new long[0];
+        int count = 0;
+        for (long word : bits) count += Long.bitCount(word);
+        long[] positions = new long[count];
+        int next = 0;
+        for (int word = 0; word < bits.length; word++) {
+            long remaining = bits[word];
+            while (remaining != 0) {
+                int bit = (word << 6) | Long.numberOfTrailingZeros(remaining);
+                positions[next++] = MapCache.cellKey(
+                        tileRow * TILE_SIZE + (bit >>> TILE_BITS),
+                        tileCol * TILE_SIZE + (bit & TILE_MASK));
+                remaining &= remaining - 1;
+            }
+        }
+        return positions;
+    }
+
+    synchronized int size() {
+        return tiles.size();
+    }
+}
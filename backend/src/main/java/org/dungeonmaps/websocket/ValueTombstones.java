@@ -0,0 +1,54 @@
+package org.dungeonmaps.websocket;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Version and timestamp of removed cell variable values. A put or removal is only applied if it
+ * supersedes the tombstone, so a put older than the removal that arrives late from the relay or
+ * a journal replay cannot bring the value back. Tombstones are kept until they are pruned after
+ * the relay's retention window, or until a newer value replaces them.
+ */
+final class ValueTombstones {
+
+    private record Key(long cellId, String variableId) {
+    }
+
+    private record Tombstone(long version, long hlc) {
+    }
+
+    private final ConcurrentHashMap<Key, Tombstone> tombstones = new ConcurrentHashMap<>();
+
+    boolean supersededBy(long cellId, String variableId, long version, long hlc) {
+        Tombstone tombstone = tombstones.get(new Key(cellId, variableId));
+        return tombstone == null || CellStore.supersedes(version, hlc, tombstone.version(), tombstone.hlc());
+    }
+
+    void put(long cellId, String variableId, long version, long hlc) {
+        tombstones.put(new Key(cellId, variableId), new Tombstone(version, hlc));
+    }
+
+    void remove(long cellId, String variableId) {
+        if (!tombstones.isEmpty()) tombstones.remove(new Key(cellId, variableId));
+    }
+
+    void removeVariable(String variableId) {
+        tombstones.keySet().removeIf(key -> key.variableId().equals(variableId));
+    }
+
+    int prune(long olderThanHlc) {
+        int before = tombstones.size();
+        tombstones.values().removeIf(tombstone -> tombstone.hlc() < olderThanHlc);
+        return before - tombstones.size();
+    }
+
+    int size() {
+        return tombstones.size();
+    }
+
+    long footprintBytes() {
+        long entry = HeapFootprint.align(HeapFootprint.HEADER + 3 * HeapFootprint.REFERENCE + 4);
+        long key = HeapFootprint.align(HeapFootprint.HEADER + 8 + HeapFootprint.REFERENCE);
+        long tombstone = HeapFootprint.align(HeapFootprint.HEADER + 16);
+        return tombstones.size() * (entry + key + tombstone + HeapFootprint.REFERENCE);
+    }
+}
@@ -3,6 +3,7 @@ package org.dungeonmaps.websocket;
 import org.dungeonmaps.model.MapMembership.MapRole;
 import org.dungeonmaps.service.DungeonMapService;
 import org.dungeonmaps.security.JwtTokenProvider;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.http.server.ServerHttpRequest;
 import org.springframework.http.server.ServerHttpResponse;
 import org.springframework.stereotype.Component;
@@ -15,13 +16,19 @@ import java.util.Map;
 @Component
 public class WebSocketHandshakeInterceptor implements HandshakeInterceptor {
 
+    public static final String OWNER_HEADER = "X-Map-Owner";
+    private static final HttpStatusCode MISDIRECTED_REQUEST = HttpStatusCode.valueOf(421);
+
     private final JwtTokenProvider jwtTokenProvider;
     private final DungeonMapService dungeonMapService;
+    private final ClusterMembership cluster;
 
     public WebSocketHandshakeInterceptor(JwtTokenProvider jwtTokenProvider,
-                                         DungeonMapService dungeonMapService) {
+                                         DungeonMapService dungeonMapService,
+                                         ClusterMembership cluster) {
         this.jwtTokenProvider = jwtTokenProvider;
         this.dungeonMapService = dungeonMapService;
+        this.cluster = cluster;
     }
 
     @Override
@@ -55,6 +62,11 @@ public class WebSocketHandshakeInterceptor implements HandshakeInterceptor {
                 .orElse(null);
 
         if (role == null) return false;
+        if (!cluster.isOwner(mapId)) {
+            response.setStatusCode(MISDIRECTED_REQUEST);
+            response.getHeaders().set(OWNER_HEADER, cluster.ownerOf(mapId));
+            return false;
+        }
 
         attributes.put("userId", userId);
         attributes.put("mapId", mapId);
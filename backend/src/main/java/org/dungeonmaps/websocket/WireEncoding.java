@@ -0,0 +1,90 @@
+package org.dungeonmaps.websocket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-session wire encoding, negotiated with a {@code map-encoding: cbor} header on STOMP
+ * CONNECT. JSON stays the default. For CBOR sessions, outbound JSON frames are swapped for their
+ * CBOR form on the client outbound channel: broadcasts carry a {@link WirePayload} that encodes
+ * the message once for all CBOR subscribers, and the remaining frames are transcoded. Binary
+ * frames are sent as application/octet-stream because that is the only content type Spring's
+ * STOMP handler writes as a binary WebSocket message.
+ */
+@Component
+public class WireEncoding implements ChannelInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(WireEncoding.class);
+    static final String ENCODING_HEADER = "map-encoding";
+    static final String CBOR = "cbor";
+
+    private final boolean cborEnabled;
+    private final Set<String> cborSessions = ConcurrentHashMap.newKeySet();
+
+    public WireEncoding(@Value("${app.websocket.cbor-enabled:true}") boolean cborEnabled) {
+        this.cborEnabled = cborEnabled;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (type == null || sessionId == null) return message;
+
+        switch (type) {
+            case CONNECT -> {
+                StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+                if (cborEnabled && CBOR.equalsIgnoreCase(accessor.getFirstNativeHeader(ENCODING_HEADER))) {
+                    cborSessions.add(sessionId);
+                }
+            }
+            case DISCONNECT -> cborSessions.remove(sessionId);
+            case MESSAGE -> {
+                if (cborSessions.contains(sessionId)) return toCbor(message);
+            }
+            default -> {
+            }
+        }
+        return message;
+    }
+
+    boolean isCbor(String sessionId) {
+        return cborSessions.contains(sessionId);
+    }
+
+    private Message<?> toCbor(Message<?> message) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        MimeType contentType = accessor.getContentType();
+        if (!(message.getPayload() instanceof byte[] json)
+                || contentType == null || !MimeTypeUtils.APPLICATION_JSON.isCompatibleWith(contentType)) {
+            return message;
+        }
+        byte[] cbor;
+        try {
+            cbor = accessor.getHeader(WirePayload.HEADER) instanceof WirePayload wire
+                    ? wire.cbor()
+                    : CborTranscoder.fromJson(json);
+        } catch (IOException e) {
+            log.warn("Failed to encode frame as CBOR, sending JSON", e);
+            return message;
+        }
+        accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(cbor, accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,40 @@
+package org.dungeonmaps.websocket;
+
+import java.io.IOException;
+
+/**
+ * An outbound JSON frame and its CBOR form. The CBOR form is encoded from the message itself the
+ * first time a CBOR session receives the frame, and then shared by every other CBOR subscriber.
+ * It travels with the frame through the broker in the {@link #HEADER} message header.
+ */
+final class WirePayload {
+
+    static final String HEADER = "wirePayload";
+
+    @FunctionalInterface
+    interface CborEncoder {
+        byte[] encode() throws IOException;
+    }
+
+    private final byte[] json;
+    private final CborEncoder encoder;
+    private volatile byte[] cbor;
+
+    WirePayload(byte[] json, CborEncoder encoder) {
+        this.json = json;
+        this.encoder = encoder;
+    }
+
+    byte[] json() {
+        return json;
+    }
+
+    byte[] cbor() throws IOException {
+        byte[] encoded = cbor;
+        if (encoded == null) {
+            encoded = encoder.encode();
+            cbor = encoded;
+        }
+        return encoded;
+    }
+}
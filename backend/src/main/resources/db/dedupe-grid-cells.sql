@@ -0,0 +1,37 @@
+-- Runs before Hibernate updates the schema. Collapses grid_cells rows that share a position so the
+-- uk_grid_cells_position constraint can be added; a no-op once the constraint exists.
+DO $$
+BEGIN
+    IF to_regclass('grid_cells') IS NULL OR EXISTS (
+            SELECT 1 FROM pg_constraint WHERE conname = 'uk_grid_cells_position') THEN
+        RETURN;
+    END IF;
+
+    CREATE TEMP TABLE duplicate_grid_cells ON COMMIT DROP AS
+    SELECT id, keep_id
+    FROM (SELECT id, min(id) OVER (PARTITION BY map_id, row_index, col_index) AS keep_id
+          FROM grid_cells) positions
+    WHERE id <> keep_id;
+
+    IF NOT EXISTS (SELECT 1 FROM duplicate_grid_cells) THEN
+        RETURN;
+    END IF;
+
+    IF to_regclass('cell_variable_values') IS NOT NULL THEN
+        INSERT INTO cell_variable_values (cell_id, variable_id, value)
+        SELECT DISTINCT ON (d.keep_id, v.variable_id) d.keep_id, v.variable_id, v.value
+        FROM cell_variable_values v
+        JOIN duplicate_grid_cells d ON d.id = v.cell_id
+        ORDER BY d.keep_id, v.variable_id, v.cell_id DESC
+        ON CONFLICT DO NOTHING;
+
+        DELETE FROM cell_variable_values WHERE cell_id IN (SELECT id FROM duplicate_grid_cells);
+    END IF;
+
+    IF to_regclass('cell_variable_tombstones') IS NOT NULL THEN
+        DELETE FROM cell_variable_tombstones WHERE cell_id IN (SELECT id FROM duplicate_grid_cells);
+    END IF;
+
+    DELETE FROM grid_cells WHERE id IN (SELECT id FROM duplicate_grid_cells);
+END
+$$
@@ -12,6 +12,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -143,6 +145,54 @@ class CellVariableValueControllerIT extends IntegrationTestBase {
                 .andExpect(jsonPath("$").isEmpty());
     }
 
+    @Test
+    void upsertValue_afterDelete_continuesTheDeletedVersions() throws Exception {
+        String url = "/api/maps/" + mapId + "/cells/" + ROW + "/" + COL + "/variable-values/" + variableId;
+        for (String value : new String[]{"1", "2"}) {
+            mockMvc.perform(put(url)
+                    .header("Authorization", "Bearer " + dmToken)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(objectMapper.writeValueAsString(Map.of("value", value))));
+        }
+        mockMvc.perform(delete(url).header("Authorization", "Bearer " + dmToken))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(put(url)
+                        .header("Authorization", "Bearer " + dmToken)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of("value", "3"))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.value").value("3"))
+                .andExpect(jsonPath("$.version").value(3));
+    }
+
+    @Test
+    void upsertValue_afterDelete_withTheDeletedVersion_conflicts() throws Exception {
+        String url = "/api/maps/" + mapId + "/cells/" + ROW + "/" + COL + "/variable-values/" + variableId;
+        mockMvc.perform(put(url)
+                .header("Authorization", "Bearer " + dmToken)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(Map.of("value", "1"))));
+        mockMvc.perform(delete(url).header("Authorization", "Bearer " + dmToken))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(put(url)
+                        .header("Authorization", "Bearer " + dmToken)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of("value", "stale", "version", "0"))))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.value").doesNotExist())
+                .andExpect(jsonPath("$.version").value(1));
+
+        mockMvc.perform(put(url)
+                        .header("Authorization", "Bearer " + dmToken)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of("value", "fresh", "version", "1"))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.value").value("fresh"))
+                .andExpect(jsonPath("$.version").value(2));
+    }
+
     @Test
     void getValuesForCell_returnsAllValuesForCell() throws Exception {
         mockMvc.perform(put("/api/maps/" + mapId + "/cells/" + ROW + "/" + COL + "/variable-values/" + variableId)
@@ -165,4 +215,40 @@ class CellVariableValueControllerIT extends IntegrationTestBase {
                         .content(objectMapper.writeValueAsString(Map.of("value", "secret"))))
                 .andExpect(status().isForbidden());
     }
+
+    @Test
+    void paint_rect_setsValueOnEveryCellAndClearsIt() throws Exception {
+        Map<String, Object> rect = Map.of("fromRow", 0, "fromCol", 0, "toRow", 1, "toCol", 1);
+        mockMvc.perform(post("/api/maps/" + mapId + "/variable-values/" + variableId + "/paint")
+                        .header("Authorization", "Bearer " + dmToken)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of("value", "7", "region", Map.of("rect", rect)))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.changed").value(4));
+
+        mockMvc.perform(get("/api/maps/" + mapId + "/cells/0/0/variable-values")
+                        .header("Authorization", "Bearer " + dmToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].value").value("7"));
+
+        Map<String, Object> clear = new HashMap<>();
+        clear.put("value", null);
+        clear.put("region", Map.of("rect", rect));
+        mockMvc.perform(post("/api/maps/" + mapId + "/variable-values/" + variableId + "/paint")
+                        .header("Authorization", "Bearer " + dmToken)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(clear)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.changed").value(4));
+    }
+
+    @Test
+    void paintDmOnlyVariable_asPlayer_returns403() throws Exception {
+        mockMvc.perform(post("/api/maps/" + mapId + "/variable-values/" + dmOnlyVariableId + "/paint")
+                        .header("Authorization", "Bearer " + playerToken)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(
+                                Map.of("value", "secret", "region", Map.of("cells", List.of(Map.of("row", 0, "col", 0)))))))
+                .andExpect(status().isForbidden());
+    }
 }
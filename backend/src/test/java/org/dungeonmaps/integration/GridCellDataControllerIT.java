@@ -62,6 +62,31 @@ class GridCellDataControllerIT extends IntegrationTestBase {
         mapId = objectMapper.readTree(createResponse).get("id").asLong();
     }
 
+    @Test
+    void saveCell_withStaleVersion_returnsConflictWithStoredCell() throws Exception {
+        mockMvc.perform(post("/api/grid-cells/" + mapId + "/1/2")
+                        .header("Authorization", "Bearer " + token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of("name", "Cave"))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version").value(0));
+
+        mockMvc.perform(post("/api/grid-cells/" + mapId + "/1/2")
+                        .header("Authorization", "Bearer " + token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of("name", "Cave Entrance", "version", 0))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version").value(1));
+
+        mockMvc.perform(post("/api/grid-cells/" + mapId + "/1/2")
+                        .header("Authorization", "Bearer " + token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of("name", "Collapsed Cave", "version", 0))))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.name").value("Cave Entrance"))
+                .andExpect(jsonPath("$.version").value(1));
+    }
+
     @Test
     void saveCell_andRetrieve_returnsCorrectData() throws Exception {
         mockMvc.perform(post("/api/grid-cells/" + mapId + "/1/2")
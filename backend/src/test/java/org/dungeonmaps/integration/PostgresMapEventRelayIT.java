@@ -0,0 +1,91 @@
+package org.dungeonmaps.integration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dungeonmaps.websocket.Audience;
+import org.dungeonmaps.websocket.MapEvent;
+import org.dungeonmaps.websocket.MapEventRelay;
+import org.dungeonmaps.websocket.MapMessage;
+import org.dungeonmaps.websocket.PostgresMapEventRelay;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jdbc.JdbcConnectionDetails;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@TestPropertySource(properties = "app.relay.type=postgres")
+class PostgresMapEventRelayIT extends IntegrationTestBase {
+
+    @Autowired
+    private MapEventRelay relay;
+
+    @Autowired
+    private JdbcConnectionDetails connectionDetails;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private PostgresMapEventRelay otherInstance;
+    private final BlockingQueue<MapEvent> received = new LinkedBlockingQueue<>();
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        otherInstance = new PostgresMapEventRelay(connectionDetails, objectMapper, "map_events", 200, 300);
+        otherInstance.subscribe(received::add);
+        otherInstance.start();
+
+        MapEvent probe = event(new MapMessage.UserLeft(0L));
+        for (int attempt = 0; attempt < 50; attempt++) {
+            relay.publish(probe);
+            if (received.poll(200, TimeUnit.MILLISECONDS) != null) break;
+        }
+        Thread.sleep(200);
+        received.clear();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        otherInstance.shutdown();
+    }
+
+    @Test
+    void publishedEvent_reachesOtherInstance() throws InterruptedException {
+        MapEvent event = event(new MapMessage.MapNoteUpdate(42L, "DM", "Dragon sighted", 7L));
+
+        relay.publish(event);
+
+        assertThat(received.poll(5, TimeUnit.SECONDS)).isEqualTo(event);
+    }
+
+    @Test
+    void eventOverNotifyLimit_isSentByReference() throws InterruptedException {
+        MapEvent event = event(new MapMessage.MapNoteUpdate(42L, "DM", "x".repeat(20_000), 7L));
+
+        relay.publish(event);
+
+        assertThat(received.poll(5, TimeUnit.SECONDS)).isEqualTo(event);
+    }
+
+    @Test
+    void eventsArriveInPublishOrder() throws InterruptedException {
+        for (int i = 0; i < 20; i++) {
+            relay.publish(event(new MapMessage.MapNoteUpdate(42L, "DM", "note " + i, 7L)));
+        }
+
+        for (int i = 0; i < 20; i++) {
+            MapEvent next = received.poll(5, TimeUnit.SECONDS);
+            assertThat(next).isNotNull();
+            assertThat(((MapMessage.MapNoteUpdate) next.message()).content()).isEqualTo("note " + i);
+        }
+    }
+
+    private static MapEvent event(MapMessage message) {
+        return new MapEvent("instance-a", 42L, Audience.PLAYER, "/topic/map/42/shared", message);
+    }
+}
@@ -0,0 +1,46 @@
+package org.dungeonmaps.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HybridLogicalClockTest {
+
+    private final AtomicLong wallClock = new AtomicLong(1_000L);
+    private final HybridLogicalClock clock = new HybridLogicalClock(wallClock::get);
+
+    @Test
+    void now_followsTheWallClock() {
+        long first = clock.now();
+        wallClock.set(2_000L);
+        long second = clock.now();
+
+        assertThat(HybridLogicalClock.physicalMillis(first)).isEqualTo(1_000L);
+        assertThat(HybridLogicalClock.physicalMillis(second)).isEqualTo(2_000L);
+    }
+
+    @Test
+    void now_keepsIncreasingWhenTheWallClockStallsOrGoesBack() {
+        long first = clock.now();
+        long second = clock.now();
+        wallClock.set(500L);
+        long third = clock.now();
+
+        assertThat(second).isGreaterThan(first);
+        assertThat(third).isGreaterThan(second);
+        assertThat(HybridLogicalClock.physicalMillis(third)).isEqualTo(1_000L);
+    }
+
+    @Test
+    void observe_ofATimestampFromAClockThatIsAhead_ordersLaterEventsAfterIt() {
+        HybridLogicalClock ahead = new HybridLogicalClock(() -> 5_000L);
+        long remote = ahead.now();
+
+        long observed = clock.observe(remote);
+
+        assertThat(observed).isGreaterThan(remote);
+        assertThat(clock.now()).isGreaterThan(observed);
+    }
+}
@@ -0,0 +1,76 @@
+package org.dungeonmaps.websocket;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BroadcastBatcherTest {
+
+    private final BlockingQueue<String> sent = new LinkedBlockingQueue<>();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private BroadcastBatcher batcher;
+
+    private BroadcastBatcher batcher(long windowMillis) {
+        batcher = new BroadcastBatcher((destination, payload) ->
+                sent.add(destination + " " + new String(payload.json(), StandardCharsets.UTF_8)), windowMillis, meterRegistry);
+        return batcher;
+    }
+
+    private static WirePayload op(int n) {
+        byte[] json = ("{\"n\":" + n + "}").getBytes(StandardCharsets.UTF_8);
+        return new WirePayload(json, () -> CborTranscoder.fromJson(json));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (batcher != null) batcher.shutdown();
+    }
+
+    @Test
+    void send_toQuietDestination_isDeliveredImmediately() {
+        batcher(10_000).send("/topic/map/1", op(1));
+
+        assertThat(sent).containsExactly("/topic/map/1 {\"n\":1}");
+    }
+
+    @Test
+    void send_duringOpenWindow_flushesOneOrderedBatch() throws InterruptedException {
+        batcher(20);
+        for (int n = 1; n <= 4; n++) batcher.send("/topic/map/1", op(n));
+        batcher.send("/topic/map/2", op(9));
+
+        assertThat(sent.poll(1, TimeUnit.SECONDS)).isEqualTo("/topic/map/1 {\"n\":1}");
+        assertThat(sent.poll(1, TimeUnit.SECONDS)).isEqualTo("/topic/map/2 {\"n\":9}");
+        assertThat(sent.poll(1, TimeUnit.SECONDS))
+                .isEqualTo("/topic/map/1 {\"type\":\"BATCH\",\"messages\":[{\"n\":2},{\"n\":3},{\"n\":4}]}");
+        assertThat(meterRegistry.get("map.broadcast.batch.size").summary().max()).isEqualTo(3);
+    }
+
+    @Test
+    void shutdown_flushesQueuedMessages() {
+        batcher(10_000);
+        batcher.send("/topic/map/1", op(1));
+        batcher.send("/topic/map/1", op(2));
+
+        batcher.shutdown();
+
+        assertThat(sent).containsExactly("/topic/map/1 {\"n\":1}", "/topic/map/1 {\"n\":2}");
+    }
+
+    @Test
+    void frame_joinsPayloadsIntoBatchMessage() throws Exception {
+        WirePayload frame = BroadcastBatcher.frame(List.of(op(1), op(2)));
+
+        assertThat(new String(frame.json(), StandardCharsets.UTF_8))
+                .isEqualTo("{\"type\":\"BATCH\",\"messages\":[{\"n\":1},{\"n\":2}]}");
+        assertThat(frame.cbor()).isEqualTo(CborTranscoder.fromJson(frame.json()));
+    }
+}
@@ -0,0 +1,44 @@
+package org.dungeonmaps.websocket;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CborTranscoderTest {
+
+    private static String cbor(String json) throws Exception {
+        return HexFormat.of().formatHex(CborTranscoder.fromJson(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void fromJson_writesIndefiniteContainersAndShortestScalars() throws Exception {
+        assertThat(cbor("{\"a\":1,\"b\":[true,null,-2,1.5,\"x\"]}"))
+                .isEqualTo("bf61610161629ff5f621fa3fc000006178ffff");
+    }
+
+    @Test
+    void fromJson_widensIntegerHeadsAndKeepsDoublePrecision() throws Exception {
+        assertThat(cbor("[23,24,300,70000,5000000000,-500]"))
+                .isEqualTo("9f171818190" + "12c1a000111701b000000012a05f2003901f3ff");
+        assertThat(cbor("[0.1]")).isEqualTo("9ffb3fb999999999999aff");
+    }
+
+    @Test
+    void withSeq_andBatch_matchTheTranscodedJsonFrames() throws Exception {
+        byte[] message = CborTranscoder.fromJson("{\"n\":1}".getBytes(StandardCharsets.UTF_8));
+        byte[] sequenced = CborTranscoder.withSeq(message, 300);
+
+        assertThat(HexFormat.of().formatHex(sequenced)).isEqualTo(cbor("{\"seq\":300,\"n\":1}"));
+        assertThat(HexFormat.of().formatHex(CborTranscoder.batch(List.of(sequenced, message))))
+                .isEqualTo(cbor("{\"type\":\"BATCH\",\"messages\":[{\"seq\":300,\"n\":1},{\"n\":1}]}"));
+    }
+
+    @Test
+    void fromJson_encodesUtf8TextLength() throws Exception {
+        assertThat(cbor("\"été\"")).isEqualTo("65c3a974c3a9");
+    }
+}
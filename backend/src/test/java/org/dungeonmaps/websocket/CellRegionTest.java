@@ -0,0 +1,107 @@
+package org.dungeonmaps.websocket;
+
+import org.dungeonmaps.model.CellVariableValue;
+import org.dungeonmaps.model.DungeonMap;
+import org.dungeonmaps.model.GridCellData;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CellRegionTest {
+
+    private long nextId = 1;
+
+    private MapCache cache(String gridType, String hexOrientation) {
+        DungeonMap map = new DungeonMap();
+        map.setId(1L);
+        map.setGridType(gridType);
+        map.setHexOrientation(hexOrientation);
+        return new MapCache(map);
+    }
+
+    private void paint(MapCache cache, int row, int col, String value) {
+        GridCellData cell = new GridCellData();
+        cell.setId(nextId++);
+        cell.setMapId(1L);
+        cell.setRowIndex(row);
+        cell.setColIndex(col);
+        cache.putCell(cell);
+        if (value == null) return;
+        CellVariableValue cvv = new CellVariableValue();
+        cvv.setCellId(cell.getId());
+        cvv.setVariableId("terrain");
+        cvv.setValue(value);
+        cache.putCellVariableValue(cell.getId(), cvv);
+    }
+
+    @Test
+    void resolve_rectAndListCoverDistinctCells() {
+        CellRegion rect = new CellRegion(new CellRegion.Rect(2, 1, 1, 2), null, null, null);
+        assertThat(rect.resolve(null, "terrain", 100)).containsExactly(
+                new CellRegion.Cell(1, 1), new CellRegion.Cell(1, 2), new CellRegion.Cell(2, 1), new CellRegion.Cell(2, 2));
+
+        CellRegion list = new CellRegion(null, List.of(new CellRegion.Cell(0, 0), new CellRegion.Cell(0, 0)), null, null);
+        assertThat(list.resolve(null, "terrain", 100)).containsExactly(new CellRegion.Cell(0, 0));
+    }
+
+    @Test
+    void resolve_rejectsAmbiguousOrOversizedRegions() {
+        CellRegion none = new CellRegion(null, null, null, null);
+        assertThatThrownBy(() -> none.resolve(null, "terrain", 100)).isInstanceOf(IllegalArgumentException.class);
+
+        CellRegion large = new CellRegion(new CellRegion.Rect(0, 0, 99, 99), null, null, null);
+        assertThatThrownBy(() -> large.resolve(null, "terrain", 100)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void resolve_handlesRectsAtTheEdgesOfTheIntRange() {
+        CellRegion top = new CellRegion(new CellRegion.Rect(Integer.MAX_VALUE - 1, 0, Integer.MAX_VALUE, 0), null, null, null);
+        assertThat(top.resolve(null, "terrain", 100)).containsExactly(
+                new CellRegion.Cell(Integer.MAX_VALUE - 1, 0), new CellRegion.Cell(Integer.MAX_VALUE, 0));
+
+        CellRegion full = new CellRegion(new CellRegion.Rect(Integer.MIN_VALUE, 0, Integer.MAX_VALUE, 0), null, null, null);
+        assertThatThrownBy(() -> full.resolve(null, "terrain", 100)).isInstanceOf(IllegalArgumentException.class);
+
+        MapCache cache = cache("square", null);
+        paint(cache, Integer.MAX_VALUE, Integer.MAX_VALUE, null);
+        CellRegion corner = new CellRegion(null, null, new CellRegion.Cell(Integer.MAX_VALUE, Integer.MAX_VALUE),
+                new CellRegion.Rect(Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE));
+        assertThatThrownBy(() -> corner.resolve(cache, "terrain", 100)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void floodFill_spreadsThroughMatchingSquareNeighbours() {
+        MapCache cache = cache("square", null);
+        paint(cache, 0, 0, "grass");
+        paint(cache, 0, 1, "grass");
+        paint(cache, 1, 1, "grass");
+        paint(cache, 1, 0, "water");
+        paint(cache, 2, 2, "grass");
+
+        CellRegion fill = new CellRegion(null, null, new CellRegion.Cell(0, 0), null);
+
+        assertThat(fill.resolve(cache, "terrain", 100)).containsExactlyInAnyOrder(
+                new CellRegion.Cell(0, 0), new CellRegion.Cell(0, 1), new CellRegion.Cell(1, 1));
+    }
+
+    @Test
+    void floodFill_usesHexNeighboursAndStopsAtBounds() {
+        MapCache cache = cache("hex", "flat");
+        paint(cache, 0, 0, "grass");
+        paint(cache, 1, 1, "grass");
+        paint(cache, 0, 1, "water");
+        paint(cache, 1, 0, "water");
+        paint(cache, -1, 1, "grass");
+
+        CellRegion fill = new CellRegion(null, null, new CellRegion.Cell(0, 0), null);
+        assertThat(fill.resolve(cache, "terrain", 100)).containsExactlyInAnyOrder(
+                new CellRegion.Cell(0, 0), new CellRegion.Cell(-1, 1));
+
+        CellRegion empty = new CellRegion(null, null, new CellRegion.Cell(5, 5), new CellRegion.Rect(4, 4, 6, 6));
+        assertThat(empty.resolve(cache, "terrain", 100)).hasSize(9);
+        assertThatThrownBy(() -> empty.resolve(cache, "terrain", 8)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,90 @@
+package org.dungeonmaps.websocket;
+
+import org.dungeonmaps.model.CellVariableValue;
+import org.dungeonmaps.model.DungeonMap;
+import org.dungeonmaps.model.GridCellData;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class CellStoreFootprintTest {
+
+    private static final Logger log = LoggerFactory.getLogger(CellStoreFootprintTest.class);
+
+    private static final long MAP_ID = 4821L;
+    private static final String TERRAIN = UUID.randomUUID().toString();
+    private static final String HIT_POINTS = UUID.randomUUID().toString();
+    private static final String SECRET = UUID.randomUUID().toString();
+    private static final List<String> TERRAIN_VALUES = List.of(
+            UUID.randomUUID().toString(), UUID.randomUUID().toString(), UUID.randomUUID().toString(),
+            UUID.randomUUID().toString(), UUID.randomUUID().toString(), UUID.randomUUID().toString());
+
+    private MapCache populate(MapCache.CellLayout layout, int cellCount) {
+        DungeonMap map = new DungeonMap();
+        map.setId(MAP_ID);
+        MapCache cache = new MapCache(map, layout, cellCount);
+        Random random = new Random(42);
+        int width = (int) Math.ceil(Math.sqrt(cellCount));
+
+        for (int i = 0; i < cellCount; i++) {
+            GridCellData cell = new GridCellData();
+            cell.setId(Long.valueOf(100_000L + i));
+            cell.setMapId(Long.valueOf(MAP_ID));
+            cell.setRowIndex(i / width);
+            cell.setColIndex(i % width);
+            if (random.nextInt(5) == 0) cell.setName(new String("Room " + i));
+            cache.putCell(cell);
+
+            List<CellVariableValue> values = new ArrayList<>();
+            values.add(value(cell.getId(), TERRAIN, TERRAIN_VALUES.get(random.nextInt(TERRAIN_VALUES.size()))));
+            if (random.nextBoolean()) values.add(value(cell.getId(), HIT_POINTS, String.valueOf(random.nextInt(100))));
+            if (random.nextInt(10) == 0) values.add(value(cell.getId(), SECRET, "trap"));
+            cache.setCellVariableValues(cell.getId(), values);
+        }
+        return cache;
+    }
+
+    private CellVariableValue value(Long cellId, String variableId, String value) {
+        CellVariableValue cvv = new CellVariableValue();
+        cvv.setCellId(Long.valueOf(cellId));
+        cvv.setVariableId(new String(variableId));
+        cvv.setValue(new String(value));
+        return cvv;
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {10_000, 100_000})
+    void compactLayout_usesLessMemoryAndReadsBackTheSameData(int cellCount) {
+        MapCache entity = populate(MapCache.CellLayout.ENTITY, cellCount);
+        MapCache compact = populate(MapCache.CellLayout.COMPACT, cellCount);
+
+        long entityBytes = entity.getCellFootprintBytes();
+        long compactBytes = compact.getCellFootprintBytes();
+        log.info("{} cells, {} values: entity layout {} bytes ({} B/cell), compact layout {} bytes ({} B/cell)",
+                cellCount, entity.getCellVariableValueCount(),
+                entityBytes, entityBytes / cellCount, compactBytes, compactBytes / cellCount);
+
+        assertThat(compact.getCellCount()).isEqualTo(entity.getCellCount());
+        assertThat(compact.getCellVariableValueCount()).isEqualTo(entity.getCellVariableValueCount());
+        assertThat(compactBytes).isLessThan(entityBytes / 3);
+
+        for (GridCellData cell : entity.getCells()) {
+            GridCellData read = compact.getCell(cell.getRowIndex(), cell.getColIndex());
+            assertThat(read).isEqualTo(cell);
+            assertThat(compact.getCellVariableValuesForCell(cell.getId()))
+                    .extracting(CellVariableValue::getVariableId, CellVariableValue::getValue)
+                    .containsExactlyInAnyOrderElementsOf(entity.getCellVariableValuesForCell(cell.getId()).stream()
+                            .map(v -> tuple(v.getVariableId(), v.getValue()))
+                            .toList());
+        }
+    }
+}
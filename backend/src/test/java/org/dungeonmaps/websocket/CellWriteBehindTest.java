@@ -0,0 +1,175 @@
+package org.dungeonmaps.websocket;
+
+import org.dungeonmaps.model.GridCellData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CellWriteBehindTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @TempDir
+    private Path dir;
+
+    private CellWriteBehind writeBehind(Path journal) throws Exception {
+        CellWriteBehind writeBehind = new CellWriteBehind(jdbcTemplate, true, journal.toString(), 500);
+        writeBehind.start();
+        return writeBehind;
+    }
+
+    private GridCellData cell(Long id, int row, int col, String name) {
+        GridCellData cell = new GridCellData();
+        cell.setId(id);
+        cell.setMapId(1L);
+        cell.setRowIndex(row);
+        cell.setColIndex(col);
+        cell.setName(name);
+        return cell;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flush_coalescesEditsPerPositionIntoOneBatch() throws Exception {
+        Path journal = dir.resolve("cells.journal");
+        CellWriteBehind writeBehind = writeBehind(journal);
+
+        writeBehind.submit(cell(10L, 0, 0, "T"));
+        writeBehind.submit(cell(10L, 0, 0, "Th"));
+        writeBehind.submit(cell(10L, 0, 0, "Throne"));
+        writeBehind.submit(cell(11L, 0, 1, "Hall"));
+        assertThat(writeBehind.isPending(1L, 0, 0)).isTrue();
+
+        writeBehind.flush();
+
+        ArgumentCaptor<Collection<CellWriteBehind.PendingEdit>> batch = ArgumentCaptor.forClass(Collection.class);
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), batch.capture(), eq(2), any());
+        assertThat(batch.getValue()).extracting(CellWriteBehind.PendingEdit::name)
+                .containsExactlyInAnyOrder("Throne", "Hall");
+        assertThat(writeBehind.isPending(1L, 0, 0)).isFalse();
+        assertThat(Files.size(journal)).isZero();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void start_replaysEditsJournaledBeforeACrash() throws Exception {
+        Path journal = dir.resolve("cells.journal");
+        CellWriteBehind crashed = writeBehind(journal);
+        crashed.submit(cell(10L, 0, 0, "Old"));
+        crashed.submit(cell(10L, 0, 0, "Naïve name"));
+        crashed.submit(cell(11L, 0, 1, null));
+        verifyNoInteractions(jdbcTemplate);
+
+        writeBehind(journal);
+
+        ArgumentCaptor<Collection<CellWriteBehind.PendingEdit>> batch = ArgumentCaptor.forClass(Collection.class);
+        verify(jdbcTemplate).batchUpdate(anyString(), batch.capture(), eq(2), any());
+        assertThat(batch.getValue()).extracting(CellWriteBehind.PendingEdit::cellId, CellWriteBehind.PendingEdit::name)
+                .containsExactly(tuple(10L, "Naïve name"), tuple(11L, null));
+    }
+
+    private byte[] journalOfThreeEdits(Path journal) throws Exception {
+        CellWriteBehind crashed = writeBehind(journal);
+        crashed.submit(cell(10L, 0, 0, "Throne"));
+        crashed.submit(cell(11L, 0, 1, "Hall"));
+        crashed.submit(cell(12L, 0, 2, "Crypt"));
+        return Files.readAllBytes(journal);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> replayedNames(int count) {
+        ArgumentCaptor<Collection<CellWriteBehind.PendingEdit>> batch = ArgumentCaptor.forClass(Collection.class);
+        verify(jdbcTemplate).batchUpdate(anyString(), batch.capture(), eq(count), any());
+        return batch.getValue().stream().map(CellWriteBehind.PendingEdit::name).toList();
+    }
+
+    @Test
+    void start_dropsAnUnterminatedJournalTail() throws Exception {
+        Path journal = dir.resolve("cells.journal");
+        byte[] bytes = journalOfThreeEdits(journal);
+        Files.write(journal, Arrays.copyOf(bytes, bytes.length - 2));
+
+        writeBehind(journal);
+
+        assertThat(replayedNames(2)).containsExactly("Throne", "Hall");
+    }
+
+    @Test
+    void start_stopsAtAnEntryFailingItsChecksum() throws Exception {
+        Path journal = dir.resolve("cells.journal");
+        byte[] bytes = journalOfThreeEdits(journal);
+        int second = 0;
+        while (bytes[second++] != '\n') {
+        }
+        bytes[second] ^= 0x01;
+        Files.write(journal, bytes);
+
+        writeBehind(journal);
+
+        assertThat(replayedNames(1)).containsExactly("Throne");
+    }
+
+    @Test
+    void start_stopsAtAnEntryWithoutAChecksum() throws Exception {
+        Path journal = dir.resolve("cells.journal");
+        writeBehind(journal).submit(cell(10L, 0, 0, "Throne"));
+        Files.writeString(journal, "11 1 0 1 =SGFsbA== 0 0\n", StandardOpenOption.APPEND);
+
+        writeBehind(journal);
+
+        assertThat(replayedNames(1)).containsExactly("Throne");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flush_ofOnePosition_writesOnlyThatEditAndKeepsItOnFailure() throws Exception {
+        CellWriteBehind writeBehind = writeBehind(dir.resolve("cells.journal"));
+        writeBehind.submit(cell(10L, 0, 0, "Throne"));
+        writeBehind.submit(cell(11L, 0, 1, "Hall"));
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any()))
+                .thenThrow(new IllegalStateException("db down"))
+                .thenReturn(new int[0][]);
+
+        assertThatThrownBy(() -> writeBehind.flush(1L, 0, 0)).isInstanceOf(IllegalStateException.class);
+        assertThat(writeBehind.isPending(1L, 0, 0)).isTrue();
+
+        writeBehind.flush(1L, 0, 0);
+
+        ArgumentCaptor<Collection<CellWriteBehind.PendingEdit>> batch = ArgumentCaptor.forClass(Collection.class);
+        verify(jdbcTemplate, times(2)).batchUpdate(anyString(), batch.capture(), eq(1), any());
+        assertThat(batch.getValue()).extracting(CellWriteBehind.PendingEdit::name).containsExactly("Throne");
+        assertThat(writeBehind.isPending(1L, 0, 0)).isFalse();
+        assertThat(writeBehind.isPending(1L, 0, 1)).isTrue();
+    }
+
+    @Test
+    void flush_failure_keepsEditsPending() throws Exception {
+        CellWriteBehind writeBehind = writeBehind(dir.resolve("cells.journal"));
+        writeBehind.submit(cell(10L, 0, 0, "Throne"));
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any()))
+                .thenThrow(new IllegalStateException("db down"));
+
+        writeBehind.flush();
+
+        assertThat(writeBehind.isPending(1L, 0, 0)).isTrue();
+    }
+}
@@ -0,0 +1,57 @@
+package org.dungeonmaps.websocket;
+
+import org.dungeonmaps.model.CellVariableValue;
+import org.dungeonmaps.model.GridCellData;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompactCellStoreTest {
+
+    private final CompactCellStore store = new CompactCellStore(1L, 16);
+
+    private void putCell(long id, int col) {
+        GridCellData cell = new GridCellData();
+        cell.setId(id);
+        cell.setMapId(1L);
+        cell.setRowIndex(0);
+        cell.setColIndex(col);
+        store.putCell(cell);
+    }
+
+    private CellVariableValue value(long cellId, String variableId, String value, long version) {
+        CellVariableValue cvv = new CellVariableValue();
+        cvv.setCellId(cellId);
+        cvv.setVariableId(variableId);
+        cvv.setValue(value);
+        cvv.setVersion(version);
+        return cvv;
+    }
+
+    @Test
+    void valueDictionary_freesEntriesNoCellUsesAndReusesTheirCodes() {
+        putCell(10L, 0);
+        putCell(11L, 1);
+        store.putValue(10L, value(10L, "hp", "5", 0));
+        store.putValue(11L, value(11L, "hp", "5", 0));
+        store.putValue(10L, value(10L, "note", "draft 1", 0));
+        assertThat(store.dictionarySize()).isEqualTo(2);
+
+        for (int draft = 2; draft <= 50; draft++) {
+            store.putValue(10L, value(10L, "note", "draft " + draft, draft - 1));
+        }
+        assertThat(store.dictionarySize()).isEqualTo(2);
+
+        store.removeValue(10L, "hp", 1, 0);
+        assertThat(store.dictionarySize()).isEqualTo(2);
+        store.removeValuesForVariable("note");
+        assertThat(store.dictionarySize()).isEqualTo(1);
+
+        store.setValues(11L, List.of(value(11L, "hp", "7", 1)));
+        assertThat(store.dictionarySize()).isEqualTo(1);
+        assertThat(store.getValues(11L)).extracting(CellVariableValue::getValue).containsExactly("7");
+        assertThat(store.getValues(10L)).isEmpty();
+    }
+}
@@ -0,0 +1,53 @@
+package org.dungeonmaps.websocket;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HashRingTest {
+
+    private static final List<String> NODES = List.of("ws://a/ws", "ws://b/ws", "ws://c/ws");
+
+    @Test
+    void nodesFor_returnsDistinctOwnerAndStandby() {
+        HashRing ring = new HashRing(NODES, 64);
+
+        for (long mapId = 1; mapId <= 1000; mapId++) {
+            assertThat(ring.nodesFor(mapId, 2)).hasSize(2).doesNotHaveDuplicates();
+        }
+        assertThat(new HashRing(List.of("ws://a/ws"), 64).nodesFor(1, 2)).containsExactly("ws://a/ws");
+    }
+
+    @Test
+    void nodesFor_spreadsMapsAcrossNodes() {
+        HashRing ring = new HashRing(NODES, 64);
+        Map<String, Integer> owned = new HashMap<>();
+
+        for (long mapId = 1; mapId <= 3000; mapId++) {
+            owned.merge(ring.nodesFor(mapId, 1).get(0), 1, Integer::sum);
+        }
+
+        assertThat(owned).hasSize(3);
+        assertThat(owned.values()).allSatisfy(count -> assertThat(count).isBetween(600, 1400));
+    }
+
+    @Test
+    void removingNode_movesOnlyItsMapsToTheirStandby() {
+        HashRing full = new HashRing(NODES, 64);
+        HashRing reduced = new HashRing(List.of("ws://a/ws", "ws://b/ws"), 64);
+
+        for (long mapId = 1; mapId <= 1000; mapId++) {
+            List<String> before = full.nodesFor(mapId, 2);
+            String after = reduced.nodesFor(mapId, 1).get(0);
+            if (before.get(0).equals("ws://c/ws")) {
+                assertThat(after).isEqualTo(before.get(1));
+            } else {
+                assertThat(after).isEqualTo(before.get(0));
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.dungeonmaps.websocket;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LongObjectHashMapTest {
+
+    @Test
+    void putAndGet_returnsStoredValue() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<>();
+        map.put(42L, "a");
+        map.put(-7L, "b");
+        assertThat(map.get(42L)).isEqualTo("a");
+        assertThat(map.get(-7L)).isEqualTo("b");
+        assertThat(map.get(0L)).isNull();
+        assertThat(map.size()).isEqualTo(2);
+    }
+
+    @Test
+    void put_replacesExistingValue() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<>();
+        assertThat(map.put(1L, "a")).isNull();
+        assertThat(map.put(1L, "b")).isEqualTo("a");
+        assertThat(map.get(1L)).isEqualTo("b");
+        assertThat(map.size()).isEqualTo(1);
+    }
+
+    @Test
+    void put_rejectsNullValues() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<>();
+        assertThatThrownBy(() -> map.put(1L, null)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void cellKey_distinguishesNegativeCoordinates() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<>();
+        map.put(MapCache.cellKey(-1, 0), "a");
+        map.put(MapCache.cellKey(0, -1), "b");
+        map.put(MapCache.cellKey(-1, -1), "c");
+        assertThat(map.get(MapCache.cellKey(-1, 0))).isEqualTo("a");
+        assertThat(map.get(MapCache.cellKey(0, -1))).isEqualTo("b");
+        assertThat(map.get(MapCache.cellKey(-1, -1))).isEqualTo("c");
+    }
+
+    @Test
+    void randomOperations_matchHashMap() {
+        LongObjectHashMap<Long> map = new LongObjectHashMap<>();
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(1234);
+
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(5_000) - 2_500;
+            if (random.nextInt(3) == 0) {
+                assertThat(map.remove(key)).isEqualTo(expected.remove(key));
+            } else {
+                long value = random.nextLong();
+                assertThat(map.put(key, value)).isEqualTo(expected.put(key, value));
+            }
+        }
+
+        assertThat(map.size()).isEqualTo(expected.size());
+        expected.forEach((key, value) -> assertThat(map.get(key)).isEqualTo(value));
+        assertThat(map.values()).containsExactlyInAnyOrderElementsOf(expected.values());
+    }
+}
@@ -0,0 +1,139 @@
+package org.dungeonmaps.websocket;
+
+import org.dungeonmaps.model.CellVariableTombstone;
+import org.dungeonmaps.model.CellVariableValue;
+import org.dungeonmaps.model.DungeonMap;
+import org.dungeonmaps.model.GridCellData;
+import org.dungeonmaps.model.MapVariable;
+import org.dungeonmaps.repository.*;
+import org.dungeonmaps.service.HybridLogicalClock;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MapCacheReconcilerTest {
+
+    @Mock
+    private DungeonMapRepository mapRepository;
+    @Mock
+    private GridCellDataRepository cellRepository;
+    @Mock
+    private MapVariableRepository variableRepository;
+    @Mock
+    private PicklistValueRepository picklistValueRepository;
+    @Mock
+    private CellVariableValueRepository cellVariableValueRepository;
+    @Mock
+    private CellVariableTombstoneRepository tombstoneRepository;
+    @Mock
+    private CellWriteBehind cellWriteBehind;
+
+    private MapCacheReconciler reconciler;
+    private MapCache cache;
+    private DungeonMap map;
+    private LocalDateTime watermark;
+
+    @BeforeEach
+    void setUp() {
+        reconciler = new MapCacheReconciler(mapRepository, cellRepository, variableRepository,
+                picklistValueRepository, cellVariableValueRepository, tombstoneRepository, cellWriteBehind, 5000);
+        map = new DungeonMap();
+        map.setId(1L);
+        map.setName("Crypt");
+        cache = new MapCache(map);
+        cache.putCell(cell(10L, 0, 0, "Hall"));
+        cache.putCell(cell(11L, 0, 1, "Vault"));
+        cache.setVariables(List.of(variable("hp")));
+        cache.setCellVariableValues(10L, List.of(value(10L, "hp", "5")));
+        watermark = LocalDateTime.now().minusMinutes(1);
+        cache.setReconciledThrough(watermark);
+
+        when(mapRepository.findById(1L)).thenReturn(Optional.of(map));
+        when(variableRepository.countByMapId(1L)).thenReturn(1);
+        when(picklistValueRepository.countByMapId(1L)).thenReturn(0L);
+    }
+
+    private GridCellData cell(Long id, int row, int col, String name) {
+        GridCellData cell = new GridCellData();
+        cell.setId(id);
+        cell.setMapId(1L);
+        cell.setRowIndex(row);
+        cell.setColIndex(col);
+        cell.setName(name);
+        return cell;
+    }
+
+    private MapVariable variable(String id) {
+        MapVariable v = new MapVariable();
+        v.setId(id);
+        v.setMapId(1L);
+        v.setName(id);
+        v.setDataType("NUMBER");
+        v.setVisibility("VISIBLE");
+        return v;
+    }
+
+    private CellVariableValue value(Long cellId, String variableId, String value) {
+        CellVariableValue cvv = new CellVariableValue();
+        cvv.setCellId(cellId);
+        cvv.setVariableId(variableId);
+        cvv.setValue(value);
+        return cvv;
+    }
+
+    @Test
+    void reconcile_fetchesOnlyRowsChangedSinceWatermarkMinusOverlap() {
+        LocalDateTime since = watermark.minusSeconds(5);
+        when(cellRepository.findByMapIdAndUpdatedAtAfter(1L, since)).thenReturn(List.of(cell(11L, 0, 1, "Treasury")));
+        when(variableRepository.findByMapIdAndUpdatedAtAfter(1L, since)).thenReturn(List.of());
+        when(picklistValueRepository.findByMapIdUpdatedAfter(1L, since)).thenReturn(List.of());
+        when(cellVariableValueRepository.findByMapIdUpdatedAfter(1L, since)).thenReturn(List.of(value(10L, "hp", "7")));
+
+        MapCacheReconciler.Result result = reconciler.reconcile(cache);
+
+        assertThat(result.corrections()).isEqualTo(2);
+        assertThat(result.rowsScanned()).isEqualTo(5);
+        assertThat(cache.getCell(0, 1).getName()).isEqualTo("Treasury");
+        assertThat(cache.getCellVariableValuesForCell(10L)).extracting(CellVariableValue::getValue).containsExactly("7");
+        assertThat(cache.getReconciledThrough()).isAfter(watermark);
+        verify(cellRepository, never()).findByMapId(any());
+        verify(cellVariableValueRepository, never()).findByMapId(any());
+    }
+
+    @Test
+    void reconcile_appliesTombstonesWrittenSinceWatermark() {
+        LocalDateTime since = watermark.minusSeconds(5);
+        long sinceHlc = HybridLogicalClock.atMillis(since.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        CellVariableTombstone tombstone = new CellVariableTombstone();
+        tombstone.setCellId(10L);
+        tombstone.setVariableId("hp");
+        tombstone.setVersion(1L);
+        tombstone.setHlc(sinceHlc + 1);
+        when(cellRepository.findByMapIdAndUpdatedAtAfter(1L, since)).thenReturn(List.of(cell(12L, 1, 0, "Annex")));
+        when(variableRepository.findByMapIdAndUpdatedAtAfter(1L, since)).thenReturn(List.of());
+        when(picklistValueRepository.findByMapIdUpdatedAfter(1L, since)).thenReturn(List.of());
+        when(cellVariableValueRepository.findByMapIdUpdatedAfter(1L, since))
+                .thenReturn(List.of(value(11L, "hp", "3")));
+        when(tombstoneRepository.findByMapIdDeletedAfter(1L, sinceHlc)).thenReturn(List.of(tombstone));
+
+        MapCacheReconciler.Result result = reconciler.reconcile(cache);
+
+        assertThat(result.corrections()).isEqualTo(3);
+        assertThat(cache.getCellVariableValuesForCell(10L)).isEmpty();
+        assertThat(cache.getCellVariableValuesForCell(11L)).extracting(CellVariableValue::getValue).containsExactly("3");
+        assertThat(cache.getCellCount()).isEqualTo(3);
+        verify(cellVariableValueRepository, never()).findByMapId(any());
+    }
+}
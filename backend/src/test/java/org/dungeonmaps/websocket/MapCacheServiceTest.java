@@ -0,0 +1,357 @@
+package org.dungeonmaps.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.dungeonmaps.model.DungeonMap;
+import org.dungeonmaps.model.GridCellData;
+import org.dungeonmaps.model.MapVariable;
+import org.dungeonmaps.model.MapMembership.MapRole;
+import org.dungeonmaps.service.HybridLogicalClock;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MapCacheServiceTest {
+
+    @Mock
+    private MapCacheLoader mapCacheLoader;
+    @Mock
+    private MapCacheReconciler reconciler;
+    @Mock
+    private SimpMessagingTemplate messagingTemplate;
+
+    private MapCacheService service;
+    private SessionRegistry sessionRegistry;
+    private SimpleMeterRegistry meterRegistry;
+    private InMemoryMapEventRelay relay;
+
+    @BeforeEach
+    void setUp() {
+        sessionRegistry = new SessionRegistry();
+        relay = new InMemoryMapEventRelay();
+        service = service(300, Long.MAX_VALUE);
+    }
+
+    private MapCacheService service(long idleTtlSeconds, long maxWeight) {
+        return service(messagingTemplate, idleTtlSeconds, maxWeight);
+    }
+
+    private MapCacheService service(SimpMessagingTemplate template, long idleTtlSeconds, long maxWeight) {
+        meterRegistry = new SimpleMeterRegistry();
+        MapCacheService created = new MapCacheService(mapCacheLoader, reconciler, template, sessionRegistry,
+                new ObjectMapper(), new SyncCompressor(meterRegistry, Integer.MAX_VALUE, 65536, 6), relay,
+                new ClusterMembership(null, false, "", 15000, 64), new HybridLogicalClock(),
+                meterRegistry, idleTtlSeconds, maxWeight, 300000, 0, 0);
+        created.subscribe();
+        return created;
+    }
+
+    private MapCache cache(Long mapId) {
+        DungeonMap map = new DungeonMap();
+        map.setId(mapId);
+        map.setName("Map " + mapId);
+        return new MapCache(map);
+    }
+
+    private GridCellData cell(Long id, Long mapId, int row, int col, String name) {
+        GridCellData cell = new GridCellData();
+        cell.setId(id);
+        cell.setMapId(mapId);
+        cell.setRowIndex(row);
+        cell.setColIndex(col);
+        cell.setName(name);
+        return cell;
+    }
+
+    @Test
+    void getOrLoadAsync_concurrentCallersShareOneLoad() {
+        CompletableFuture<MapCache> load = new CompletableFuture<>();
+        when(mapCacheLoader.loadAsync(1L)).thenReturn(load);
+
+        CompletableFuture<MapCache> first = service.getOrLoadAsync(1L);
+        CompletableFuture<MapCache> second = service.getOrLoadAsync(1L);
+        assertThat(first).isNotDone();
+
+        MapCache loaded = cache(1L);
+        load.complete(loaded);
+
+        assertThat(first.join()).isSameAs(loaded);
+        assertThat(second.join()).isSameAs(loaded);
+        verify(mapCacheLoader, times(1)).loadAsync(1L);
+    }
+
+    @Test
+    void getOrLoadAsync_failedLoadIsRetried() {
+        when(mapCacheLoader.loadAsync(1L))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("db down")))
+                .thenReturn(CompletableFuture.completedFuture(cache(1L)));
+
+        assertThat(service.getOrLoadAsync(1L)).isCompletedExceptionally();
+        assertThat(service.getOrLoadAsync(1L).join()).isNotNull();
+        verify(mapCacheLoader, times(2)).loadAsync(1L);
+    }
+
+    @Test
+    void updateCell_duringLoad_isAppliedOnceLoaded() {
+        CompletableFuture<MapCache> load = new CompletableFuture<>();
+        when(mapCacheLoader.loadAsync(1L)).thenReturn(load);
+        CompletableFuture<MapCache> pending = service.getOrLoadAsync(1L);
+
+        service.updateCell(cell(5L, 1L, 2, 3, "Throne Room"));
+        load.complete(cache(1L));
+
+        assertThat(pending.join().getCell(2, 3).getName()).isEqualTo("Throne Room");
+    }
+
+    @Test
+    void updatesDuringLoad_areAppliedInArrivalOrder() {
+        CompletableFuture<MapCache> load = new CompletableFuture<>();
+        when(mapCacheLoader.loadAsync(1L)).thenReturn(load);
+        service.getOrLoadAsync(1L);
+
+        service.updateMapField(1L, "name", "First");
+        service.updateMapField(1L, "name", "Second");
+        service.updateMapField(1L, "name", "Third");
+        load.complete(cache(1L));
+
+        assertThat(service.getOrLoadAsync(1L).join().getMapData().getName()).isEqualTo("Third");
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> sentJson(String destination) throws Exception {
+        ArgumentCaptor<Message<byte[]>> sent = ArgumentCaptor.forClass(Message.class);
+        verify(messagingTemplate).send(eq(destination), sent.capture());
+        return new ObjectMapper().readValue(sent.getValue().getPayload(), Map.class);
+    }
+
+    private List<Map<String, Object>> allSentJson(String destination) throws Exception {
+        ArgumentCaptor<Message<byte[]>> sent = ArgumentCaptor.forClass(Message.class);
+        verify(messagingTemplate, atLeastOnce()).send(eq(destination), sent.capture());
+        List<Map<String, Object>> messages = new ArrayList<>();
+        for (Message<byte[]> message : sent.getAllValues()) {
+            messages.add(new ObjectMapper().readValue(message.getPayload(), Map.class));
+        }
+        return messages;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void sync_withKnownSeq_sendsOnlyMissedOperations() throws Exception {
+        MapCache loaded = cache(1L);
+        loaded.putCell(cell(5L, 1L, 2, 3, "Hall"));
+        when(mapCacheLoader.loadAsync(1L)).thenReturn(CompletableFuture.completedFuture(loaded));
+        service.getOrLoad(1L);
+        UserSession session = new UserSession("s1", 7L, 1L, "Red", MapRole.PLAYER, "Ada");
+        sessionRegistry.register(session);
+
+        service.broadcastCellUpdate(cell(5L, 1L, 2, 3, "Armory"), 8L);
+        service.broadcastCellUpdate(cell(5L, 1L, 2, 3, "Vault"), 8L);
+        String epoch = loaded.getOperationLog().getEpoch();
+
+        service.sync(session, "client-1", 1L, epoch, false);
+
+        Map<String, Object> delta = sentJson("/topic/sync/client-1");
+        assertThat(delta).containsEntry("type", "DELTA").containsEntry("seq", 2);
+        assertThat((List<Map<String, Object>>) delta.get("ops"))
+                .singleElement()
+                .satisfies(op -> assertThat(op)
+                        .containsEntry("seq", 2)
+                        .containsEntry("type", "CELL_UPDATE")
+                        .containsEntry("value", "Vault"));
+    }
+
+    @Test
+    void sync_withStaleEpoch_fallsBackToFullState() throws Exception {
+        MapCache loaded = cache(1L);
+        when(mapCacheLoader.loadAsync(1L)).thenReturn(CompletableFuture.completedFuture(loaded));
+        service.getOrLoad(1L);
+        UserSession session = new UserSession("s1", 7L, 1L, "Red", MapRole.PLAYER, "Ada");
+        sessionRegistry.register(session);
+
+        service.sync(session, "client-1", 0L, "previous-epoch", false);
+
+        List<Map<String, Object>> sent = allSentJson("/topic/sync/client-1");
+        assertThat(sent).hasSize(2);
+        assertThat(sent.get(0)).containsEntry("type", "USERS").containsKey("users");
+        assertThat(sent.get(1))
+                .containsEntry("type", "FULL_STATE")
+                .containsEntry("epoch", loaded.getOperationLog().getEpoch())
+                .doesNotContainKey("users");
+    }
+
+    @Test
+    void sync_fullState_reusesTheSnapshotUntilTheMapChanges() {
+        MapCache loaded = cache(1L);
+        when(mapCacheLoader.loadAsync(1L)).thenReturn(CompletableFuture.completedFuture(loaded));
+        service.getOrLoad(1L);
+        UserSession session = new UserSession("s1", 7L, 1L, "Red", MapRole.PLAYER, "Ada");
+        sessionRegistry.register(session);
+
+        service.sync(session, "client-1", null, null, false);
+        FullStateSnapshot first = loaded.getSnapshot(Audience.PLAYER);
+        service.sync(session, "client-2", null, null, false);
+
+        assertThat(first).isNotNull();
+        assertThat(loaded.getSnapshot(Audience.PLAYER)).isSameAs(first);
+    }
+
+    @Test
+    void sendAck_isNotCountedAsSyncTraffic() {
+        service.sendAck("client-1", 3L, "APPLIED");
+
+        verify(messagingTemplate).send(eq("/topic/sync/client-1"), any(Message.class));
+        assertThat(meterRegistry.find("map.sync.bytes").summaries())
+                .allSatisfy(summary -> assertThat(summary.count()).isZero());
+    }
+
+    @Test
+    void broadcastCellUpdate_isAlsoPublishedToTheCellsTile() {
+        when(mapCacheLoader.loadAsync(1L)).thenReturn(CompletableFuture.completedFuture(cache(1L)));
+        service.getOrLoad(1L);
+        int row = MapCache.getTileSize() + 2;
+        sessionRegistry.subscribe("s1", "sub-0", "/topic/map/1/tile/1/0");
+
+        service.broadcastCellUpdate(cell(5L, 1L, row, 3, "Armory"), 8L);
+
+        verify(messagingTemplate).send(eq("/topic/map/1"), any(Message.class));
+        verify(messagingTemplate).send(eq("/topic/map/1/tile/1/0"), any(Message.class));
+        verify(messagingTemplate, never()).send(eq("/topic/map/1/shared"), any(Message.class));
+    }
+
+    @Test
+    void broadcastCellUpdate_carriesTheSequencedMessageAsCbor() throws Exception {
+        when(mapCacheLoader.loadAsync(1L)).thenReturn(CompletableFuture.completedFuture(cache(1L)));
+        service.getOrLoad(1L);
+
+        service.broadcastCellUpdate(cell(5L, 1L, 2, 3, "Armory"), 8L);
+
+        ArgumentCaptor<Message<byte[]>> sent = ArgumentCaptor.forClass(Message.class);
+        verify(messagingTemplate).send(eq("/topic/map/1"), sent.capture());
+        WirePayload wire = (WirePayload) sent.getValue().getHeaders().get(WirePayload.HEADER);
+        ObjectMapper cbor = new ObjectMapper(new CBORFactory());
+        assertThat(cbor.readValue(wire.cbor(), Map.class))
+                .isEqualTo(new ObjectMapper().readValue(sent.getValue().getPayload(), Map.class))
+                .containsEntry("seq", 1);
+    }
+
+    @Test
+    void broadcastCellUpdate_withoutTileSubscribers_isOnlyPublishedToTheMapTopic() {
+        when(mapCacheLoader.loadAsync(1L)).thenReturn(CompletableFuture.completedFuture(cache(1L)));
+        service.getOrLoad(1L);
+        sessionRegistry.subscribe("s1", "sub-0", "/topic/map/1/tile/0/0");
+        sessionRegistry.remove("s1");
+
+        service.broadcastCellUpdate(cell(5L, 1L, 2, 3, "Armory"), 8L);
+
+        verify(messagingTemplate).send(eq("/topic/map/1"), any(Message.class));
+        verify(messagingTemplate, never()).send(eq("/topic/map/1/tile/0/0"), any(Message.class));
+    }
+
+    @Test
+    void relayedCellUpdate_isAppliedToOtherInstanceAndDeliveredToItsSubscribers() {
+        SimpMessagingTemplate otherTemplate = mock(SimpMessagingTemplate.class);
+        MapCacheService other = service(otherTemplate, 300, Long.MAX_VALUE);
+        MapCache otherCache = cache(1L);
+        when(mapCacheLoader.loadAsync(1L))
+                .thenReturn(CompletableFuture.completedFuture(cache(1L)))
+                .thenReturn(CompletableFuture.completedFuture(otherCache));
+        service.getOrLoad(1L);
+        other.getOrLoad(1L);
+
+        service.broadcastCellUpdate(cell(5L, 1L, 2, 3, "Armory"), 8L);
+
+        assertThat(otherCache.getCell(2, 3).getId()).isEqualTo(5L);
+        assertThat(otherCache.getCell(2, 3).getName()).isEqualTo("Armory");
+        assertThat(otherCache.getOperationLog().lastSeq()).isEqualTo(1);
+        verify(otherTemplate).send(eq("/topic/map/1"), any(Message.class));
+        verify(messagingTemplate, times(1)).send(eq("/topic/map/1"), any(Message.class));
+    }
+
+    @Test
+    void relayedDmOnlyVariable_staysOnTheDmTopic() {
+        SimpMessagingTemplate otherTemplate = mock(SimpMessagingTemplate.class);
+        MapCacheService other = service(otherTemplate, 300, Long.MAX_VALUE);
+        MapCache otherCache = cache(1L);
+        when(mapCacheLoader.loadAsync(1L))
+                .thenReturn(CompletableFuture.completedFuture(cache(1L)))
+                .thenReturn(CompletableFuture.completedFuture(otherCache));
+        service.getOrLoad(1L);
+        other.getOrLoad(1L);
+        MapVariable secret = new MapVariable();
+        secret.setId("v1");
+        secret.setMapId(1L);
+        secret.setName("Trap");
+        secret.setDataType("TEXT");
+        secret.setVisibility("DM_ONLY");
+
+        service.broadcastVariableCreated(1L, secret, 8L);
+
+        assertThat(otherCache.getVariable("v1").getName()).isEqualTo("Trap");
+        verify(otherTemplate).send(eq("/topic/map/1/dm"), any(Message.class));
+        verify(otherTemplate, never()).send(eq("/topic/map/1"), any(Message.class));
+    }
+
+    @Test
+    void evictIfEmpty_keepsCacheUntilIdleTtlExpires() {
+        when(mapCacheLoader.loadAsync(1L)).thenReturn(CompletableFuture.completedFuture(cache(1L)));
+        service.getOrLoad(1L);
+
+        service.evictIfEmpty(1L);
+        service.evictIdle();
+        service.getOrLoad(1L);
+
+        verify(mapCacheLoader, times(1)).loadAsync(1L);
+        assertThat(meterRegistry.get("map.cache.requests").tag("result", "hit").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void evictIdle_dropsMapsIdleLongerThanTtl() {
+        service = service(0, Long.MAX_VALUE);
+        when(mapCacheLoader.loadAsync(1L)).thenReturn(CompletableFuture.completedFuture(cache(1L)));
+        service.getOrLoad(1L);
+
+        service.evictIdle();
+        service.getOrLoad(1L);
+
+        verify(mapCacheLoader, times(2)).loadAsync(1L);
+        assertThat(meterRegistry.get("map.cache.evictions").tag("cause", "idle").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void evictIdle_overBudget_evictsLeastFrequentlyUsedIdleMapFirst() {
+        service = service(300, 3);
+        for (long mapId = 1; mapId <= 3; mapId++) {
+            MapCache cache = cache(mapId);
+            cache.putCell(cell(mapId * 10, mapId, 0, 0, "A"));
+            cache.putCell(cell(mapId * 10 + 1, mapId, 0, 1, "B"));
+            when(mapCacheLoader.loadAsync(mapId)).thenReturn(CompletableFuture.completedFuture(cache));
+            service.getOrLoad(mapId);
+        }
+        service.getOrLoad(1L);
+        service.getOrLoad(3L);
+        service.getOrLoad(3L);
+        sessionRegistry.register(new UserSession("s1", 7L, 3L, "Red", MapRole.DM, "Ada"));
+
+        service.evictIdle();
+
+        assertThat(meterRegistry.get("map.cache.evictions").tag("cause", "budget").counter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("map.cache.weight").gauge().value()).isEqualTo(2);
+        service.getOrLoad(3L);
+        verify(mapCacheLoader, times(1)).loadAsync(3L);
+    }
+}
@@ -0,0 +1,212 @@
+package org.dungeonmaps.websocket;
+
+import org.dungeonmaps.model.CellVariableValue;
+import org.dungeonmaps.model.DungeonMap;
+import org.dungeonmaps.model.GridCellData;
+import org.dungeonmaps.model.MapVariable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class MapCacheTest {
+
+    private MapCache cache;
+
+    @BeforeEach
+    void setUp() {
+        DungeonMap map = new DungeonMap();
+        map.setId(1L);
+        cache = new MapCache(map);
+    }
+
+    private MapVariable variable(String id, String visibility, int sortOrder) {
+        MapVariable v = new MapVariable();
+        v.setId(id);
+        v.setMapId(1L);
+        v.setName(id);
+        v.setDataType("TEXT");
+        v.setVisibility(visibility);
+        v.setSortOrder(sortOrder);
+        return v;
+    }
+
+    @Test
+    void setVariables_indexesByIdAndVisibility() {
+        cache.setVariables(List.of(variable("hp", "VISIBLE", 0), variable("trap", "DM_ONLY", 1)));
+
+        assertThat(cache.getVariable("hp").getName()).isEqualTo("hp");
+        assertThat(cache.getVariable("missing")).isNull();
+        assertThat(cache.isDmOnly("trap")).isTrue();
+        assertThat(cache.isDmOnly("hp")).isFalse();
+    }
+
+    @Test
+    void putVariable_replacesAndKeepsSortOrder() {
+        cache.setVariables(List.of(variable("a", "VISIBLE", 0), variable("b", "VISIBLE", 1)));
+        cache.putVariable(variable("c", "VISIBLE", 2));
+        cache.putVariable(variable("a", "DM_ONLY", 3));
+
+        assertThat(cache.getVariables()).extracting(MapVariable::getId).containsExactly("b", "c", "a");
+        assertThat(cache.isDmOnly("a")).isTrue();
+    }
+
+    @Test
+    void removeVariable_dropsFromIndexAndPicklists() {
+        cache.setVariables(List.of(variable("a", "DM_ONLY", 0)));
+        cache.setPicklistValues("a", List.of());
+        cache.removeVariable("a");
+
+        assertThat(cache.getVariables()).isEmpty();
+        assertThat(cache.getVariable("a")).isNull();
+        assertThat(cache.isDmOnly("a")).isFalse();
+        assertThat(cache.getPicklistValues()).doesNotContainKey("a");
+    }
+
+    @Test
+    void snapshot_isInvalidatedByMutation() {
+        FullStateSnapshot snapshot = new FullStateSnapshot(cache.getVersion(), new byte[]{'{', '}'}, null);
+        cache.storeSnapshot(Audience.PLAYER, snapshot);
+
+        assertThat(cache.getSnapshot(Audience.PLAYER)).isSameAs(snapshot);
+        assertThat(cache.getSnapshot(Audience.DM)).isNull();
+
+        cache.putVariable(variable("hp", "VISIBLE", 0));
+
+        assertThat(cache.getSnapshot(Audience.PLAYER)).isNull();
+    }
+
+    @Test
+    void getTileCells_returnsOnlyCellsInsideTheTile() {
+        int size = MapCache.getTileSize();
+        long id = 1;
+        for (int[] pos : new int[][]{{0, 0}, {size - 1, size - 1}, {size, 0}, {-1, 3}, {-size, -size}}) {
+            GridCellData cell = new GridCellData();
+            cell.setId(id++);
+            cell.setMapId(1L);
+            cell.setRowIndex(pos[0]);
+            cell.setColIndex(pos[1]);
+            cache.putCell(cell);
+        }
+
+        assertThat(cache.getTileCells(0, 0))
+                .extracting(GridCellData::getRowIndex, GridCellData::getColIndex)
+                .containsExactlyInAnyOrder(tuple(0, 0), tuple(size - 1, size - 1));
+        assertThat(cache.getTileCells(-1, 0))
+                .extracting(GridCellData::getRowIndex, GridCellData::getColIndex)
+                .containsExactly(tuple(-1, 3));
+        assertThat(cache.getTileCells(-1, -1)).hasSize(1);
+        assertThat(cache.getTileCells(5, 5)).isEmpty();
+        assertThat(cache.getTileCount()).isEqualTo(4);
+    }
+
+    private static GridCellData cell(String name, long version, long hlc) {
+        GridCellData cell = new GridCellData();
+        cell.setId(5L);
+        cell.setMapId(1L);
+        cell.setRowIndex(2);
+        cell.setColIndex(3);
+        cell.setName(name);
+        cell.setVersion(version);
+        cell.setHlc(hlc);
+        return cell;
+    }
+
+    private static CellVariableValue value(String value, long version, long hlc) {
+        CellVariableValue cvv = new CellVariableValue();
+        cvv.setCellId(5L);
+        cvv.setVariableId("hp");
+        cvv.setValue(value);
+        cvv.setVersion(version);
+        cvv.setHlc(hlc);
+        return cvv;
+    }
+
+    private static MapCache cache(MapCache.CellLayout layout) {
+        DungeonMap map = new DungeonMap();
+        map.setId(1L);
+        return new MapCache(map, layout, 16);
+    }
+
+    @ParameterizedTest
+    @EnumSource(MapCache.CellLayout.class)
+    void putCell_ignoresOlderVersionsInAnyArrivalOrder(MapCache.CellLayout layout) {
+        MapCache cache = cache(layout);
+
+        assertThat(cache.putCell(cell("Vault", 3, 30))).isTrue();
+        assertThat(cache.putCell(cell("Armory", 2, 40))).isFalse();
+        assertThat(cache.putCell(cell("Hall", 3, 20))).isFalse();
+        assertThat(cache.putCell(cell("Crypt", 3, 35))).isTrue();
+
+        assertThat(cache.getCell(2, 3).getName()).isEqualTo("Crypt");
+        assertThat(cache.getCell(2, 3).getVersion()).isEqualTo(3L);
+        assertThat(cache.getCell(2, 3).getHlc()).isEqualTo(35L);
+    }
+
+    @ParameterizedTest
+    @EnumSource(MapCache.CellLayout.class)
+    void replaceCell_appliesOnlyAgainstTheExpectedVersion(MapCache.CellLayout layout) {
+        MapCache cache = cache(layout);
+        cache.putCell(cell("Vault", 3, 30));
+
+        assertThat(cache.replaceCell(cell("Armory", 4, 40), 2)).isFalse();
+        assertThat(cache.replaceCell(cell("Hall", 4, 41), 3)).isTrue();
+        assertThat(cache.replaceCell(cell("Crypt", 4, 42), 3)).isFalse();
+
+        assertThat(cache.getCell(2, 3).getName()).isEqualTo("Hall");
+    }
+
+    @ParameterizedTest
+    @EnumSource(MapCache.CellLayout.class)
+    void cellVariableValues_areOrderedByVersionIncludingClears(MapCache.CellLayout layout) {
+        MapCache cache = cache(layout);
+        cache.putCell(cell("Vault", 1, 10));
+        cache.putCellVariableValue(5L, value("12", 2, 20));
+
+        assertThat(cache.putCellVariableValue(5L, value("9", 1, 30))).isFalse();
+        assertThat(cache.removeCellVariableValue(5L, "hp", 1, 25)).isFalse();
+        assertThat(cache.getCellVariableValuesForCell(5L))
+                .extracting(CellVariableValue::getValue, CellVariableValue::getVersion)
+                .containsExactly(tuple("12", 2L));
+
+        assertThat(cache.removeCellVariableValue(5L, "hp", 3, 40)).isTrue();
+        assertThat(cache.getCellVariableValuesForCell(5L)).isEmpty();
+    }
+
+    @ParameterizedTest
+    @EnumSource(MapCache.CellLayout.class)
+    void removedValue_isNotRevivedByALatePutUntilTheTombstoneIsPruned(MapCache.CellLayout layout) {
+        MapCache cache = cache(layout);
+        cache.putCell(cell("Vault", 1, 10));
+        cache.putCellVariableValue(5L, value("12", 2, 20));
+        cache.removeCellVariableValue(5L, "hp", 3, 40);
+
+        assertThat(cache.putCellVariableValue(5L, value("12", 2, 20))).isFalse();
+        assertThat(cache.getCellVariableValuesForCell(5L)).isEmpty();
+
+        assertThat(cache.putCellVariableValue(5L, value("7", 4, 50))).isTrue();
+        assertThat(cache.getCellVariableValuesForCell(5L))
+                .extracting(CellVariableValue::getValue, CellVariableValue::getVersion)
+                .containsExactly(tuple("7", 4L));
+
+        cache.removeCellVariableValue(5L, "hp", 5, 60);
+        assertThat(cache.pruneTombstones(61)).isEqualTo(1);
+        assertThat(cache.putCellVariableValue(5L, value("7", 4, 50))).isTrue();
+    }
+
+    @ParameterizedTest
+    @EnumSource(MapCache.CellLayout.class)
+    void removal_arrivingBeforeThePutItDeletes_winsOverIt(MapCache.CellLayout layout) {
+        MapCache cache = cache(layout);
+        cache.putCell(cell("Vault", 1, 10));
+
+        assertThat(cache.removeCellVariableValue(5L, "hp", 1, 30)).isTrue();
+        assertThat(cache.putCellVariableValue(5L, value("12", 0, 20))).isFalse();
+        assertThat(cache.getCellVariableValuesForCell(5L)).isEmpty();
+    }
+}
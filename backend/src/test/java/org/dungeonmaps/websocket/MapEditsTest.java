@@ -0,0 +1,112 @@
+package org.dungeonmaps.websocket;
+
+import org.dungeonmaps.model.GridCellData;
+import org.dungeonmaps.model.MapVariable;
+import org.dungeonmaps.service.CellVariableValueService;
+import org.dungeonmaps.service.DungeonMapService;
+import org.dungeonmaps.service.GridCellDataService;
+import org.dungeonmaps.service.HybridLogicalClock;
+import org.dungeonmaps.service.MapVariableService;
+import org.dungeonmaps.service.VersionedWrite;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MapEditsTest {
+
+    @Mock
+    private GridCellDataService cellService;
+    @Mock
+    private CellVariableValueService valueService;
+    @Mock
+    private MapVariableService variableService;
+    @Mock
+    private DungeonMapService mapService;
+    @Mock
+    private MapCacheService mapCacheService;
+    @Mock
+    private CellWriteBehind cellWriteBehind;
+
+    private MapEdits mapEdits;
+
+    @BeforeEach
+    void setUp() {
+        mapEdits = new MapEdits(cellService, valueService, variableService, mapService, mapCacheService,
+                cellWriteBehind, new HybridLogicalClock(), 10000);
+    }
+
+    private GridCellData cell(String name, long version) {
+        GridCellData cell = new GridCellData();
+        cell.setId(10L);
+        cell.setMapId(1L);
+        cell.setRowIndex(0);
+        cell.setColIndex(0);
+        cell.setName(name);
+        cell.setVersion(version);
+        cell.setHlc(0L);
+        return cell;
+    }
+
+    @Test
+    void saveCellName_withWriteBehind_appliesTheEditToTheCacheOnce() {
+        when(cellWriteBehind.isEnabled()).thenReturn(true);
+        when(mapCacheService.getCachedCell(1L, 0, 0)).thenReturn(cell("Hall", 2));
+        when(mapCacheService.replaceCachedCell(any(), eq(2L))).thenReturn(true);
+
+        VersionedWrite<GridCellData> write = mapEdits.saveCellName(1L, 0, 0, "Throne", 2L, 5L);
+
+        assertThat(write.applied()).isTrue();
+        assertThat(write.current().getVersion()).isEqualTo(3L);
+        verify(mapCacheService).replaceCachedCell(any(), eq(2L));
+        verify(mapCacheService, never()).updateCell(any());
+        verify(cellWriteBehind).submit(write.current());
+        verifyNoInteractions(cellService);
+    }
+
+    @Test
+    void saveCellName_whenTheCachedCellIsGone_flushesItsPendingEditBeforeTheDatabaseWrite() {
+        when(cellWriteBehind.isEnabled()).thenReturn(true);
+        GridCellData stored = cell("Throne", 3);
+        when(cellService.compareAndSetName(eq(1L), eq(0), eq(0), eq("Throne"), eq(2L), anyLong()))
+                .thenReturn(VersionedWrite.applied(stored));
+
+        mapEdits.saveCellName(1L, 0, 0, "Throne", 2L, 5L);
+
+        InOrder order = inOrder(cellWriteBehind, cellService);
+        order.verify(cellWriteBehind).flush(1L, 0, 0);
+        order.verify(cellService).compareAndSetName(eq(1L), eq(0), eq(0), eq("Throne"), eq(2L), anyLong());
+    }
+
+    @Test
+    void saveCellName_withoutWriteBehind_updatesTheCacheFromTheDatabase() {
+        GridCellData stored = cell("Throne", 3);
+        when(cellService.compareAndSetName(eq(1L), eq(0), eq(0), eq("Throne"), eq(2L), anyLong()))
+                .thenReturn(VersionedWrite.applied(stored));
+
+        mapEdits.saveCellName(1L, 0, 0, "Throne", 2L, 5L);
+
+        verify(mapCacheService).updateCell(stored);
+        verify(mapCacheService).broadcastCellUpdate(stored, 5L);
+    }
+
+    @Test
+    void paintFill_whileTheMapIsNotCached_returnsNullWithoutWriting() {
+        MapVariable variable = new MapVariable();
+        variable.setId("hp");
+        CellRegion fill = new CellRegion(null, null, new CellRegion.Cell(0, 0), null);
+
+        assertThat(mapEdits.paintCellVariableValue(1L, variable, fill, "7", 5L)).isNull();
+
+        verify(mapCacheService).getLoadedOrPreload(1L);
+        verify(mapCacheService, never()).getOrLoad(any());
+        verifyNoInteractions(cellService, valueService);
+    }
+}
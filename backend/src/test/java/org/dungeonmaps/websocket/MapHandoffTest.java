@@ -0,0 +1,49 @@
+package org.dungeonmaps.websocket;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.LongStream;
+
+import static org.mockito.Mockito.*;
+
+class MapHandoffTest {
+
+    private static final String NODE_A = "ws://node-a/ws";
+    private static final String NODE_B = "ws://node-b/ws";
+
+    private WebSocketSession session(String id, Long mapId) {
+        WebSocketSession session = mock(WebSocketSession.class);
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("mapId", mapId);
+        when(session.getId()).thenReturn(id);
+        when(session.getAttributes()).thenReturn(attributes);
+        return session;
+    }
+
+    @Test
+    void membershipChange_closesOnlySessionsOfMovedMaps() throws Exception {
+        ClusterMembership twoNodes = new ClusterMembership(null, true, NODE_A, 15000, 64);
+        twoNodes.updateNodes(List.of(NODE_B));
+        long moved = LongStream.range(1, 1000).filter(id -> !twoNodes.isOwner(id)).findFirst().orElseThrow();
+        long kept = LongStream.range(1, 1000).filter(twoNodes::isOwner).findFirst().orElseThrow();
+
+        ClusterMembership cluster = new ClusterMembership(null, true, NODE_A, 15000, 64);
+        MapHandoff handoff = new MapHandoff(cluster);
+        handoff.start();
+        WebSocketHandler handler = handoff.decorate(mock(WebSocketHandler.class));
+        WebSocketSession movedSession = session("s1", moved);
+        WebSocketSession keptSession = session("s2", kept);
+        handler.afterConnectionEstablished(movedSession);
+        handler.afterConnectionEstablished(keptSession);
+
+        cluster.updateNodes(List.of(NODE_B));
+
+        verify(movedSession).close(MapHandoff.MAP_MOVED);
+        verify(keptSession, never()).close(any());
+    }
+}
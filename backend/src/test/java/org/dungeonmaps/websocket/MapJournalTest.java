@@ -0,0 +1,184 @@
+package org.dungeonmaps.websocket;
+
+import org.dungeonmaps.model.CellVariableTombstone;
+import org.dungeonmaps.model.CellVariableValue;
+import org.dungeonmaps.model.DungeonMap;
+import org.dungeonmaps.model.GridCellData;
+import org.dungeonmaps.repository.*;
+import org.dungeonmaps.service.HybridLogicalClock;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MapJournalTest {
+
+    @TempDir
+    private Path dir;
+
+    private MapJournal journal(int segmentBytes) {
+        return new MapJournal(true, dir.toString(), segmentBytes, 10000);
+    }
+
+    private MapCache cache() {
+        DungeonMap map = new DungeonMap();
+        map.setId(1L);
+        return new MapCache(map);
+    }
+
+    private GridCellData cell(Long id, int row, int col, String name, long version) {
+        GridCellData cell = new GridCellData();
+        cell.setId(id);
+        cell.setMapId(1L);
+        cell.setRowIndex(row);
+        cell.setColIndex(col);
+        cell.setName(name);
+        cell.setVersion(version);
+        return cell;
+    }
+
+    private CellVariableValue value(Long cellId, String variableId, String value, long version) {
+        CellVariableValue cvv = new CellVariableValue();
+        cvv.setCellId(cellId);
+        cvv.setVariableId(variableId);
+        cvv.setValue(value);
+        cvv.setVersion(version);
+        return cvv;
+    }
+
+    private long segmentCount() throws Exception {
+        try (Stream<Path> files = Files.list(dir.resolve("1"))) {
+            return files.filter(path -> path.toString().endsWith(".seg")).count();
+        }
+    }
+
+    @Test
+    void restore_replaysJournalTailOverSnapshot() {
+        MapJournal journal = journal(4096);
+        MapCache live = cache();
+        live.putCell(cell(10L, 0, 0, "Hall", 0));
+        live.setReconciledThrough(LocalDateTime.of(2026, 1, 1, 12, 0));
+        journal.attach(live);
+
+        live.putCellVariableValue(10L, value(10L, "hp", "5", 0));
+        live.putCellVariableValue(10L, value(10L, "trap", "yes", 0));
+        journal.maintain();
+
+        live.putCell(cell(10L, 0, 0, "Throne", 1));
+        live.putCell(cell(11L, 0, 1, "Vault", 0));
+        live.removeCellVariableValue(10L, "trap", 1, 0);
+
+        MapCache restored = journal(4096).restore(1L, expectedCells -> cache());
+
+        assertThat(restored).isNotNull();
+        assertThat(restored.getCells())
+                .extracting(GridCellData::getId, GridCellData::getName, GridCellData::getVersion)
+                .containsExactlyInAnyOrder(tuple(10L, "Throne", 1L), tuple(11L, "Vault", 0L));
+        assertThat(restored.getCellVariableValuesForCell(10L))
+                .extracting(CellVariableValue::getVariableId, CellVariableValue::getValue)
+                .containsExactly(tuple("hp", "5"));
+        assertThat(restored.getReconciledThrough()).isEqualTo(LocalDateTime.of(2026, 1, 1, 12, 0));
+    }
+
+    @Test
+    void restore_thenReconcile_dropsValuesDeletedWhileEvicted() {
+        MapJournal journal = journal(4096);
+        MapCache live = cache();
+        live.putCell(cell(10L, 0, 0, "Hall", 0));
+        LocalDateTime watermark = LocalDateTime.now().minusMinutes(1);
+        live.setReconciledThrough(watermark);
+        journal.attach(live);
+        live.putCellVariableValue(10L, value(10L, "hp", "5", 0));
+        journal.detach(live);
+
+        CellVariableTombstone tombstone = new CellVariableTombstone();
+        tombstone.setCellId(10L);
+        tombstone.setVariableId("hp");
+        tombstone.setVersion(1L);
+        tombstone.setHlc(HybridLogicalClock.atMillis(System.currentTimeMillis()));
+        CellVariableTombstoneRepository tombstones = mock(CellVariableTombstoneRepository.class);
+        when(tombstones.findByMapIdDeletedAfter(eq(1L), anyLong())).thenReturn(List.of(tombstone));
+        MapCacheReconciler reconciler = new MapCacheReconciler(mock(DungeonMapRepository.class),
+                mock(GridCellDataRepository.class), mock(MapVariableRepository.class),
+                mock(PicklistValueRepository.class), mock(CellVariableValueRepository.class), tombstones,
+                mock(CellWriteBehind.class), 5000);
+
+        MapCache restored = journal(4096).restore(1L, expectedCells -> cache());
+        assertThat(restored.getCellVariableValuesForCell(10L)).hasSize(1);
+        reconciler.reconcile(restored);
+
+        assertThat(restored.getCellVariableValuesForCell(10L)).isEmpty();
+    }
+
+    @Test
+    void restore_withoutSnapshot_returnsNull() {
+        MapJournal journal = journal(4096);
+        assertThat(journal.restore(1L, expectedCells -> cache())).isNull();
+
+        MapJournal disabled = new MapJournal(false, dir.toString(), 4096, 10000);
+        MapCache live = cache();
+        disabled.attach(live);
+        live.putCell(cell(10L, 0, 0, "Hall", 0));
+        disabled.maintain();
+        assertThat(disabled.restore(1L, expectedCells -> cache())).isNull();
+    }
+
+    @Test
+    void snapshot_deletesSegmentsItCovers() throws Exception {
+        MapJournal journal = new MapJournal(true, dir.toString(), 128, 50);
+        MapCache live = cache();
+        journal.attach(live);
+        journal.maintain();
+
+        for (int i = 0; i < 60; i++) live.putCell(cell(10L + i, 0, i, "Cell " + i, 0));
+        long before = segmentCount();
+        journal.maintain();
+
+        assertThat(before).isGreaterThan(1);
+        assertThat(segmentCount()).isLessThan(before);
+        assertThat(journal(128).restore(1L, expectedCells -> cache()).getCellCount()).isEqualTo(60);
+    }
+
+    @Test
+    void restore_stopsAtTornRecord() throws Exception {
+        MapJournal journal = journal(4096);
+        MapCache live = cache();
+        journal.attach(live);
+        journal.maintain();
+
+        live.putCell(cell(10L, 0, 0, "Hall", 0));
+        live.putCell(cell(11L, 0, 1, "Vault", 0));
+        journal.maintain();
+        live.putCell(cell(12L, 0, 2, "Crypt", 0));
+        Path segment;
+        try (Stream<Path> files = Files.list(dir.resolve("1"))) {
+            segment = files.filter(path -> path.toString().endsWith(".seg")).findFirst().orElseThrow();
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            int third = 0;
+            for (int i = 0; i < 2; i++) third += 8 + buffer.getInt(third);
+            int last = third + 8 + buffer.getInt(third) - 1;
+            buffer.put(last, (byte) (buffer.get(last) ^ 0x7f));
+            buffer.force();
+        }
+
+        MapCache restored = journal(4096).restore(1L, expectedCells -> cache());
+
+        assertThat(restored.getCells()).extracting(GridCellData::getName).containsExactlyInAnyOrder("Hall", "Vault");
+    }
+}
@@ -0,0 +1,47 @@
+package org.dungeonmaps.websocket;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MapOwnerInterceptorTest {
+
+    private static final String NODE_A = "ws://node-a/ws";
+    private static final String NODE_B = "ws://node-b/ws";
+
+    private MockHttpServletRequest request(String method, long mapId) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, "/api/grid-cells/" + mapId + "/0/0");
+        request.setAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE, Map.of("mapId", String.valueOf(mapId)));
+        return request;
+    }
+
+    @Test
+    void writeToMapOwnedElsewhere_isRejectedWithOwner() {
+        ClusterMembership cluster = new ClusterMembership(null, true, NODE_A, 15000, 64);
+        cluster.updateNodes(List.of(NODE_B));
+        long foreign = LongStream.range(1, 1000).filter(id -> !cluster.isOwner(id)).findFirst().orElseThrow();
+        long local = LongStream.range(1, 1000).filter(cluster::isOwner).findFirst().orElseThrow();
+        MapOwnerInterceptor interceptor = new MapOwnerInterceptor(cluster);
+
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        assertThat(interceptor.preHandle(request("POST", foreign), rejected, null)).isFalse();
+        assertThat(rejected.getStatus()).isEqualTo(421);
+        assertThat(rejected.getHeader(WebSocketHandshakeInterceptor.OWNER_HEADER)).isEqualTo(NODE_B);
+
+        assertThat(interceptor.preHandle(request("GET", foreign), new MockHttpServletResponse(), null)).isTrue();
+        assertThat(interceptor.preHandle(request("PUT", local), new MockHttpServletResponse(), null)).isTrue();
+    }
+
+    @Test
+    void clusteringDisabled_acceptsEveryWrite() {
+        MapOwnerInterceptor interceptor = new MapOwnerInterceptor(new ClusterMembership(null, false, "", 15000, 64));
+        assertThat(interceptor.preHandle(request("DELETE", 7), new MockHttpServletResponse(), null)).isTrue();
+    }
+}
@@ -0,0 +1,60 @@
+package org.dungeonmaps.websocket;
+
+import org.dungeonmaps.model.MapMembership.MapRole;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MapSubscriptionInterceptorTest {
+
+    private final MapSubscriptionInterceptor interceptor = new MapSubscriptionInterceptor(new SessionRegistry());
+
+    private Message<byte[]> subscribe(String destination, Long mapId, MapRole role) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+        accessor.setSessionId("s1");
+        accessor.setDestination(destination);
+        Map<String, Object> attrs = new HashMap<>();
+        attrs.put("mapId", mapId);
+        attrs.put("role", role);
+        accessor.setSessionAttributes(attrs);
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    @Test
+    void dmTopic_allowedForDmAndOwnerOnly() {
+        assertThat(interceptor.preSend(subscribe("/topic/map/10/dm", 10L, MapRole.DM), null)).isNotNull();
+        assertThat(interceptor.preSend(subscribe("/topic/map/10/dm", 10L, MapRole.OWNER), null)).isNotNull();
+        assertThat(interceptor.preSend(subscribe("/topic/map/10/dm", 10L, MapRole.PLAYER), null)).isNull();
+    }
+
+    @Test
+    void mapTopics_allowedOnlyForTheSessionsMap() {
+        assertThat(interceptor.preSend(subscribe("/topic/map/10", 10L, MapRole.PLAYER), null)).isNotNull();
+        assertThat(interceptor.preSend(subscribe("/topic/map/10/tile/0/1", 10L, MapRole.PLAYER), null)).isNotNull();
+        assertThat(interceptor.preSend(subscribe("/topic/map/11", 10L, MapRole.DM), null)).isNull();
+        assertThat(interceptor.preSend(subscribe("/topic/map/100", 10L, MapRole.DM), null)).isNull();
+    }
+
+    @Test
+    void wildcardSubscriptions_areRejected() {
+        assertThat(interceptor.preSend(subscribe("/topic/map/10/**", 10L, MapRole.PLAYER), null)).isNull();
+        assertThat(interceptor.preSend(subscribe("/topic/*", 10L, MapRole.PLAYER), null)).isNull();
+    }
+
+    @Test
+    void otherFrames_passThrough() {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SEND);
+        accessor.setDestination("/app/map/selection");
+        Message<byte[]> message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+
+        assertThat(interceptor.preSend(message, null)).isSameAs(message);
+    }
+}
@@ -0,0 +1,131 @@
+package org.dungeonmaps.websocket;
+
+import org.dungeonmaps.model.GridCellData;
+import org.dungeonmaps.model.MapMembership.MapRole;
+import org.dungeonmaps.model.MapVariable;
+import org.dungeonmaps.repository.UserRepository;
+import org.dungeonmaps.service.VersionedWrite;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MapWebSocketControllerTest {
+
+    @Mock
+    private MapCacheService mapCacheService;
+    @Mock
+    private MapEdits mapEdits;
+    @Mock
+    private UserRepository userRepository;
+
+    private SessionRegistry sessionRegistry;
+    private MapWebSocketController controller;
+
+    @BeforeEach
+    void setUp() {
+        sessionRegistry = new SessionRegistry();
+        controller = new MapWebSocketController(sessionRegistry, mapCacheService, mapEdits, userRepository);
+    }
+
+    private StompHeaderAccessor sessionAs(MapRole role) {
+        sessionRegistry.register(new UserSession("s1", 7L, 1L, "Red", role, "Ada"));
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SEND);
+        accessor.setSessionId("s1");
+        return accessor;
+    }
+
+    private static Map<String, Object> command(Object... entries) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("clientId", "client-1");
+        payload.put("clientSeq", 3);
+        for (int i = 0; i < entries.length; i += 2) {
+            payload.put((String) entries[i], entries[i + 1]);
+        }
+        return payload;
+    }
+
+    private static GridCellData cell(String name, long version) {
+        GridCellData cell = new GridCellData();
+        cell.setMapId(1L);
+        cell.setRowIndex(2);
+        cell.setColIndex(3);
+        cell.setName(name);
+        cell.setVersion(version);
+        return cell;
+    }
+
+    @Test
+    void cellEdit_appliesWithSessionIdentityAndAcks() {
+        when(mapEdits.saveCellName(1L, 2, 3, "Vault", null, 7L)).thenReturn(VersionedWrite.applied(cell("Vault", 4)));
+
+        controller.handleCellEdit(command("row", 2, "col", 3, "name", "Vault"), sessionAs(MapRole.PLAYER));
+
+        verify(mapCacheService).sendAck("client-1", 3, "APPLIED", 4L);
+    }
+
+    @Test
+    void cellEdit_againstStaleVersion_acksConflictWithStoredVersion() {
+        when(mapEdits.saveCellName(1L, 2, 3, "Vault", 2L, 7L)).thenReturn(VersionedWrite.conflict(cell("Armory", 3)));
+
+        controller.handleCellEdit(command("row", 2, "col", 3, "name", "Vault", "expectedVersion", 2),
+                sessionAs(MapRole.DM));
+
+        verify(mapCacheService).sendAck("client-1", 3, "CONFLICT", 3L);
+    }
+
+    @Test
+    void mapFieldEdit_byPlayer_isForbidden() {
+        controller.handleMapFieldEdit(command("field", "name", "value", "Renamed"), sessionAs(MapRole.PLAYER));
+
+        verify(mapEdits, never()).patchMapField(any(), any(), any(), any());
+        verify(mapCacheService).sendAck("client-1", 3, "FORBIDDEN", null);
+    }
+
+    @Test
+    void cellVariableEdit_onDmOnlyVariableByPlayer_isForbidden() {
+        MapVariable secret = new MapVariable();
+        secret.setId("v1");
+        secret.setVisibility("DM_ONLY");
+        when(mapEdits.findVariable(1L, "v1")).thenReturn(Optional.of(secret));
+
+        controller.handleCellVariableEdit(command("row", 2, "col", 3, "variableId", "v1", "value", "x"),
+                sessionAs(MapRole.PLAYER));
+
+        verify(mapEdits, never()).setCellVariableValue(any(), anyInt(), anyInt(), any(), any(), any(), any());
+        verify(mapCacheService).sendAck("client-1", 3, "FORBIDDEN", null);
+    }
+
+    @Test
+    void mapFieldEdit_withUnknownField_acksInvalid() {
+        when(mapEdits.patchMapField(1L, "bogus", 1, 7L)).thenThrow(new IllegalArgumentException("Unknown field: bogus"));
+
+        controller.handleMapFieldEdit(command("field", "bogus", "value", 1), sessionAs(MapRole.DM));
+
+        verify(mapCacheService).sendAck("client-1", 3, "INVALID", null);
+    }
+
+    @Test
+    void commandWithoutClientSeq_isAppliedWithoutAck() {
+        when(mapEdits.saveCellName(1L, 2, 3, "Vault", null, 7L)).thenReturn(VersionedWrite.applied(cell("Vault", 1)));
+        Map<String, Object> payload = command("row", 2, "col", 3, "name", "Vault");
+        payload.remove("clientSeq");
+
+        controller.handleCellEdit(payload, sessionAs(MapRole.PLAYER));
+
+        verify(mapEdits).saveCellName(1L, 2, 3, "Vault", null, 7L);
+        verify(mapCacheService, never()).sendAck(any(), anyLong(), any(), any());
+    }
+}
@@ -0,0 +1,71 @@
+package org.dungeonmaps.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OperationLogTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private byte[] op(String type) {
+        return ("{\"type\":\"" + type + "\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> parse(byte[] payload) {
+        try {
+            return objectMapper.readValue(payload, Map.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Test
+    void append_splicesSeqIntoTheEncodedMessage() {
+        OperationLog log = new OperationLog(8);
+        log.append(Audience.PLAYER, op("FIRST"));
+
+        assertThat(new String(log.append(Audience.PLAYER, op("SECOND")), StandardCharsets.UTF_8))
+                .isEqualTo("{\"seq\":2,\"type\":\"SECOND\"}");
+        assertThat(new String(log.append(Audience.PLAYER, "{}".getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8))
+                .isEqualTo("{\"seq\":3}");
+    }
+
+    @Test
+    void since_returnsMissedOperationsInOrder() {
+        OperationLog log = new OperationLog(8);
+        for (int i = 1; i <= 5; i++) log.append(Audience.PLAYER, op("OP_" + i));
+
+        assertThat(log.since(2, Audience.PLAYER))
+                .extracting(m -> parse(m).get("type"))
+                .containsExactly("OP_3", "OP_4", "OP_5");
+        assertThat(log.since(5, Audience.PLAYER)).isEmpty();
+    }
+
+    @Test
+    void since_filtersDmOnlyOperationsForPlayers() {
+        OperationLog log = new OperationLog(8);
+        log.append(Audience.PLAYER, op("PUBLIC"));
+        log.append(Audience.DM, op("SECRET"));
+
+        assertThat(log.since(0, Audience.PLAYER)).extracting(m -> parse(m).get("seq")).containsExactly(1);
+        assertThat(log.since(0, Audience.DM)).extracting(m -> parse(m).get("seq")).containsExactly(1, 2);
+    }
+
+    @Test
+    void since_returnsNullOnceTheGapHasBeenEvicted() {
+        OperationLog log = new OperationLog(4);
+        for (int i = 1; i <= 10; i++) log.append(Audience.PLAYER, op("OP_" + i));
+
+        assertThat(log.since(6, Audience.PLAYER)).hasSize(4);
+        assertThat(log.since(5, Audience.PLAYER)).isNull();
+        assertThat(log.since(11, Audience.PLAYER)).isNull();
+    }
+}
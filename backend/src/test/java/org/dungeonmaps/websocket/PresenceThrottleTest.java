@@ -0,0 +1,48 @@
+package org.dungeonmaps.websocket;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PresenceThrottleTest {
+
+    private final Map<Long, List<MapMessage>> sent = new ConcurrentHashMap<>();
+    private final PresenceThrottle throttle = new PresenceThrottle(
+            (mapId, messages) -> sent.computeIfAbsent(mapId, id -> new ArrayList<>()).addAll(messages), 60_000);
+
+    @AfterEach
+    void tearDown() {
+        throttle.shutdown();
+    }
+
+    @Test
+    void flush_sendsOnlyTheLatestSelectionAndFocusPerUser() {
+        throttle.offer(1L, 7L, new MapMessage.Selection(7L, "Red", 0, 0));
+        throttle.offer(1L, 7L, new MapMessage.FieldFocus(7L, "Red", 0, 0, "name"));
+        throttle.offer(1L, 7L, new MapMessage.Selection(7L, "Red", 4, 5));
+        throttle.offer(1L, 7L, new MapMessage.FieldBlur(7L));
+        throttle.offer(2L, 8L, new MapMessage.Selection(8L, "Blue", 1, 1));
+
+        throttle.flush();
+
+        assertThat(sent.get(1L)).containsExactlyInAnyOrder(
+                new MapMessage.Selection(7L, "Red", 4, 5), new MapMessage.FieldBlur(7L));
+        assertThat(sent.get(2L)).containsExactly(new MapMessage.Selection(8L, "Blue", 1, 1));
+    }
+
+    @Test
+    void discard_dropsPendingPresenceForUser() {
+        throttle.offer(1L, 7L, new MapMessage.Selection(7L, "Red", 4, 5));
+
+        throttle.discard(1L, 7L);
+        throttle.flush();
+
+        assertThat(sent).isEmpty();
+    }
+}
@@ -4,6 +4,7 @@ import org.dungeonmaps.model.MapMembership.MapRole;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -80,4 +81,46 @@ class SessionRegistryTest {
         String color = registry.assignColor(10L);
         assertThat(color).isEqualTo("Red");
     }
+
+    @Test
+    void remove_lastSessionClearsMapIndex() {
+        registry.register(session("s1", 1L, 10L, MapRole.PLAYER, "Red"));
+        registry.register(session("s2", 2L, 10L, MapRole.PLAYER, "Blue"));
+
+        registry.remove("s1");
+        assertThat(registry.getSessionsForMap(10L)).extracting(UserSession::getSessionId).containsExactly("s2");
+        registry.remove("s2");
+
+        assertThat(registry.hasActiveSessionsForMap(10L)).isFalse();
+        assertThat(registry.getSessionsForMap(10L)).isEmpty();
+    }
+
+    @Test
+    void hasSubscribers_countsSubscriptionsUntilUnsubscribedOrDisconnected() {
+        registry.subscribe("s1", "sub-0", "/topic/map/10/shared");
+        registry.subscribe("s2", "sub-0", "/topic/map/10/shared");
+
+        registry.unsubscribe("s1", "sub-0");
+        assertThat(registry.hasSubscribers("/topic/map/10/shared")).isTrue();
+
+        registry.remove("s2");
+        assertThat(registry.hasSubscribers("/topic/map/10/shared")).isFalse();
+    }
+
+    @Test
+    void connect_concurrentJoinsGetDistinctColors() throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            long userId = i;
+            threads.add(Thread.ofVirtual().start(() ->
+                    registry.connect("s" + userId, userId, 10L, MapRole.PLAYER, "User " + userId)));
+        }
+        for (Thread thread : threads) thread.join();
+
+        assertThat(registry.getSessionsForMap(10L))
+                .extracting(UserSession::getColor)
+                .doesNotHaveDuplicates()
+                .hasSize(8);
+        assertThat(registry.get("s3").getColor()).isNotNull();
+    }
 }
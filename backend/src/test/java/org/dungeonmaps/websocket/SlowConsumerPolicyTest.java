@@ -0,0 +1,75 @@
+package org.dungeonmaps.websocket;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SlowConsumerPolicyTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SlowConsumerPolicy policy = new SlowConsumerPolicy(meterRegistry, 0);
+
+    private Message<byte[]> frame(String sessionId, boolean presence) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        if (presence) accessor.setHeader(SlowConsumerPolicy.PRESENCE_HEADER, true);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    @Test
+    void presenceIsDroppedOnlyWhileASendIsBlocked() throws Exception {
+        WebSocketHandler handler = mock(WebSocketHandler.class);
+        WebSocketSession raw = mock(WebSocketSession.class);
+        when(raw.getId()).thenReturn("s1");
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            sending.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(raw).sendMessage(any());
+
+        WebSocketHandler decorated = policy.decorate(handler);
+        decorated.afterConnectionEstablished(raw);
+        ArgumentCaptor<WebSocketSession> timed = ArgumentCaptor.forClass(WebSocketSession.class);
+        verify(handler).afterConnectionEstablished(timed.capture());
+
+        assertThat(policy.preSend(frame("s1", true), null)).isNotNull();
+
+        Thread writer = Thread.ofVirtual().start(() -> {
+            try {
+                timed.getValue().sendMessage(new TextMessage("edit"));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertThat(sending.await(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(policy.preSend(frame("s1", true), null)).isNull();
+        assertThat(policy.preSend(frame("s1", false), null)).isNotNull();
+        assertThat(policy.preSend(frame("s2", true), null)).isNotNull();
+
+        release.countDown();
+        writer.join();
+        assertThat(policy.preSend(frame("s1", true), null)).isNotNull();
+        assertThat(meterRegistry.get("websocket.outbound.presence.dropped").counter().count()).isEqualTo(1);
+
+        decorated.afterConnectionClosed(raw, CloseStatus.NORMAL);
+        assertThat(policy.isCongested("s1")).isFalse();
+    }
+}
@@ -0,0 +1,62 @@
+package org.dungeonmaps.websocket;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.Inflater;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SyncCompressorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private static byte[] fullState(int cells) {
+        StringBuilder json = new StringBuilder("{\"type\":\"FULL_STATE\",\"cellData\":[");
+        for (int i = 0; i < cells; i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"row\":").append(i / 100).append(",\"col\":").append(i % 100)
+                    .append(",\"name\":\"Room ").append(i).append("\",\"variableValues\":[]}");
+        }
+        return json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] inflate(List<byte[]> chunks) throws Exception {
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        for (byte[] chunk : chunks) joined.writeBytes(chunk);
+        Inflater inflater = new Inflater();
+        inflater.setInput(joined.toByteArray());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        while (!inflater.finished()) {
+            out.write(buffer, 0, inflater.inflate(buffer));
+        }
+        inflater.end();
+        return out.toByteArray();
+    }
+
+    @Test
+    void compress_belowThreshold_isSentAsIs() {
+        SyncCompressor compressor = new SyncCompressor(meterRegistry, 65536, 65536, 6);
+
+        assertThat(compressor.compress(fullState(10))).isNull();
+        assertThat(meterRegistry.get("map.sync.bytes").tag("kind", "wire").summary().totalAmount())
+                .isEqualTo(meterRegistry.get("map.sync.bytes").tag("kind", "raw").summary().totalAmount());
+    }
+
+    @Test
+    void compress_largePayload_deflatesIntoBoundedChunks() throws Exception {
+        SyncCompressor compressor = new SyncCompressor(meterRegistry, 1024, 4096, 6);
+        byte[] payload = fullState(20_000);
+
+        List<byte[]> chunks = compressor.compress(payload);
+
+        assertThat(chunks).hasSizeGreaterThan(1).allSatisfy(chunk -> assertThat(chunk.length).isLessThanOrEqualTo(4096));
+        assertThat(inflate(chunks)).isEqualTo(payload);
+        assertThat(meterRegistry.get("map.sync.bytes").tag("kind", "wire").summary().totalAmount())
+                .isLessThan(payload.length / 4.0);
+    }
+}
@@ -12,9 +12,12 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletResponse;
 
 import java.net.URI;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -35,7 +38,8 @@ class WebSocketHandshakeInterceptorTest {
     @BeforeEach
     void setUp() {
         jwtTokenProvider = new JwtTokenProvider(SECRET, 86400000L);
-        interceptor = new WebSocketHandshakeInterceptor(jwtTokenProvider, dungeonMapService);
+        interceptor = new WebSocketHandshakeInterceptor(jwtTokenProvider, dungeonMapService,
+                new ClusterMembership(null, false, "", 15000, 64));
     }
 
     private ServletServerHttpRequest requestWithQuery(String query) throws Exception {
@@ -110,4 +114,23 @@ class WebSocketHandshakeInterceptorTest {
                 requestWithQuery("token=" + token + "&mapId=abc"), null, null, attrs);
         assertThat(result).isFalse();
     }
+
+    @Test
+    void mapOwnedByAnotherNode_rejectsHandshakeWithOwner() throws Exception {
+        ClusterMembership cluster = new ClusterMembership(null, true, "ws://node-a/ws", 15000, 64);
+        cluster.updateNodes(List.of("ws://node-a/ws", "ws://node-b/ws"));
+        long mapId = 1;
+        while (cluster.isOwner(mapId)) mapId++;
+        interceptor = new WebSocketHandshakeInterceptor(jwtTokenProvider, dungeonMapService, cluster);
+        String token = jwtTokenProvider.generateToken(1L, "user@example.com");
+        when(dungeonMapService.getMembership(mapId, 1L)).thenReturn(Optional.of(membership(MapRole.PLAYER)));
+        ServletServerHttpResponse response = new ServletServerHttpResponse(new MockHttpServletResponse());
+
+        boolean result = interceptor.beforeHandshake(
+                requestWithQuery("token=" + token + "&mapId=" + mapId), response, null, new HashMap<>());
+
+        assertThat(result).isFalse();
+        assertThat(response.getHeaders().getFirst(WebSocketHandshakeInterceptor.OWNER_HEADER)).isEqualTo("ws://node-b/ws");
+        assertThat(((MockHttpServletResponse) response.getServletResponse()).getStatus()).isEqualTo(421);
+    }
 }
@@ -0,0 +1,93 @@
+package org.dungeonmaps.websocket;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WireEncodingTest {
+
+    private final WireEncoding encoding = new WireEncoding(true);
+
+    private void connect(String sessionId, String requested) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        accessor.setSessionId(sessionId);
+        if (requested != null) accessor.setNativeHeader(WireEncoding.ENCODING_HEADER, requested);
+        encoding.preSend(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()), null);
+    }
+
+    private Message<byte[]> outbound(String sessionId, byte[] payload, WirePayload wire) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        if (wire != null) accessor.setHeader(WirePayload.HEADER, wire);
+        return MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+    }
+
+    @Test
+    void cborSessions_shareTheBroadcastsCborForm() {
+        connect("s1", "cbor");
+        connect("s2", "cbor");
+        connect("s3", null);
+        byte[] json = "{\"type\":\"USER_LEFT\",\"userId\":7}".getBytes(StandardCharsets.UTF_8);
+        AtomicInteger encodings = new AtomicInteger();
+        WirePayload wire = new WirePayload(json, () -> {
+            encodings.incrementAndGet();
+            return CborTranscoder.fromJson(json);
+        });
+
+        Message<?> first = encoding.preSend(outbound("s1", json, wire), null);
+        Message<?> second = encoding.preSend(outbound("s2", json, wire), null);
+        Message<?> plain = encoding.preSend(outbound("s3", json, wire), null);
+
+        assertThat(first.getHeaders().get(MessageHeaders.CONTENT_TYPE))
+                .isEqualTo(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        assertThat((byte[]) first.getPayload()).hasSizeLessThan(json.length);
+        assertThat(second.getPayload()).isSameAs(first.getPayload());
+        assertThat(encodings).hasValue(1);
+        assertThat(plain.getPayload()).isSameAs(json);
+    }
+
+    @Test
+    void cborSessions_receiveTranscodedFramesWithoutACborForm() throws Exception {
+        connect("s1", "cbor");
+        byte[] json = "{\"type\":\"ACK\",\"clientSeq\":3}".getBytes(StandardCharsets.UTF_8);
+
+        Message<?> sent = encoding.preSend(outbound("s1", json, null), null);
+
+        assertThat((byte[]) sent.getPayload()).isEqualTo(CborTranscoder.fromJson(json));
+    }
+
+    @Test
+    void disconnect_forgetsNegotiatedEncoding() {
+        connect("s1", "CBOR");
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.DISCONNECT);
+        accessor.setSessionId("s1");
+
+        encoding.preSend(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()), null);
+
+        assertThat(encoding.isCbor("s1")).isFalse();
+    }
+
+    @Test
+    void disabledServer_ignoresCborRequests() {
+        WireEncoding disabled = new WireEncoding(false);
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        accessor.setSessionId("s1");
+        accessor.setNativeHeader(WireEncoding.ENCODING_HEADER, "cbor");
+
+        disabled.preSend(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()), null);
+
+        assertThat(disabled.isCbor("s1")).isFalse();
+    }
+}
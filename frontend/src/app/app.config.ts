@@ -5,12 +5,13 @@ import {provideHttpClient, withFetch, withInterceptors} from '@angular/common/ht
 import { routes } from './app.routes';
 import {provideClientHydration, withEventReplay} from '@angular/platform-browser';
 import {authInterceptor} from './interceptors/auth.interceptor';
+import {mapOwnerInterceptor} from './interceptors/map-owner.interceptor';
 
 export const appConfig: ApplicationConfig = {
   providers: [
     provideZoneChangeDetection({ eventCoalescing: true }),
     provideRouter(routes),
     provideClientHydration(withEventReplay()),
-    provideHttpClient(withFetch(), withInterceptors([authInterceptor]))
+    provideHttpClient(withFetch(), withInterceptors([authInterceptor, mapOwnerInterceptor]))
   ]
 };
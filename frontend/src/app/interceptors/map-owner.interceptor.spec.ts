@@ -0,0 +1,45 @@
+import {TestBed} from '@angular/core/testing';
+import {HttpClient, provideHttpClient, withInterceptors} from '@angular/common/http';
+import {HttpTestingController, provideHttpClientTesting} from '@angular/common/http/testing';
+import {mapOwnerInterceptor} from './map-owner.interceptor';
+
+describe('mapOwnerInterceptor', () => {
+  let http: HttpClient;
+  let httpMock: HttpTestingController;
+
+  beforeEach(() => {
+    TestBed.configureTestingModule({
+      providers: [
+        provideHttpClient(withInterceptors([mapOwnerInterceptor])),
+        provideHttpClientTesting(),
+      ],
+    });
+
+    http = TestBed.inject(HttpClient);
+    httpMock = TestBed.inject(HttpTestingController);
+  });
+
+  afterEach(() => {
+    httpMock.verify();
+  });
+
+  it('retriesAtOwner_whenMapIsOwnedElsewhere', () => {
+    let body: unknown;
+    http.post('/api/grid-cells/1/0/0', {name: 'Hall'}).subscribe(result => body = result);
+
+    httpMock.expectOne('/api/grid-cells/1/0/0')
+      .flush(null, {status: 421, statusText: 'Misdirected Request', headers: {'X-Map-Owner': 'wss://node-b.example.com/ws'}});
+    httpMock.expectOne('https://node-b.example.com/api/grid-cells/1/0/0').flush({name: 'Hall'});
+
+    expect(body).toEqual({name: 'Hall'});
+  });
+
+  it('passesOtherErrorsThrough', () => {
+    let status = 0;
+    http.post('/api/grid-cells/1/0/0', {}).subscribe({error: error => status = error.status});
+
+    httpMock.expectOne('/api/grid-cells/1/0/0').flush(null, {status: 409, statusText: 'Conflict'});
+
+    expect(status).toBe(409);
+  });
+});
@@ -0,0 +1,21 @@
+import {HttpErrorResponse, HttpInterceptorFn} from '@angular/common/http';
+import {catchError, throwError} from 'rxjs';
+
+const OWNER_HEADER = 'X-Map-Owner';
+
+/**
+ * Writes to a map that another backend node owns are answered with 421 and the owner's
+ * WebSocket URL. Retries such a request once against the owner's origin.
+ */
+export const mapOwnerInterceptor: HttpInterceptorFn = (req, next) =>
+  next(req).pipe(
+    catchError((error: unknown) => {
+      const owner = error instanceof HttpErrorResponse && error.status === 421
+        ? error.headers.get(OWNER_HEADER)
+        : null;
+      if (!owner || /^https?:/.test(req.url)) return throwError(() => error);
+      const url = new URL(owner);
+      const origin = `${url.protocol === 'wss:' ? 'https:' : 'http:'}//${url.host}`;
+      return next(req.clone({url: origin + req.url}));
+    })
+  );
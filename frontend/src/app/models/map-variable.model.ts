@@ -25,4 +25,5 @@ export interface PicklistValue {
 export interface CellVariableValue {
   variableId: string;
   value: string;
+  version?: number;
 }
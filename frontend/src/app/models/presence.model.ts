@@ -27,20 +27,25 @@ export interface FieldFlags {
   isReadOnly: boolean;
 }
 
-export type WsMessage =
+export type PresenceMessage =
   | { type: 'USER_JOINED'; userId: number; userName: string; color: string; role: string }
   | { type: 'USER_LEFT'; userId: number }
   | { type: 'SELECTION'; userId: number; row: number; col: number; color: string }
   | { type: 'FIELD_FOCUS'; userId: number; row: number; col: number; field: string; color: string }
-  | { type: 'FIELD_BLUR'; userId: number }
+  | { type: 'FIELD_BLUR'; userId: number };
+
+export type MapOperation = (
   | {
   type: 'CELL_UPDATE';
   mapId: number;
+  cellId: number;
   row: number;
   col: number;
   field: string;
   fieldFlags: FieldFlags;
   value: string;
+  version: number;
+  hlc: number;
   userId: number
 }
   | { type: 'MAP_UPDATE'; mapId: number; field: string; fieldFlags: FieldFlags; value: unknown; userId: number }
@@ -53,6 +58,36 @@ export type WsMessage =
   fieldFlags: FieldFlags;
   value: string;
   cleared: boolean;
+  version: number;
+  hlc: number;
+  userId: number
+}
+  | {
+  type: 'CELL_VARIABLE_BULK_UPDATE';
+  mapId: number;
+  variableId: string;
+  fieldFlags: FieldFlags;
+  value: string;
+  cleared: boolean;
+  hlc: number;
+  cellIds: number[];
+  rows: number[];
+  cols: number[];
+  versions: number[];
+  userId: number
+}
+  | {
+  type: 'CELL_CONFLICT';
+  mapId: number;
+  cellId: number;
+  row: number;
+  col: number;
+  field: 'name' | 'variable';
+  variableId: string | null;
+  value: string;
+  cleared: boolean;
+  version: number;
+  hlc: number;
   userId: number
 }
   | { type: 'VARIABLE_CREATED'; mapId: number; variable: MapVariable; userId: number }
@@ -63,10 +98,29 @@ export type WsMessage =
   | { type: 'PICKLIST_VALUE_DELETED'; mapId: number; variableId: string; picklistValueId: string; userId: number }
   | { type: 'CELL_NOTE_UPDATE'; mapId: number; row: number; col: number; noteType: 'shared' | 'public'; content: string; userId: number }
   | { type: 'MAP_NOTE_UPDATE'; mapId: number; noteType: 'shared' | 'public'; content: string; userId: number }
+) & { seq: number };
+
+export type WsMessage =
+  | PresenceMessage
+  | MapOperation
   | {
   type: 'FULL_STATE';
+  epoch: string;
+  seq: number;
   mapData: unknown;
-  cellData: { row: number; col: number; name: string; variableValues: CellVariableValue[] }[];
+  cellData: { row: number; col: number; name: string; version: number; variableValues: CellVariableValue[] }[];
   variables: MapVariable[];
-  users: UserPresence[];
-};
+}
+  | { type: 'USERS'; users: UserPresence[] }
+  | { type: 'DELTA'; epoch: string; fromSeq: number; seq: number; ops: MapOperation[]; users: UserPresence[] };
+
+export type WsFrame = WsMessage | { type: 'BATCH'; messages: WsMessage[] };
+
+export type EditStatus = 'APPLIED' | 'CONFLICT' | 'FORBIDDEN' | 'NOT_FOUND' | 'INVALID' | 'FAILED';
+
+export interface EditAck {
+  type: 'ACK';
+  clientSeq: number;
+  status: EditStatus;
+  version?: number;
+}
@@ -12,7 +12,7 @@ import {MapImageCacheService} from '../../services/map-image-cache.service';
 import {WebSocketService} from '../../services/websocket.service';
 import {HttpClient} from '@angular/common/http';
 import {UserPresence, SelectionState, FieldFocusState, WsMessage} from '../../models/presence.model';
-import {Subscription} from 'rxjs';
+import {Subscription, firstValueFrom} from 'rxjs';
 import {MapVariableService} from '../../services/map-variable.service';
 import {CellVariableValueService} from '../../services/cell-variable-value.service';
 import {MapVariable, CellVariableValue} from '../../models/map-variable.model';
@@ -88,6 +88,9 @@ export class MapEditor implements AfterViewInit, OnInit, OnDestroy {
   private cacheStaleTimeout?: ReturnType<typeof setTimeout>;
   private hadLocalChangesWhenCachedServed = false;
   private cellCache = new Map<string, string>();
+  private cellVersions = new Map<string, number>();
+  private clearedValueVersions = new Map<string, number>();
+  private editChain: Promise<unknown> = Promise.resolve();
 
   public variables: MapVariable[] = [];
   public cellVariableValues = new Map<string, CellVariableValue[]>();
@@ -314,7 +317,7 @@ export class MapEditor implements AfterViewInit, OnInit, OnDestroy {
   }
 
   private connectWebSocket(mapId: number): void {
-    this.wsService.connect(mapId);
+    this.wsService.connect(mapId, this.isDmOrOwner());
 
     this.statusSub = this.wsService.connectionStatus$.subscribe(status => {
       this.connectionStatus = status;
@@ -325,12 +328,18 @@ export class MapEditor implements AfterViewInit, OnInit, OnDestroy {
 
   private handleWsMessage(msg: WsMessage): void {
     switch (msg.type) {
-      case 'FULL_STATE': {
+      case 'USERS': {
         this.connectedUsers = msg.users;
+        break;
+      }
+      case 'FULL_STATE': {
         this.cellCache.clear();
+        this.cellVersions.clear();
+        this.clearedValueVersions.clear();
         this.cellVariableValues.clear();
         msg.cellData.forEach(c => {
           this.cellCache.set(`${c.row}:${c.col}`, c.name);
+          this.cellVersions.set(`${c.row}:${c.col}`, c.version);
           if (c.variableValues?.length) {
             this.cellVariableValues.set(`${c.row}:${c.col}`, c.variableValues);
           }
@@ -338,6 +347,11 @@ export class MapEditor implements AfterViewInit, OnInit, OnDestroy {
         this.variables = msg.variables ?? [];
         break;
       }
+      case 'DELTA': {
+        this.connectedUsers = msg.users;
+        msg.ops.forEach(op => this.handleWsMessage(op));
+        break;
+      }
       case 'USER_JOINED': {
         const existing = this.connectedUsers.find(u => u.userId === msg.userId);
         if (!existing) {
@@ -376,15 +390,22 @@ export class MapEditor implements AfterViewInit, OnInit, OnDestroy {
         break;
       }
       case 'CELL_UPDATE': {
+        if (msg.field === 'name') this.applyCellName(msg.row, msg.col, msg.value, msg.version);
+        break;
+      }
+      case 'CELL_VARIABLE_BULK_UPDATE': {
+        msg.rows.forEach((row, i) =>
+          this.applyCellVariableValue(row, msg.cols[i], msg.variableId, msg.cleared ? null : msg.value, msg.versions[i]));
+        break;
+      }
+      case 'CELL_CONFLICT': {
         if (msg.field === 'name') {
-          this.cellCache.set(`${msg.row}:${msg.col}`, msg.value);
+          this.applyCellName(msg.row, msg.col, msg.value, msg.version);
+        } else if (msg.variableId) {
+          this.applyCellVariableValue(msg.row, msg.col, msg.variableId, msg.cleared ? null : msg.value, msg.version);
         }
-        if (
-          this.selectedCell?.row === msg.row &&
-          this.selectedCell?.col === msg.col &&
-          msg.field === 'name'
-        ) {
-          this.selectedCellName = msg.value;
+        if (msg.userId === this.getCurrentUserId()) {
+          console.warn(`Edit of cell ${msg.row}:${msg.col} was overtaken by a newer change`);
         }
         break;
       }
@@ -393,17 +414,7 @@ export class MapEditor implements AfterViewInit, OnInit, OnDestroy {
         break;
       }
       case 'CELL_VARIABLE_UPDATE': {
-        const key = `${msg.row}:${msg.col}`;
-        const existing = [...(this.cellVariableValues.get(key) ?? [])];
-        if (msg.cleared) {
-          this.cellVariableValues.set(key, existing.filter(v => v.variableId !== msg.variableId));
-        } else {
-          const idx = existing.findIndex(v => v.variableId === msg.variableId);
-          if (idx >= 0) existing[idx] = {variableId: msg.variableId, value: msg.value};
-          else existing.push({variableId: msg.variableId, value: msg.value});
-          this.cellVariableValues.set(key, existing);
-        }
-        if (this.activeTintVariableId === msg.variableId) this.render();
+        this.applyCellVariableValue(msg.row, msg.col, msg.variableId, msg.cleared ? null : msg.value, msg.version);
         break;
       }
       case 'VARIABLE_CREATED': {
@@ -484,6 +495,44 @@ export class MapEditor implements AfterViewInit, OnInit, OnDestroy {
     }
   }
 
+  private applyCellName(row: number, col: number, name: string, version: number): void {
+    const key = `${row}:${col}`;
+    if (version < (this.cellVersions.get(key) ?? 0)) return;
+    this.cellCache.set(key, name);
+    this.cellVersions.set(key, version);
+    if (this.selectedCell?.row === row && this.selectedCell?.col === col) {
+      this.selectedCellName = name;
+    }
+  }
+
+  private applyCellVariableValue(row: number, col: number, variableId: string, value: string | null,
+                                 version: number): void {
+    const key = `${row}:${col}`;
+    const existing = [...(this.cellVariableValues.get(key) ?? [])];
+    const idx = existing.findIndex(v => v.variableId === variableId);
+    const cleared = this.clearedValueVersions.get(`${key}:${variableId}`);
+    if (idx >= 0 ? version < (existing[idx].version ?? 0) : cleared !== undefined && version <= cleared) return;
+    if (value === null) {
+      this.clearedValueVersions.set(`${key}:${variableId}`, version);
+      this.cellVariableValues.set(key, existing.filter(v => v.variableId !== variableId));
+    } else {
+      this.clearedValueVersions.delete(`${key}:${variableId}`);
+      if (idx >= 0) existing[idx] = {variableId, value, version};
+      else existing.push({variableId, value, version});
+      this.cellVariableValues.set(key, existing);
+    }
+    if (this.activeTintVariableId === variableId) this.render();
+  }
+
+  /**
+   * Versioned edits are sent one at a time so each one expects the version acked for the previous.
+   */
+  private queueEdit<T>(send: () => Promise<T>): Promise<T> {
+    const result = this.editChain.then(send);
+    this.editChain = result.catch(() => undefined);
+    return result;
+  }
+
   private applyRemoteMapField(field: string, value: unknown): void {
     switch (field) {
       case 'name':
@@ -902,20 +951,22 @@ export class MapEditor implements AfterViewInit, OnInit, OnDestroy {
     if (!this.canEdit()) return;
     if (!this.selectedCell || !this.mapId) return;
 
-    this.gridCellDataService.saveCell(
-      this.mapId,
-      this.selectedCell.row,
-      this.selectedCell.col,
-      this.selectedCellName
-    ).subscribe({
-      next: () => {
-        if (this.selectedCell) {
-          this.cellCache.set(`${this.selectedCell.row}:${this.selectedCell.col}`, this.selectedCellName);
-        }
+    const {row, col} = this.selectedCell;
+    const key = `${row}:${col}`;
+    const name = this.selectedCellName;
+    const saved = this.wsService.isConnected()
+      ? this.queueEdit(() => this.wsService.editCell(row, col, name, this.cellVersions.get(key))).then(ack => {
+        if (ack.status !== 'APPLIED') throw new Error(ack.status);
+        if (ack.version !== undefined) this.cellVersions.set(key, Math.max(ack.version, this.cellVersions.get(key) ?? 0));
+      })
+      : firstValueFrom(this.gridCellDataService.saveCell(this.mapId, row, col, name));
+
+    saved
+      .then(() => {
+        this.cellCache.set(key, name);
         this.wsService.sendFieldBlur();
-      },
-      error: (error: unknown) => console.error('Error saving cell name:', error)
-    });
+      })
+      .catch((error: unknown) => console.error('Error saving cell name:', error));
   }
 
   // eslint-disable-next-line @typescript-eslint/no-empty-function
@@ -1390,8 +1441,8 @@ export class MapEditor implements AfterViewInit, OnInit, OnDestroy {
       this.cellVariableValues.set(key, existing.filter(v => v.variableId !== variable.id));
     } else {
       const idx = existing.findIndex(v => v.variableId === variable.id);
-      if (idx >= 0) existing[idx] = {variableId: variable.id, value};
-      else existing.push({variableId: variable.id, value});
+      if (idx >= 0) existing[idx] = {...existing[idx], value};
+      else existing.push({variableId: variable.id, value, version: this.clearedValueVersions.get(`${key}:${variable.id}`)});
       this.cellVariableValues.set(key, existing);
     }
 
@@ -1403,7 +1454,15 @@ export class MapEditor implements AfterViewInit, OnInit, OnDestroy {
     const cell = this.selectedCell;
     this.variableSaveTimeouts.set(timeoutKey, setTimeout(() => {
       if (!this.mapId) return;
-      if (value === '') {
+      if (this.wsService.isConnected()) {
+        const cellKey = `${cell.row}:${cell.col}`;
+        this.queueEdit(() => this.wsService.editCellVariable(cell.row, cell.col, variable.id, value === '' ? null : value,
+          this.cellVariableValues.get(cellKey)?.find(v => v.variableId === variable.id)?.version))
+          .then(ack => {
+            if (ack.status !== 'APPLIED') console.error('Variable value edit rejected:', ack.status);
+          })
+          .catch((e: unknown) => console.error('Error saving variable value:', e));
+      } else if (value === '') {
         this.cellVariableValueService.clearValue(this.mapId, cell.row, cell.col, variable.id).subscribe({
           error: (e) => console.error('Error clearing variable value:', e)
         });
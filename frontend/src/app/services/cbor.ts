@@ -0,0 +1,72 @@
+const textDecoder = new TextDecoder();
+const BREAK = Symbol('break');
+
+export function decodeCbor(bytes: Uint8Array): unknown {
+  const view = new DataView(bytes.buffer, bytes.byteOffset, bytes.byteLength);
+  let offset = 0;
+
+  const readArgument = (info: number): number => {
+    if (info < 24) return info;
+    switch (info) {
+      case 24: return view.getUint8(offset++);
+      case 25: offset += 2; return view.getUint16(offset - 2);
+      case 26: offset += 4; return view.getUint32(offset - 4);
+      case 27: offset += 8; return Number(view.getBigUint64(offset - 8));
+      default: throw new Error(`unsupported CBOR length ${info}`);
+    }
+  };
+
+  const readItem = (): unknown => {
+    const initial = view.getUint8(offset++);
+    const major = initial >> 5;
+    const info = initial & 0x1f;
+
+    if (major === 7) {
+      switch (info) {
+        case 20: return false;
+        case 21: return true;
+        case 22: return null;
+        case 23: return undefined;
+        case 26: offset += 4; return view.getFloat32(offset - 4);
+        case 27: offset += 8; return view.getFloat64(offset - 8);
+        case 31: return BREAK;
+        default: throw new Error(`unsupported CBOR simple value ${info}`);
+      }
+    }
+
+    const indefinite = info === 31;
+    const length = indefinite ? -1 : readArgument(info);
+    switch (major) {
+      case 0: return length;
+      case 1: return -1 - length;
+      case 2:
+      case 3: {
+        const chunk = bytes.subarray(offset, offset + length);
+        offset += length;
+        return major === 3 ? textDecoder.decode(chunk) : chunk;
+      }
+      case 4: {
+        const items: unknown[] = [];
+        for (let i = 0; indefinite || i < length; i++) {
+          const item = readItem();
+          if (item === BREAK) break;
+          items.push(item);
+        }
+        return items;
+      }
+      case 5: {
+        const map: Record<string, unknown> = {};
+        for (let i = 0; indefinite || i < length; i++) {
+          const key = readItem();
+          if (key === BREAK) break;
+          map[String(key)] = readItem();
+        }
+        return map;
+      }
+      default:
+        throw new Error(`unsupported CBOR major type ${major}`);
+    }
+  };
+
+  return readItem();
+}
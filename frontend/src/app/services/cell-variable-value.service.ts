@@ -1,8 +1,15 @@
 import {Injectable, inject} from '@angular/core';
 import {HttpClient} from '@angular/common/http';
-import {Observable} from 'rxjs';
+import {Observable, retry, throwError, timer} from 'rxjs';
 import {CellVariableValue} from '../models/map-variable.model';
 
+export interface CellRegion {
+  rect?: {fromRow: number; fromCol: number; toRow: number; toCol: number};
+  cells?: {row: number; col: number}[];
+  fill?: {row: number; col: number};
+  bounds?: {fromRow: number; fromCol: number; toRow: number; toCol: number};
+}
+
 @Injectable({providedIn: 'root'})
 export class CellVariableValueService {
   private http = inject(HttpClient);
@@ -22,4 +29,13 @@ export class CellVariableValueService {
   clearValue(mapId: number, row: number, col: number, variableId: string): Observable<void> {
     return this.http.delete<void>(`${this.baseUrl(mapId, row, col)}/${variableId}`);
   }
+
+  /**
+   * Sets one variable across a region, or clears it when value is null. A fill is answered with
+   * 503 while the server loads the map, so that is retried.
+   */
+  paint(mapId: number, variableId: string, region: CellRegion, value: string | null): Observable<{changed: number}> {
+    return this.http.post<{changed: number}>(`/api/maps/${mapId}/variable-values/${variableId}/paint`, {value, region})
+      .pipe(retry({count: 5, delay: error => error.status === 503 ? timer(1000) : throwError(() => error)}));
+  }
 }
@@ -1,48 +1,95 @@
 import {Injectable, inject} from '@angular/core';
-import {Subject, BehaviorSubject} from 'rxjs';
+import {HttpClient} from '@angular/common/http';
+import {Subject, BehaviorSubject, firstValueFrom} from 'rxjs';
 import {AuthService} from './auth.service';
-import {WsMessage} from '../models/presence.model';
+import {EditAck, WsFrame, WsMessage} from '../models/presence.model';
 import {Client, IMessage} from '@stomp/stompjs';
+import {decodeCbor} from './cbor';
+
+/** Close code the server uses after the map has moved to another node. */
+const MAP_MOVED = 4421;
+/** Local storage key; set it to 'cbor' to opt in to binary frames. JSON is the default. */
+const ENCODING_KEY = 'map_encoding';
 
 @Injectable({providedIn: 'root'})
 export class WebSocketService {
   private authService = inject(AuthService);
+  private http = inject(HttpClient);
 
   private client: Client | null = null;
   private mapId: number | null = null;
+  private dm = false;
   private reconnectDelay = 1000;
   private reconnectTimer?: ReturnType<typeof setTimeout>;
+  private epoch: string | null = null;
+  private lastSeq: number | null = null;
+  private awaitingSync = false;
+  private pending: WsMessage[] = [];
+  private chunks = new Map<string, Uint8Array[]>();
+  private clientId: string | null = null;
+  private clientSeq = 0;
+  private acks = new Map<number, {resolve: (ack: EditAck) => void; reject: (error: Error) => void}>();
 
   readonly messages$ = new Subject<WsMessage>();
   readonly connectionStatus$ = new BehaviorSubject<'connected' | 'reconnecting' | 'disconnected'>('disconnected');
 
-  async connect(mapId: number): Promise<void> {
+  async connect(mapId: number, dm = false): Promise<void> {
+    if (this.mapId !== mapId) {
+      this.epoch = null;
+      this.lastSeq = null;
+    }
     this.mapId = mapId;
+    this.dm = dm;
     const token = this.authService.getToken();
     if (!token) return;
 
-    const url = `${location.protocol === 'https:' ? 'wss' : 'ws'}://${location.host}/ws?token=${token}&mapId=${mapId}`;
+    const url = `${await this.nodeUrl(mapId)}?token=${token}&mapId=${mapId}`;
 
-    this.client = new Client({
+    this.client?.deactivate();
+    const client = new Client({
       brokerURL: url,
+      connectHeaders: localStorage.getItem(ENCODING_KEY) === 'cbor' ? {'map-encoding': 'cbor'} : {},
       reconnectDelay: 0,
       onConnect: () => {
         this.reconnectDelay = 1000;
         this.connectionStatus$.next('connected');
 
         const clientId = crypto.randomUUID();
+        this.clientId = clientId;
+        this.awaitingSync = true;
+        this.pending = [];
+        this.chunks.clear();
 
         this.client!.subscribe(`/topic/map/${mapId}`, (msg: IMessage) => {
           try {
-            this.messages$.next(JSON.parse(msg.body) as WsMessage);
+            this.receiveFrame(this.decode(msg) as WsFrame);
           } catch {
             console.log(`failed to subscribe to map`);
           }
         });
 
+        if (dm) {
+          this.client!.subscribe(`/topic/map/${mapId}/dm`, (msg: IMessage) => {
+            try {
+              this.receiveFrame(this.decode(msg) as WsFrame);
+            } catch {
+              console.log(`failed to subscribe to dm topic`);
+            }
+          });
+        }
+
         this.client!.subscribe(`/topic/sync/${clientId}`, (msg: IMessage) => {
+          if (msg.headers['chunk-id']) {
+            this.receiveChunk(msg);
+            return;
+          }
           try {
-            this.messages$.next(JSON.parse(msg.body) as WsMessage);
+            const decoded = this.decode(msg) as WsMessage | EditAck;
+            if (decoded.type === 'ACK') {
+              this.receiveAck(decoded);
+            } else {
+              this.receiveSync(decoded);
+            }
           } catch {
             console.log(`failed to subscribe to sync topic`);
           }
@@ -50,26 +97,30 @@ export class WebSocketService {
 
         this.client!.publish({
           destination: '/app/map/sync',
-          body: JSON.stringify({clientId})
+          body: JSON.stringify({clientId, lastSeq: this.lastSeq, epoch: this.epoch})
         });
       },
-      onDisconnect: () => {
-        this.connectionStatus$.next('reconnecting');
-        this.scheduleReconnect();
-      },
-      onStompError: () => {
+      onStompError: () => this.failPendingEdits(),
+      // Also covers a rejected handshake: the browser hides the 421 for a map owned by another
+      // node, so every reconnect asks for the map's node again.
+      onWebSocketClose: (event: CloseEvent) => {
+        if (this.client !== client) return;
+        this.failPendingEdits();
         this.connectionStatus$.next('reconnecting');
-        this.scheduleReconnect();
+        this.scheduleReconnect(event.code === MAP_MOVED);
       },
     });
 
-    this.client.activate();
+    this.client = client;
+    client.activate();
   }
 
   disconnect(): void {
     if (this.reconnectTimer) clearTimeout(this.reconnectTimer);
-    this.client?.deactivate();
+    this.failPendingEdits();
+    const client = this.client;
     this.client = null;
+    client?.deactivate();
     this.connectionStatus$.next('disconnected');
   }
 
@@ -85,16 +136,124 @@ export class WebSocketService {
     this.publish('/app/map/field-blur', {});
   }
 
+  isConnected(): boolean {
+    return !!this.client?.connected && this.clientId !== null;
+  }
+
+  /**
+   * With an expected version the edit only applies if the cell is still at that version,
+   * otherwise it is acked as CONFLICT and the stored state is broadcast as CELL_CONFLICT.
+   */
+  editCell(row: number, col: number, name: string, expectedVersion?: number): Promise<EditAck> {
+    return this.command('/app/map/edit/cell', {row, col, name, expectedVersion});
+  }
+
+  editCellVariable(row: number, col: number, variableId: string, value: string | null,
+                   expectedVersion?: number): Promise<EditAck> {
+    return this.command('/app/map/edit/cell-variable', {row, col, variableId, value, expectedVersion});
+  }
+
+  editMapField(field: string, value: unknown): Promise<EditAck> {
+    return this.command('/app/map/edit/map-field', {field, value});
+  }
+
+  private command(destination: string, body: object): Promise<EditAck> {
+    if (!this.isConnected()) return Promise.reject(new Error('not connected'));
+    const clientSeq = ++this.clientSeq;
+    return new Promise((resolve, reject) => {
+      this.acks.set(clientSeq, {resolve, reject});
+      this.client!.publish({destination, body: JSON.stringify({...body, clientId: this.clientId, clientSeq})});
+    });
+  }
+
+  private receiveAck(ack: EditAck): void {
+    this.acks.get(ack.clientSeq)?.resolve(ack);
+    this.acks.delete(ack.clientSeq);
+  }
+
+  private failPendingEdits(): void {
+    this.clientId = null;
+    this.acks.forEach(pending => pending.reject(new Error('disconnected')));
+    this.acks.clear();
+  }
+
+  private async nodeUrl(mapId: number): Promise<string> {
+    const local = `${location.protocol === 'https:' ? 'wss' : 'ws'}://${location.host}/ws`;
+    try {
+      const node = await firstValueFrom(this.http.get<{url?: string}>(`/api/maps/${mapId}/node`));
+      return node.url ?? local;
+    } catch {
+      return local;
+    }
+  }
+
+  private decode(msg: IMessage): unknown {
+    return msg.headers['content-type'] === 'application/octet-stream'
+      ? decodeCbor(msg.binaryBody)
+      : JSON.parse(msg.body);
+  }
+
+  private receiveFrame(frame: WsFrame): void {
+    if (frame.type === 'BATCH') {
+      frame.messages.forEach(m => this.receive(m));
+    } else {
+      this.receive(frame);
+    }
+  }
+
+  private receive(msg: WsMessage): void {
+    if (!('seq' in msg)) {
+      this.messages$.next(msg);
+    } else if (this.awaitingSync) {
+      this.pending.push(msg);
+    } else {
+      this.lastSeq = Math.max(this.lastSeq ?? 0, msg.seq);
+      this.messages$.next(msg);
+    }
+  }
+
+  private receiveSync(msg: WsMessage): void {
+    if (msg.type !== 'FULL_STATE' && msg.type !== 'DELTA') {
+      this.messages$.next(msg);
+      return;
+    }
+    this.epoch = msg.epoch;
+    this.lastSeq = msg.seq;
+    this.awaitingSync = false;
+    this.messages$.next(msg);
+
+    const pending = this.pending;
+    this.pending = [];
+    pending.forEach(m => {
+      if ('seq' in m && m.seq > this.lastSeq!) this.receive(m);
+    });
+  }
+
+  private receiveChunk(msg: IMessage): void {
+    const id = msg.headers['chunk-id'];
+    const count = Number(msg.headers['chunk-count']);
+    const parts = this.chunks.get(id) ?? new Array<Uint8Array>(count);
+    parts[Number(msg.headers['chunk-index'])] = msg.binaryBody;
+    this.chunks.set(id, parts);
+    if (parts.filter(Boolean).length < count) return;
+
+    this.chunks.delete(id);
+    const inflated = new Blob(parts as BlobPart[]).stream().pipeThrough(new DecompressionStream('deflate'));
+    new Response(inflated).text()
+      .then(text => this.receiveSync(JSON.parse(text) as WsMessage))
+      .catch(() => console.log(`failed to inflate sync payload`));
+  }
+
   private publish(destination: string, body: object): void {
     if (!this.client?.connected) return;
     this.client.publish({destination, body: JSON.stringify(body)});
   }
 
-  private scheduleReconnect(): void {
+  private scheduleReconnect(immediately = false): void {
     if (!this.mapId) return;
     this.reconnectTimer = setTimeout(() => {
-      this.reconnectDelay = Math.min(this.reconnectDelay * 2, 30000);
-      this.connect(this.mapId!);
-    }, this.reconnectDelay);
+      if (!immediately) this.reconnectDelay = Math.min(this.reconnectDelay * 2, 30000);
+      this.connect(this.mapId!, this.dm);
+    }, immediately ? 0 : this.reconnectDelay);
   }
 }